@@ -3,12 +3,14 @@ package org.linshuai.astralint;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * CodeVoyant 智能代码审查系统主应用类
  */
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
 public class CodeVoyantApplication {
 
     public static void main(String[] args) {
@@ -12,6 +12,20 @@ import org.springframework.context.annotation.Primary;
 @Configuration
 public class AiConfig {
 
+    /**
+     * 代码审查助手的系统提示词，默认ChatClient和按模型路由的ChatClient共用
+     */
+    public static final String CODE_REVIEW_SYSTEM_PROMPT = """
+            你是一个专业的代码审查和优化助手，具备以下能力：
+            1. 代码质量分析（可读性、结构、命名规范）
+            2. 安全漏洞检测（SQL注入、XSS、权限控制等）
+            3. 性能优化建议（算法、内存、数据库查询等）
+            4. 最佳实践指导（设计模式、架构原则等）
+            5. 技术债务识别和改进建议
+            
+            请以专业、准确、实用的方式提供代码分析和优化建议。
+            """;
+
     /**
      * 配置代码审查的PromptTemplate
      */
@@ -68,6 +82,59 @@ public class AiConfig {
             请提供具体的优化建议和实现方案。
             """);
     }
+    /**
+     * 配置单次综合审查的PromptTemplate
+     * 一次调用同时返回摘要、安全、性能、质量四部分，各部分以固定标记开头
+     */
+    @Bean
+    public PromptTemplate comprehensiveReviewPromptTemplate() {
+        return new PromptTemplate("""
+            请对以下代码变更进行一次性的综合审查。
+
+            文件: {fileName}
+            代码变更：
+            {codeDiff}
+
+            请严格按以下格式输出四个部分，每个部分以单独一行的标记开头，不要省略任何标记：
+            <<<SUMMARY>>>
+            变更摘要：主要功能、关键逻辑和重要变更点
+            <<<SECURITY>>>
+            安全风险：SQL注入、XSS、权限控制、敏感信息泄露、输入验证，严重问题用"🚨"标记
+            <<<PERFORMANCE>>>
+            性能与优化建议：算法复杂度、内存使用、数据库查询、并发处理、缓存策略
+            <<<QUALITY>>>
+            代码质量与最佳实践：问题描述、严重程度和改进建议
+
+            请用中文回答。
+            """);
+    }
+
+    /**
+     * 配置批量综合审查的PromptTemplate
+     * 多个小文件合并为一次调用，按文件编号分隔输出，每个文件内的分节标记与comprehensiveReviewPromptTemplate一致
+     */
+    @Bean
+    public PromptTemplate batchReviewPromptTemplate() {
+        return new PromptTemplate("""
+            请对以下{fileCount}个文件的代码变更分别进行一次性的综合审查。
+
+            {files}
+
+            请按文件编号依次输出，每个文件以单独一行的 <<<FILE 编号>>> 标记开头（例如 <<<FILE 1>>>），不要遗漏任何文件。
+            每个文件内严格按以下格式输出四个部分，每个部分以单独一行的标记开头，不要省略任何标记：
+            <<<SUMMARY>>>
+            变更摘要：主要功能、关键逻辑和重要变更点
+            <<<SECURITY>>>
+            安全风险：SQL注入、XSS、权限控制、敏感信息泄露、输入验证，严重问题用"🚨"标记
+            <<<PERFORMANCE>>>
+            性能与优化建议：算法复杂度、内存使用、数据库查询、并发处理、缓存策略
+            <<<QUALITY>>>
+            代码质量与最佳实践：问题描述、严重程度和改进建议
+
+            请用中文回答。
+            """);
+    }
+
     /**
      * 配置ChatClient bean
      * 提供一个简单的ChatClient实现，避免Spring AI自动配置问题
@@ -76,16 +143,7 @@ public class AiConfig {
     @Primary
     public ChatClient researchAgent(ChatClient.Builder builder) {
         return builder
-                .defaultSystem("""
-                        你是一个专业的代码审查和优化助手，具备以下能力：
-                        1. 代码质量分析（可读性、结构、命名规范）
-                        2. 安全漏洞检测（SQL注入、XSS、权限控制等）
-                        3. 性能优化建议（算法、内存、数据库查询等）
-                        4. 最佳实践指导（设计模式、架构原则等）
-                        5. 技术债务识别和改进建议
-                        
-                        请以专业、准确、实用的方式提供代码分析和优化建议。
-                        """)
+                .defaultSystem(CODE_REVIEW_SYSTEM_PROMPT)
                 .build();
     }
 
@@ -1,30 +1,118 @@
 package org.linshuai.astralint.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.linshuai.astralint.constant.CodeReviewConstants;
+import org.linshuai.astralint.dto.CodeReviewResponse;
+import org.linshuai.astralint.repository.AiModelConfigRepository;
+import org.linshuai.astralint.repository.RepositoryConfigRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 缓存配置类
+ * 每个缓存使用独立的Caffeine规格（容量/权重上限、写入后过期、访问后过期、异步刷新），
+ * 并将命中率和驱逐指标发布到Micrometer
  */
 @Configuration
 @EnableCaching
+@EnableConfigurationProperties(CacheConfig.CacheSpecProperties.class)
 public class CacheConfig {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheConfig.class);
+
     /**
      * 配置缓存管理器
      */
     @Bean
-    public CacheManager cacheManager() {
-        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
-        cacheManager.setCacheNames(java.util.Arrays.asList(
-            "aiModels", 
-            "repositories", 
-            "codeReviews",
-            "userSessions"
-        ));
+    public CacheManager cacheManager(CacheSpecProperties properties,
+                                     AiModelConfigRepository aiModelConfigRepository,
+                                     RepositoryConfigRepository repositoryConfigRepository,
+                                     MeterRegistry meterRegistry) {
+        // 支持refreshAfterWrite的缓存需要能按键重新加载的loader，loader返回null时条目被移除
+        Map<String, CacheLoader<Object, Object>> loaders = Map.of(
+                CodeReviewConstants.CACHE_AI_MODELS,
+                key -> aiModelConfigRepository.findByModelName((String) key).orElse(null),
+                CodeReviewConstants.CACHE_REPOSITORIES,
+                key -> repositoryConfigRepository.findByRepositoryName((String) key).orElse(null));
+
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAllowNullValues(false);
+        // 只允许使用已声明规格的缓存，避免动态创建无界缓存
+        cacheManager.setCacheNames(Collections.emptyList());
+
+        properties.getSpecs().forEach((name, spec) -> {
+            Cache<Object, Object> cache = buildCache(name, spec, loaders.get(name));
+            cacheManager.registerCustomCache(name, cache);
+            Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                    .tag("cache", name)
+                    .description("缓存命中率")
+                    .register(meterRegistry);
+            logger.info("注册缓存 {}: {}", name, spec);
+        });
         return cacheManager;
     }
-} 
\ No newline at end of file
+
+    private Cache<Object, Object> buildCache(String name, String spec, CacheLoader<Object, Object> loader) {
+        Caffeine<Object, Object> builder = Caffeine.from(spec).recordStats();
+        if (spec.contains("maximumWeight")) {
+            // 按字符数近似估算条目大小，审查结果按详细分析的长度计，其他值按1计
+            builder = builder.weigher((Object key, Object value) -> {
+                if (value instanceof CharSequence text) {
+                    return Math.max(1, text.length());
+                }
+                if (value instanceof CodeReviewResponse response && response.getDetailedAnalysis() != null) {
+                    return Math.max(1, response.getDetailedAnalysis().length());
+                }
+                return 1;
+            });
+        }
+
+        if (spec.contains("refreshAfterWrite")) {
+            if (loader == null) {
+                throw new IllegalStateException("缓存 " + name + " 配置了refreshAfterWrite，但没有可用的loader");
+            }
+            return builder.build(loader);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 每个缓存的Caffeine规格，例如 maximumSize=1000,expireAfterWrite=10m,refreshAfterWrite=5m
+     */
+    @ConfigurationProperties(prefix = "astralint.cache")
+    public static class CacheSpecProperties {
+
+        private Map<String, String> specs = new LinkedHashMap<>(Map.of(
+                CodeReviewConstants.CACHE_AI_MODELS,
+                "maximumSize=100,expireAfterWrite=30m,refreshAfterWrite=5m",
+                CodeReviewConstants.CACHE_REPOSITORIES,
+                "maximumSize=5000,expireAfterWrite=30m,refreshAfterWrite=5m",
+                CodeReviewConstants.CACHE_CODE_REVIEWS,
+                "maximumWeight=50000000,expireAfterWrite=24h,expireAfterAccess=1h",
+                CodeReviewConstants.CACHE_USER_SESSIONS,
+                "maximumSize=10000,expireAfterAccess=30m"));
+
+        public Map<String, String> getSpecs() {
+            return specs;
+        }
+
+        public void setSpecs(Map<String, String> specs) {
+            this.specs = specs;
+        }
+    }
+}
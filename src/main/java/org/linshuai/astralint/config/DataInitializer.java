@@ -42,6 +42,20 @@ public class DataInitializer implements CommandLineRunner {
         if (aiModelConfigRepository.count() == 0) {
             logger.info("创建示例AI模型配置...");
             
+            // 阿里云通义千问Turbo模型，处理摘要和小文件
+            AiModelConfig qwenTurboModel = new AiModelConfig("qwen-turbo", "ALIBABA");
+            qwenTurboModel.setApiKey("your_dashscope_api_key_here");
+            qwenTurboModel.setApiEndpoint("https://dashscope.aliyuncs.com/api/v1/services/aigc/text-generation/generation");
+            qwenTurboModel.setTemperature(0.7);
+            qwenTurboModel.setMaxTokens(2000);
+            qwenTurboModel.setTimeoutMs(15000);
+            qwenTurboModel.setCostWeight(0.3);
+            qwenTurboModel.setMaxInputTokens(2000);
+            qwenTurboModel.setDescription("阿里云通义千问Turbo模型，成本低、速度快，用于摘要和小文件审查");
+            qwenTurboModel.setIsActive(true);
+            qwenTurboModel.setIsDefault(false);
+            aiModelConfigRepository.save(qwenTurboModel);
+            
             // 阿里云通义千问模型
             AiModelConfig qwenModel = new AiModelConfig("qwen-plus", "ALIBABA");
             qwenModel.setApiKey("your_dashscope_api_key_here");
@@ -49,11 +63,26 @@ public class DataInitializer implements CommandLineRunner {
             qwenModel.setTemperature(0.7);
             qwenModel.setMaxTokens(4000);
             qwenModel.setTimeoutMs(30000);
+            qwenModel.setCostWeight(1.0);
             qwenModel.setDescription("阿里云通义千问Plus模型，支持代码审查和分析");
             qwenModel.setIsActive(true);
             qwenModel.setIsDefault(true);
             aiModelConfigRepository.save(qwenModel);
             
+            // 阿里云通义千问Max模型，只负责安全检查
+            AiModelConfig qwenMaxModel = new AiModelConfig("qwen-max", "ALIBABA");
+            qwenMaxModel.setApiKey("your_dashscope_api_key_here");
+            qwenMaxModel.setApiEndpoint("https://dashscope.aliyuncs.com/api/v1/services/aigc/text-generation/generation");
+            qwenMaxModel.setTemperature(0.3);
+            qwenMaxModel.setMaxTokens(4000);
+            qwenMaxModel.setTimeoutMs(60000);
+            qwenMaxModel.setCostWeight(5.0);
+            qwenMaxModel.setRoutingAspects("SECURITY");
+            qwenMaxModel.setDescription("阿里云通义千问Max模型，推理能力最强，只用于安全检查");
+            qwenMaxModel.setIsActive(true);
+            qwenMaxModel.setIsDefault(false);
+            aiModelConfigRepository.save(qwenMaxModel);
+            
             // OpenAI GPT-4模型
             AiModelConfig gpt4Model = new AiModelConfig("gpt-4", "OPENAI");
             gpt4Model.setApiKey("your_openai_api_key_here");
@@ -61,6 +90,7 @@ public class DataInitializer implements CommandLineRunner {
             gpt4Model.setTemperature(0.7);
             gpt4Model.setMaxTokens(4000);
             gpt4Model.setTimeoutMs(30000);
+            gpt4Model.setCostWeight(10.0);
             gpt4Model.setDescription("OpenAI GPT-4模型，强大的代码理解和分析能力");
             gpt4Model.setIsActive(true);
             gpt4Model.setIsDefault(false);
@@ -73,6 +103,7 @@ public class DataInitializer implements CommandLineRunner {
             claudeModel.setTemperature(0.7);
             claudeModel.setMaxTokens(4000);
             claudeModel.setTimeoutMs(30000);
+            claudeModel.setCostWeight(5.0);
             claudeModel.setDescription("Anthropic Claude 3 Sonnet模型，优秀的代码分析能力");
             claudeModel.setIsActive(false);
             claudeModel.setIsDefault(false);
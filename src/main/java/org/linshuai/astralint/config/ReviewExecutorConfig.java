@@ -0,0 +1,69 @@
+package org.linshuai.astralint.config;
+
+import org.linshuai.astralint.service.ReviewContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 代码审查线程池配置
+ */
+@Configuration
+public class ReviewExecutorConfig {
+
+    /**
+     * 按文件并发调用AI模型的有界线程池
+     * 队列满时由提交线程自行执行，形成背压而不是丢弃任务；任务继承提交线程的审查上下文
+     */
+    @Bean(name = "codeReviewExecutor")
+    public ThreadPoolTaskExecutor codeReviewExecutor(
+            @Value("${ai.code-review.parallelism:8}") int parallelism,
+            @Value("${ai.code-review.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("code-review-");
+        executor.setTaskDecorator(ReviewContext::wrap);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 执行单次AI模型调用的线程池，对冲请求和故障转移请求也在这里执行
+     * 调用方阻塞等待结果，输掉的请求通过中断线程取消；不设等待队列，线程耗尽时由调用方降级处理
+     */
+    @Bean(name = "aiCallExecutor")
+    public ThreadPoolTaskExecutor aiCallExecutor(
+            @Value("${ai.code-review.hedging.max-concurrent-calls:32}") int maxConcurrentCalls) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentCalls);
+        executor.setMaxPoolSize(maxConcurrentCalls);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("ai-call-");
+        executor.setTaskDecorator(ReviewContext::wrap);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * 消费审查任务队列的工作线程池
+     * 不设等待队列，轮询线程只按空闲线程数抢占任务，未抢占的任务留在数据库中
+     */
+    @Bean(name = "reviewJobExecutor")
+    public ThreadPoolTaskExecutor reviewJobExecutor(
+            @Value("${astralint.review-jobs.worker-threads:4}") int workerThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("review-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
@@ -1,5 +1,6 @@
 package org.linshuai.astralint.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -55,6 +56,9 @@ public class SecurityConfig {
 
                 // 权限配置
                 .authorizeHttpRequests(authz -> authz
+                        // 异步分派（SSE流式审查结束时）沿用原始请求的鉴权结果
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // 公开的健康检查端点
                         .requestMatchers("/actuator/health", "/actuator/info").permitAll()
 
@@ -0,0 +1,99 @@
+package org.linshuai.astralint.config;
+
+import org.linshuai.astralint.dto.WebhookPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Webhook请求体过滤器
+ * 将原始body读入线程复用的字节缓冲区，作为请求属性交给WebhookController：
+ * 签名按原始字节校验，字段按需流式解析，不再为每次投递创建String和完整的Map
+ */
+@Component
+public class WebhookPayloadFilter extends OncePerRequestFilter {
+
+  /**
+   * 保存WebhookPayload的请求属性名
+   */
+  public static final String PAYLOAD_ATTRIBUTE = "org.linshuai.astralint.config.WebhookPayloadFilter.PAYLOAD";
+
+  private static final Logger logger = LoggerFactory.getLogger(WebhookPayloadFilter.class);
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+  // 超过该大小的请求返回413（GitHub的payload上限为25MB）
+  @Value("${astralint.webhook.max-payload-size:26214400}")
+  private int maxPayloadSize;
+
+  // 不超过该大小的缓冲区留给线程复用，更大的缓冲区在请求结束后释放
+  @Value("${astralint.webhook.retained-buffer-size:1048576}")
+  private int retainedBufferSize;
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+
+    int contentLength = request.getContentLength();
+    if (contentLength > maxPayloadSize) {
+      reject(response, contentLength);
+      return;
+    }
+
+    byte[] buffer = BUFFERS.get();
+    if (contentLength >= buffer.length) {
+      // 多留一个字节，读完声明的长度后无需扩容即可读到流结束
+      buffer = new byte[contentLength + 1];
+    }
+
+    int length = 0;
+    ServletInputStream input = request.getInputStream();
+    for (int read; (read = input.read(buffer, length, buffer.length - length)) != -1; ) {
+      length += read;
+      if (length > maxPayloadSize) {
+        reject(response, length);
+        return;
+      }
+      if (length == buffer.length) {
+        // 没有Content-Length（分块传输）或实际长度超出声明时扩容，多留一个字节用于判断是否超限
+        buffer = Arrays.copyOf(buffer, (int) Math.min((long) maxPayloadSize + 1, buffer.length * 2L));
+      }
+    }
+
+    request.setAttribute(PAYLOAD_ATTRIBUTE, new WebhookPayload(buffer, length));
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      request.removeAttribute(PAYLOAD_ATTRIBUTE);
+      if (buffer.length <= retainedBufferSize) {
+        BUFFERS.set(buffer);
+      }
+    }
+  }
+
+  /**
+   * 只处理Webhook的POST请求
+   */
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !"POST".equals(request.getMethod()) || !request.getServletPath().startsWith("/api/webhook/");
+  }
+
+  private void reject(HttpServletResponse response, long size) throws IOException {
+    logger.warn("Webhook payload过大: {}字节，上限{}字节", size, maxPayloadSize);
+    response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(), "payload过大");
+  }
+}
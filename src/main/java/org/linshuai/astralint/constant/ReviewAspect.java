@@ -0,0 +1,13 @@
+package org.linshuai.astralint.constant;
+
+/**
+ * AI审查维度，对应AiModelService中的各类模型调用
+ */
+public enum ReviewAspect {
+    ANALYSIS, // 代码审查
+    SUMMARY, // 变更摘要
+    OPTIMIZATION, // 优化建议
+    SECURITY, // 安全检查
+    COMPREHENSIVE, // 单次综合审查
+    BATCH_COMPREHENSIVE // 多个小文件合并的批量综合审查
+}
@@ -2,17 +2,23 @@ package org.linshuai.astralint.controller;
 
 import org.linshuai.astralint.entity.AiModelConfig;
 import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.entity.TokenUsage;
 import org.linshuai.astralint.service.AiModelConfigService;
 import org.linshuai.astralint.service.RepositoryConfigService;
+import org.linshuai.astralint.service.TokenUsageTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 后台管理控制器
@@ -29,6 +35,9 @@ public class AdminController {
     @Autowired
     private RepositoryConfigService repositoryConfigService;
 
+    @Autowired
+    private TokenUsageTracker tokenUsageTracker;
+
     // ==================== AI模型配置管理 ====================
 
     /**
@@ -346,6 +355,50 @@ public class AdminController {
         }
     }
 
+    /**
+     * 获取最近若干天按仓库和模型汇总的token用量与成本，按成本从高到低排列
+     */
+    @GetMapping("/token-usage")
+    public ResponseEntity<Map<String, Object>> getTokenUsage(@RequestParam(defaultValue = "30") int days) {
+        if (days < 1 || days > 366) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            LocalDate since = LocalDate.now().minusDays(days - 1L);
+            Map<String, String> repositoryNames = repositoryConfigService.getAllRepositoryConfigs().stream()
+                    .collect(Collectors.toMap(config -> String.valueOf(config.getId()),
+                            RepositoryConfig::getRepositoryName, (a, b) -> a));
+
+            List<Map<String, Object>> repositories = new ArrayList<>();
+            List<Map<String, Object>> models = new ArrayList<>();
+            for (TokenUsageTracker.UsageTotal total : tokenUsageTracker.getUsageSince(since)) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                if (TokenUsage.SCOPE_REPOSITORY.equals(total.scopeType())) {
+                    item.put("repositoryConfigId", total.scopeKey());
+                    item.put("repositoryName", repositoryNames.get(total.scopeKey()));
+                    repositories.add(item);
+                } else {
+                    item.put("modelName", total.scopeKey());
+                    models.add(item);
+                }
+                item.put("calls", total.calls());
+                item.put("promptTokens", total.promptTokens());
+                item.put("completionTokens", total.completionTokens());
+                item.put("totalTokens", total.totalTokens());
+                item.put("cost", total.cost());
+            }
+
+            Map<String, Object> usage = new HashMap<>();
+            usage.put("since", since);
+            usage.put("repositories", repositories);
+            usage.put("models", models);
+            return ResponseEntity.ok(usage);
+        } catch (Exception e) {
+            logger.error("获取token用量失败", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * 健康检查
      */
@@ -2,17 +2,31 @@ package org.linshuai.astralint.controller;
 
 import org.linshuai.astralint.dto.CodeReviewRequest;
 import org.linshuai.astralint.dto.CodeReviewResponse;
+import org.linshuai.astralint.dto.ReviewStreamEvent;
 import org.linshuai.astralint.service.AiCodeReviewService;
+import org.linshuai.astralint.service.CodeReviewResultStore;
+import org.linshuai.astralint.service.ReviewContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.validation.annotation.Validated;
 import jakarta.validation.Valid;
+import reactor.core.Disposable;
+import reactor.util.context.Context;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 代码审查控制器
@@ -24,9 +38,26 @@ public class CodeReviewController {
 
     private static final Logger logger = LoggerFactory.getLogger(CodeReviewController.class);
 
+    /**
+     * SSE连接超时在审查总截止时间之外留出的余量，保证complete事件能发出
+     */
+    private static final long STREAM_TIMEOUT_MARGIN_MS = 10_000;
+
+    private static final Map<ReviewStreamEvent.Type, String> STREAM_EVENT_NAMES = Map.of(
+            ReviewStreamEvent.Type.FILE_START, "file",
+            ReviewStreamEvent.Type.DELTA, "delta",
+            ReviewStreamEvent.Type.FILE_END, "file-end",
+            ReviewStreamEvent.Type.TIMEOUT, "timeout");
+
     @Autowired
     private AiCodeReviewService aiCodeReviewService;
 
+    @Autowired
+    private CodeReviewResultStore codeReviewResultStore;
+
+    @Value("${ai.code-review.review-timeout:300000}")
+    private long reviewTimeout;
+
     /**
      * 提交代码审查请求
      */
@@ -40,9 +71,11 @@ public class CodeReviewController {
             CodeReviewResponse response = new CodeReviewResponse(reviewId, request.getProjectId(),
                     request.getMergeRequestId());
             response.setStatus(CodeReviewResponse.ReviewStatus.PROCESSING);
+            codeReviewResultStore.save(response);
 
-            // 异步处理代码审查
-            CompletableFuture.runAsync(() -> {
+            // 异步处理代码审查，审查期间的AI调用用量累计到reviewContext
+            ReviewContext reviewContext = new ReviewContext(reviewId, null);
+            CompletableFuture.runAsync(reviewContext.bind(() -> {
                 try {
                     long startTime = System.currentTimeMillis();
 
@@ -50,34 +83,44 @@ public class CodeReviewController {
                     String analysisResult;
                     switch (request.getReviewType()) {
                         case SECURITY:
-                            analysisResult = aiCodeReviewService.checkCodeSecurity(request.getDiffContent());
+                            analysisResult = aiCodeReviewService.checkCodeSecurity(request.getDiffContent(),
+                                    request.getProjectId());
                             break;
                         case PERFORMANCE:
                             analysisResult = aiCodeReviewService
                                     .provideOptimizationSuggestions(request.getDiffContent());
                             break;
                         case BASIC:
-                            analysisResult = aiCodeReviewService.analyzeCodeDiffs(request.getDiffContent());
+                            analysisResult = aiCodeReviewService.analyzeCodeDiffs(request.getDiffContent(),
+                                    request.getProjectId());
                             break;
                         case COMPREHENSIVE:
                         default:
-                            analysisResult = aiCodeReviewService.generateComprehensiveReview(request.getDiffContent());
+                            analysisResult = aiCodeReviewService.generateComprehensiveReview(request.getDiffContent(),
+                                    request.getProjectId());
                             break;
                     }
 
                     response.setDetailedAnalysis(analysisResult);
                     response.setStatus(CodeReviewResponse.ReviewStatus.COMPLETED);
                     response.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+                    response.setPromptTokens(reviewContext.getPromptTokens());
+                    response.setCompletionTokens(reviewContext.getCompletionTokens());
+                    codeReviewResultStore.save(response);
 
-                    logger.info("代码审查完成: reviewId={}, processingTime={}ms",
-                            reviewId, response.getProcessingTimeMs());
+                    logger.info("代码审查完成: reviewId={}, processingTime={}ms, tokens={}+{}",
+                            reviewId, response.getProcessingTimeMs(), response.getPromptTokens(),
+                            response.getCompletionTokens());
 
                 } catch (Exception e) {
                     logger.error("代码审查处理失败: reviewId={}", reviewId, e);
                     response.setStatus(CodeReviewResponse.ReviewStatus.FAILED);
                     response.setDetailedAnalysis("代码审查失败: " + e.getMessage());
+                    response.setPromptTokens(reviewContext.getPromptTokens());
+                    response.setCompletionTokens(reviewContext.getCompletionTokens());
+                    codeReviewResultStore.save(response);
                 }
-            });
+            }));
 
             return ResponseEntity.accepted().body(response);
 
@@ -87,20 +130,97 @@ public class CodeReviewController {
         }
     }
 
+    /**
+     * 流式代码审查（SSE）
+     * 依次推送 review（审查ID）、file（开始审查文件）、delta（模型输出片段）、file-end 事件，
+     * 最后推送 complete 或 error 事件；完整结果和token用量同时写入审查结果存储
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCodeReview(@Valid @RequestBody CodeReviewRequest request) {
+        logger.info("收到流式代码审查请求: projectId={}, mergeRequestId={}",
+                request.getProjectId(), request.getMergeRequestId());
+
+        SseEmitter emitter = new SseEmitter(reviewTimeout + STREAM_TIMEOUT_MARGIN_MS);
+        String reviewId = UUID.randomUUID().toString();
+        CodeReviewResponse response = new CodeReviewResponse(reviewId, request.getProjectId(),
+                request.getMergeRequestId());
+        response.setStatus(CodeReviewResponse.ReviewStatus.PROCESSING);
+        codeReviewResultStore.save(response);
+
+        if (!sendEvent(emitter, "review", Map.of("review_id", reviewId))) {
+            return emitter;
+        }
+
+        long startTime = System.currentTimeMillis();
+        String defaultFileName = request.getFilePaths() != null && request.getFilePaths().length > 0
+                && request.getFilePaths()[0] != null && !request.getFilePaths()[0].isBlank()
+                ? request.getFilePaths()[0] : "code";
+        StringBuilder report = new StringBuilder("## 🤖 智能代码审查结果\n\n");
+        // 流式调用跨越多个线程，审查上下文通过Reactor Context传递
+        ReviewContext reviewContext = new ReviewContext(reviewId, null);
+        AtomicBoolean timedOut = new AtomicBoolean();
+
+        Disposable subscription = aiCodeReviewService
+                .streamComprehensiveReview(request.getDiffContent(), defaultFileName)
+                .contextWrite(Context.of(ReviewContext.class, reviewContext))
+                .subscribe(event -> {
+                    if (event.getType() == ReviewStreamEvent.Type.TIMEOUT) {
+                        timedOut.set(true);
+                    }
+                    appendToReport(report, event);
+                    if (!sendEvent(emitter, STREAM_EVENT_NAMES.get(event.getType()), event)) {
+                        // 客户端已断开，抛出异常以取消上游的AI调用
+                        throw new IllegalStateException("客户端已断开");
+                    }
+                }, error -> {
+                    logger.error("流式代码审查失败: reviewId={}", reviewId, error);
+                    response.setStatus(CodeReviewResponse.ReviewStatus.FAILED);
+                    response.setDetailedAnalysis("代码审查失败: " + error.getMessage());
+                    response.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+                    response.setPromptTokens(reviewContext.getPromptTokens());
+                    response.setCompletionTokens(reviewContext.getCompletionTokens());
+                    codeReviewResultStore.save(response);
+                    sendEvent(emitter, "error", Map.of("review_id", reviewId, "message", String.valueOf(error.getMessage())));
+                    emitter.complete();
+                }, () -> {
+                    // 超时的审查结果不完整，保留已输出的部分但不标记为完成；超时事件已推送给客户端
+                    response.setStatus(timedOut.get()
+                            ? CodeReviewResponse.ReviewStatus.FAILED : CodeReviewResponse.ReviewStatus.COMPLETED);
+                    response.setDetailedAnalysis(report.toString());
+                    response.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+                    response.setPromptTokens(reviewContext.getPromptTokens());
+                    response.setCompletionTokens(reviewContext.getCompletionTokens());
+                    codeReviewResultStore.save(response);
+                    logger.info("流式代码审查{}: reviewId={}, processingTime={}ms, tokens={}+{}",
+                            timedOut.get() ? "超时" : "完成", reviewId, response.getProcessingTimeMs(),
+                            response.getPromptTokens(), response.getCompletionTokens());
+                    if (!timedOut.get()) {
+                        sendEvent(emitter, "complete", Map.of("review_id", reviewId,
+                                "processing_time_ms", response.getProcessingTimeMs()));
+                    }
+                    emitter.complete();
+                });
+
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+        return emitter;
+    }
+
     /**
      * 获取代码审查结果
+     * view=status 时只返回状态和摘要，不加载详细分析内容，适合轮询
      */
     @GetMapping("/{reviewId}")
-    public ResponseEntity<CodeReviewResponse> getCodeReviewResult(@PathVariable String reviewId) {
+    public ResponseEntity<CodeReviewResponse> getCodeReviewResult(@PathVariable String reviewId,
+            @RequestParam(defaultValue = "full") String view) {
         try {
-            // 这里应该从数据库或缓存中获取结果
-            // 暂时返回模拟数据
-            CodeReviewResponse response = new CodeReviewResponse(reviewId, "project-1", "mr-1");
-            response.setStatus(CodeReviewResponse.ReviewStatus.COMPLETED);
-            response.setSummary("代码审查已完成");
-            response.setDetailedAnalysis("详细的代码审查分析结果...");
+            Optional<CodeReviewResponse> response = "status".equalsIgnoreCase(view)
+                    ? codeReviewResultStore.getReviewStatus(reviewId)
+                    : codeReviewResultStore.getReview(reviewId);
 
-            return ResponseEntity.ok(response);
+            return response.map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
 
         } catch (Exception e) {
             logger.error("获取代码审查结果失败: reviewId={}", reviewId, e);
@@ -108,6 +228,24 @@ public class CodeReviewController {
         }
     }
 
+    /**
+     * 分页查询代码审查状态
+     */
+    @GetMapping
+    public ResponseEntity<Page<CodeReviewResponse>> listCodeReviews(
+            @RequestParam(required = false) String projectId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), 100));
+            return ResponseEntity.ok(codeReviewResultStore.listReviews(projectId, pageRequest));
+
+        } catch (Exception e) {
+            logger.error("查询代码审查列表失败: projectId={}", projectId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * 快速代码审查（同步）
      */
@@ -116,7 +254,7 @@ public class CodeReviewController {
         try {
             logger.info("收到快速代码审查请求: projectId={}", request.getProjectId());
 
-            String result = aiCodeReviewService.analyzeCodeDiffs(request.getDiffContent());
+            String result = aiCodeReviewService.analyzeCodeDiffs(request.getDiffContent(), request.getProjectId());
 
             return ResponseEntity.ok(result);
 
@@ -134,7 +272,7 @@ public class CodeReviewController {
         try {
             logger.info("收到安全检查请求: projectId={}", request.getProjectId());
 
-            String result = aiCodeReviewService.checkCodeSecurity(request.getDiffContent());
+            String result = aiCodeReviewService.checkCodeSecurity(request.getDiffContent(), request.getProjectId());
 
             return ResponseEntity.ok(result);
 
@@ -180,6 +318,31 @@ public class CodeReviewController {
         }
     }
 
+    /**
+     * 发送SSE事件，客户端已断开时返回false
+     */
+    private boolean sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("SSE事件发送失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 将流式事件拼接为与非流式审查相同格式的Markdown报告
+     */
+    private void appendToReport(StringBuilder report, ReviewStreamEvent event) {
+        switch (event.getType()) {
+            case FILE_START -> report.append("### 📁 文件: ").append(event.getFilePath()).append("\n");
+            case DELTA -> report.append(event.getContent());
+            case FILE_END -> report.append("\n\n---\n\n");
+            case TIMEOUT -> report.append(event.getContent());
+        }
+    }
+
     /**
      * 健康检查
      */
@@ -1,8 +1,10 @@
 package org.linshuai.astralint.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
-import org.linshuai.astralint.dto.CodeReviewRequest;
+import org.linshuai.astralint.config.WebhookPayloadFilter;
+import org.linshuai.astralint.constant.CodeReviewConstants;
+import org.linshuai.astralint.dto.WebhookPayload;
 import org.linshuai.astralint.entity.RepositoryConfig;
 import org.linshuai.astralint.service.*;
 import org.linshuai.astralint.util.WebhookSecurityUtils;
@@ -10,12 +12,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Webhook控制器 - 处理代码仓库的Webhook事件
@@ -26,24 +30,42 @@ public class WebhookController {
 
     private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
 
-    @Autowired
-    private AiCodeReviewService aiCodeReviewService;
+    // 签名验证和Merge Request事件需要的字段，其余字段不解析
+    private static final String GITLAB_PROJECT_ID = "project.id";
+    private static final String GITLAB_MR_IID = "object_attributes.iid";
+    private static final String GITLAB_MR_ACTION = "object_attributes.action";
+    private static final String GITLAB_MR_HEAD_SHA = "object_attributes.last_commit.id";
+    private static final Set<String> GITLAB_PROJECT_FIELDS = Set.of(GITLAB_PROJECT_ID);
+    private static final Set<String> GITLAB_MR_FIELDS =
+            Set.of(GITLAB_PROJECT_ID, GITLAB_MR_IID, GITLAB_MR_ACTION, GITLAB_MR_HEAD_SHA);
+
+    // GitHub和Gitee的Pull Request事件字段相同
+    private static final String PR_ACTION = "action";
+    private static final String PR_NUMBER = "pull_request.number";
+    private static final String PR_HEAD_SHA = "pull_request.head.sha";
+    private static final String PR_REPOSITORY_NAME = "repository.full_name";
+    private static final Set<String> REPOSITORY_FIELDS = Set.of(PR_REPOSITORY_NAME);
+    private static final Set<String> PR_FIELDS = Set.of(PR_ACTION, PR_NUMBER, PR_HEAD_SHA, PR_REPOSITORY_NAME);
 
     @Autowired
     private RepositoryConfigService repositoryConfigService;
 
     @Autowired
-    private GitLabService gitLabService;
+    private ReviewJobService reviewJobService;
 
     @Autowired
-    private GitHubService gitHubService;
+    private WebhookSecurityUtils webhookSecurityUtils;
 
     @Autowired
-    private GiteeService giteeService;
+    private WebhookDeliveryDeduplicator webhookDeliveryDeduplicator;
 
     @Autowired
-    private WebhookSecurityUtils webhookSecurityUtils;
+    private ReviewAdmissionService reviewAdmissionService;
 
+    @Autowired
+    private WebhookSecretIndex webhookSecretIndex;
+
+    // 仓库未配置Webhook密钥时使用的全局密钥
     @Value("${gitlab.webhook.secret:}")
     private String gitlabWebhookSecret;
 
@@ -60,28 +82,45 @@ public class WebhookController {
     public ResponseEntity<String> handleGitLabWebhook(
             @RequestHeader(value = "X-Gitlab-Event", required = false) String event,
             @RequestHeader(value = "X-Gitlab-Token", required = false) String token,
-            @RequestBody Map<String, Object> payload) {
+            @RequestHeader(value = "X-Gitlab-Event-UUID", required = false) String deliveryId,
+            @RequestAttribute(WebhookPayloadFilter.PAYLOAD_ATTRIBUTE) WebhookPayload payload) {
 
-        logger.info("收到GitLab Webhook事件: {}", event);
+        logger.info("收到GitLab Webhook事件: {}, 投递ID: {}", event, deliveryId);
 
         try {
+            // 只解析签名验证和事件处理需要的字段
+            Map<String, String> fields = payload.extract(
+                    "Merge Request Hook".equals(event) ? GITLAB_MR_FIELDS : GITLAB_PROJECT_FIELDS);
+
+            // 仓库密钥索引未加载时无法区分"未配置密钥"和"密钥未知"，返回503由代码仓库重投
+            if (!webhookSecretIndex.isLoaded()) {
+                return secretsUnavailable();
+            }
+
             // 验证Webhook签名
-            if (!validateGitLabWebhook(token, payload)) {
+            if (!validateGitLabWebhook(token, fields.get(GITLAB_PROJECT_ID))) {
                 logger.warn("GitLab Webhook签名验证失败");
                 return ResponseEntity.badRequest().body("签名验证失败");
             }
 
-            // 处理不同类型的GitLab事件
-            switch (event) {
-                case "Merge Request Hook":
-                    return handleGitLabMergeRequest(payload);
-                case "Push Hook":
-                    return handleGitLabPush(payload);
-                default:
-                    logger.info("未处理的GitLab事件类型: {}", event);
-                    return ResponseEntity.ok("事件已接收");
-            }
+            // 重投的事件在拉取代码和调用AI之前丢弃
+            String deliveryKey = webhookDeliveryDeduplicator.deliveryKey(deliveryId, event, payload);
+            return processOnce(CodeReviewConstants.REPOSITORY_TYPE_GITLAB, deliveryKey, () -> {
+                // 处理不同类型的GitLab事件
+                switch (event) {
+                    case "Merge Request Hook":
+                        return handleGitLabMergeRequest(fields);
+                    case "Push Hook":
+                        return handleGitLabPush();
+                    default:
+                        logger.info("未处理的GitLab事件类型: {}", event);
+                        return ResponseEntity.ok("事件已接收");
+                }
+            });
 
+        } catch (JsonProcessingException e) {
+            logger.warn("解析GitLab Webhook payload失败: {}", e.getOriginalMessage());
+            return ResponseEntity.badRequest().body("无效的payload格式");
         } catch (Exception e) {
             logger.error("处理GitLab Webhook失败", e);
             return ResponseEntity.internalServerError().body("处理失败");
@@ -95,31 +134,44 @@ public class WebhookController {
     public ResponseEntity<String> handleGitHubWebhook(
             @RequestHeader(value = "X-GitHub-Event", required = false) String event,
             @RequestHeader(value = "X-Hub-Signature-256", required = false) String signature,
-            @RequestBody String payload) {
+            @RequestHeader(value = "X-GitHub-Delivery", required = false) String deliveryId,
+            @RequestAttribute(WebhookPayloadFilter.PAYLOAD_ATTRIBUTE) WebhookPayload payload) {
 
-        logger.info("收到GitHub Webhook事件: {}", event);
+        logger.info("收到GitHub Webhook事件: {}, 投递ID: {}", event, deliveryId);
 
         try {
+            // 只解析签名验证和事件处理需要的字段
+            Map<String, String> fields = payload.extract("pull_request".equals(event) ? PR_FIELDS : REPOSITORY_FIELDS);
+
+            // 仓库密钥索引未加载时无法区分"未配置密钥"和"密钥未知"，返回503由代码仓库重投
+            if (!webhookSecretIndex.isLoaded()) {
+                return secretsUnavailable();
+            }
+
             // 验证Webhook签名
-            if (!validateGitHubWebhook(signature, payload)) {
+            if (!validateGitHubWebhook(signature, payload, fields)) {
                 logger.warn("GitHub Webhook签名验证失败");
                 return ResponseEntity.badRequest().body("签名验证失败");
             }
 
-            // 解析payload
-            Map<String, Object> payloadMap = parseJsonPayload(payload);
-
-            // 处理不同类型的GitHub事件
-            switch (event) {
-                case "pull_request":
-                    return handleGitHubPullRequest(payloadMap);
-                case "push":
-                    return handleGitHubPush(payloadMap);
-                default:
-                    logger.info("未处理的GitHub事件类型: {}", event);
-                    return ResponseEntity.ok("事件已接收");
-            }
+            // 重投的事件在拉取代码和调用AI之前丢弃
+            String deliveryKey = webhookDeliveryDeduplicator.deliveryKey(deliveryId, event, payload);
+            return processOnce(CodeReviewConstants.REPOSITORY_TYPE_GITHUB, deliveryKey, () -> {
+                // 处理不同类型的GitHub事件
+                switch (event) {
+                    case "pull_request":
+                        return handleGitHubPullRequest(fields);
+                    case "push":
+                        return handleGitHubPush();
+                    default:
+                        logger.info("未处理的GitHub事件类型: {}", event);
+                        return ResponseEntity.ok("事件已接收");
+                }
+            });
 
+        } catch (JsonProcessingException e) {
+            logger.warn("解析GitHub Webhook payload失败: {}", e.getOriginalMessage());
+            return ResponseEntity.badRequest().body("无效的payload格式");
         } catch (Exception e) {
             logger.error("处理GitHub Webhook失败", e);
             return ResponseEntity.internalServerError().body("处理失败");
@@ -133,61 +185,116 @@ public class WebhookController {
     public ResponseEntity<String> handleGiteeWebhook(
             @RequestHeader(value = "X-Gitee-Event", required = false) String event,
             @RequestHeader(value = "X-Gitee-Token", required = false) String token,
-            @RequestBody Map<String, Object> payload) {
+            @RequestAttribute(WebhookPayloadFilter.PAYLOAD_ATTRIBUTE) WebhookPayload payload) {
 
         logger.info("收到Gitee Webhook事件: {}", event);
 
         try {
+            // 只解析签名验证和事件处理需要的字段
+            Map<String, String> fields = payload.extract(
+                    "Merge Request Hook".equals(event) ? PR_FIELDS : REPOSITORY_FIELDS);
+
+            // 仓库密钥索引未加载时无法区分"未配置密钥"和"密钥未知"，返回503由代码仓库重投
+            if (!webhookSecretIndex.isLoaded()) {
+                return secretsUnavailable();
+            }
+
             // 验证Webhook签名
-            if (!validateGiteeWebhook(token, payload)) {
+            if (!validateGiteeWebhook(token, fields)) {
                 logger.warn("Gitee Webhook签名验证失败");
                 return ResponseEntity.badRequest().body("签名验证失败");
             }
 
-            // 处理不同类型的Gitee事件
-            switch (event) {
-                case "Merge Request Hook":
-                    return handleGiteeMergeRequest(payload);
-                case "Push Hook":
-                    return handleGiteePush(payload);
-                default:
-                    logger.info("未处理的Gitee事件类型: {}", event);
-                    return ResponseEntity.ok("事件已接收");
-            }
+            // Gitee的请求头中没有投递ID，按事件和payload的摘要去重
+            String deliveryKey = webhookDeliveryDeduplicator.deliveryKey(null, event, payload);
+            return processOnce(CodeReviewConstants.REPOSITORY_TYPE_GITEE, deliveryKey, () -> {
+                // 处理不同类型的Gitee事件
+                switch (event) {
+                    case "Merge Request Hook":
+                        return handleGiteeMergeRequest(fields);
+                    case "Push Hook":
+                        return handleGiteePush();
+                    default:
+                        logger.info("未处理的Gitee事件类型: {}", event);
+                        return ResponseEntity.ok("事件已接收");
+                }
+            });
 
+        } catch (JsonProcessingException e) {
+            logger.warn("解析Gitee Webhook payload失败: {}", e.getOriginalMessage());
+            return ResponseEntity.badRequest().body("无效的payload格式");
         } catch (Exception e) {
             logger.error("处理Gitee Webhook失败", e);
             return ResponseEntity.internalServerError().body("处理失败");
         }
     }
 
+    /**
+     * 只处理首次接收的投递，重复投递直接返回200
+     * 处理失败（5xx）或被准入控制拒绝（429）时删除投递记录，使代码仓库的重投能够再次处理
+     */
+    private ResponseEntity<String> processOnce(String repositoryType, String deliveryKey,
+                                               Supplier<ResponseEntity<String>> handler) {
+        if (!webhookDeliveryDeduplicator.markIfFirst(repositoryType, deliveryKey)) {
+            return ResponseEntity.ok("重复投递，已忽略");
+        }
+
+        ResponseEntity<String> response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException e) {
+            webhookDeliveryDeduplicator.release(repositoryType, deliveryKey);
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError()
+                || response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+            webhookDeliveryDeduplicator.release(repositoryType, deliveryKey);
+        }
+        return response;
+    }
+
+    /**
+     * 仓库Webhook密钥尚未加载时的响应
+     */
+    private ResponseEntity<String> secretsUnavailable() {
+        logger.warn("仓库Webhook密钥索引尚未加载，拒绝Webhook");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body("服务尚未就绪，请稍后重试");
+    }
+
+    /**
+     * 准入控制拒绝时的响应
+     */
+    private ResponseEntity<String> tooManyRequests(ReviewAdmissionService.Decision admission) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()))
+                .body("审查队列繁忙，请稍后重试");
+    }
+
     /**
      * 处理GitLab Merge Request事件
      */
-    private ResponseEntity<String> handleGitLabMergeRequest(Map<String, Object> payload) {
+    private ResponseEntity<String> handleGitLabMergeRequest(Map<String, String> fields) {
         try {
-            Map<String, Object> objectAttributes = (Map<String, Object>) payload.get("object_attributes");
-            Map<String, Object> project = (Map<String, Object>) payload.get("project");
+            String projectId = fields.get(GITLAB_PROJECT_ID);
+            String mergeRequestId = fields.get(GITLAB_MR_IID);
 
-            if (objectAttributes == null || project == null) {
+            if (projectId == null || mergeRequestId == null) {
                 return ResponseEntity.badRequest().body("无效的payload格式");
             }
 
-            String projectId = String.valueOf(project.get("id"));
-            String mergeRequestId = String.valueOf(objectAttributes.get("iid"));
-            String action = String.valueOf(objectAttributes.get("action"));
+            String headSha = fields.get(GITLAB_MR_HEAD_SHA);
+            String action = fields.get(GITLAB_MR_ACTION);
 
             // 只处理opened和updated的MR
             if (!"opened".equals(action) && !"updated".equals(action)) {
                 return ResponseEntity.ok("跳过非opened/updated事件");
             }
 
-            // 获取仓库配置 - 通过项目ID查找对应的仓库配置
-            // 这里需要根据实际情况调整查找逻辑
-            List<RepositoryConfig> allRepos = repositoryConfigService.getAllRepositoryConfigs();
-            RepositoryConfig repoConfig = allRepos.stream()
-                    .filter(repo -> repo.getProjectId() != null && repo.getProjectId().equals(projectId))
-                    .findFirst()
+            // 获取仓库配置 - 通过项目ID查找对应的仓库配置（内存路由表，未命中时走索引查询）
+            RepositoryConfig repoConfig = repositoryConfigService
+                    .getRepositoryConfigByProjectId(CodeReviewConstants.REPOSITORY_TYPE_GITLAB, projectId)
                     .orElse(null);
 
             if (repoConfig == null || !repoConfig.getIsActive() || !repoConfig.getAutoReviewEnabled()) {
@@ -195,32 +302,14 @@ public class WebhookController {
                 return ResponseEntity.ok("项目未启用自动审查");
             }
 
-            // 获取MR的diff内容
-            String diffContent = gitLabService.getMergeRequestDiff(repoConfig, mergeRequestId);
-
-            if (diffContent == null || diffContent.trim().isEmpty()) {
-                return ResponseEntity.ok("无代码变更");
+            // 队列积压超过上限时返回429，由代码仓库按Retry-After稍后重投
+            ReviewAdmissionService.Decision admission = reviewAdmissionService.tryAdmit(repoConfig.getId(), mergeRequestId);
+            if (!admission.admitted()) {
+                return tooManyRequests(admission);
             }
 
-            // 创建代码审查请求
-            CodeReviewRequest reviewRequest = new CodeReviewRequest();
-            reviewRequest.setProjectId(projectId);
-            reviewRequest.setMergeRequestId(mergeRequestId);
-            reviewRequest.setDiffContent(diffContent);
-            reviewRequest.setReviewType(CodeReviewRequest.ReviewType.COMPREHENSIVE);
-
-            // 异步执行代码审查
-            CompletableFuture.runAsync(() -> {
-                try {
-                    String reviewResult = aiCodeReviewService
-                            .generateComprehensiveReview(reviewRequest.getDiffContent());
-                    // 将审查结果添加到MR评论中
-                    gitLabService.addMergeRequestComment(repoConfig, reviewRequest.getMergeRequestId(), reviewResult);
-                    logger.info("GitLab MR {} 代码审查完成", reviewRequest.getMergeRequestId());
-                } catch (Exception e) {
-                    logger.error("GitLab MR {} 代码审查失败", reviewRequest.getMergeRequestId(), e);
-                }
-            });
+            // 持久化审查任务，由工作线程池异步执行；同一MR的旧审查会被取代
+            reviewJobService.enqueue(repoConfig, mergeRequestId, headSha);
 
             return ResponseEntity.ok("代码审查已启动");
 
@@ -233,7 +322,7 @@ public class WebhookController {
     /**
      * 处理GitLab Push事件
      */
-    private ResponseEntity<String> handleGitLabPush(Map<String, Object> payload) {
+    private ResponseEntity<String> handleGitLabPush() {
         // 实现Push事件的代码审查逻辑
         logger.info("处理GitLab Push事件");
         return ResponseEntity.ok("Push事件已接收");
@@ -242,13 +331,13 @@ public class WebhookController {
     /**
      * 处理GitHub Pull Request事件
      */
-    private ResponseEntity<String> handleGitHubPullRequest(Map<String, Object> payload) {
+    private ResponseEntity<String> handleGitHubPullRequest(Map<String, String> fields) {
         try {
-            Map<String, Object> pullRequest = (Map<String, Object>) payload.get("pull_request");
-            Map<String, Object> repository = (Map<String, Object>) payload.get("repository");
-            String action = String.valueOf(payload.get("action"));
+            String repoName = fields.get(PR_REPOSITORY_NAME);
+            String prNumber = fields.get(PR_NUMBER);
+            String action = fields.get(PR_ACTION);
 
-            if (pullRequest == null || repository == null) {
+            if (repoName == null || prNumber == null) {
                 return ResponseEntity.badRequest().body("无效的payload格式");
             }
 
@@ -257,8 +346,7 @@ public class WebhookController {
                 return ResponseEntity.ok("跳过非opened/synchronize事件");
             }
 
-            String repoName = String.valueOf(repository.get("full_name"));
-            String prNumber = String.valueOf(pullRequest.get("number"));
+            String headSha = fields.get(PR_HEAD_SHA);
 
             // 获取仓库配置
             RepositoryConfig repoConfig = repositoryConfigService.getRepositoryConfigByName(repoName)
@@ -269,32 +357,14 @@ public class WebhookController {
                 return ResponseEntity.ok("仓库未启用自动审查");
             }
 
-            // 获取PR的diff内容
-            String diffContent = gitHubService.getPullRequestDiff(repoConfig, prNumber);
-
-            if (diffContent == null || diffContent.trim().isEmpty()) {
-                return ResponseEntity.ok("无代码变更");
+            // 队列积压超过上限时返回429，由代码仓库按Retry-After稍后重投
+            ReviewAdmissionService.Decision admission = reviewAdmissionService.tryAdmit(repoConfig.getId(), prNumber);
+            if (!admission.admitted()) {
+                return tooManyRequests(admission);
             }
 
-            // 创建代码审查请求
-            CodeReviewRequest reviewRequest = new CodeReviewRequest();
-            reviewRequest.setProjectId(repoName);
-            reviewRequest.setMergeRequestId(prNumber);
-            reviewRequest.setDiffContent(diffContent);
-            reviewRequest.setReviewType(CodeReviewRequest.ReviewType.COMPREHENSIVE);
-
-            // 异步执行代码审查
-            CompletableFuture.runAsync(() -> {
-                try {
-                    String reviewResult = aiCodeReviewService
-                            .generateComprehensiveReview(reviewRequest.getDiffContent());
-                    // 将审查结果添加到PR评论中
-                    gitHubService.addPullRequestComment(repoConfig, reviewRequest.getMergeRequestId(), reviewResult);
-                    logger.info("GitHub PR {} 代码审查完成", reviewRequest.getMergeRequestId());
-                } catch (Exception e) {
-                    logger.error("GitHub PR {} 代码审查失败", reviewRequest.getMergeRequestId(), e);
-                }
-            });
+            // 持久化审查任务，由工作线程池异步执行；同一PR的旧审查会被取代
+            reviewJobService.enqueue(repoConfig, prNumber, headSha);
 
             return ResponseEntity.ok("代码审查已启动");
 
@@ -307,7 +377,7 @@ public class WebhookController {
     /**
      * 处理GitHub Push事件
      */
-    private ResponseEntity<String> handleGitHubPush(Map<String, Object> payload) {
+    private ResponseEntity<String> handleGitHubPush() {
         // 实现Push事件的代码审查逻辑
         logger.info("处理GitHub Push事件");
         return ResponseEntity.ok("Push事件已接收");
@@ -316,13 +386,13 @@ public class WebhookController {
     /**
      * 处理Gitee Merge Request事件
      */
-    private ResponseEntity<String> handleGiteeMergeRequest(Map<String, Object> payload) {
+    private ResponseEntity<String> handleGiteeMergeRequest(Map<String, String> fields) {
         try {
-            Map<String, Object> pullRequest = (Map<String, Object>) payload.get("pull_request");
-            Map<String, Object> repository = (Map<String, Object>) payload.get("repository");
-            String action = String.valueOf(payload.get("action"));
+            String repoName = fields.get(PR_REPOSITORY_NAME);
+            String prNumber = fields.get(PR_NUMBER);
+            String action = fields.get(PR_ACTION);
 
-            if (pullRequest == null || repository == null) {
+            if (repoName == null || prNumber == null) {
                 return ResponseEntity.badRequest().body("无效的payload格式");
             }
 
@@ -331,8 +401,7 @@ public class WebhookController {
                 return ResponseEntity.ok("跳过非opened/updated事件");
             }
 
-            String repoName = String.valueOf(repository.get("full_name"));
-            String prNumber = String.valueOf(pullRequest.get("number"));
+            String headSha = fields.get(PR_HEAD_SHA);
 
             // 获取仓库配置
             RepositoryConfig repoConfig = repositoryConfigService.getRepositoryConfigByName(repoName)
@@ -343,32 +412,14 @@ public class WebhookController {
                 return ResponseEntity.ok("仓库未启用自动审查");
             }
 
-            // 获取PR的diff内容
-            String diffContent = giteeService.getPullRequestDiff(repoConfig, prNumber);
-
-            if (diffContent == null || diffContent.trim().isEmpty()) {
-                return ResponseEntity.ok("无代码变更");
+            // 队列积压超过上限时返回429，由代码仓库按Retry-After稍后重投
+            ReviewAdmissionService.Decision admission = reviewAdmissionService.tryAdmit(repoConfig.getId(), prNumber);
+            if (!admission.admitted()) {
+                return tooManyRequests(admission);
             }
 
-            // 创建代码审查请求
-            CodeReviewRequest reviewRequest = new CodeReviewRequest();
-            reviewRequest.setProjectId(repoName);
-            reviewRequest.setMergeRequestId(prNumber);
-            reviewRequest.setDiffContent(diffContent);
-            reviewRequest.setReviewType(CodeReviewRequest.ReviewType.COMPREHENSIVE);
-
-            // 异步执行代码审查
-            CompletableFuture.runAsync(() -> {
-                try {
-                    String reviewResult = aiCodeReviewService
-                            .generateComprehensiveReview(reviewRequest.getDiffContent());
-                    // 将审查结果添加到PR评论中
-                    giteeService.addPullRequestComment(repoConfig, reviewRequest.getMergeRequestId(), reviewResult);
-                    logger.info("Gitee PR {} 代码审查完成", reviewRequest.getMergeRequestId());
-                } catch (Exception e) {
-                    logger.error("Gitee PR {} 代码审查失败", reviewRequest.getMergeRequestId(), e);
-                }
-            });
+            // 持久化审查任务，由工作线程池异步执行；同一PR的旧审查会被取代
+            reviewJobService.enqueue(repoConfig, prNumber, headSha);
 
             return ResponseEntity.ok("代码审查已启动");
 
@@ -381,7 +432,7 @@ public class WebhookController {
     /**
      * 处理Gitee Push事件
      */
-    private ResponseEntity<String> handleGiteePush(Map<String, Object> payload) {
+    private ResponseEntity<String> handleGiteePush() {
         // 实现Gitee Push的代码审查逻辑
         logger.info("处理Gitee Push事件");
         return ResponseEntity.ok("Gitee Push事件已接收");
@@ -390,51 +441,56 @@ public class WebhookController {
     /**
      * 验证GitLab Webhook签名
      */
-    private boolean validateGitLabWebhook(String token, Map<String, Object> payload) {
-        if (gitlabWebhookSecret == null || gitlabWebhookSecret.isEmpty()) {
+    private boolean validateGitLabWebhook(String token, String projectId) {
+        String secret = resolveWebhookSecret(CodeReviewConstants.REPOSITORY_TYPE_GITLAB, projectId, null,
+                gitlabWebhookSecret);
+        if (secret == null || secret.isEmpty()) {
             logger.warn("GitLab Webhook secret未配置，跳过验证");
             return true; // 如果没有配置secret，则跳过验证（开发环境）
         }
 
-        return webhookSecurityUtils.verifyGitLabToken(token, gitlabWebhookSecret);
+        return webhookSecurityUtils.verifyGitLabToken(token, secret);
     }
 
     /**
-     * 验证GitHub Webhook签名
+     * 验证GitHub Webhook签名，按原始body字节计算HMAC
      */
-    private boolean validateGitHubWebhook(String signature, String payload) {
-        if (githubWebhookSecret == null || githubWebhookSecret.isEmpty()) {
+    private boolean validateGitHubWebhook(String signature, WebhookPayload payload, Map<String, String> fields) {
+        String secret = resolveWebhookSecret(CodeReviewConstants.REPOSITORY_TYPE_GITHUB, null,
+                fields.get(PR_REPOSITORY_NAME), githubWebhookSecret);
+        if (secret == null || secret.isEmpty()) {
             logger.warn("GitHub Webhook secret未配置，跳过验证");
             return true; // 如果没有配置secret，则跳过验证（开发环境）
         }
 
-        return webhookSecurityUtils.verifyGitHubSignature(payload, signature, githubWebhookSecret);
+        return webhookSecurityUtils.verifyGitHubSignature(payload.getBuffer(), 0, payload.getLength(),
+                signature, secret);
     }
 
     /**
      * 验证Gitee Webhook签名
      */
-    private boolean validateGiteeWebhook(String token, Map<String, Object> payload) {
-        if (giteeWebhookSecret == null || giteeWebhookSecret.isEmpty()) {
+    private boolean validateGiteeWebhook(String token, Map<String, String> fields) {
+        String secret = resolveWebhookSecret(CodeReviewConstants.REPOSITORY_TYPE_GITEE, null,
+                fields.get(PR_REPOSITORY_NAME), giteeWebhookSecret);
+        if (secret == null || secret.isEmpty()) {
             logger.warn("Gitee Webhook secret未配置，跳过验证");
             return true; // 如果没有配置secret，则跳过验证（开发环境）
         }
 
         // Gitee可以使用token验证或者签名验证
-        return webhookSecurityUtils.verifyGitLabToken(token, giteeWebhookSecret);
+        return webhookSecurityUtils.verifyGitLabToken(token, secret);
     }
 
     /**
-     * 解析JSON payload
+     * 优先使用仓库配置的Webhook密钥（内存索引，不查库），仓库未配置时使用全局密钥
+     * 查找密钥和路由到仓库配置使用同一字段（GitLab为项目ID，GitHub和Gitee为仓库名称），
+     * 避免payload用一个仓库的密钥通过验证后被当作另一个仓库处理
      */
-    private Map<String, Object> parseJsonPayload(String payload) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.readValue(payload, Map.class);
-        } catch (Exception e) {
-            logger.error("解析JSON payload失败", e);
-            return Map.of();
-        }
+    private String resolveWebhookSecret(String repositoryType, String projectId, String repositoryName,
+                                        String defaultSecret) {
+        String secret = webhookSecretIndex.findSecret(repositoryType, projectId, repositoryName);
+        return secret != null ? secret : defaultSecret;
     }
 
     /**
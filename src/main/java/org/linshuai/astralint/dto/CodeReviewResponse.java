@@ -50,6 +50,12 @@ public class CodeReviewResponse {
     @JsonProperty("processing_time_ms")
     private long processingTimeMs;
 
+    @JsonProperty("prompt_tokens")
+    private long promptTokens;
+
+    @JsonProperty("completion_tokens")
+    private long completionTokens;
+
     public enum ReviewStatus {
         PENDING, // 待处理
         PROCESSING, // 处理中
@@ -432,4 +438,20 @@ public class CodeReviewResponse {
     public void setProcessingTimeMs(long processingTimeMs) {
         this.processingTimeMs = processingTimeMs;
     }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(long promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public void setCompletionTokens(long completionTokens) {
+        this.completionTokens = completionTokens;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package org.linshuai.astralint.dto;
+
+/**
+ * 单个文件的代码差异
+ */
+public class FileDiff {
+
+    private final String filePath;
+
+    private final String diff;
+
+    public FileDiff(String filePath, String diff) {
+        this.filePath = filePath;
+        this.diff = diff;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getDiff() {
+        return diff;
+    }
+}
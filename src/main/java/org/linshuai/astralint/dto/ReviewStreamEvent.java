@@ -0,0 +1,76 @@
+package org.linshuai.astralint.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 流式代码审查事件，通过SSE推送给前端
+ */
+public class ReviewStreamEvent {
+
+    public enum Type {
+        FILE_START, // 开始审查某个文件
+        DELTA, // 模型输出的片段
+        FILE_END, // 文件审查结束
+        TIMEOUT // 超过总截止时间，审查结果不完整
+    }
+
+    @JsonProperty("type")
+    private Type type;
+
+    @JsonProperty("file_path")
+    private String filePath;
+
+    @JsonProperty("content")
+    private String content;
+
+    // 构造函数
+    public ReviewStreamEvent() {
+    }
+
+    public ReviewStreamEvent(Type type, String filePath, String content) {
+        this.type = type;
+        this.filePath = filePath;
+        this.content = content;
+    }
+
+    public static ReviewStreamEvent fileStart(String filePath) {
+        return new ReviewStreamEvent(Type.FILE_START, filePath, null);
+    }
+
+    public static ReviewStreamEvent delta(String filePath, String content) {
+        return new ReviewStreamEvent(Type.DELTA, filePath, content);
+    }
+
+    public static ReviewStreamEvent fileEnd(String filePath) {
+        return new ReviewStreamEvent(Type.FILE_END, filePath, null);
+    }
+
+    public static ReviewStreamEvent timeout(String content) {
+        return new ReviewStreamEvent(Type.TIMEOUT, null, content);
+    }
+
+    // Getter和Setter方法
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
@@ -0,0 +1,47 @@
+package org.linshuai.astralint.dto;
+
+import org.linshuai.astralint.util.JsonFieldExtractor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Webhook请求的原始body，由WebhookPayloadFilter读入可复用的缓冲区
+ * 缓冲区属于处理请求的线程，只能在请求处理期间使用，不能保存或传给其他线程
+ */
+public class WebhookPayload {
+
+    private final byte[] buffer;
+
+    private final int length;
+
+    public WebhookPayload(byte[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * 底层缓冲区，有效内容为[0, length)
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 流式读取指定路径的标量字段，例如 pull_request.head.sha；其余字段不解析
+     */
+    public Map<String, String> extract(Set<String> paths) throws IOException {
+        return JsonFieldExtractor.extract(buffer, 0, length, paths);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -36,6 +36,27 @@ public class AiModelConfig {
     @Column(name = "timeout_ms")
     private Integer timeoutMs = 30000;
     
+    @Column(name = "cost_weight")
+    private Double costWeight = 1.0; // 相对成本/延迟权重，路由时优先选择权重低的模型
+    
+    @Column(name = "routing_aspects")
+    private String routingAspects; // 专门负责的审查维度，逗号分隔，如 SECURITY；为空表示不限
+    
+    @Column(name = "routing_languages")
+    private String routingLanguages; // 适用的文件扩展名，逗号分隔，如 java,kt；为空表示不限
+    
+    @Column(name = "max_input_tokens")
+    private Integer maxInputTokens; // 可处理的最大输入token数，为空表示不限
+    
+    @Column(name = "requests_per_minute")
+    private Integer requestsPerMinute; // 每分钟请求数上限，为空表示使用全局默认值
+    
+    @Column(name = "tokens_per_minute")
+    private Integer tokensPerMinute; // 每分钟token数上限，为空表示使用全局默认值
+    
+    @Column(name = "max_concurrency")
+    private Integer maxConcurrency; // 最大并发调用数，自适应并发的上限
+    
     @Column(name = "is_active")
     private Boolean isActive = true;
     
@@ -95,6 +116,27 @@ public class AiModelConfig {
     public Integer getTimeoutMs() { return timeoutMs; }
     public void setTimeoutMs(Integer timeoutMs) { this.timeoutMs = timeoutMs; }
     
+    public Double getCostWeight() { return costWeight; }
+    public void setCostWeight(Double costWeight) { this.costWeight = costWeight; }
+    
+    public String getRoutingAspects() { return routingAspects; }
+    public void setRoutingAspects(String routingAspects) { this.routingAspects = routingAspects; }
+    
+    public String getRoutingLanguages() { return routingLanguages; }
+    public void setRoutingLanguages(String routingLanguages) { this.routingLanguages = routingLanguages; }
+    
+    public Integer getMaxInputTokens() { return maxInputTokens; }
+    public void setMaxInputTokens(Integer maxInputTokens) { this.maxInputTokens = maxInputTokens; }
+    
+    public Integer getRequestsPerMinute() { return requestsPerMinute; }
+    public void setRequestsPerMinute(Integer requestsPerMinute) { this.requestsPerMinute = requestsPerMinute; }
+    
+    public Integer getTokensPerMinute() { return tokensPerMinute; }
+    public void setTokensPerMinute(Integer tokensPerMinute) { this.tokensPerMinute = tokensPerMinute; }
+    
+    public Integer getMaxConcurrency() { return maxConcurrency; }
+    public void setMaxConcurrency(Integer maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+    
     public Boolean getIsActive() { return isActive; }
     public void setIsActive(Boolean isActive) { this.isActive = isActive; }
     
@@ -0,0 +1,119 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+import org.linshuai.astralint.dto.CodeReviewResponse.ReviewStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * 代码审查结果实体，对应 /api/code-review/submit 提交的审查
+ */
+@Entity
+@Table(name = "code_reviews", indexes = {
+        @Index(name = "idx_code_reviews_review_id", columnList = "review_id", unique = true),
+        @Index(name = "idx_code_reviews_project_created", columnList = "project_id, created_at")
+})
+public class CodeReview {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "review_id", nullable = false, length = 36)
+    private String reviewId;
+
+    @Column(name = "project_id")
+    private String projectId;
+
+    @Column(name = "merge_request_id")
+    private String mergeRequestId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private ReviewStatus status;
+
+    @Column(name = "summary", length = 2000)
+    private String summary;
+
+    @Lob
+    @Column(name = "detailed_analysis")
+    private String detailedAnalysis;
+
+    @Column(name = "overall_score")
+    private Double overallScore;
+
+    @Column(name = "processing_time_ms")
+    private Long processingTimeMs;
+
+    @Column(name = "prompt_tokens")
+    private Long promptTokens;
+
+    @Column(name = "completion_tokens")
+    private Long completionTokens;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    // 构造函数
+    public CodeReview() {}
+
+    public CodeReview(String reviewId) {
+        this.reviewId = reviewId;
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getReviewId() { return reviewId; }
+    public void setReviewId(String reviewId) { this.reviewId = reviewId; }
+
+    public String getProjectId() { return projectId; }
+    public void setProjectId(String projectId) { this.projectId = projectId; }
+
+    public String getMergeRequestId() { return mergeRequestId; }
+    public void setMergeRequestId(String mergeRequestId) { this.mergeRequestId = mergeRequestId; }
+
+    public ReviewStatus getStatus() { return status; }
+    public void setStatus(ReviewStatus status) { this.status = status; }
+
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+
+    public String getDetailedAnalysis() { return detailedAnalysis; }
+    public void setDetailedAnalysis(String detailedAnalysis) { this.detailedAnalysis = detailedAnalysis; }
+
+    public Double getOverallScore() { return overallScore; }
+    public void setOverallScore(Double overallScore) { this.overallScore = overallScore; }
+
+    public Long getProcessingTimeMs() { return processingTimeMs; }
+    public void setProcessingTimeMs(Long processingTimeMs) { this.processingTimeMs = processingTimeMs; }
+
+    public Long getPromptTokens() { return promptTokens; }
+    public void setPromptTokens(Long promptTokens) { this.promptTokens = promptTokens; }
+
+    public Long getCompletionTokens() { return completionTokens; }
+    public void setCompletionTokens(Long completionTokens) { this.completionTokens = completionTokens; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
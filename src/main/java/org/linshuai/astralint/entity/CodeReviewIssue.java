@@ -0,0 +1,84 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * 代码审查发现的问题（安全、性能、代码质量）
+ */
+@Entity
+@Table(name = "code_review_issues", indexes = {
+        @Index(name = "idx_code_review_issues_review_id", columnList = "review_id")
+})
+public class CodeReviewIssue {
+
+    public enum Category {
+        SECURITY, // 安全问题
+        PERFORMANCE, // 性能问题
+        CODE_QUALITY // 代码质量问题
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "review_id", nullable = false, length = 36)
+    private String reviewId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "category", nullable = false, length = 20)
+    private Category category;
+
+    @Column(name = "severity", length = 20)
+    private String severity;
+
+    @Column(name = "issue_type")
+    private String type;
+
+    @Column(name = "description", length = 2000)
+    private String description;
+
+    @Column(name = "file_path", length = 500)
+    private String filePath;
+
+    @Column(name = "line_number")
+    private Integer lineNumber;
+
+    @Column(name = "suggestion", length = 2000)
+    private String suggestion;
+
+    // 构造函数
+    public CodeReviewIssue() {}
+
+    public CodeReviewIssue(String reviewId, Category category) {
+        this.reviewId = reviewId;
+        this.category = category;
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getReviewId() { return reviewId; }
+    public void setReviewId(String reviewId) { this.reviewId = reviewId; }
+
+    public Category getCategory() { return category; }
+    public void setCategory(Category category) { this.category = category; }
+
+    public String getSeverity() { return severity; }
+    public void setSeverity(String severity) { this.severity = severity; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+
+    public String getFilePath() { return filePath; }
+    public void setFilePath(String filePath) { this.filePath = filePath; }
+
+    public Integer getLineNumber() { return lineNumber; }
+    public void setLineNumber(Integer lineNumber) { this.lineNumber = lineNumber; }
+
+    public String getSuggestion() { return suggestion; }
+    public void setSuggestion(String suggestion) { this.suggestion = suggestion; }
+}
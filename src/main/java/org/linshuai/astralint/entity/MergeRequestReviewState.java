@@ -0,0 +1,62 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 合并请求的审查进度，记录最后一次审查完成时的head SHA，用于增量审查；
+ * 首次入队时创建（此时还没有审查完成的SHA），入队时锁定该行以串行化同一MR的并发Webhook
+ */
+@Entity
+@Table(name = "merge_request_review_states", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_review_state_merge_request", columnNames = {"repository_config_id", "merge_request_id"})
+})
+public class MergeRequestReviewState {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "repository_config_id", nullable = false)
+    private Long repositoryConfigId;
+
+    @Column(name = "merge_request_id", nullable = false)
+    private String mergeRequestId;
+
+    @Column(name = "last_reviewed_sha", length = 64)
+    private String lastReviewedSha;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    // 构造函数
+    public MergeRequestReviewState() {}
+
+    public MergeRequestReviewState(Long repositoryConfigId, String mergeRequestId) {
+        this.repositoryConfigId = repositoryConfigId;
+        this.mergeRequestId = mergeRequestId;
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getRepositoryConfigId() { return repositoryConfigId; }
+    public void setRepositoryConfigId(Long repositoryConfigId) { this.repositoryConfigId = repositoryConfigId; }
+
+    public String getMergeRequestId() { return mergeRequestId; }
+    public void setMergeRequestId(String mergeRequestId) { this.mergeRequestId = mergeRequestId; }
+
+    public String getLastReviewedSha() { return lastReviewedSha; }
+    public void setLastReviewedSha(String lastReviewedSha) { this.lastReviewedSha = lastReviewedSha; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
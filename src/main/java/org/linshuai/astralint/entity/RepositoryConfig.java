@@ -8,7 +8,10 @@ import java.time.LocalDateTime;
  * 仓库配置实体
  */
 @Entity
-@Table(name = "repository_configs")
+@Table(name = "repository_configs", indexes = {
+        @Index(name = "idx_repository_configs_project", columnList = "project_id, repository_type"),
+        @Index(name = "idx_repository_configs_name", columnList = "repository_name")
+})
 public class RepositoryConfig {
     
     @Id
@@ -0,0 +1,143 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 代码审查任务实体，Webhook事件先持久化为任务，再由工作线程池消费
+ */
+@Entity
+@Table(name = "review_jobs", indexes = {
+        @Index(name = "idx_review_jobs_status_next_attempt", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_review_jobs_merge_request", columnList = "repository_config_id, merge_request_id")
+})
+public class ReviewJob {
+
+    public enum JobStatus {
+        PENDING, // 等待执行（含等待重试）
+        RUNNING, // 执行中
+        COMPLETED, // 已完成
+        FAILED, // 重试耗尽，已转入死信表
+        SUPERSEDED // 同一MR有更新的提交，已被新任务取代
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "repository_config_id", nullable = false)
+    private Long repositoryConfigId;
+
+    @Column(name = "repository_type", nullable = false)
+    private String repositoryType;
+
+    @Column(name = "repository_name", nullable = false)
+    private String repositoryName;
+
+    @Column(name = "merge_request_id", nullable = false)
+    private String mergeRequestId;
+
+    @Column(name = "head_sha", length = 64)
+    private String headSha;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private JobStatus status = JobStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "locked_at")
+    private LocalDateTime lockedAt;
+
+    @Column(name = "locked_by")
+    private String lockedBy;
+
+    @Column(name = "last_error", length = 2000)
+    private String lastError;
+
+    @Version
+    @Column(name = "version")
+    private Long version;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    // 构造函数
+    public ReviewJob() {}
+
+    public ReviewJob(RepositoryConfig repositoryConfig, String mergeRequestId, String headSha) {
+        this.repositoryConfigId = repositoryConfig.getId();
+        this.repositoryType = repositoryConfig.getRepositoryType();
+        this.repositoryName = repositoryConfig.getRepositoryName();
+        this.mergeRequestId = mergeRequestId;
+        this.headSha = headSha;
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getRepositoryConfigId() { return repositoryConfigId; }
+    public void setRepositoryConfigId(Long repositoryConfigId) { this.repositoryConfigId = repositoryConfigId; }
+
+    public String getRepositoryType() { return repositoryType; }
+    public void setRepositoryType(String repositoryType) { this.repositoryType = repositoryType; }
+
+    public String getRepositoryName() { return repositoryName; }
+    public void setRepositoryName(String repositoryName) { this.repositoryName = repositoryName; }
+
+    public String getMergeRequestId() { return mergeRequestId; }
+    public void setMergeRequestId(String mergeRequestId) { this.mergeRequestId = mergeRequestId; }
+
+    public String getHeadSha() { return headSha; }
+    public void setHeadSha(String headSha) { this.headSha = headSha; }
+
+    public JobStatus getStatus() { return status; }
+    public void setStatus(JobStatus status) { this.status = status; }
+
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+
+    public LocalDateTime getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public LocalDateTime getLockedAt() { return lockedAt; }
+    public void setLockedAt(LocalDateTime lockedAt) { this.lockedAt = lockedAt; }
+
+    public String getLockedBy() { return lockedBy; }
+    public void setLockedBy(String lockedBy) { this.lockedBy = lockedBy; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,94 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 重试耗尽的审查任务（死信）
+ */
+@Entity
+@Table(name = "review_job_dead_letters")
+public class ReviewJobDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "repository_config_id", nullable = false)
+    private Long repositoryConfigId;
+
+    @Column(name = "repository_type", nullable = false)
+    private String repositoryType;
+
+    @Column(name = "repository_name", nullable = false)
+    private String repositoryName;
+
+    @Column(name = "merge_request_id", nullable = false)
+    private String mergeRequestId;
+
+    @Column(name = "head_sha", length = 64)
+    private String headSha;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "last_error", length = 2000)
+    private String lastError;
+
+    @Column(name = "failed_at")
+    private LocalDateTime failedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        failedAt = LocalDateTime.now();
+    }
+
+    // 构造函数
+    public ReviewJobDeadLetter() {}
+
+    public ReviewJobDeadLetter(ReviewJob job) {
+        this.jobId = job.getId();
+        this.repositoryConfigId = job.getRepositoryConfigId();
+        this.repositoryType = job.getRepositoryType();
+        this.repositoryName = job.getRepositoryName();
+        this.mergeRequestId = job.getMergeRequestId();
+        this.headSha = job.getHeadSha();
+        this.attempts = job.getAttempts();
+        this.lastError = job.getLastError();
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getJobId() { return jobId; }
+    public void setJobId(Long jobId) { this.jobId = jobId; }
+
+    public Long getRepositoryConfigId() { return repositoryConfigId; }
+    public void setRepositoryConfigId(Long repositoryConfigId) { this.repositoryConfigId = repositoryConfigId; }
+
+    public String getRepositoryType() { return repositoryType; }
+    public void setRepositoryType(String repositoryType) { this.repositoryType = repositoryType; }
+
+    public String getRepositoryName() { return repositoryName; }
+    public void setRepositoryName(String repositoryName) { this.repositoryName = repositoryName; }
+
+    public String getMergeRequestId() { return mergeRequestId; }
+    public void setMergeRequestId(String mergeRequestId) { this.mergeRequestId = mergeRequestId; }
+
+    public String getHeadSha() { return headSha; }
+    public void setHeadSha(String headSha) { this.headSha = headSha; }
+
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getFailedAt() { return failedAt; }
+    public void setFailedAt(LocalDateTime failedAt) { this.failedAt = failedAt; }
+}
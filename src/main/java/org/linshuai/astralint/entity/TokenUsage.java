@@ -0,0 +1,95 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 按天汇总的AI模型token用量，统计维度为仓库配置或模型
+ */
+@Entity
+@Table(name = "token_usage", indexes = {
+        @Index(name = "idx_token_usage_scope_date", columnList = "scope_type, scope_key, usage_date", unique = true),
+        @Index(name = "idx_token_usage_date", columnList = "usage_date")
+})
+public class TokenUsage {
+
+    /** 统计维度：仓库配置，scopeKey为仓库配置ID */
+    public static final String SCOPE_REPOSITORY = "REPOSITORY";
+
+    /** 统计维度：AI模型，scopeKey为模型名称 */
+    public static final String SCOPE_MODEL = "MODEL";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "scope_type", nullable = false, length = 20)
+    private String scopeType;
+
+    @Column(name = "scope_key", nullable = false, length = 100)
+    private String scopeKey;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(name = "calls", nullable = false)
+    private Long calls = 0L;
+
+    @Column(name = "prompt_tokens", nullable = false)
+    private Long promptTokens = 0L;
+
+    @Column(name = "completion_tokens", nullable = false)
+    private Long completionTokens = 0L;
+
+    // 按模型成本权重折算的相对成本：每千token × costWeight
+    @Column(name = "cost", nullable = false)
+    private Double cost = 0.0;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    // 构造函数
+    public TokenUsage() {}
+
+    public TokenUsage(String scopeType, String scopeKey, LocalDate usageDate) {
+        this.scopeType = scopeType;
+        this.scopeKey = scopeKey;
+        this.usageDate = usageDate;
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getScopeType() { return scopeType; }
+    public void setScopeType(String scopeType) { this.scopeType = scopeType; }
+
+    public String getScopeKey() { return scopeKey; }
+    public void setScopeKey(String scopeKey) { this.scopeKey = scopeKey; }
+
+    public LocalDate getUsageDate() { return usageDate; }
+    public void setUsageDate(LocalDate usageDate) { this.usageDate = usageDate; }
+
+    public Long getCalls() { return calls; }
+    public void setCalls(Long calls) { this.calls = calls; }
+
+    public Long getPromptTokens() { return promptTokens; }
+    public void setPromptTokens(Long promptTokens) { this.promptTokens = promptTokens; }
+
+    public Long getCompletionTokens() { return completionTokens; }
+    public void setCompletionTokens(Long completionTokens) { this.completionTokens = completionTokens; }
+
+    public Double getCost() { return cost; }
+    public void setCost(Double cost) { this.cost = cost; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
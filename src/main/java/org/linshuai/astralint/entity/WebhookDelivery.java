@@ -0,0 +1,53 @@
+package org.linshuai.astralint.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 已接收的Webhook投递记录，用于识别代码仓库超时重投的重复事件
+ * 只保留去重窗口内的记录，过期记录定时清理
+ */
+@Entity
+@Table(name = "webhook_deliveries", indexes = {
+        @Index(name = "idx_webhook_deliveries_delivery", columnList = "repository_type, delivery_id", unique = true),
+        @Index(name = "idx_webhook_deliveries_received_at", columnList = "received_at")
+})
+public class WebhookDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "repository_type", nullable = false, length = 20)
+    private String repositoryType;
+
+    // 投递ID请求头的值；请求头缺失时为 sha256:事件和payload的摘要
+    @Column(name = "delivery_id", nullable = false, length = 100)
+    private String deliveryId;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    // 构造函数
+    public WebhookDelivery() {}
+
+    public WebhookDelivery(String repositoryType, String deliveryId) {
+        this.repositoryType = repositoryType;
+        this.deliveryId = deliveryId;
+        this.receivedAt = LocalDateTime.now();
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getRepositoryType() { return repositoryType; }
+    public void setRepositoryType(String repositoryType) { this.repositoryType = repositoryType; }
+
+    public String getDeliveryId() { return deliveryId; }
+    public void setDeliveryId(String deliveryId) { this.deliveryId = deliveryId; }
+
+    public LocalDateTime getReceivedAt() { return receivedAt; }
+    public void setReceivedAt(LocalDateTime receivedAt) { this.receivedAt = receivedAt; }
+}
@@ -0,0 +1,17 @@
+package org.linshuai.astralint.event;
+
+/**
+ * AI模型配置变更事件，在创建、更新、删除、设置默认或切换状态后发布
+ */
+public class AiModelConfigChangedEvent {
+
+    private final Long aiModelConfigId;
+
+    public AiModelConfigChangedEvent(Long aiModelConfigId) {
+        this.aiModelConfigId = aiModelConfigId;
+    }
+
+    public Long getAiModelConfigId() {
+        return aiModelConfigId;
+    }
+}
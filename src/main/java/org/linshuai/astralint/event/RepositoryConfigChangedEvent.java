@@ -0,0 +1,17 @@
+package org.linshuai.astralint.event;
+
+/**
+ * 仓库配置变更事件，在创建、更新、删除或切换状态后发布
+ */
+public class RepositoryConfigChangedEvent {
+
+    private final Long repositoryConfigId;
+
+    public RepositoryConfigChangedEvent(Long repositoryConfigId) {
+        this.repositoryConfigId = repositoryConfigId;
+    }
+
+    public Long getRepositoryConfigId() {
+        return repositoryConfigId;
+    }
+}
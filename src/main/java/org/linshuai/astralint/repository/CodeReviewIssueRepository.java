@@ -0,0 +1,27 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.entity.CodeReviewIssue;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CodeReviewIssueRepository extends JpaRepository<CodeReviewIssue, Long> {
+
+    /**
+     * 查找审查发现的问题
+     */
+    List<CodeReviewIssue> findByReviewIdOrderById(String reviewId);
+
+    /**
+     * 删除审查的全部问题（审查结果被覆盖时使用）
+     */
+    @Modifying
+    @Query("DELETE FROM CodeReviewIssue i WHERE i.reviewId IN :reviewIds")
+    int deleteByReviewIdIn(@Param("reviewIds") Collection<String> reviewIds);
+}
@@ -0,0 +1,58 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.dto.CodeReviewResponse.ReviewStatus;
+import org.linshuai.astralint.entity.CodeReview;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CodeReviewRepository extends JpaRepository<CodeReview, Long> {
+
+    /**
+     * 审查状态投影，只查询状态相关的列，不加载详细分析内容
+     */
+    interface StatusView {
+        String getReviewId();
+        String getProjectId();
+        String getMergeRequestId();
+        ReviewStatus getStatus();
+        String getSummary();
+        Double getOverallScore();
+        Long getProcessingTimeMs();
+        Long getPromptTokens();
+        Long getCompletionTokens();
+        LocalDateTime getCreatedAt();
+    }
+
+    /**
+     * 根据审查ID查找完整的审查结果
+     */
+    Optional<CodeReview> findByReviewId(String reviewId);
+
+    /**
+     * 批量查找审查结果（写回缓冲区刷盘时使用）
+     */
+    List<CodeReview> findByReviewIdIn(Collection<String> reviewIds);
+
+    /**
+     * 根据审查ID查找审查状态
+     */
+    Optional<StatusView> findStatusByReviewId(String reviewId);
+
+    /**
+     * 分页查询项目的审查状态
+     */
+    Page<StatusView> findByProjectIdOrderByCreatedAtDesc(String projectId, Pageable pageable);
+
+    /**
+     * 分页查询所有审查状态
+     */
+    Page<StatusView> findAllByOrderByCreatedAtDesc(Pageable pageable);
+}
@@ -0,0 +1,29 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.entity.MergeRequestReviewState;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface MergeRequestReviewStateRepository extends JpaRepository<MergeRequestReviewState, Long> {
+
+    /**
+     * 查找合并请求的审查进度
+     */
+    Optional<MergeRequestReviewState> findByRepositoryConfigIdAndMergeRequestId(Long repositoryConfigId, String mergeRequestId);
+
+    /**
+     * 查找并锁定合并请求的审查进度行（SELECT ... FOR UPDATE），用于串行化同一MR的入队
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM MergeRequestReviewState s "
+            + "WHERE s.repositoryConfigId = :repositoryConfigId AND s.mergeRequestId = :mergeRequestId")
+    Optional<MergeRequestReviewState> findForUpdate(@Param("repositoryConfigId") Long repositoryConfigId,
+                                                    @Param("mergeRequestId") String mergeRequestId);
+}
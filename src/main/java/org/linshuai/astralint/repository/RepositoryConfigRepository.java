@@ -16,6 +16,11 @@ public interface RepositoryConfigRepository extends JpaRepository<RepositoryConf
      */
     Optional<RepositoryConfig> findByRepositoryName(String repositoryName);
     
+    /**
+     * 根据项目ID和仓库类型查找配置（走project_id索引）
+     */
+    Optional<RepositoryConfig> findFirstByProjectIdAndRepositoryType(String projectId, String repositoryType);
+    
     /**
      * 查找所有激活的仓库配置
      */
@@ -37,6 +42,24 @@ public interface RepositoryConfigRepository extends JpaRepository<RepositoryConf
     @Query("SELECT r.repositoryName FROM RepositoryConfig r WHERE r.isActive = true")
     List<String> findAllActiveRepositoryNames();
     
+    /**
+     * 配置了Webhook密钥的仓库，只读取路由和密钥字段
+     */
+    @Query("SELECT r.repositoryType AS repositoryType, r.projectId AS projectId, "
+            + "r.repositoryName AS repositoryName, r.webhookSecret AS webhookSecret "
+            + "FROM RepositoryConfig r WHERE r.webhookSecret IS NOT NULL AND r.webhookSecret <> ''")
+    List<WebhookSecretView> findWebhookSecrets();
+    
+    /**
+     * 仓库的Webhook密钥
+     */
+    interface WebhookSecretView {
+        String getRepositoryType();
+        String getProjectId();
+        String getRepositoryName();
+        String getWebhookSecret();
+    }
+    
     /**
      * 检查仓库名称是否存在
      */
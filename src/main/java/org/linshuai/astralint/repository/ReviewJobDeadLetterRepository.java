@@ -0,0 +1,16 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.entity.ReviewJobDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ReviewJobDeadLetterRepository extends JpaRepository<ReviewJobDeadLetter, Long> {
+
+    /**
+     * 按失败时间倒序查找死信
+     */
+    List<ReviewJobDeadLetter> findAllByOrderByFailedAtDesc();
+}
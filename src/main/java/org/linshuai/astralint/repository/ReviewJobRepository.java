@@ -0,0 +1,93 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.entity.ReviewJob;
+import org.linshuai.astralint.entity.ReviewJob.JobStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReviewJobRepository extends JpaRepository<ReviewJob, Long> {
+
+    /**
+     * 按仓库配置统计的任务数投影
+     */
+    interface BacklogView {
+        Long getRepositoryConfigId();
+        Long getJobs();
+    }
+
+    /**
+     * 查找到期可执行的任务ID
+     */
+    @Query("SELECT j.id FROM ReviewJob j WHERE j.status = :status AND j.nextAttemptAt <= :now ORDER BY j.nextAttemptAt")
+    List<Long> findDueJobIds(@Param("status") JobStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * 抢占任务，只有仍处于PENDING状态的任务才能被抢占成功
+     */
+    @Modifying
+    @Query("UPDATE ReviewJob j SET j.status = :running, j.lockedAt = :now, j.lockedBy = :owner, "
+            + "j.attempts = j.attempts + 1, j.version = j.version + 1 "
+            + "WHERE j.id = :id AND j.status = :pending")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("pending") JobStatus pending, @Param("running") JobStatus running);
+
+    /**
+     * 将租约过期的执行中任务放回队列（实例崩溃或被强制停止时）
+     */
+    @Modifying
+    @Query("UPDATE ReviewJob j SET j.status = :pending, j.lockedAt = null, j.lockedBy = null, "
+            + "j.version = j.version + 1 "
+            + "WHERE j.status = :running AND j.lockedAt < :staleBefore")
+    int releaseStaleJobs(@Param("staleBefore") LocalDateTime staleBefore,
+                         @Param("pending") JobStatus pending, @Param("running") JobStatus running);
+
+    /**
+     * 查找同一MR、同一head SHA上仍在排队或执行中的任务
+     */
+    List<ReviewJob> findByRepositoryConfigIdAndMergeRequestIdAndHeadShaAndStatusIn(
+            Long repositoryConfigId, String mergeRequestId, String headSha, Collection<JobStatus> statuses);
+
+    /**
+     * 将同一MR上排队或执行中的旧任务标记为已取代
+     */
+    @Modifying
+    @Query("UPDATE ReviewJob j SET j.status = :superseded, j.lockedAt = null, j.lockedBy = null, "
+            + "j.version = j.version + 1 "
+            + "WHERE j.repositoryConfigId = :repositoryConfigId AND j.mergeRequestId = :mergeRequestId "
+            + "AND j.status IN :statuses")
+    int supersede(@Param("repositoryConfigId") Long repositoryConfigId, @Param("mergeRequestId") String mergeRequestId,
+                  @Param("statuses") Collection<JobStatus> statuses, @Param("superseded") JobStatus superseded);
+
+    /**
+     * 在给定任务中筛选指定状态的任务ID
+     */
+    @Query("SELECT j.id FROM ReviewJob j WHERE j.id IN :ids AND j.status = :status")
+    List<Long> findIdsByIdInAndStatus(@Param("ids") Collection<Long> ids, @Param("status") JobStatus status);
+
+    /**
+     * 按状态统计任务数量
+     */
+    long countByStatus(JobStatus status);
+
+    /**
+     * 按仓库配置统计处于给定状态的任务数
+     */
+    @Query("SELECT j.repositoryConfigId AS repositoryConfigId, COUNT(j) AS jobs FROM ReviewJob j "
+            + "WHERE j.status IN :statuses GROUP BY j.repositoryConfigId")
+    List<BacklogView> countByRepositoryConfig(@Param("statuses") Collection<JobStatus> statuses);
+
+    /**
+     * 判断MR是否有处于给定状态的任务
+     */
+    boolean existsByRepositoryConfigIdAndMergeRequestIdAndStatusIn(
+            Long repositoryConfigId, String mergeRequestId, Collection<JobStatus> statuses);
+}
@@ -0,0 +1,40 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.entity.TokenUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TokenUsageRepository extends JpaRepository<TokenUsage, Long> {
+
+    /**
+     * 用量汇总投影
+     */
+    interface TotalView {
+        String getScopeType();
+        String getScopeKey();
+        Long getCalls();
+        Long getPromptTokens();
+        Long getCompletionTokens();
+        Double getCost();
+    }
+
+    /**
+     * 查找某个统计维度当天的用量记录
+     */
+    Optional<TokenUsage> findByScopeTypeAndScopeKeyAndUsageDate(String scopeType, String scopeKey, LocalDate usageDate);
+
+    /**
+     * 按统计维度汇总指定日期以来的用量
+     */
+    @Query("SELECT u.scopeType AS scopeType, u.scopeKey AS scopeKey, SUM(u.calls) AS calls, "
+            + "SUM(u.promptTokens) AS promptTokens, SUM(u.completionTokens) AS completionTokens, SUM(u.cost) AS cost "
+            + "FROM TokenUsage u WHERE u.usageDate >= :from GROUP BY u.scopeType, u.scopeKey")
+    List<TotalView> sumByScopeSince(@Param("from") LocalDate from);
+}
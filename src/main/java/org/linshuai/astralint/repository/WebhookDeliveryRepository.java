@@ -0,0 +1,28 @@
+package org.linshuai.astralint.repository;
+
+import org.linshuai.astralint.entity.WebhookDelivery;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface WebhookDeliveryRepository extends JpaRepository<WebhookDelivery, Long> {
+
+    /**
+     * 删除投递记录，处理失败时使代码仓库的重投能够再次处理
+     */
+    @Modifying
+    @Query("DELETE FROM WebhookDelivery d WHERE d.repositoryType = :repositoryType AND d.deliveryId = :deliveryId")
+    int deleteDelivery(@Param("repositoryType") String repositoryType, @Param("deliveryId") String deliveryId);
+
+    /**
+     * 清理去重窗口之外的投递记录
+     */
+    @Modifying
+    @Query("DELETE FROM WebhookDelivery d WHERE d.receivedAt < :before")
+    int deleteReceivedBefore(@Param("before") LocalDateTime before);
+}
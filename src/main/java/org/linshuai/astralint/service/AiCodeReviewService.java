@@ -2,68 +2,132 @@ package org.linshuai.astralint.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.dto.FileDiff;
+import org.linshuai.astralint.dto.ReviewStreamEvent;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.util.CodeReviewUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 @Service
 public class AiCodeReviewService {
 
     private static final Logger logger = LoggerFactory.getLogger(AiCodeReviewService.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 单次综合审查响应中的分节标记，与comprehensiveReviewPromptTemplate保持一致
+     */
+    private static final String[] SECTION_MARKERS = {
+            "<<<SUMMARY>>>", "<<<SECURITY>>>", "<<<PERFORMANCE>>>", "<<<QUALITY>>>" };
+
+    /**
+     * 批量综合审查响应中的文件分隔标记，与batchReviewPromptTemplate保持一致
+     */
+    private static final Pattern BATCH_FILE_MARKER = Pattern.compile("<<<FILE\\s*(\\d+)>>>");
+
+    /**
+     * 片段token预算的下限，避免配置过小时拆出大量碎片
+     */
+    private static final int MIN_CHUNK_TOKENS = 256;
+
     @Autowired
     private AiModelService aiModelService;
 
+    @Autowired
+    @Qualifier("codeReviewExecutor")
+    private AsyncTaskExecutor codeReviewExecutor;
+
     @Value("${ai.code-review.model:qwen-plus}")
     private String modelName;
 
-    @Value("${ai.code-review.max-file-size:10000}")
-    private int maxFileSize;
+    @Autowired
+    private AiModelConfigService aiModelConfigService;
 
-    /**
-     * 使用AI分析代码差异并生成审查建议
-     */
-    public String analyzeCodeDiffs(String diffs) {
-        try {
-            StringBuilder comments = new StringBuilder();
-            comments.append("## 🤖 智能代码审查结果\n\n");
+    @Autowired
+    private AiModelRouter aiModelRouter;
 
-            JsonNode rootNode = new ObjectMapper().readTree(diffs);
-            JsonNode changesNode = rootNode.get("changes");
+    @Autowired
+    private SemanticResultCache semanticResultCache;
 
-            if (changesNode != null && changesNode.isArray()) {
-                for (JsonNode change : changesNode) {
-                    String fileName = change.get("new_path").asText();
-                    String diffContent = change.get("diff").asText();
+    @Value("${ai.code-review.chunk.default-max-input-tokens:4000}")
+    private int defaultChunkMaxInputTokens;
 
-                    comments.append("### 📁 文件: ").append(fileName).append("\n");
+    @Value("${ai.code-review.chunk.reserved-tokens:1000}")
+    private int chunkReservedTokens;
 
-                    // 检查文件大小
-                    if (diffContent.length() > maxFileSize) {
-                        comments.append("⚠️ 文件过大，跳过AI分析\n\n");
-                        continue;
-                    }
+    @Value("${ai.code-review.chunk.max-chunks-per-file:20}")
+    private int maxChunksPerFile;
 
-                    // 使用AI分析代码
-                    String aiAnalysis = aiModelService.analyzeCode(diffContent, fileName);
-                    comments.append(aiAnalysis).append("\n");
+    @Value("${ai.code-review.batch.enabled:true}")
+    private boolean batchEnabled;
 
-                    // 统计代码行数
-                    String[] lines = diffContent.split("\n");
-                    long addedLines = Arrays.stream(lines).filter(line -> line.startsWith("+")).count();
-                    // removedLines 用于统计删除行数，虽然在当前逻辑中未使用，但保留用于后续可能的功能扩展
+    @Value("${ai.code-review.batch.small-file-tokens:800}")
+    private int batchSmallFileTokens;
 
-                    if (addedLines > 100) {
-                        comments.append("- ⚠️ 此文件有大量新增代码(").append(addedLines).append("行)，建议拆分为更小的提交\n");
-                    }
+    @Value("${ai.code-review.batch.max-files:10}")
+    private int batchMaxFiles;
 
-                    comments.append("\n---\n\n");
-                }
+    @Value("${ai.code-review.review-timeout:300000}")
+    private long reviewTimeout;
+
+    @Value("${ai.code-review.single-pass-comprehensive:true}")
+    private boolean singlePassComprehensive;
+
+    @Value("${ai.code-review.parallelism:8}")
+    private int streamConcurrency;
+
+    /**
+     * 使用AI分析代码差异并生成审查建议
+     */
+    public String analyzeCodeDiffs(String diffs) {
+        return analyzeCodeDiffs(diffs, null);
+    }
+
+    /**
+     * 使用AI分析代码差异并生成审查建议，projectId用于在项目内复用相似代码的分析结果
+     */
+    public String analyzeCodeDiffs(String diffs, String projectId) {
+        try {
+            StringBuilder comments = new StringBuilder();
+            comments.append("## 🤖 智能代码审查结果\n\n");
+
+            List<FileDiff> files = parseChanges(diffs);
+            List<ChunkedReview> reviews = reviewFilesInChunks(files, List.of(ReviewAspect.ANALYSIS),
+                    chunk -> aiModelService.analyzeCode(chunk.getDiff(), chunk.getFilePath(), projectId));
+            for (int i = 0; i < files.size(); i++) {
+                comments.append("### 📁 文件: ").append(files.get(i).getFilePath()).append("\n");
+                comments.append(analyzeFile(files.get(i), reviews.get(i)));
+                comments.append("\n---\n\n");
             }
 
             return comments.toString();
@@ -76,6 +140,24 @@ public class AiCodeReviewService {
         }
     }
 
+    /**
+     * 生成单个文件的Markdown片段：合并各片段的AI分析，并附加变更规模提示
+     */
+    private String analyzeFile(FileDiff file, ChunkedReview review) {
+        StringBuilder section = new StringBuilder();
+        section.append(review.merged()).append("\n");
+
+        // 统计代码行数
+        String[] lines = file.getDiff().split("\n");
+        long addedLines = Arrays.stream(lines).filter(line -> line.startsWith("+")).count();
+
+        if (addedLines > 100) {
+            section.append("- ⚠️ 此文件有大量新增代码(").append(addedLines).append("行)，建议拆分为更小的提交\n");
+        }
+
+        return section.toString();
+    }
+
     /**
      * 异步分析代码差异
      */
@@ -98,18 +180,12 @@ public class AiCodeReviewService {
             StringBuilder summary = new StringBuilder();
             summary.append("## 📋 代码变更摘要\n\n");
 
-            JsonNode rootNode = new ObjectMapper().readTree(diffs);
-            JsonNode changesNode = rootNode.get("changes");
-
-            if (changesNode != null && changesNode.isArray()) {
-                for (JsonNode change : changesNode) {
-                    String fileName = change.get("new_path").asText();
-                    String diffContent = change.get("diff").asText();
-
-                    String fileSummary = aiModelService.generateCodeSummary(diffContent, fileName);
-                    summary.append("### ").append(fileName).append("\n");
-                    summary.append(fileSummary).append("\n\n");
-                }
+            List<FileDiff> files = parseChanges(diffs);
+            List<ChunkedReview> reviews = reviewFilesInChunks(files, List.of(ReviewAspect.SUMMARY),
+                    chunk -> aiModelService.generateCodeSummary(chunk.getDiff(), chunk.getFilePath()));
+            for (int i = 0; i < files.size(); i++) {
+                summary.append("### ").append(files.get(i).getFilePath()).append("\n");
+                summary.append(reviews.get(i).merged()).append("\n\n");
             }
 
             return summary.toString();
@@ -126,25 +202,25 @@ public class AiCodeReviewService {
      * 检查代码安全性
      */
     public String checkCodeSecurity(String diffs) {
+        return checkCodeSecurity(diffs, null);
+    }
+
+    /**
+     * 检查代码安全性，projectId用于在项目内复用相似代码的检查结果
+     */
+    public String checkCodeSecurity(String diffs, String projectId) {
         try {
             StringBuilder securityReport = new StringBuilder();
             securityReport.append("## 🔒 代码安全检查报告\n\n");
 
-            JsonNode rootNode = new ObjectMapper().readTree(diffs);
-            JsonNode changesNode = rootNode.get("changes");
-
-            if (changesNode != null && changesNode.isArray()) {
-                for (JsonNode change : changesNode) {
-                    String fileName = change.get("new_path").asText();
-                    String diffContent = change.get("diff").asText();
-
-                    // 提取实际代码内容（去除diff标记）
-                    String codeContent = extractCodeContent(diffContent);
-
-                    String securityAnalysis = aiModelService.checkCodeSecurity(codeContent, fileName);
-                    securityReport.append("### ").append(fileName).append("\n");
-                    securityReport.append(securityAnalysis).append("\n\n");
-                }
+            List<FileDiff> files = parseChanges(diffs);
+            // 提取实际代码内容（去除diff标记）后再做安全检查
+            List<ChunkedReview> reviews = reviewFilesInChunks(files, List.of(ReviewAspect.SECURITY),
+                    chunk -> aiModelService.checkCodeSecurity(extractCodeContent(chunk.getDiff()),
+                            chunk.getFilePath(), projectId));
+            for (int i = 0; i < files.size(); i++) {
+                securityReport.append("### ").append(files.get(i).getFilePath()).append("\n");
+                securityReport.append(reviews.get(i).merged()).append("\n\n");
             }
 
             return securityReport.toString();
@@ -165,22 +241,13 @@ public class AiCodeReviewService {
             StringBuilder optimizationReport = new StringBuilder();
             optimizationReport.append("## ⚡ 代码优化建议\n\n");
 
-            JsonNode rootNode = new ObjectMapper().readTree(diffs);
-            JsonNode changesNode = rootNode.get("changes");
-
-            if (changesNode != null && changesNode.isArray()) {
-                for (JsonNode change : changesNode) {
-                    String fileName = change.get("new_path").asText();
-                    String diffContent = change.get("diff").asText();
-
-                    // 提取实际代码内容
-                    String codeContent = extractCodeContent(diffContent);
-
-                    String optimizationSuggestions = aiModelService.provideOptimizationSuggestions(codeContent,
-                            fileName);
-                    optimizationReport.append("### ").append(fileName).append("\n");
-                    optimizationReport.append(optimizationSuggestions).append("\n\n");
-                }
+            List<FileDiff> files = parseChanges(diffs);
+            List<ChunkedReview> reviews = reviewFilesInChunks(files, List.of(ReviewAspect.OPTIMIZATION),
+                    chunk -> aiModelService.provideOptimizationSuggestions(extractCodeContent(chunk.getDiff()),
+                            chunk.getFilePath()));
+            for (int i = 0; i < files.size(); i++) {
+                optimizationReport.append("### ").append(files.get(i).getFilePath()).append("\n");
+                optimizationReport.append(reviews.get(i).merged()).append("\n\n");
             }
 
             return optimizationReport.toString();
@@ -193,6 +260,308 @@ public class AiCodeReviewService {
         }
     }
 
+    /**
+     * 解析diff，保持文件原始顺序
+     * 支持GitLab changes格式的JSON，以及GitHub/Gitee返回的git统一格式diff
+     */
+    private List<FileDiff> parseChanges(String diffs) throws com.fasterxml.jackson.core.JsonProcessingException {
+        if (!diffs.stripLeading().startsWith("{")) {
+            return CodeReviewUtils.splitUnifiedDiff(diffs);
+        }
+
+        List<FileDiff> files = new ArrayList<>();
+        JsonNode rootNode = OBJECT_MAPPER.readTree(diffs);
+        JsonNode changesNode = rootNode.get("changes");
+
+        if (changesNode != null && changesNode.isArray()) {
+            for (JsonNode change : changesNode) {
+                files.add(new FileDiff(change.get("new_path").asText(), change.get("diff").asText()));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 单个文件按token预算拆分后的审查结果
+     *
+     * @param results     各片段的审查结果，按片段顺序排列
+     * @param totalChunks 拆分出的片段总数，超过上限时只审查了前results.size()个
+     */
+    private record ChunkedReview(List<String> results, int totalChunks) {
+
+        /**
+         * 合并各片段的审查结果，多个片段时逐段标注
+         */
+        String merged() {
+            String merged = results.size() == 1 ? results.get(0) : mergeWithLabels(results);
+            if (totalChunks > results.size()) {
+                merged += "\n⚠️ 文件过大，拆分为" + totalChunks + "个片段，只审查了前" + results.size() + "个\n";
+            }
+            return merged;
+        }
+
+        private static String mergeWithLabels(List<String> results) {
+            StringBuilder merged = new StringBuilder();
+            for (int i = 0; i < results.size(); i++) {
+                merged.append("**第").append(i + 1).append('/').append(results.size()).append("部分**\n");
+                merged.append(results.get(i)).append("\n\n");
+            }
+            return merged.toString().trim();
+        }
+    }
+
+    /**
+     * 把每个文件按token预算拆分为片段，所有片段一起并发审查，再按文件归并结果
+     */
+    private List<ChunkedReview> reviewFilesInChunks(List<FileDiff> files, List<ReviewAspect> aspects,
+                                                    Function<FileDiff, String> reviewer) {
+        return reviewFilesInChunks(files, aspects, reviewer, null);
+    }
+
+    /**
+     * 同上，batchReviewer不为空时先把小片段装箱，合并为批量调用
+     */
+    private List<ChunkedReview> reviewFilesInChunks(List<FileDiff> files, List<ReviewAspect> aspects,
+                                                    Function<FileDiff, String> reviewer,
+                                                    Function<List<FileDiff>, List<String>> batchReviewer) {
+        int tokenBudget = chunkTokenBudget(aspects);
+
+        List<FileDiff> chunks = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>(files.size());
+        for (FileDiff file : files) {
+            List<String> pieces = CodeReviewUtils.chunkDiff(file.getDiff(), tokenBudget);
+            int reviewed = Math.min(pieces.size(), maxChunksPerFile);
+            if (reviewed < pieces.size()) {
+                logger.warn("文件 {} 拆分为{}个片段，超过上限{}，只审查前{}个",
+                        file.getFilePath(), pieces.size(), maxChunksPerFile, reviewed);
+            }
+            ranges.add(new int[] { chunks.size(), reviewed, pieces.size() });
+            for (String piece : pieces.subList(0, reviewed)) {
+                chunks.add(new FileDiff(file.getFilePath(), piece));
+            }
+        }
+
+        List<String> results = batchEnabled && batchReviewer != null
+                ? reviewChunksInBatches(chunks, reviewer, batchReviewer, tokenBudget)
+                : reviewFilesInParallel(chunks, reviewer);
+        List<ChunkedReview> reviews = new ArrayList<>(files.size());
+        for (int[] range : ranges) {
+            reviews.add(new ChunkedReview(results.subList(range[0], range[0] + range[1]), range[2]));
+        }
+        return reviews;
+    }
+
+    /**
+     * 小片段装箱：按token数从大到小首次适应，放入不超过token预算和文件数上限的批次，每个批次一次AI调用
+     * 超过小文件阈值的片段单独调用；批量调用失败时整批报告失败，只有响应中个别缺失的文件才在同一任务内单独补审
+     */
+    private List<String> reviewChunksInBatches(List<FileDiff> chunks, Function<FileDiff, String> reviewer,
+                                               Function<List<FileDiff>, List<String>> batchReviewer, int tokenBudget) {
+        int[] tokens = chunks.stream().mapToInt(chunk -> CodeReviewUtils.estimateTokens(chunk.getDiff())).toArray();
+        List<Integer> order = IntStream.range(0, chunks.size()).boxed()
+                .sorted(Comparator.comparingInt((Integer index) -> tokens[index]).reversed())
+                .toList();
+
+        List<List<Integer>> bins = new ArrayList<>();
+        List<Integer> binTokens = new ArrayList<>();
+        for (int index : order) {
+            int bin = -1;
+            if (tokens[index] <= batchSmallFileTokens) {
+                for (int i = 0; i < bins.size(); i++) {
+                    if (binTokens.get(i) + tokens[index] <= tokenBudget && bins.get(i).size() < batchMaxFiles) {
+                        bin = i;
+                        break;
+                    }
+                }
+            }
+            if (bin < 0) {
+                bins.add(new ArrayList<>());
+                // 大片段独占一个批次
+                binTokens.add(tokens[index] <= batchSmallFileTokens ? 0 : tokenBudget);
+                bin = bins.size() - 1;
+            }
+            bins.get(bin).add(index);
+            binTokens.set(bin, binTokens.get(bin) + tokens[index]);
+        }
+
+        // 每个批次作为一个审查单元提交到线程池，单元内把结果写回对应片段的位置
+        AtomicReferenceArray<String> results = new AtomicReferenceArray<>(chunks.size());
+        Map<FileDiff, List<Integer>> binsByUnit = new IdentityHashMap<>();
+        List<FileDiff> units = new ArrayList<>(bins.size());
+        for (List<Integer> bin : bins) {
+            FileDiff unit = bin.size() == 1
+                    ? chunks.get(bin.get(0))
+                    : new FileDiff("批量审查(" + bin.size() + "个文件)", "");
+            units.add(unit);
+            binsByUnit.put(unit, bin);
+        }
+        if (units.size() < chunks.size()) {
+            logger.info("{}个文件片段装箱为{}次AI调用", chunks.size(), units.size());
+        }
+
+        List<String> unitResults = reviewFilesInParallel(units, unit -> {
+            List<Integer> bin = binsByUnit.get(unit);
+            if (bin.size() == 1) {
+                return reviewer.apply(unit);
+            }
+            List<FileDiff> batch = bin.stream().map(chunks::get).toList();
+            List<String> responses = batchReviewer.apply(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                String response = responses.get(i);
+                if (response == null) {
+                    logger.debug("批量响应中缺少文件 {}，单独审查", batch.get(i).getFilePath());
+                    response = reviewer.apply(batch.get(i));
+                }
+                results.set(bin.get(i), response);
+            }
+            return null;
+        });
+
+        // 超时或失败的单元，把单元的提示信息填入其中尚无结果的片段
+        for (int i = 0; i < units.size(); i++) {
+            for (int index : binsByUnit.get(units.get(i))) {
+                results.compareAndSet(index, null, unitResults.get(i));
+            }
+        }
+
+        List<String> merged = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            merged.add(results.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * 批量综合审查：先在语义缓存中查找各片段，只把未命中的片段合并为一次AI调用，拆分出的各文件结果加入语义缓存
+     * 调用失败（限流、熔断、超时等）或响应中没有任何文件标记时，未命中的文件都返回失败提示而不是null，
+     * 不逐个补审，避免模型提供商故障时一次失败放大为批次内文件数次调用
+     */
+    private List<String> reviewBatchAllAspects(List<FileDiff> batch, String projectId) {
+        List<SemanticResultCache.Lookup> lookups = batch.stream()
+                .map(chunk -> semanticResultCache.lookup(projectId, ReviewAspect.COMPREHENSIVE,
+                        chunk.getFilePath(), chunk.getDiff()))
+                .toList();
+        String[] results = new String[batch.size()];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            results[i] = lookups.get(i).result();
+            if (results[i] == null) {
+                misses.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        List<FileDiff> pending = misses.stream().map(batch::get).toList();
+        String failure = null;
+        String response = null;
+        try {
+            response = aiModelService.reviewAllAspectsBatch(pending);
+            if (!BATCH_FILE_MARKER.matcher(response).find()) {
+                failure = "AI分析失败: 批量审查响应缺少文件分隔标记\n";
+            }
+        } catch (RuntimeException e) {
+            logger.error("批量审查{}个文件失败", pending.size(), e);
+            failure = "AI分析失败: " + e.getMessage() + "\n";
+        }
+        if (failure != null) {
+            for (int index : misses) {
+                results[index] = failure;
+            }
+            return Arrays.asList(results);
+        }
+
+        List<String> responses = splitBatchResponse(response, pending.size());
+        for (int i = 0; i < misses.size(); i++) {
+            results[misses.get(i)] = responses.get(i);
+            lookups.get(misses.get(i)).store(responses.get(i));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 按 <<<FILE 编号>>> 标记拆分批量综合审查的响应，缺失的文件位置为null
+     */
+    private List<String> splitBatchResponse(String response, int fileCount) {
+        String[] sections = new String[fileCount];
+        Matcher matcher = BATCH_FILE_MARKER.matcher(response);
+        int previousIndex = -1;
+        int previousEnd = 0;
+        while (matcher.find()) {
+            if (previousIndex >= 0 && sections[previousIndex] == null) {
+                sections[previousIndex] = response.substring(previousEnd, matcher.start()).trim();
+            }
+            int index = Integer.parseInt(matcher.group(1)) - 1;
+            previousIndex = index >= 0 && index < fileCount ? index : -1;
+            previousEnd = matcher.end();
+        }
+        if (previousIndex >= 0 && sections[previousIndex] == null) {
+            sections[previousIndex] = response.substring(previousEnd).trim();
+        }
+        return Arrays.asList(sections);
+    }
+
+    /**
+     * 每个片段的token预算：可能处理这些审查维度的模型中最小的输入上限扣除提示词模板占用的部分
+     * 路由中的模型都不限输入时使用默认模型配置的maxInputTokens，仍没有则使用默认值
+     */
+    private int chunkTokenBudget(List<ReviewAspect> aspects) {
+        int maxInputTokens = defaultChunkMaxInputTokens;
+        try {
+            OptionalInt routed = aspects.stream()
+                    .map(aiModelRouter::maxInputTokens)
+                    .filter(OptionalInt::isPresent)
+                    .mapToInt(OptionalInt::getAsInt)
+                    .min();
+            maxInputTokens = routed.isPresent() ? routed.getAsInt()
+                    : aiModelConfigService.getModelConfigByName(modelName)
+                            .map(AiModelConfig::getMaxInputTokens)
+                            .filter(tokens -> tokens > 0)
+                            .orElse(defaultChunkMaxInputTokens);
+        } catch (RuntimeException e) {
+            logger.warn("读取模型的输入上限失败，使用默认token预算 {}", defaultChunkMaxInputTokens, e);
+        }
+        return Math.max(MIN_CHUNK_TOKENS, maxInputTokens - chunkReservedTokens);
+    }
+
+    /**
+     * 将每个文件的AI调用并发提交到有界线程池，并按文件原始顺序返回结果
+     * 整次审查共享一个截止时间，超时未完成的文件会被取消并标注
+     */
+    private List<String> reviewFilesInParallel(List<FileDiff> files, Function<FileDiff, String> reviewer) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reviewTimeout);
+
+        List<Future<String>> futures = new ArrayList<>(files.size());
+        for (FileDiff file : files) {
+            futures.add(codeReviewExecutor.submit(() -> reviewer.apply(file)));
+        }
+
+        List<String> results = new ArrayList<>(files.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<String> future = futures.get(i);
+            String fileName = files.get(i).getFilePath();
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.add(future.get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                logger.warn("文件审查超时，已取消: {}", fileName);
+                results.add("⚠️ 审查超时（超过" + reviewTimeout + "ms），已跳过此文件\n");
+            } catch (ExecutionException e) {
+                logger.error("Error reviewing file {}", fileName, e.getCause());
+                results.add("AI分析失败: " + e.getCause().getMessage() + "\n");
+            } catch (CancellationException e) {
+                results.add("⚠️ 审查已取消\n");
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new CancellationException("代码审查被中断");
+            }
+        }
+        return results;
+    }
+
     /**
      * 从diff内容中提取实际代码
      */
@@ -215,6 +584,193 @@ public class AiCodeReviewService {
      * 综合代码审查报告
      */
     public String generateComprehensiveReview(String diffs) {
+        return generateComprehensiveReview(diffs, null);
+    }
+
+    /**
+     * 综合代码审查报告，指定项目时复用项目内相似代码片段的审查结果
+     */
+    public String generateComprehensiveReview(String diffs, String projectId) {
+        if (!singlePassComprehensive) {
+            return generateMultiPassReview(diffs, projectId);
+        }
+
+        try {
+            // diff只解析一次，每个文件只发起一次包含全部审查维度的AI调用，小文件合并为批量调用
+            List<FileDiff> files = parseChanges(diffs);
+            List<ChunkedReview> reviews = reviewFilesInChunks(files,
+                    List.of(ReviewAspect.COMPREHENSIVE, ReviewAspect.BATCH_COMPREHENSIVE),
+                    chunk -> aiModelService.reviewAllAspects(chunk.getDiff(), chunk.getFilePath(), projectId),
+                    batch -> reviewBatchAllAspects(batch, projectId));
+
+            StringBuilder summary = new StringBuilder("## 📋 代码变更摘要\n\n");
+            StringBuilder security = new StringBuilder("## 🔒 代码安全检查报告\n\n");
+            StringBuilder optimization = new StringBuilder("## ⚡ 代码优化建议\n\n");
+            StringBuilder analysis = new StringBuilder("## 🤖 智能代码审查结果\n\n");
+
+            for (int i = 0; i < files.size(); i++) {
+                FileDiff file = files.get(i);
+                String[] sections = mergeSections(reviews.get(i));
+
+                summary.append("### ").append(file.getFilePath()).append("\n");
+                summary.append(sections[0]).append("\n\n");
+                security.append("### ").append(file.getFilePath()).append("\n");
+                security.append(sections[1]).append("\n\n");
+                optimization.append("### ").append(file.getFilePath()).append("\n");
+                optimization.append(sections[2]).append("\n\n");
+
+                analysis.append("### 📁 文件: ").append(file.getFilePath()).append("\n");
+                analysis.append(sections[3]).append("\n");
+                long addedLines = file.getDiff().lines().filter(line -> line.startsWith("+")).count();
+                if (addedLines > 100) {
+                    analysis.append("- ⚠️ 此文件有大量新增代码(").append(addedLines).append("行)，建议拆分为更小的提交\n");
+                }
+                analysis.append("\n---\n\n");
+            }
+
+            return "# 🔍 综合代码审查报告\n\n"
+                    + summary + "\n"
+                    + security + "\n"
+                    + optimization + "\n"
+                    + analysis;
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            logger.error("Error parsing JSON in comprehensive review", e);
+            return "JSON解析失败: " + e.getMessage();
+        } catch (RuntimeException e) {
+            logger.error("Error generating comprehensive review", e);
+            return "生成综合审查报告失败: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 流式综合审查：每个文件依次推送开始事件、模型输出片段和结束事件
+     * 所有文件的所有片段展开为一个列表，共用一个并发上限调用AI，事件按文件和片段的原始顺序输出；
+     * 超过总截止时间时取消尚未完成的AI调用，以TIMEOUT事件结束；输入不是diff格式时整体作为一个文件审查
+     */
+    public Flux<ReviewStreamEvent> streamComprehensiveReview(String diffs, String defaultFileName) {
+        List<FileDiff> files;
+        try {
+            files = parseChanges(diffs);
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            logger.error("Error parsing JSON in streaming review", e);
+            return Flux.error(e);
+        }
+        if (files.isEmpty() && diffs != null && !diffs.isBlank()) {
+            files = List.of(new FileDiff(defaultFileName, diffs));
+        }
+
+        int tokenBudget = chunkTokenBudget(List.of(ReviewAspect.COMPREHENSIVE));
+        List<StreamChunk> chunks = new ArrayList<>();
+        for (FileDiff file : files) {
+            List<String> pieces = CodeReviewUtils.chunkDiff(file.getDiff(), tokenBudget);
+            int reviewed = Math.min(pieces.size(), maxChunksPerFile);
+            for (int i = 0; i < reviewed; i++) {
+                chunks.add(new StreamChunk(file.getFilePath(), pieces.get(i), i, reviewed, pieces.size()));
+            }
+        }
+        Flux<ReviewStreamEvent> events = Flux.fromIterable(chunks)
+                .flatMapSequential(this::streamChunkAllAspects, streamConcurrency);
+        // 与非流式审查共用总截止时间：每个事件之后仍等待同一个截止时间，而不是重新计时
+        return Flux.defer(() -> {
+                    Mono<Long> deadline = Mono.delay(Duration.ofMillis(reviewTimeout)).cache();
+                    return events.timeout(deadline, event -> deadline);
+                })
+                .onErrorResume(TimeoutException.class, e -> {
+                    logger.warn("流式代码审查超时（超过{}ms），已取消未完成的AI调用", reviewTimeout);
+                    return Flux.just(ReviewStreamEvent.timeout(
+                            "\n⚠️ 审查超时（超过" + reviewTimeout + "ms），其余内容未审查\n"));
+                });
+    }
+
+    /**
+     * 流式审查的一个片段：index为片段在文件中的序号，reviewed为该文件实际审查的片段数，total为拆分出的片段总数
+     */
+    private record StreamChunk(String fileName, String diff, int index, int reviewed, int total) {
+    }
+
+    /**
+     * 审查一个片段，文件的第一个片段前推送开始事件，最后一个片段后推送结束事件；拆分为多个片段时逐段标注
+     */
+    private Flux<ReviewStreamEvent> streamChunkAllAspects(StreamChunk chunk) {
+        String fileName = chunk.fileName();
+        Flux<String> content = aiModelService.streamReviewAllAspects(chunk.diff(), fileName);
+        if (chunk.total() > 1) {
+            content = Flux.concat(
+                    Flux.just("**第" + (chunk.index() + 1) + "/" + chunk.reviewed() + "部分**\n"),
+                    content,
+                    Flux.just("\n\n"));
+        }
+        boolean last = chunk.index() == chunk.reviewed() - 1;
+        if (last && chunk.reviewed() < chunk.total()) {
+            content = content.concatWith(Flux.just(
+                    "⚠️ 文件过大，拆分为" + chunk.total() + "个片段，只审查了前" + chunk.reviewed() + "个\n"));
+        }
+
+        Flux<ReviewStreamEvent> events = content.map(delta -> ReviewStreamEvent.delta(fileName, delta));
+        if (chunk.index() == 0) {
+            events = Flux.concat(Flux.just(ReviewStreamEvent.fileStart(fileName)), events);
+        }
+        if (last) {
+            events = events.concatWith(Flux.just(ReviewStreamEvent.fileEnd(fileName)));
+        }
+        return events;
+    }
+
+    /**
+     * 拆分并合并各片段综合审查响应中的四个部分，超出片段上限的提示只附加在质量分析部分
+     */
+    private String[] mergeSections(ChunkedReview review) {
+        List<String[]> chunkSections = review.results().stream().map(this::splitSections).toList();
+        String[] sections = new String[SECTION_MARKERS.length];
+        for (int i = 0; i < sections.length; i++) {
+            int index = i;
+            List<String> parts = chunkSections.stream().map(chunk -> chunk[index]).toList();
+            int totalChunks = index == sections.length - 1 ? review.totalChunks() : parts.size();
+            sections[i] = new ChunkedReview(parts, totalChunks).merged();
+        }
+        return sections;
+    }
+
+    /**
+     * 按分节标记拆分单次综合审查的响应，依次为摘要、安全、性能、质量
+     * 模型未按格式输出时，整段响应归入质量分析，其余维度标注缺失
+     */
+    private String[] splitSections(String response) {
+        String[] sections = new String[SECTION_MARKERS.length];
+        int[] starts = new int[SECTION_MARKERS.length];
+        for (int i = 0; i < SECTION_MARKERS.length; i++) {
+            starts[i] = response.indexOf(SECTION_MARKERS[i]);
+        }
+
+        for (int i = 0; i < SECTION_MARKERS.length; i++) {
+            if (starts[i] < 0) {
+                continue;
+            }
+            int begin = starts[i] + SECTION_MARKERS[i].length();
+            int end = response.length();
+            for (int start : starts) {
+                if (start > starts[i] && start < end) {
+                    end = start;
+                }
+            }
+            sections[i] = response.substring(begin, end).trim();
+        }
+
+        if (sections[3] == null && sections[0] == null && sections[1] == null && sections[2] == null) {
+            sections[3] = response.trim();
+        }
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] == null) {
+                sections[i] = "（AI未返回此部分）";
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * 旧的多轮综合审查：摘要、安全、优化、详细分析各自独立调用AI
+     */
+    private String generateMultiPassReview(String diffs, String projectId) {
         try {
             StringBuilder comprehensiveReport = new StringBuilder();
             comprehensiveReport.append("# 🔍 综合代码审查报告\n\n");
@@ -223,13 +779,13 @@ public class AiCodeReviewService {
             comprehensiveReport.append(generateCodeSummary(diffs)).append("\n");
 
             // 安全检查
-            comprehensiveReport.append(checkCodeSecurity(diffs)).append("\n");
+            comprehensiveReport.append(checkCodeSecurity(diffs, projectId)).append("\n");
 
             // 优化建议
             comprehensiveReport.append(provideOptimizationSuggestions(diffs)).append("\n");
 
             // 详细分析
-            comprehensiveReport.append(analyzeCodeDiffs(diffs));
+            comprehensiveReport.append(analyzeCodeDiffs(diffs, projectId));
 
             return comprehensiveReport.toString();
         } catch (Exception e) {
@@ -237,4 +793,4 @@ public class AiCodeReviewService {
             return "生成综合审查报告失败: " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+}
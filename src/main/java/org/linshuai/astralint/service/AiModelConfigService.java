@@ -1,11 +1,16 @@
 package org.linshuai.astralint.service;
 
 
+import org.linshuai.astralint.constant.CodeReviewConstants;
 import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
 import org.linshuai.astralint.repository.AiModelConfigRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,9 +26,13 @@ public class AiModelConfigService {
     @Autowired
     private AiModelConfigRepository aiModelConfigRepository;
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     /**
      * 创建AI模型配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_AI_MODELS, allEntries = true)
     public AiModelConfig createModelConfig(AiModelConfig config) {
         logger.info("创建AI模型配置: {}", config.getModelName());
         
@@ -40,12 +49,15 @@ public class AiModelConfigService {
             });
         }
         
-        return aiModelConfigRepository.save(config);
+        AiModelConfig saved = aiModelConfigRepository.save(config);
+        eventPublisher.publishEvent(new AiModelConfigChangedEvent(saved.getId()));
+        return saved;
     }
     
     /**
      * 更新AI模型配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_AI_MODELS, allEntries = true)
     public AiModelConfig updateModelConfig(Long id, AiModelConfig config) {
         logger.info("更新AI模型配置: id={}", id);
         
@@ -70,6 +82,13 @@ public class AiModelConfigService {
         existing.setTemperature(config.getTemperature());
         existing.setMaxTokens(config.getMaxTokens());
         existing.setTimeoutMs(config.getTimeoutMs());
+        existing.setCostWeight(config.getCostWeight());
+        existing.setRoutingAspects(config.getRoutingAspects());
+        existing.setRoutingLanguages(config.getRoutingLanguages());
+        existing.setMaxInputTokens(config.getMaxInputTokens());
+        existing.setRequestsPerMinute(config.getRequestsPerMinute());
+        existing.setTokensPerMinute(config.getTokensPerMinute());
+        existing.setMaxConcurrency(config.getMaxConcurrency());
         existing.setIsActive(config.getIsActive());
         existing.setDescription(config.getDescription());
         
@@ -83,12 +102,15 @@ public class AiModelConfigService {
             existing.setIsDefault(true);
         }
         
-        return aiModelConfigRepository.save(existing);
+        AiModelConfig saved = aiModelConfigRepository.save(existing);
+        eventPublisher.publishEvent(new AiModelConfigChangedEvent(id));
+        return saved;
     }
     
     /**
      * 删除AI模型配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_AI_MODELS, allEntries = true)
     public void deleteModelConfig(Long id) {
         logger.info("删除AI模型配置: id={}", id);
         
@@ -103,6 +125,7 @@ public class AiModelConfigService {
         }
         
         aiModelConfigRepository.deleteById(id);
+        eventPublisher.publishEvent(new AiModelConfigChangedEvent(id));
     }
     
     /**
@@ -132,6 +155,7 @@ public class AiModelConfigService {
     /**
      * 根据模型名称获取配置
      */
+    @Cacheable(value = CodeReviewConstants.CACHE_AI_MODELS, key = "#modelName", unless = "#result == null")
     @Transactional(readOnly = true)
     public Optional<AiModelConfig> getModelConfigByName(String modelName) {
         return aiModelConfigRepository.findByModelName(modelName);
@@ -148,6 +172,7 @@ public class AiModelConfigService {
     /**
      * 设置默认模型
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_AI_MODELS, allEntries = true)
     public AiModelConfig setDefaultModel(Long id) {
         logger.info("设置默认模型: id={}", id);
         
@@ -165,12 +190,15 @@ public class AiModelConfigService {
         // 设置新的默认模型
         AiModelConfig newDefault = config.get();
         newDefault.setIsDefault(true);
-        return aiModelConfigRepository.save(newDefault);
+        AiModelConfig saved = aiModelConfigRepository.save(newDefault);
+        eventPublisher.publishEvent(new AiModelConfigChangedEvent(id));
+        return saved;
     }
     
     /**
      * 激活/停用模型配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_AI_MODELS, allEntries = true)
     public AiModelConfig toggleModelStatus(Long id) {
         logger.info("切换模型状态: id={}", id);
         
@@ -192,7 +220,9 @@ public class AiModelConfigService {
             modelConfig.setIsDefault(false);
         }
         
-        return aiModelConfigRepository.save(modelConfig);
+        AiModelConfig saved = aiModelConfigRepository.save(modelConfig);
+        eventPublisher.publishEvent(new AiModelConfigChangedEvent(id));
+        return saved;
     }
     
     /**
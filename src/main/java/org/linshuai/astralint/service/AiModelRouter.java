@@ -0,0 +1,316 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.linshuai.astralint.config.AiConfig;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.linshuai.astralint.util.CodeReviewUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 多模型路由：为每个激活的AiModelConfig构建ChatClient，按请求选择模型
+ * 规则：排除不支持的提供商、超出输入上限、语言不匹配的模型；
+ * 专门负责该审查维度的模型优先，其余按成本权重从低到高，同权重时默认模型优先；
+ * 排在第一位的模型为主模型，其余作为对冲/故障转移的备选；没有可用模型时使用默认ChatClient
+ */
+@Component
+public class AiModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AiModelRouter.class);
+
+    private static final String DEFAULT_ROUTE = "default";
+
+    private static final Comparator<ModelRoute> ROUTE_ORDER = Comparator
+            .comparingDouble(ModelRoute::costWeight)
+            .thenComparing(route -> !Boolean.TRUE.equals(route.config().getIsDefault()));
+
+    @Autowired
+    private AiModelConfigService aiModelConfigService;
+
+    @Autowired
+    private ObjectProvider<ChatClient.Builder> chatClientBuilders;
+
+    @Autowired
+    private ChatClient chatClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.code-review.timeout:30000}")
+    private long defaultTimeoutMs;
+
+    // 默认ChatClient使用的模型，只用于计算路由版本
+    @Value("${ai.code-review.model:qwen-plus}")
+    private String defaultModelName;
+
+    @Value("${ai.code-review.routing.enabled:true}")
+    private boolean routingEnabled;
+
+    // 当前ChatModel能够调用的模型提供商，其他提供商的配置不参与路由
+    @Value("${ai.code-review.routing.providers:ALIBABA}")
+    private Set<String> supportedProviders;
+
+    private volatile List<ModelRoute> routes;
+
+    // 与routes同时构建，路由配置的内容摘要
+    private volatile String routingVersion;
+
+    /**
+     * 路由结果：模型名称、对应的ChatClient和单次调用超时
+     */
+    public record Route(String modelName, ChatClient chatClient, long timeoutMs) {
+    }
+
+    /**
+     * 单个模型的路由信息
+     */
+    record ModelRoute(AiModelConfig config, Route route, Set<ReviewAspect> aspects, Set<String> languages) {
+
+        double costWeight() {
+            return config.getCostWeight() != null ? config.getCostWeight() : 1.0;
+        }
+
+        boolean specializesIn(ReviewAspect aspect) {
+            return aspects.contains(aspect);
+        }
+
+        boolean accepts(ReviewAspect aspect, String language, int inputTokens) {
+            if (!aspects.isEmpty() && !aspects.contains(aspect)) {
+                return false;
+            }
+            if (!languages.isEmpty() && (language == null || !languages.contains(language))) {
+                return false;
+            }
+            return config.getMaxInputTokens() == null || inputTokens <= config.getMaxInputTokens();
+        }
+    }
+
+    /**
+     * 为一次模型调用选择ChatClient
+     *
+     * @param aspect   审查维度
+     * @param fileName 文件名，用于按语言路由；多个文件合并的请求传null，只匹配不限语言的模型
+     * @param prompt   完整的提示词，用于估算输入token数
+     */
+    public ChatClient route(ReviewAspect aspect, String fileName, String prompt) {
+        return routes(aspect, fileName, prompt).get(0).chatClient();
+    }
+
+    /**
+     * 按优先级返回可处理本次调用的所有模型，第一个为主模型，至少包含一个元素
+     */
+    public List<Route> routes(ReviewAspect aspect, String fileName, String prompt) {
+        List<Route> selected = routingEnabled ? select(aspect, fileName, prompt) : List.of();
+        if (selected.isEmpty()) {
+            selected = List.of(new Route(DEFAULT_ROUTE, chatClient, defaultTimeoutMs));
+        }
+
+        String modelName = selected.get(0).modelName();
+        Counter.builder("astralint.ai.model.requests")
+                .description("按路由选择的模型统计的AI调用次数")
+                .tag("model", modelName)
+                .tag("aspect", aspect.name())
+                .register(meterRegistry)
+                .increment();
+        logger.debug("审查维度 {} 文件 {} 路由到模型 {}", aspect, fileName, modelName);
+        return selected;
+    }
+
+    /**
+     * 可能处理指定审查维度的模型中最小的输入token上限（maxInputTokens），不考虑语言限制
+     * 按它拆分的片段路由、对冲或故障转移到其中任一模型都不会超限；未启用路由或这些模型都不限时返回empty
+     */
+    public OptionalInt maxInputTokens(ReviewAspect aspect) {
+        if (!routingEnabled) {
+            return OptionalInt.empty();
+        }
+        return getRoutes().stream()
+                .filter(route -> route.aspects().isEmpty() || route.aspects().contains(aspect))
+                .map(route -> route.config().getMaxInputTokens())
+                .filter(tokens -> tokens != null && tokens > 0)
+                .mapToInt(Integer::intValue)
+                .min();
+    }
+
+    /**
+     * 当前路由配置的版本：参与路由的模型及其参数、默认模型的摘要，内容相同则版本相同（重启后不变）
+     * 同一输入可能被路由、对冲或故障转移到任一模型，结果缓存以此区分不同的模型组合
+     */
+    public String routingVersion() {
+        if (!routingEnabled) {
+            return version(List.of());
+        }
+        getRoutes();
+        String version = routingVersion;
+        // 路由加载失败时不缓存，使用默认模型的版本
+        return version != null ? version : version(List.of());
+    }
+
+    private List<Route> select(ReviewAspect aspect, String fileName, String prompt) {
+        List<ModelRoute> candidates = getRoutes();
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        String language = fileName != null ? CodeReviewUtils.getFileExtension(fileName) : null;
+        int inputTokens = CodeReviewUtils.estimateTokens(prompt);
+        // candidates已按成本排序，专用模型排在通用模型之前
+        List<Route> specialists = new ArrayList<>();
+        List<Route> generalists = new ArrayList<>();
+        for (ModelRoute candidate : candidates) {
+            if (!candidate.accepts(aspect, language, inputTokens)) {
+                continue;
+            }
+            if (candidate.specializesIn(aspect)) {
+                specialists.add(candidate.route());
+            } else {
+                generalists.add(candidate.route());
+            }
+        }
+        specialists.addAll(generalists);
+        return specialists;
+    }
+
+    private List<ModelRoute> getRoutes() {
+        List<ModelRoute> current = routes;
+        if (current == null) {
+            synchronized (this) {
+                current = routes;
+                if (current == null) {
+                    current = buildRoutes();
+                    routes = current;
+                    routingVersion = version(current);
+                }
+            }
+        }
+        return current;
+    }
+
+    private List<ModelRoute> buildRoutes() {
+        List<ModelRoute> built = new ArrayList<>();
+        try {
+            for (AiModelConfig config : aiModelConfigService.getActiveModelConfigs()) {
+                String provider = config.getModelProvider() != null
+                        ? config.getModelProvider().toUpperCase(Locale.ROOT) : "";
+                if (!supportedProviders.contains(provider)) {
+                    logger.info("模型 {} 的提供商 {} 未启用，不参与路由", config.getModelName(), provider);
+                    continue;
+                }
+                long timeoutMs = config.getTimeoutMs() != null ? config.getTimeoutMs() : defaultTimeoutMs;
+                Route route = new Route(config.getModelName(), buildChatClient(config), timeoutMs);
+                built.add(new ModelRoute(config, route, parseAspects(config), parseLanguages(config)));
+            }
+        } catch (Exception e) {
+            // 加载失败时不缓存结果，下次调用重试，本次使用默认ChatClient
+            logger.error("加载AI模型路由失败，使用默认模型", e);
+            return Collections.emptyList();
+        }
+        built.sort(ROUTE_ORDER);
+        logger.info("AI模型路由已加载: {}", built.stream()
+                .map(route -> route.config().getModelName())
+                .collect(Collectors.joining(", ")));
+        return List.copyOf(built);
+    }
+
+    private ChatClient buildChatClient(AiModelConfig config) {
+        ChatOptions options = ChatOptions.builder()
+                .model(config.getModelName())
+                .temperature(config.getTemperature())
+                .maxTokens(config.getMaxTokens())
+                .build();
+        return chatClientBuilders.getObject()
+                .defaultSystem(AiConfig.CODE_REVIEW_SYSTEM_PROMPT)
+                .defaultOptions(options)
+                .build();
+    }
+
+    private Set<ReviewAspect> parseAspects(AiModelConfig config) {
+        Set<ReviewAspect> aspects = EnumSet.noneOf(ReviewAspect.class);
+        for (String value : splitList(config.getRoutingAspects())) {
+            try {
+                aspects.add(ReviewAspect.valueOf(value.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                logger.warn("模型 {} 配置了未知的审查维度: {}", config.getModelName(), value);
+            }
+        }
+        return aspects;
+    }
+
+    private Set<String> parseLanguages(AiModelConfig config) {
+        return splitList(config.getRoutingLanguages()).stream()
+                .map(language -> language.toLowerCase(Locale.ROOT))
+                .map(language -> language.startsWith(".") ? language.substring(1) : language)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static List<String> splitList(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+
+    private String version(List<ModelRoute> modelRoutes) {
+        StringBuilder fingerprint = new StringBuilder(DEFAULT_ROUTE).append('=').append(defaultModelName);
+        for (ModelRoute modelRoute : modelRoutes) {
+            AiModelConfig config = modelRoute.config();
+            fingerprint.append(';').append(config.getModelName())
+                    .append('|').append(config.getModelProvider())
+                    .append('|').append(config.getTemperature())
+                    .append('|').append(config.getMaxTokens())
+                    .append('|').append(config.getMaxInputTokens())
+                    .append('|').append(modelRoute.costWeight())
+                    .append('|').append(config.getIsDefault())
+                    .append('|').append(modelRoute.aspects())
+                    .append('|').append(modelRoute.languages().stream().sorted().toList());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(fingerprint.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 模型配置变更后丢弃路由，下次调用时重新构建
+     * 与构建过程互斥，避免正在构建的旧路由覆盖失效标记
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onAiModelConfigChanged(AiModelConfigChangedEvent event) {
+        routes = null;
+        routingVersion = null;
+        logger.debug("AI模型配置 {} 已变更，模型路由已失效", event.getAiModelConfigId());
+    }
+}
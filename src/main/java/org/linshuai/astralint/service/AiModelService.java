@@ -1,18 +1,29 @@
 package org.linshuai.astralint.service;
 
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.dto.FileDiff;
+import org.linshuai.astralint.util.CodeReviewUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 @Service
 public class AiModelService {
@@ -20,7 +31,10 @@ public class AiModelService {
     private static final Logger logger = LoggerFactory.getLogger(AiModelService.class);
 
     @Autowired
-    private ChatClient chatClient;
+    private AiModelRouter aiModelRouter;
+
+    @Autowired
+    private HedgedModelCaller hedgedModelCaller;
 
     @Autowired
     @Qualifier("codeReviewPromptTemplate")
@@ -34,6 +48,29 @@ public class AiModelService {
     @Qualifier("optimizationPromptTemplate")
     private PromptTemplate codeOptimizationPromptTemplate;
 
+    @Autowired
+    @Qualifier("comprehensiveReviewPromptTemplate")
+    private PromptTemplate comprehensiveReviewPromptTemplate;
+
+    @Autowired
+    @Qualifier("batchReviewPromptTemplate")
+    private PromptTemplate batchReviewPromptTemplate;
+
+    @Autowired
+    private AiResultCache aiResultCache;
+
+    @Autowired
+    private SemanticResultCache semanticResultCache;
+
+    @Autowired
+    private TokenUsageTracker tokenUsageTracker;
+
+    @Autowired
+    private ModelRateLimiter modelRateLimiter;
+
+    @Autowired
+    private DependencyGuard dependencyGuard;
+
     @Value("${ai.code-review.timeout:30000}")
     private int timeout;
 
@@ -44,6 +81,13 @@ public class AiModelService {
      * 使用AI分析代码变更
      */
     public String analyzeCode(String codeDiff, String fileName) {
+        return analyzeCode(codeDiff, fileName, null);
+    }
+
+    /**
+     * 使用AI分析代码变更，指定项目时复用项目内相似代码片段的分析结果
+     */
+    public String analyzeCode(String codeDiff, String fileName, String projectId) {
         if (!aiEnabled) {
             return "AI代码审查功能已禁用";
         }
@@ -54,11 +98,10 @@ public class AiModelService {
                     "codeDiff", codeDiff);
 
             String prompt = codeReviewPromptTemplate.render(parameters);
-            ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
-            if (response != null && response.getResult() != null && response.getResult().getOutput() != null) {
-                return response.getResult().getOutput().getText();
-            }
-            return "AI分析响应为空";
+            String result = aiResultCache.getOrCompute(ReviewAspect.ANALYSIS, fileName, codeDiff,
+                    () -> semanticResultCache.getOrCompute(projectId, ReviewAspect.ANALYSIS, fileName, codeDiff,
+                            () -> callModel(ReviewAspect.ANALYSIS, fileName, prompt)));
+            return result != null ? result : "AI分析响应为空";
         } catch (Exception e) {
             logger.error("Error analyzing code with AI", e);
             return "AI分析失败: " + e.getMessage();
@@ -93,11 +136,9 @@ public class AiModelService {
                     "codeDiff", codeDiff);
 
             String prompt = codeSummaryPromptTemplate.render(parameters);
-            ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
-            if (response != null && response.getResult() != null && response.getResult().getOutput() != null) {
-                return response.getResult().getOutput().getText();
-            }
-            return "生成代码摘要响应为空";
+            String result = aiResultCache.getOrCompute(ReviewAspect.SUMMARY, fileName, codeDiff,
+                    () -> callModel(ReviewAspect.SUMMARY, fileName, prompt));
+            return result != null ? result : "生成代码摘要响应为空";
         } catch (Exception e) {
             logger.error("Error generating code summary", e);
             return "生成代码摘要失败: " + e.getMessage();
@@ -118,11 +159,9 @@ public class AiModelService {
                     "codeContent", codeContent);
 
             String prompt = codeOptimizationPromptTemplate.render(parameters);
-            ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
-            if (response != null && response.getResult() != null && response.getResult().getOutput() != null) {
-                return response.getResult().getOutput().getText();
-            }
-            return "生成优化建议响应为空";
+            String result = aiResultCache.getOrCompute(ReviewAspect.OPTIMIZATION, fileName, codeContent,
+                    () -> callModel(ReviewAspect.OPTIMIZATION, fileName, prompt));
+            return result != null ? result : "生成优化建议响应为空";
         } catch (Exception e) {
             logger.error("Error providing optimization suggestions", e);
             return "生成优化建议失败: " + e.getMessage();
@@ -133,6 +172,13 @@ public class AiModelService {
      * 检查代码安全性
      */
     public String checkCodeSecurity(String codeContent, String fileName) {
+        return checkCodeSecurity(codeContent, fileName, null);
+    }
+
+    /**
+     * 检查代码安全性，指定项目时复用项目内相似代码片段的检查结果
+     */
+    public String checkCodeSecurity(String codeContent, String fileName, String projectId) {
         if (!aiEnabled) {
             return "AI安全检查功能已禁用";
         }
@@ -148,14 +194,205 @@ public class AiModelService {
                     请重点关注:%n1. SQL注入风险%n2. XSS攻击风险%n3. 权限控制问题%n4. 敏感信息泄露%n5. 输入验证不足%n%n请用中文回答，严重安全问题用"🚨"标记。
                     """, fileName, codeContent);
 
-            ChatResponse response = chatClient.prompt(securityPrompt).call().chatResponse();
-            if (response != null && response.getResult() != null && response.getResult().getOutput() != null) {
-                return response.getResult().getOutput().getText();
-            }
-            return "安全检查响应为空";
+            String result = aiResultCache.getOrCompute(ReviewAspect.SECURITY, fileName, codeContent,
+                    () -> semanticResultCache.getOrCompute(projectId, ReviewAspect.SECURITY, fileName, codeContent,
+                            () -> callModel(ReviewAspect.SECURITY, fileName, securityPrompt)));
+            return result != null ? result : "安全检查响应为空";
         } catch (Exception e) {
             logger.error("Error checking code security", e);
             return "安全检查失败: " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 单次调用完成摘要、安全、性能、质量四个维度的审查
+     */
+    public String reviewAllAspects(String codeDiff, String fileName) {
+        return reviewAllAspects(codeDiff, fileName, null);
+    }
+
+    /**
+     * 单次调用完成四个维度的审查，指定项目时复用项目内相似代码片段的审查结果
+     */
+    public String reviewAllAspects(String codeDiff, String fileName, String projectId) {
+        if (!aiEnabled) {
+            return "AI代码审查功能已禁用";
+        }
+
+        try {
+            Map<String, Object> parameters = Map.of(
+                    "fileName", fileName,
+                    "codeDiff", codeDiff);
+
+            String prompt = comprehensiveReviewPromptTemplate.render(parameters);
+            String result = aiResultCache.getOrCompute(ReviewAspect.COMPREHENSIVE, fileName, codeDiff,
+                    () -> semanticResultCache.getOrCompute(projectId, ReviewAspect.COMPREHENSIVE, fileName, codeDiff,
+                            () -> callModel(ReviewAspect.COMPREHENSIVE, fileName, prompt)));
+            return result != null ? result : "综合审查响应为空";
+        } catch (Exception e) {
+            logger.error("Error reviewing all aspects with AI", e);
+            return "AI分析失败: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 批量综合审查：多个小文件合并为一次AI调用，返回按 <<<FILE 编号>>> 分隔的原始响应
+     * 与单文件审查不同，调用失败时抛出异常而不是返回提示文本，由调用方把整批标记为失败
+     */
+    public String reviewAllAspectsBatch(List<FileDiff> files) {
+        if (!aiEnabled) {
+            throw new IllegalStateException("AI代码审查功能已禁用");
+        }
+
+        StringBuilder fileSections = new StringBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            FileDiff file = files.get(i);
+            fileSections.append("文件 ").append(i + 1).append(": ").append(file.getFilePath()).append("\n")
+                    .append("代码变更：\n").append(file.getDiff()).append("\n\n");
+        }
+
+        Map<String, Object> parameters = Map.of(
+                "fileCount", files.size(),
+                "files", fileSections.toString());
+
+        String prompt = batchReviewPromptTemplate.render(parameters);
+        String fileNames = files.stream().map(FileDiff::getFilePath).collect(Collectors.joining(","));
+        String result = aiResultCache.getOrCompute(ReviewAspect.BATCH_COMPREHENSIVE, fileNames,
+                fileSections.toString(), () -> callModel(ReviewAspect.BATCH_COMPREHENSIVE, null, prompt));
+        if (result == null) {
+            throw new IllegalStateException("批量综合审查响应为空");
+        }
+        return result;
+    }
+
+    /**
+     * 流式的单次多维度审查，模型输出的片段到达即返回
+     * 命中缓存时一次性返回缓存结果；完整响应在流结束后写入缓存
+     * 与非流式调用一样先取得主模型的限流额度（在boundedElastic线程上等待，不占用调用方线程），再取得熔断和舱壁许可，流结束、出错或被取消时归还；
+     * token用量在流结束时按最后一个带用量的响应记录，归属到订阅方通过Reactor Context以ReviewContext.class为键传入的审查
+     */
+    public Flux<String> streamReviewAllAspects(String codeDiff, String fileName) {
+        if (!aiEnabled) {
+            return Flux.just("AI代码审查功能已禁用");
+        }
+
+        return Flux.deferContextual(contextView -> {
+            String cached = aiResultCache.getIfPresent(ReviewAspect.COMPREHENSIVE, fileName, codeDiff);
+            if (cached != null) {
+                return Flux.just(cached);
+            }
+
+            Map<String, Object> parameters = Map.of(
+                    "fileName", fileName,
+                    "codeDiff", codeDiff);
+            String prompt = comprehensiveReviewPromptTemplate.render(parameters);
+            int inputTokens = CodeReviewUtils.estimateTokens(prompt);
+            AiModelRouter.Route route = aiModelRouter.routes(ReviewAspect.COMPREHENSIVE, fileName, prompt).get(0);
+            ReviewContext reviewContext = contextView.getOrDefault(ReviewContext.class, null);
+
+            // 排队等待限流额度时不占用舱壁名额
+            ModelRateLimiter.Permit limiterPermit = modelRateLimiter.acquirePermit(route.modelName(), inputTokens);
+            DependencyGuard.Permit guardPermit;
+            try {
+                guardPermit = dependencyGuard.acquire("AI:" + route.modelName());
+            } catch (RuntimeException e) {
+                limiterPermit.cancelled();
+                throw e;
+            }
+
+            StringBuilder fullResponse = new StringBuilder();
+            AtomicReference<ChatResponse> lastUsage = new AtomicReference<>();
+            AtomicBoolean finished = new AtomicBoolean();
+            // 在结束信号传给下游之前归还许可并记录用量，订阅方收到完成信号时读取到的审查用量已包含本次调用
+            BiConsumer<SignalType, Throwable> finish = (signal, error) -> {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
+                String text = fullResponse.toString();
+                switch (signal) {
+                    case ON_COMPLETE -> {
+                        guardPermit.succeeded();
+                        limiterPermit.succeeded(CodeReviewUtils.estimateTokens(text));
+                    }
+                    case ON_ERROR -> {
+                        guardPermit.failed(error);
+                        limiterPermit.failed(error);
+                    }
+                    default -> {
+                        guardPermit.cancelled();
+                        limiterPermit.cancelled();
+                    }
+                }
+                if (lastUsage.get() != null || !text.isEmpty()) {
+                    Runnable record = () -> recordUsage(route.modelName(), lastUsage.get(), inputTokens, text);
+                    (reviewContext != null ? reviewContext.bind(record) : record).run();
+                }
+            };
+            return Flux.defer(() -> route.chatClient().prompt(prompt).stream().chatResponse())
+                    .doOnNext(response -> {
+                        if (hasUsage(response)) {
+                            lastUsage.set(response);
+                        }
+                    })
+                    .mapNotNull(AiModelService::text)
+                    .filter(text -> !text.isEmpty())
+                    .doOnNext(fullResponse::append)
+                    .doOnComplete(() -> {
+                        if (!fullResponse.isEmpty()) {
+                            aiResultCache.put(ReviewAspect.COMPREHENSIVE, fileName, codeDiff, fullResponse.toString());
+                        }
+                        finish.accept(SignalType.ON_COMPLETE, null);
+                    })
+                    .doOnError(error -> finish.accept(SignalType.ON_ERROR, error))
+                    .doOnCancel(() -> finish.accept(SignalType.CANCEL, null));
+        }).subscribeOn(Schedulers.boundedElastic()).onErrorResume(e -> {
+            logger.error("Error streaming review for {}", fileName, e);
+            return Flux.just("AI分析失败: " + e.getMessage());
+        });
+    }
+
+    /**
+     * 按路由选择的模型调用AI，主模型慢或失败时由备选模型对冲/接替
+     * 响应为空时返回null，不写入缓存
+     */
+    private String callModel(ReviewAspect aspect, String fileName, String prompt) {
+        int inputTokens = CodeReviewUtils.estimateTokens(prompt);
+        return hedgedModelCaller.call(aiModelRouter.routes(aspect, fileName, prompt), inputTokens, route -> {
+            ChatResponse response = route.chatClient().prompt(prompt).call().chatResponse();
+            String text = null;
+            if (response != null && response.getResult() != null && response.getResult().getOutput() != null) {
+                text = response.getResult().getOutput().getText();
+            }
+            recordUsage(route.modelName(), response, inputTokens, text);
+            return text;
+        });
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult() != null && response.getResult().getOutput() != null
+                ? response.getResult().getOutput().getText() : null;
+    }
+
+    private static boolean hasUsage(ChatResponse response) {
+        Usage usage = response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+        return usage != null && ((usage.getPromptTokens() != null && usage.getPromptTokens() > 0)
+                || (usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0));
+    }
+
+    /**
+     * 记录模型返回的token用量，响应中没有用量信息时按字符数估算
+     * 流式响应的用量取最后一个带用量的片段，与DashScope一样按累计值返回
+     */
+    private void recordUsage(String modelName, ChatResponse response, int inputTokens, String text) {
+        Usage usage = response != null && response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+        Integer promptTokens = usage != null ? usage.getPromptTokens() : null;
+        Integer completionTokens = usage != null ? usage.getCompletionTokens() : null;
+        if (promptTokens == null || promptTokens == 0) {
+            promptTokens = inputTokens;
+        }
+        if (completionTokens == null || completionTokens == 0) {
+            completionTokens = text != null ? CodeReviewUtils.estimateTokens(text) : 0;
+        }
+        tokenUsageTracker.record(modelName, promptTokens, completionTokens);
+    }
+}
@@ -0,0 +1,296 @@
+package org.linshuai.astralint.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * AI模型调用结果缓存
+ * 以(审查维度, 模型路由版本, 提示词版本, 规范化diff的SHA-256)为键，
+ * 内存层有容量和TTL上限，可选的磁盘层在重启后依然有效；
+ * 实际回答的模型由路由、对冲和故障转移决定，键中使用路由配置的版本，模型配置变更后旧结果不再命中
+ */
+@Service
+public class AiResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AiResultCache.class);
+
+    private static final String METRIC_NAME = "astralint.ai.result.cache";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.code-review.cache.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private AiModelRouter aiModelRouter;
+
+    @Value("${ai.code-review.prompt-version:v1}")
+    private String promptVersion;
+
+    @Value("${ai.code-review.cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${ai.code-review.cache.ttl:7d}")
+    private Duration ttl;
+
+    @Value("${ai.code-review.cache.disk.enabled:false}")
+    private boolean diskEnabled;
+
+    @Value("${ai.code-review.cache.disk.directory:./data/ai-cache}")
+    private String diskDirectory;
+
+    @Value("${ai.code-review.cache.disk.max-entries:100000}")
+    private long diskMaxEntries;
+
+    private Cache<String, String> memoryCache;
+
+    private Path diskRoot;
+
+    @PostConstruct
+    public void init() {
+        memoryCache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memoryCache, "aiResults");
+
+        if (diskEnabled) {
+            diskRoot = Paths.get(diskDirectory).toAbsolutePath();
+            try {
+                Files.createDirectories(diskRoot);
+                logger.info("AI结果磁盘缓存目录: {}", diskRoot);
+            } catch (IOException e) {
+                logger.warn("无法创建AI结果磁盘缓存目录 {}，仅使用内存缓存", diskRoot, e);
+                diskRoot = null;
+            }
+        }
+    }
+
+    /**
+     * 命中缓存时直接返回，否则调用loader并缓存非空结果
+     * loader返回null表示本次结果不可缓存（如模型响应为空）
+     */
+    public String getOrCompute(ReviewAspect aspect, String fileName, String content, Supplier<String> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String cached = getIfPresent(aspect, fileName, content);
+        if (cached != null) {
+            return cached;
+        }
+
+        String result = loader.get();
+        put(aspect, fileName, content, result);
+        return result;
+    }
+
+    /**
+     * 查找缓存结果，依次查找内存层和磁盘层，未命中返回null
+     */
+    public String getIfPresent(ReviewAspect aspect, String fileName, String content) {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = buildKey(aspect, fileName, content);
+
+        String cached = memoryCache.getIfPresent(key);
+        if (cached != null) {
+            record(aspect, "memory", "hit");
+            return cached;
+        }
+
+        cached = readFromDisk(key);
+        if (cached != null) {
+            record(aspect, "disk", "hit");
+            memoryCache.put(key, cached);
+            return cached;
+        }
+
+        record(aspect, "none", "miss");
+        return null;
+    }
+
+    /**
+     * 缓存结果（如流式调用结束后拼接出的完整响应），null不缓存
+     */
+    public void put(ReviewAspect aspect, String fileName, String content, String result) {
+        if (!enabled || result == null) {
+            return;
+        }
+
+        String key = buildKey(aspect, fileName, content);
+        memoryCache.put(key, result);
+        writeToDisk(key, result);
+    }
+
+    /**
+     * 清空内存缓存
+     */
+    public void invalidateAll() {
+        memoryCache.invalidateAll();
+    }
+
+    /**
+     * 模型配置变更后清空内存层（与SemanticResultCache一致）；
+     * 磁盘层的旧条目因路由版本变化不再命中，由定期清理按TTL删除
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAiModelConfigChanged(AiModelConfigChangedEvent event) {
+        invalidateAll();
+    }
+
+    /**
+     * 定期清理磁盘层中过期和超出容量的条目
+     */
+    @Scheduled(fixedDelayString = "${ai.code-review.cache.disk.cleanup-interval:3600000}")
+    public void cleanUpDisk() {
+        if (diskRoot == null) {
+            return;
+        }
+
+        long expiredBefore = System.currentTimeMillis() - ttl.toMillis();
+        try (Stream<Path> paths = Files.walk(diskRoot)) {
+            List<Path> entries = paths.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(this::lastModified).reversed())
+                    .collect(Collectors.toList());
+
+            int removed = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                Path entry = entries.get(i);
+                if (i >= diskMaxEntries || lastModified(entry) < expiredBefore) {
+                    Files.deleteIfExists(entry);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                logger.info("清理AI结果磁盘缓存 {} 条", removed);
+            }
+        } catch (IOException e) {
+            logger.warn("清理AI结果磁盘缓存失败", e);
+        }
+    }
+
+    /**
+     * 构建缓存键，文件名参与哈希，因为提示词中包含文件名
+     */
+    String buildKey(ReviewAspect aspect, String fileName, String content) {
+        String contentHash = sha256(fileName + "\n" + normalize(content));
+        return sha256(aspect.name() + "|" + aiModelRouter.routingVersion() + "|" + promptVersion + "|" + contentHash);
+    }
+
+    /**
+     * 规范化diff：去掉index行和hunk头中的行号、行尾空白，
+     * 使rebase等只改变行号的推送得到相同的哈希
+     */
+    static String normalize(String content) {
+        StringBuilder normalized = new StringBuilder(content.length());
+        for (String line : content.split("\n")) {
+            if (line.startsWith("index ")) {
+                continue;
+            }
+            if (line.startsWith("@@")) {
+                int end = line.indexOf("@@", 2);
+                normalized.append(end > 0 ? line.substring(end + 2).stripTrailing() : "").append('\n');
+                continue;
+            }
+            normalized.append(line.stripTrailing()).append('\n');
+        }
+        return normalized.toString();
+    }
+
+    private String readFromDisk(String key) {
+        if (diskRoot == null) {
+            return null;
+        }
+
+        Path path = diskPath(key);
+        try {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            if (lastModified(path) < System.currentTimeMillis() - ttl.toMillis()) {
+                Files.deleteIfExists(path);
+                return null;
+            }
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("读取AI结果磁盘缓存失败: {}", path, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String value) {
+        if (diskRoot == null) {
+            return;
+        }
+
+        Path path = diskPath(key);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = Files.createTempFile(path.getParent(), key, ".tmp");
+            Files.writeString(tmp, value, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("写入AI结果磁盘缓存失败: {}", path, e);
+        }
+    }
+
+    private Path diskPath(String key) {
+        return diskRoot.resolve(key.substring(0, 2)).resolve(key + ".md");
+    }
+
+    private long lastModified(Path path) {
+        try {
+            FileTime time = Files.getLastModifiedTime(path);
+            return time.toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private void record(ReviewAspect aspect, String tier, String result) {
+        meterRegistry.counter(METRIC_NAME, "aspect", aspect.name(), "tier", tier, "result", result).increment();
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.linshuai.astralint.constant.CodeReviewConstants;
+import org.linshuai.astralint.dto.CodeReviewResponse;
+import org.linshuai.astralint.entity.CodeReview;
+import org.linshuai.astralint.entity.CodeReviewIssue;
+import org.linshuai.astralint.entity.CodeReviewIssue.Category;
+import org.linshuai.astralint.repository.CodeReviewIssueRepository;
+import org.linshuai.astralint.repository.CodeReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 代码审查结果存储
+ * 写入先进入写回缓冲区和内存热点缓存，由定时任务批量落库，异步审查线程不会阻塞在数据库上；
+ * 读取优先命中内存，未命中再查数据库。只查询状态时使用投影，不加载详细分析内容；
+ * 整批写入失败时逐条重试，单独写入仍因数据问题失败的结果被丢弃，不会让之后的每一批都回滚
+ */
+@Service
+public class CodeReviewResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodeReviewResultStore.class);
+
+    @Autowired
+    private CodeReviewRepository codeReviewRepository;
+
+    @Autowired
+    private CodeReviewIssueRepository codeReviewIssueRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.review-store.flush-batch-size:200}")
+    private int flushBatchSize;
+
+    @Value("${astralint.review-store.max-pending:10000}")
+    private int maxPending;
+
+    /**
+     * 写回缓冲区：尚未落库的审查结果快照，同一审查的多次更新只保留最新一次
+     */
+    private final Map<String, CodeReviewResponse> pendingWrites = new ConcurrentHashMap<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private Cache hotReviews;
+
+    @PostConstruct
+    public void init() {
+        hotReviews = cacheManager.getCache(CodeReviewConstants.CACHE_CODE_REVIEWS);
+        if (hotReviews == null) {
+            throw new IllegalStateException("未配置缓存: " + CodeReviewConstants.CACHE_CODE_REVIEWS);
+        }
+        Gauge.builder("astralint.review.store.pending", pendingWrites, Map::size)
+                .description("尚未写入数据库的审查结果数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 保存审查结果（只写内存，由定时任务落库）
+     * 保存的是调用时的快照，调用方之后修改response需要再次保存
+     */
+    public void save(CodeReviewResponse response) {
+        CodeReviewResponse snapshot = copyOf(response);
+        pendingWrites.put(snapshot.getReviewId(), snapshot);
+        hotReviews.put(snapshot.getReviewId(), snapshot);
+
+        // 数据库持续不可用时缓冲区不能无限增长，由写入方同步刷盘形成背压
+        if (pendingWrites.size() >= maxPending) {
+            logger.warn("审查结果写回缓冲区已满({}条)，同步写入数据库", pendingWrites.size());
+            flush();
+        }
+    }
+
+    /**
+     * 获取完整的审查结果
+     */
+    public Optional<CodeReviewResponse> getReview(String reviewId) {
+        CodeReviewResponse cached = getFromMemory(reviewId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<CodeReviewResponse> loaded = codeReviewRepository.findByReviewId(reviewId)
+                .map(review -> toResponse(review, codeReviewIssueRepository.findByReviewIdOrderById(reviewId)));
+        // 加载期间可能有新的结果写入，不覆盖
+        loaded.ifPresent(response -> hotReviews.putIfAbsent(reviewId, response));
+        return loaded;
+    }
+
+    /**
+     * 获取审查状态（不包含详细分析和问题列表）
+     */
+    public Optional<CodeReviewResponse> getReviewStatus(String reviewId) {
+        CodeReviewResponse cached = getFromMemory(reviewId);
+        if (cached != null) {
+            return Optional.of(toStatusResponse(cached));
+        }
+        return codeReviewRepository.findStatusByReviewId(reviewId).map(this::toStatusResponse);
+    }
+
+    /**
+     * 分页查询审查状态
+     */
+    public Page<CodeReviewResponse> listReviews(String projectId, Pageable pageable) {
+        Page<CodeReviewRepository.StatusView> page = projectId != null
+                ? codeReviewRepository.findByProjectIdOrderByCreatedAtDesc(projectId, pageable)
+                : codeReviewRepository.findAllByOrderByCreatedAtDesc(pageable);
+        return page.map(this::toStatusResponse);
+    }
+
+    /**
+     * 将写回缓冲区中的审查结果批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${astralint.review-store.flush-interval:1000}")
+    public void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            while (!pendingWrites.isEmpty()) {
+                Map<String, CodeReviewResponse> batch = new LinkedHashMap<>();
+                for (Map.Entry<String, CodeReviewResponse> entry : pendingWrites.entrySet()) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    if (batch.size() >= flushBatchSize) {
+                        break;
+                    }
+                }
+
+                if (!persistBatch(batch) || batch.size() < flushBatchSize) {
+                    break;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+        if (!pendingWrites.isEmpty()) {
+            logger.warn("关闭时仍有{}条审查结果未写入数据库", pendingWrites.size());
+        }
+    }
+
+    private CodeReviewResponse getFromMemory(String reviewId) {
+        CodeReviewResponse pending = pendingWrites.get(reviewId);
+        if (pending != null) {
+            return pending;
+        }
+        return hotReviews.get(reviewId, CodeReviewResponse.class);
+    }
+
+    /**
+     * 在一个事务中写入一批结果，失败时逐条重试
+     *
+     * @return 是否整批都已写入或丢弃，数据库不可用时返回false
+     */
+    private boolean persistBatch(Map<String, CodeReviewResponse> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(batch.values()));
+            // 只移除已写入的快照，刷盘期间又被更新的结果留到下一批
+            batch.forEach(pendingWrites::remove);
+            logger.debug("已写入{}条审查结果", batch.size());
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("批量写入{}条审查结果失败，逐条重试: {}", batch.size(), e.getMessage());
+        }
+
+        for (Map.Entry<String, CodeReviewResponse> entry : batch.entrySet()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> persist(List.of(entry.getValue())));
+                pendingWrites.remove(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                if (!isRejectedRow(e)) {
+                    logger.error("审查结果写入数据库失败，将在下次刷盘时重试", e);
+                    return false;
+                }
+                // 数据本身无法写入，重试也不会成功；内存热点缓存中的结果仍可读取，直到过期
+                pendingWrites.remove(entry.getKey(), entry.getValue());
+                Counter.builder("astralint.review.store.dropped")
+                        .description("因数据无法写入而丢弃的审查结果数量")
+                        .register(meterRegistry)
+                        .increment();
+                logger.error("审查结果 {} 无法写入数据库，已丢弃: projectId={}, mergeRequestId={}",
+                        entry.getKey(), entry.getValue().getProjectId(), entry.getValue().getMergeRequestId(), e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 单条写入失败是否由数据本身导致（如违反约束、字段超长），连接失败等数据库不可用的情况不算
+     */
+    private static boolean isRejectedRow(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    private void persist(Collection<CodeReviewResponse> responses) {
+        List<String> reviewIds = responses.stream().map(CodeReviewResponse::getReviewId).toList();
+        Map<String, CodeReview> existing = codeReviewRepository.findByReviewIdIn(reviewIds).stream()
+                .collect(Collectors.toMap(CodeReview::getReviewId, Function.identity()));
+
+        List<CodeReview> reviews = new ArrayList<>();
+        List<CodeReviewIssue> issues = new ArrayList<>();
+        for (CodeReviewResponse response : responses) {
+            CodeReview review = existing.getOrDefault(response.getReviewId(), new CodeReview(response.getReviewId()));
+            review.setProjectId(truncate(response.getProjectId(), 255));
+            review.setMergeRequestId(truncate(response.getMergeRequestId(), 255));
+            review.setStatus(response.getStatus());
+            review.setSummary(truncate(response.getSummary(), 2000));
+            review.setDetailedAnalysis(response.getDetailedAnalysis());
+            review.setOverallScore(response.getOverallScore());
+            review.setProcessingTimeMs(response.getProcessingTimeMs());
+            review.setPromptTokens(response.getPromptTokens());
+            review.setCompletionTokens(response.getCompletionTokens());
+            review.setCreatedAt(response.getCreatedAt());
+            reviews.add(review);
+            issues.addAll(toIssues(response));
+        }
+
+        codeReviewRepository.saveAll(reviews);
+        if (!existing.isEmpty()) {
+            codeReviewIssueRepository.deleteByReviewIdIn(existing.keySet());
+        }
+        codeReviewIssueRepository.saveAll(issues);
+    }
+
+    private List<CodeReviewIssue> toIssues(CodeReviewResponse response) {
+        List<CodeReviewIssue> issues = new ArrayList<>();
+        if (response.getSecurityIssues() != null) {
+            for (CodeReviewResponse.SecurityIssue source : response.getSecurityIssues()) {
+                issues.add(newIssue(response.getReviewId(), Category.SECURITY, source.getSeverity(), source.getType(),
+                        source.getDescription(), source.getFilePath(), source.getLineNumber(), source.getSuggestion()));
+            }
+        }
+        if (response.getPerformanceIssues() != null) {
+            for (CodeReviewResponse.PerformanceIssue source : response.getPerformanceIssues()) {
+                issues.add(newIssue(response.getReviewId(), Category.PERFORMANCE, source.getSeverity(), source.getType(),
+                        source.getDescription(), source.getFilePath(), source.getLineNumber(),
+                        source.getOptimizationSuggestion()));
+            }
+        }
+        if (response.getCodeQualityIssues() != null) {
+            for (CodeReviewResponse.CodeQualityIssue source : response.getCodeQualityIssues()) {
+                issues.add(newIssue(response.getReviewId(), Category.CODE_QUALITY, source.getSeverity(), source.getType(),
+                        source.getDescription(), source.getFilePath(), source.getLineNumber(),
+                        source.getBestPracticeSuggestion()));
+            }
+        }
+        return issues;
+    }
+
+    private CodeReviewIssue newIssue(String reviewId, Category category, Enum<?> severity, String type,
+                                     String description, String filePath, Integer lineNumber, String suggestion) {
+        CodeReviewIssue issue = new CodeReviewIssue(reviewId, category);
+        issue.setSeverity(severity != null ? severity.name() : null);
+        issue.setType(truncate(type, 255));
+        issue.setDescription(truncate(description, 2000));
+        issue.setFilePath(truncate(filePath, 500));
+        issue.setLineNumber(lineNumber);
+        issue.setSuggestion(truncate(suggestion, 2000));
+        return issue;
+    }
+
+    private CodeReviewResponse toResponse(CodeReview review, List<CodeReviewIssue> issues) {
+        CodeReviewResponse response = new CodeReviewResponse(review.getReviewId(), review.getProjectId(),
+                review.getMergeRequestId());
+        response.setStatus(review.getStatus());
+        response.setSummary(review.getSummary());
+        response.setDetailedAnalysis(review.getDetailedAnalysis());
+        response.setOverallScore(review.getOverallScore() != null ? review.getOverallScore() : 0);
+        response.setProcessingTimeMs(review.getProcessingTimeMs() != null ? review.getProcessingTimeMs() : 0);
+        response.setPromptTokens(review.getPromptTokens() != null ? review.getPromptTokens() : 0);
+        response.setCompletionTokens(review.getCompletionTokens() != null ? review.getCompletionTokens() : 0);
+        response.setCreatedAt(review.getCreatedAt());
+
+        List<CodeReviewResponse.SecurityIssue> securityIssues = new ArrayList<>();
+        List<CodeReviewResponse.PerformanceIssue> performanceIssues = new ArrayList<>();
+        List<CodeReviewResponse.CodeQualityIssue> codeQualityIssues = new ArrayList<>();
+        for (CodeReviewIssue issue : issues) {
+            switch (issue.getCategory()) {
+                case SECURITY -> {
+                    CodeReviewResponse.SecurityIssue target = new CodeReviewResponse.SecurityIssue(
+                            parseSeverity(CodeReviewResponse.SecurityIssue.Severity.class, issue.getSeverity()),
+                            issue.getType(), issue.getDescription());
+                    target.setFilePath(issue.getFilePath());
+                    target.setLineNumber(issue.getLineNumber());
+                    target.setSuggestion(issue.getSuggestion());
+                    securityIssues.add(target);
+                }
+                case PERFORMANCE -> {
+                    CodeReviewResponse.PerformanceIssue target = new CodeReviewResponse.PerformanceIssue(
+                            parseSeverity(CodeReviewResponse.PerformanceIssue.Severity.class, issue.getSeverity()),
+                            issue.getType(), issue.getDescription());
+                    target.setFilePath(issue.getFilePath());
+                    target.setLineNumber(issue.getLineNumber());
+                    target.setOptimizationSuggestion(issue.getSuggestion());
+                    performanceIssues.add(target);
+                }
+                case CODE_QUALITY -> {
+                    CodeReviewResponse.CodeQualityIssue target = new CodeReviewResponse.CodeQualityIssue(
+                            parseSeverity(CodeReviewResponse.CodeQualityIssue.Severity.class, issue.getSeverity()),
+                            issue.getType(), issue.getDescription());
+                    target.setFilePath(issue.getFilePath());
+                    target.setLineNumber(issue.getLineNumber());
+                    target.setBestPracticeSuggestion(issue.getSuggestion());
+                    codeQualityIssues.add(target);
+                }
+            }
+        }
+        response.setSecurityIssues(securityIssues);
+        response.setPerformanceIssues(performanceIssues);
+        response.setCodeQualityIssues(codeQualityIssues);
+        return response;
+    }
+
+    private CodeReviewResponse toStatusResponse(CodeReviewRepository.StatusView view) {
+        CodeReviewResponse response = new CodeReviewResponse(view.getReviewId(), view.getProjectId(),
+                view.getMergeRequestId());
+        response.setStatus(view.getStatus());
+        response.setSummary(view.getSummary());
+        response.setOverallScore(view.getOverallScore() != null ? view.getOverallScore() : 0);
+        response.setProcessingTimeMs(view.getProcessingTimeMs() != null ? view.getProcessingTimeMs() : 0);
+        response.setPromptTokens(view.getPromptTokens() != null ? view.getPromptTokens() : 0);
+        response.setCompletionTokens(view.getCompletionTokens() != null ? view.getCompletionTokens() : 0);
+        response.setCreatedAt(view.getCreatedAt());
+        return response;
+    }
+
+    private CodeReviewResponse toStatusResponse(CodeReviewResponse source) {
+        CodeReviewResponse response = new CodeReviewResponse(source.getReviewId(), source.getProjectId(),
+                source.getMergeRequestId());
+        response.setStatus(source.getStatus());
+        response.setSummary(source.getSummary());
+        response.setOverallScore(source.getOverallScore());
+        response.setProcessingTimeMs(source.getProcessingTimeMs());
+        response.setPromptTokens(source.getPromptTokens());
+        response.setCompletionTokens(source.getCompletionTokens());
+        response.setCreatedAt(source.getCreatedAt());
+        return response;
+    }
+
+    private CodeReviewResponse copyOf(CodeReviewResponse source) {
+        CodeReviewResponse copy = toStatusResponse(source);
+        copy.setDetailedAnalysis(source.getDetailedAnalysis());
+        copy.setSecurityIssues(source.getSecurityIssues());
+        copy.setPerformanceIssues(source.getPerformanceIssues());
+        copy.setCodeQualityIssues(source.getCodeQualityIssues());
+        copy.setRecommendations(source.getRecommendations());
+        return copy;
+    }
+
+    private static <E extends Enum<E>> E parseSeverity(Class<E> type, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
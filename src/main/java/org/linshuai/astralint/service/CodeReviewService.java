@@ -30,6 +30,9 @@ public class CodeReviewService {
     @Autowired
     private AiCodeReviewService aiCodeReviewService;
 
+    @Autowired
+    private ScmClientRegistry scmClientRegistry;
+
     private ObjectMapper objectMapper;
 
     public void init() {
@@ -83,7 +86,7 @@ public class CodeReviewService {
             String diffs = getMergeRequestDiffs(projectId, mrIid);
 
             // 使用AI分析代码差异
-            String reviewComments = aiCodeReviewService.analyzeCodeDiffs(diffs);
+            String reviewComments = aiCodeReviewService.analyzeCodeDiffs(diffs, String.valueOf(projectId));
 
             // 在实际应用中，我们会将审查结果作为评论添加到合并请求中
             logger.info("Code review for MR #{} completed:\n{}", mrIid, reviewComments);
@@ -103,7 +106,7 @@ public class CodeReviewService {
             headers.set("PRIVATE-TOKEN", gitlabToken);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            RestTemplate restTemplate = new RestTemplate();
+            RestTemplate restTemplate = scmClientRegistry.getRestTemplate();
             ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
 
             return response.getBody();
@@ -0,0 +1,383 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.gitlab4j.api.GitLabApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 外部依赖保护：每个依赖（GitLab、GitHub、Gitee、各AI模型）独立的熔断器和舱壁
+ * 代码仓库API在各自的有界线程池中执行并设置硬性截止时间；AI调用已在aiCallExecutor中受截止时间约束，
+ * 这里只用信号量限制单个模型占用的线程数。某个依赖故障时快速失败，不会耗尽其他依赖的容量
+ */
+@Component
+public class DependencyGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(DependencyGuard.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.resilience.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${astralint.resilience.sliding-window-size:20}")
+    private int slidingWindowSize;
+
+    @Value("${astralint.resilience.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${astralint.resilience.open-duration:30s}")
+    private Duration openDuration;
+
+    @Value("${astralint.resilience.half-open-calls:2}")
+    private int halfOpenCalls;
+
+    @Value("${astralint.resilience.scm.max-concurrent-calls:10}")
+    private int scmMaxConcurrentCalls;
+
+    // 线程全忙时允许排队的调用数，排队时间计入截止时间
+    @Value("${astralint.resilience.scm.queue-capacity:10}")
+    private int scmQueueCapacity;
+
+    @Value("${astralint.resilience.scm.timeout:60s}")
+    private Duration scmTimeout;
+
+    @Value("${astralint.resilience.ai.max-concurrent-calls:16}")
+    private int aiMaxConcurrentCalls;
+
+    private final ConcurrentHashMap<String, Dependency> dependencies = new ConcurrentHashMap<>();
+
+    /**
+     * 在依赖独立的线程池中执行调用，超过截止时间后中断并抛出TimeoutException
+     * 熔断打开或线程池及队列已满时直接抛出IllegalStateException
+     */
+    public <T> T call(String dependency, Callable<T> callable) throws Exception {
+        Dependency guarded = dependencies.computeIfAbsent(dependency, name -> createDependency(name, true));
+        permit(guarded);
+
+        Future<T> future;
+        try {
+            future = guarded.executor.submit(callable);
+        } catch (RejectedExecutionException e) {
+            guarded.breaker.onIgnored();
+            throw reject(guarded, "bulkhead");
+        }
+
+        try {
+            T result = future.get(scmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            guarded.breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            guarded.breaker.onFailure(System.nanoTime());
+            throw new TimeoutException(dependency + " 调用超过截止时间(" + scmTimeout.toMillis() + "ms)");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            recordOutcome(guarded, cause);
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            guarded.breaker.onIgnored();
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * 在当前线程执行调用，只做熔断和并发数限制，截止时间由调用方负责
+     */
+    public <T> T callInline(String dependency, Supplier<T> supplier) {
+        Permit permit = acquire(dependency);
+        try {
+            T result = supplier.get();
+            permit.succeeded();
+            return result;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 被调用方取消（如对冲请求中输掉的一方），不代表依赖故障
+                permit.cancelled();
+            } else {
+                permit.failed(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 获取熔断和并发许可，用于不在单次方法调用内结束的请求（如流式AI调用）
+     * 请求结束时必须调用返回许可的succeeded、failed或cancelled之一，熔断打开或并发已满时直接抛出IllegalStateException
+     */
+    public Permit acquire(String dependency) {
+        Dependency guarded = dependencies.computeIfAbsent(dependency, name -> createDependency(name, false));
+        permit(guarded);
+        if (!guarded.semaphore.tryAcquire()) {
+            guarded.breaker.onIgnored();
+            throw reject(guarded, "bulkhead");
+        }
+        return new Permit(guarded);
+    }
+
+    private void permit(Dependency guarded) {
+        if (!guarded.breaker.tryAcquire(System.nanoTime())) {
+            throw reject(guarded, "open");
+        }
+    }
+
+    private IllegalStateException reject(Dependency guarded, String reason) {
+        Counter.builder("astralint.dependency.rejected")
+                .description("被熔断或舱壁拒绝的外部调用数")
+                .tag("dependency", guarded.name)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return new IllegalStateException("open".equals(reason)
+                ? guarded.name + " 熔断中，暂停调用"
+                : guarded.name + " 并发调用已达上限");
+    }
+
+    private void recordOutcome(Dependency guarded, Throwable error) {
+        if (isDependencyFailure(error)) {
+            guarded.breaker.onFailure(System.nanoTime());
+        } else {
+            guarded.breaker.onSuccess();
+        }
+    }
+
+    /**
+     * 客户端错误（除429外的4xx，如资源不存在、权限不足）说明依赖本身可用，不计入熔断
+     */
+    static boolean isDependencyFailure(Throwable error) {
+        int status = -1;
+        if (error instanceof RestClientResponseException responseException) {
+            status = responseException.getStatusCode().value();
+        } else if (error instanceof GitLabApiException gitLabApiException) {
+            status = gitLabApiException.getHttpStatus();
+        }
+        return status < 400 || status >= 500 || status == 429;
+    }
+
+    private Dependency createDependency(String name, boolean threadPool) {
+        CircuitBreaker breaker = new CircuitBreaker(name, failureRateThreshold, slidingWindowSize, minimumCalls,
+                openDuration.toNanos(), halfOpenCalls);
+        Gauge.builder("astralint.dependency.circuit.state", breaker, b -> b.state().ordinal())
+                .description("熔断状态：0关闭，1打开，2半开")
+                .tag("dependency", name)
+                .register(meterRegistry);
+
+        if (!threadPool) {
+            return new Dependency(name, breaker, null, new Semaphore(aiMaxConcurrentCalls));
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "dependency-" + name.toLowerCase(Locale.ROOT) + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(scmMaxConcurrentCalls, scmMaxConcurrentCalls,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, scmQueueCapacity)), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Gauge.builder("astralint.dependency.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("舱壁线程池中正在执行的调用数")
+                .tag("dependency", name)
+                .register(meterRegistry);
+        return new Dependency(name, breaker, executor, null);
+    }
+
+    @PreDestroy
+    public void close() {
+        dependencies.values().forEach(dependency -> {
+            if (dependency.executor != null) {
+                dependency.executor.shutdownNow();
+            }
+        });
+    }
+
+    private record Dependency(String name, CircuitBreaker breaker, ThreadPoolExecutor executor, Semaphore semaphore) {
+    }
+
+    /**
+     * 一次请求占用的熔断和并发许可，记录结果并归还并发名额，重复调用时只有第一次生效
+     */
+    public final class Permit {
+
+        private final Dependency guarded;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Dependency guarded) {
+            this.guarded = guarded;
+        }
+
+        public void succeeded() {
+            if (released.compareAndSet(false, true)) {
+                guarded.breaker.onSuccess();
+                guarded.semaphore.release();
+            }
+        }
+
+        public void failed(Throwable error) {
+            if (released.compareAndSet(false, true)) {
+                recordOutcome(guarded, error);
+                guarded.semaphore.release();
+            }
+        }
+
+        /**
+         * 请求被调用方取消，不代表依赖故障
+         */
+        public void cancelled() {
+            if (released.compareAndSet(false, true)) {
+                guarded.breaker.onIgnored();
+                guarded.semaphore.release();
+            }
+        }
+    }
+
+    /**
+     * 基于最近N次调用失败率的熔断器
+     * 关闭：失败率超过阈值时打开；打开：等待一段时间后转为半开；
+     * 半开：放行少量探测调用，全部成功则关闭，任一失败则重新打开
+     */
+    static final class CircuitBreaker {
+
+        enum State {
+            CLOSED, OPEN, HALF_OPEN
+        }
+
+        private final String name;
+        private final double failureRateThreshold;
+        private final int minimumCalls;
+        private final long openDurationNanos;
+        private final int halfOpenCalls;
+        private final boolean[] outcomes;
+
+        // 以下字段由this保护
+        private State state = State.CLOSED;
+        private int recorded;
+        private int next;
+        private int failures;
+        private long openedAt;
+        private int halfOpenInFlight;
+        private int halfOpenSuccesses;
+
+        CircuitBreaker(String name, double failureRateThreshold, int slidingWindowSize, int minimumCalls,
+                       long openDurationNanos, int halfOpenCalls) {
+            this.name = name;
+            this.failureRateThreshold = failureRateThreshold;
+            this.outcomes = new boolean[Math.max(1, slidingWindowSize)];
+            this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+            this.openDurationNanos = openDurationNanos;
+            this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (state == State.OPEN) {
+                if (now - openedAt < openDurationNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                halfOpenInFlight = 0;
+                halfOpenSuccesses = 0;
+                logger.info("{} 熔断进入半开状态，放行 {} 次探测调用", name, halfOpenCalls);
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenInFlight >= halfOpenCalls) {
+                    return false;
+                }
+                halfOpenInFlight++;
+            }
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            if (state == State.HALF_OPEN) {
+                if (++halfOpenSuccesses >= halfOpenCalls) {
+                    close();
+                }
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+        }
+
+        synchronized void onFailure(long now) {
+            if (state == State.HALF_OPEN) {
+                open(now);
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+                    open(now);
+                }
+            }
+        }
+
+        /**
+         * 调用未真正发出（被舱壁拒绝或被中断），归还半开状态的探测名额
+         */
+        synchronized void onIgnored() {
+            if (state == State.HALF_OPEN && halfOpenInFlight > 0) {
+                halfOpenInFlight--;
+            }
+        }
+
+        private void record(boolean failure) {
+            if (recorded == outcomes.length) {
+                if (outcomes[next]) {
+                    failures--;
+                }
+            } else {
+                recorded++;
+            }
+            outcomes[next] = failure;
+            if (failure) {
+                failures++;
+            }
+            next = (next + 1) % outcomes.length;
+        }
+
+        private void open(long now) {
+            logger.warn("{} 失败率过高，熔断打开 {}ms", name, TimeUnit.NANOSECONDS.toMillis(openDurationNanos));
+            state = State.OPEN;
+            openedAt = now;
+        }
+
+        private void close() {
+            logger.info("{} 探测调用成功，熔断关闭", name);
+            state = State.CLOSED;
+            recorded = 0;
+            next = 0;
+            failures = 0;
+        }
+    }
+}
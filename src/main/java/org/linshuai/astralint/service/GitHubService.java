@@ -1,8 +1,11 @@
 package org.linshuai.astralint.service;
 
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.constant.CodeReviewConstants;
 import org.linshuai.astralint.entity.RepositoryConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -10,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,7 +24,31 @@ public class GitHubService {
 
     private static final Logger logger = LoggerFactory.getLogger(GitHubService.class);
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // 比较接口单次响应最多返回的变更文件数，达到上限时文件列表可能不完整
+    private static final int MAX_COMPARE_FILES = 300;
+
+    @Autowired
+    private ScmClientRegistry scmClientRegistry;
+
+    @Autowired
+    private DependencyGuard dependencyGuard;
+
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() {
+        // 使用共享的连接池客户端，避免每次请求重新建立TLS连接
+        this.restTemplate = scmClientRegistry.getRestTemplate();
+    }
+
+    /**
+     * 通过GitHub的熔断器和舱壁发送请求，超过截止时间的请求被中断
+     */
+    private <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                           Class<T> responseType) throws Exception {
+        return dependencyGuard.call(CodeReviewConstants.REPOSITORY_TYPE_GITHUB,
+                () -> restTemplate.exchange(url, method, entity, responseType));
+    }
 
     /**
      * 获取GitHub API请求头
@@ -43,7 +71,7 @@ public class GitHubService {
             HttpHeaders headers = getGitHubHeaders(config);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.GET, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
@@ -53,7 +81,7 @@ public class GitHubService {
 
                     if (diffUrl != null) {
                         // 获取diff内容
-                        ResponseEntity<String> diffResponse = restTemplate.exchange(
+                        ResponseEntity<String> diffResponse = exchange(
                                 diffUrl, HttpMethod.GET, entity, String.class);
 
                         if (diffResponse.getStatusCode().is2xxSuccessful() && diffResponse.getBody() != null) {
@@ -72,6 +100,71 @@ public class GitHubService {
         }
     }
 
+    /**
+     * 获取两个提交之间的diff内容（三点比较，基于合并基准），用于增量审查
+     * 一次比较请求同时取得status和各文件的patch：status为ahead（或identical）表示headSha是baseSha的快进，
+     * 否则（rebase或强制推送后）合并基准之后的上游提交会混入diff，返回null由调用方回退为全量审查；
+     * 比较失败（例如强制推送后旧提交已不存在）或变更文件达到单次响应上限时同样返回null
+     */
+    public String getCompareDiff(RepositoryConfig config, String baseSha, String headSha) {
+        try {
+            // 分页时文件列表只在第一页返回，per_page=1只带一个提交，减少响应体积
+            String apiUrl = String.format("https://api.github.com/repos/%s/compare/%s...%s?per_page=1",
+                    config.getRepositoryName(), baseSha, headSha);
+
+            HttpEntity<String> entity = new HttpEntity<>(getGitHubHeaders(config));
+            ResponseEntity<Map> response = exchange(apiUrl, HttpMethod.GET, entity, Map.class);
+
+            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+                logger.warn("获取GitHub提交比较diff失败: repo={}, base={}, head={}, status={}",
+                        config.getRepositoryName(), baseSha, headSha, response.getStatusCode());
+                return null;
+            }
+
+            Object status = response.getBody().get("status");
+            if (!"ahead".equals(status) && !"identical".equals(status)) {
+                logger.info("GitHub提交 {} 不是 {} 的祖先（rebase或强制推送），不进行增量比较: repo={}",
+                        baseSha, headSha, config.getRepositoryName());
+                return null;
+            }
+
+            Object files = response.getBody().get("files");
+            if (!(files instanceof List<?> fileList)) {
+                return "";
+            }
+            if (fileList.size() >= MAX_COMPARE_FILES) {
+                logger.info("GitHub提交比较 {}...{} 的变更文件达到{}个上限，不进行增量比较: repo={}",
+                        baseSha, headSha, MAX_COMPARE_FILES, config.getRepositoryName());
+                return null;
+            }
+            return toUnifiedDiff(fileList);
+
+        } catch (Exception e) {
+            logger.error("获取GitHub提交比较diff时发生异常: repo={}, base={}, head={}",
+                    config.getRepositoryName(), baseSha, headSha, e);
+            return null;
+        }
+    }
+
+    /**
+     * 把比较结果中各文件的patch拼接为git统一格式的diff，没有patch的文件（二进制文件、纯重命名、过大的文件）被忽略
+     */
+    private static String toUnifiedDiff(List<?> files) {
+        StringBuilder diff = new StringBuilder();
+        for (Object item : files) {
+            if (item instanceof Map<?, ?> file && file.get("filename") != null && file.get("patch") != null) {
+                String newPath = String.valueOf(file.get("filename"));
+                String oldPath = file.get("previous_filename") != null
+                        ? String.valueOf(file.get("previous_filename")) : newPath;
+                diff.append("diff --git a/").append(oldPath).append(" b/").append(newPath).append('\n')
+                        .append("--- a/").append(oldPath).append('\n')
+                        .append("+++ b/").append(newPath).append('\n')
+                        .append(file.get("patch")).append('\n');
+            }
+        }
+        return diff.toString();
+    }
+
     /**
      * 添加Pull Request评论
      */
@@ -85,7 +178,7 @@ public class GitHubService {
 
             HttpEntity<Map<String, String>> entity = new HttpEntity<>(requestBody, headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.POST, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
@@ -113,7 +206,7 @@ public class GitHubService {
             HttpHeaders headers = getGitHubHeaders(config);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.GET, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
@@ -141,7 +234,7 @@ public class GitHubService {
             HttpHeaders headers = getGitHubHeaders(config);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.GET, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
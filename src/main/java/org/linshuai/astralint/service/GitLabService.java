@@ -1,17 +1,25 @@
 package org.linshuai.astralint.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Commit;
+import org.gitlab4j.api.models.CompareResults;
 import org.gitlab4j.api.models.Diff;
 import org.gitlab4j.api.models.MergeRequest;
+import org.linshuai.astralint.constant.CodeReviewConstants;
 import org.linshuai.astralint.entity.RepositoryConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * GitLab服务类
@@ -20,14 +28,29 @@ import java.util.stream.Collectors;
 public class GitLabService {
     
     private static final Logger logger = LoggerFactory.getLogger(GitLabService.class);
+    
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    private ScmClientRegistry scmClientRegistry;
+
+    @Autowired
+    private DependencyGuard dependencyGuard;
 
     /**
-     * 获取GitLab API客户端
+     * 获取GitLab API客户端，同一实例和token的客户端会被复用
      */
     private GitLabApi getGitLabApi(RepositoryConfig config) {
         // 从仓库URL中提取GitLab基础URL
         String baseUrl = extractGitLabBaseUrl(config.getRepositoryUrl());
-        return new GitLabApi(baseUrl, config.getAccessToken());
+        return scmClientRegistry.getGitLabApi(baseUrl, config.getAccessToken());
+    }
+    
+    /**
+     * 通过GitLab的熔断器和舱壁执行API调用，超过截止时间的调用被中断
+     */
+    private <T> T execute(Callable<T> call) throws Exception {
+        return dependencyGuard.call(CodeReviewConstants.REPOSITORY_TYPE_GITLAB, call);
     }
     
     /**
@@ -58,15 +81,15 @@ public class GitLabService {
             Integer projectId = Integer.parseInt(config.getProjectId());
             Long mrId = Long.parseLong(mergeRequestId);
             
-            MergeRequest mergeRequest = gitLabApi.getMergeRequestApi().getMergeRequest(projectId, mrId);
+            MergeRequest mergeRequest = execute(() -> gitLabApi.getMergeRequestApi().getMergeRequest(projectId, mrId));
             if (mergeRequest == null) {
                 logger.warn("未找到Merge Request: projectId={}, mrId={}", projectId, mrId);
                 return null;
             }
             
             // 获取MR的变更内容
-            List<String> changes = gitLabApi.getMergeRequestApi().getMergeRequestChanges(projectId, mrId).getChanges().stream().map(Diff::getDiff).collect(Collectors.toUnmodifiableList());
-            return String.join("\n", changes);
+            List<Diff> changes = execute(() -> gitLabApi.getMergeRequestApi().getMergeRequestChanges(projectId, mrId)).getChanges();
+            return toChangesJson(changes);
             
         } catch (GitLabApiException e) {
             logger.error("获取GitLab MR diff失败: projectId={}, mrId={}", config.getProjectId(), mergeRequestId, e);
@@ -77,6 +100,48 @@ public class GitLabService {
         }
     }
     
+    /**
+     * 获取两个提交之间的diff内容（基于合并基准比较），用于增量审查
+     * 比较失败时返回null（例如强制推送后旧提交已不存在）；fromSha不是toSha的祖先时（rebase或强制推送后）
+     * 合并基准之后的上游提交会混入diff，同样返回null，由调用方回退为全量审查
+     */
+    public String getCompareDiff(RepositoryConfig config, String fromSha, String toSha) {
+        try {
+            GitLabApi gitLabApi = getGitLabApi(config);
+            Integer projectId = Integer.parseInt(config.getProjectId());
+            
+            Commit mergeBase = execute(() -> gitLabApi.getRepositoryApi().getMergeBase(projectId, List.of(fromSha, toSha)));
+            if (mergeBase == null || !fromSha.equalsIgnoreCase(mergeBase.getId())) {
+                logger.info("GitLab提交 {} 不是 {} 的祖先（rebase或强制推送），不进行增量比较: projectId={}",
+                        fromSha, toSha, config.getProjectId());
+                return null;
+            }
+            
+            CompareResults compareResults = execute(() -> gitLabApi.getRepositoryApi().compare(projectId, fromSha, toSha, false));
+            return toChangesJson(compareResults.getDiffs());
+            
+        } catch (GitLabApiException e) {
+            logger.error("获取GitLab提交比较diff失败: projectId={}, from={}, to={}", config.getProjectId(), fromSha, toSha, e);
+            return null;
+        } catch (Exception e) {
+            logger.error("获取GitLab提交比较diff时发生异常: projectId={}, from={}, to={}", config.getProjectId(), fromSha, toSha, e);
+            return null;
+        }
+    }
+    
+    /**
+     * 转换为GitLab changes格式：{"changes": [{"new_path": ..., "diff": ...}]}
+     */
+    private String toChangesJson(List<Diff> diffs) throws JsonProcessingException {
+        List<Map<String, String>> changes = new ArrayList<>();
+        if (diffs != null) {
+            for (Diff diff : diffs) {
+                changes.add(Map.of("new_path", diff.getNewPath(), "diff", diff.getDiff() != null ? diff.getDiff() : ""));
+            }
+        }
+        return OBJECT_MAPPER.writeValueAsString(Map.of("changes", changes));
+    }
+    
     /**
      * 添加Merge Request评论
      */
@@ -87,7 +152,7 @@ public class GitLabService {
             Long mrId = Long.parseLong(mergeRequestId);
             
             // 使用MergeRequestApi添加评论
-            gitLabApi.getNotesApi().createMergeRequestNote(projectId,mrId,comment,new Date(), true);
+            execute(() -> gitLabApi.getNotesApi().createMergeRequestNote(projectId, mrId, comment, new Date(), true));
             logger.info("成功添加GitLab MR评论: projectId={}, mrId={}", projectId, mrId);
             return true;
             
@@ -107,7 +172,7 @@ public class GitLabService {
         try {
             GitLabApi gitLabApi = getGitLabApi(config);
             // 尝试获取当前用户信息来测试连接
-            gitLabApi.getUserApi().getCurrentUser();
+            execute(() -> gitLabApi.getUserApi().getCurrentUser());
             logger.info("GitLab连接测试成功: {}", config.getRepositoryUrl());
             return true;
         } catch (Exception e) {
@@ -123,7 +188,7 @@ public class GitLabService {
         try {
             GitLabApi gitLabApi = getGitLabApi(config);
             Integer projectId = Integer.parseInt(config.getProjectId());
-            return gitLabApi.getProjectApi().getProject(projectId);
+            return execute(() -> gitLabApi.getProjectApi().getProject(projectId));
         } catch (Exception e) {
             logger.error("获取GitLab项目信息失败: projectId={}", config.getProjectId(), e);
             return null;
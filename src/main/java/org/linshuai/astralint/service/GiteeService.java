@@ -1,8 +1,12 @@
 package org.linshuai.astralint.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.constant.CodeReviewConstants;
 import org.linshuai.astralint.entity.RepositoryConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -10,6 +14,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,7 +26,30 @@ public class GiteeService {
 
     private static final Logger logger = LoggerFactory.getLogger(GiteeService.class);
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    private ScmClientRegistry scmClientRegistry;
+
+    @Autowired
+    private DependencyGuard dependencyGuard;
+
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() {
+        // 使用共享的连接池客户端，避免每次请求重新建立TLS连接
+        this.restTemplate = scmClientRegistry.getRestTemplate();
+    }
+
+    /**
+     * 通过Gitee的熔断器和舱壁发送请求，超过截止时间的请求被中断
+     */
+    private <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                           Class<T> responseType) throws Exception {
+        return dependencyGuard.call(CodeReviewConstants.REPOSITORY_TYPE_GITEE,
+                () -> restTemplate.exchange(url, method, entity, responseType));
+    }
 
     /**
      * 获取Gitee API请求头
@@ -43,7 +72,7 @@ public class GiteeService {
             HttpHeaders headers = getGiteeHeaders(config);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.GET, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
@@ -53,7 +82,7 @@ public class GiteeService {
 
                     if (diffUrl != null) {
                         // 获取diff内容
-                        ResponseEntity<String> diffResponse = restTemplate.exchange(
+                        ResponseEntity<String> diffResponse = exchange(
                                 diffUrl, HttpMethod.GET, entity, String.class);
 
                         if (diffResponse.getStatusCode().is2xxSuccessful() && diffResponse.getBody() != null) {
@@ -72,6 +101,61 @@ public class GiteeService {
         }
     }
 
+    /**
+     * 获取两个提交之间的diff内容，用于增量审查，转换为GitLab changes格式
+     * 比较失败时返回null（例如强制推送后旧提交已不存在）；baseSha不是headSha的祖先时（rebase或强制推送后）
+     * 合并基准之后的上游提交会混入diff，同样返回null，由调用方回退为全量审查
+     */
+    public String getCompareDiff(RepositoryConfig config, String baseSha, String headSha) {
+        try {
+            String apiUrl = String.format("https://gitee.com/api/v5/repos/%s/compare/%s...%s",
+                    config.getRepositoryName(), baseSha, headSha);
+
+            HttpHeaders headers = getGiteeHeaders(config);
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+
+            ResponseEntity<Map> response = exchange(
+                    apiUrl, HttpMethod.GET, entity, Map.class);
+
+            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                // 合并基准等于baseSha时baseSha才是headSha的祖先
+                Object mergeBase = response.getBody().get("merge_base_commit");
+                Object mergeBaseSha = mergeBase instanceof Map<?, ?> commit ? commit.get("sha") : null;
+                if (mergeBaseSha == null || !baseSha.equalsIgnoreCase(String.valueOf(mergeBaseSha))) {
+                    logger.info("Gitee提交 {} 不是 {} 的祖先（rebase或强制推送），不进行增量比较: repo={}",
+                            baseSha, headSha, config.getRepositoryName());
+                    return null;
+                }
+
+                List<Map<String, String>> changes = new ArrayList<>();
+                Object files = response.getBody().get("files");
+                if (files instanceof List<?> fileList) {
+                    for (Object item : fileList) {
+                        if (item instanceof Map<?, ?> file && file.get("filename") != null) {
+                            // patch可能是字符串，也可能是包含diff字段的对象
+                            Object patch = file.get("patch");
+                            Object diff = patch instanceof Map<?, ?> patchMap ? patchMap.get("diff") : patch;
+                            if (diff != null) {
+                                changes.add(Map.of("new_path", String.valueOf(file.get("filename")),
+                                        "diff", String.valueOf(diff)));
+                            }
+                        }
+                    }
+                }
+                return OBJECT_MAPPER.writeValueAsString(Map.of("changes", changes));
+            }
+
+            logger.warn("获取Gitee提交比较diff失败: repo={}, base={}, head={}",
+                    config.getRepositoryName(), baseSha, headSha);
+            return null;
+
+        } catch (Exception e) {
+            logger.error("获取Gitee提交比较diff时发生异常: repo={}, base={}, head={}",
+                    config.getRepositoryName(), baseSha, headSha, e);
+            return null;
+        }
+    }
+
     /**
      * 添加Pull Request评论
      */
@@ -85,7 +169,7 @@ public class GiteeService {
 
             HttpEntity<Map<String, String>> entity = new HttpEntity<>(requestBody, headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.POST, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
@@ -113,7 +197,7 @@ public class GiteeService {
             HttpHeaders headers = getGiteeHeaders(config);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.GET, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
@@ -141,7 +225,7 @@ public class GiteeService {
             HttpHeaders headers = getGiteeHeaders(config);
             HttpEntity<String> entity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map> response = restTemplate.exchange(
+            ResponseEntity<Map> response = exchange(
                     apiUrl, HttpMethod.GET, entity, Map.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
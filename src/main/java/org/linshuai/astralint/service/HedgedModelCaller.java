@@ -0,0 +1,274 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * AI模型调用的对冲与故障转移
+ * 主模型超过其近期延迟的指定分位数仍未返回时，向备选模型发送同一请求，先返回者胜出，另一个被中断取消；
+ * 主模型调用失败时立即转移到备选模型；调用线程池已满时直接失败，不在调用线程上发出不受超时约束的请求
+ */
+@Component
+public class HedgedModelCaller {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedModelCaller.class);
+
+    @Autowired
+    @Qualifier("aiCallExecutor")
+    private ThreadPoolTaskExecutor aiCallExecutor;
+
+    @Autowired
+    private ModelRateLimiter modelRateLimiter;
+
+    @Autowired
+    private DependencyGuard dependencyGuard;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.code-review.hedging.enabled:true}")
+    private boolean hedgingEnabled;
+
+    @Value("${ai.code-review.hedging.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${ai.code-review.hedging.min-delay:1000}")
+    private long minHedgeDelayMs;
+
+    // 延迟样本不足时使用的对冲等待时间
+    @Value("${ai.code-review.hedging.initial-delay:10000}")
+    private long initialHedgeDelayMs;
+
+    @Value("${ai.code-review.hedging.min-samples:20}")
+    private int minSamples;
+
+    @Value("${ai.code-review.hedging.window-size:200}")
+    private int windowSize;
+
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * 按路由顺序调用模型：第一个为主模型，第二个用于对冲和故障转移
+     *
+     * @param routes      AiModelRouter返回的模型列表
+     * @param inputTokens 预估的输入token数，用于按模型限流
+     * @param invocation  使用给定路由的ChatClient完成一次调用
+     */
+    public String call(List<AiModelRouter.Route> routes, int inputTokens, Function<AiModelRouter.Route, String> invocation) {
+        AiModelRouter.Route secondary = routes.size() > 1 ? routes.get(1) : null;
+        return new HedgedCall(routes.get(0), secondary, inputTokens, invocation).await();
+    }
+
+    /**
+     * 对冲等待时间：主模型近期延迟的分位数，样本不足时使用初始值
+     */
+    long hedgeDelayMs(String modelName) {
+        LatencyWindow window = latencies.get(modelName);
+        long percentileMs = window != null ? window.percentile(hedgePercentile, minSamples) : -1;
+        return Math.max(minHedgeDelayMs, percentileMs >= 0 ? percentileMs : initialHedgeDelayMs);
+    }
+
+    /**
+     * 在当前线程调用模型并记录延迟，延迟包含等待限流额度的时间
+     * 先在模型的限流队列中等待额度，取得额度后才占用舱壁名额，排队中的调用不占用ai.max-concurrent-calls；
+     * 模型熔断打开时直接失败，由调用方转移到备选模型
+     */
+    private String invoke(AiModelRouter.Route route, int inputTokens, Function<AiModelRouter.Route, String> invocation) {
+        long start = System.nanoTime();
+        String response = modelRateLimiter.execute(route.modelName(), inputTokens,
+                () -> dependencyGuard.callInline("AI:" + route.modelName(), () -> invocation.apply(route)));
+        long elapsed = System.nanoTime() - start;
+        latencies.computeIfAbsent(route.modelName(), name -> new LatencyWindow(windowSize))
+                .record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        Timer.builder("astralint.ai.model.latency")
+                .description("AI模型调用成功时的延迟")
+                .tag("model", route.modelName())
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        return response;
+    }
+
+    private void countBackupRequest(String modelName, String reason) {
+        Counter.builder("astralint.ai.model.backup.requests")
+                .description("对冲和故障转移发往备选模型的请求数")
+                .tag("model", modelName)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void countRejected(String modelName) {
+        Counter.builder("astralint.ai.model.rejected.requests")
+                .description("调用线程池已满而未发出的AI模型请求数")
+                .tag("model", modelName)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 单次对冲调用的状态，主模型和备选模型各最多发出一次请求；没有备选模型时只受超时约束
+     */
+    private final class HedgedCall {
+
+        private final AiModelRouter.Route primary;
+        private final AiModelRouter.Route secondary;
+        private final int inputTokens;
+        private final Function<AiModelRouter.Route, String> invocation;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        // 以下字段由this保护
+        private final List<Future<?>> attempts = new ArrayList<>();
+        private int running;
+        private boolean secondaryStarted;
+
+        HedgedCall(AiModelRouter.Route primary, AiModelRouter.Route secondary, int inputTokens,
+                   Function<AiModelRouter.Route, String> invocation) {
+            this.primary = primary;
+            this.secondary = secondary;
+            this.inputTokens = inputTokens;
+            this.invocation = invocation;
+        }
+
+        String await() {
+            if (!start(primary)) {
+                countRejected(primary.modelName());
+                throw new IllegalStateException("AI模型调用并发已满，请稍后重试");
+            }
+            if (hedgingEnabled && secondary != null) {
+                CompletableFuture.delayedExecutor(hedgeDelayMs(primary.modelName()), TimeUnit.MILLISECONDS)
+                        .execute(ReviewContext.wrap(this::hedge));
+            }
+
+            long timeoutMs = secondary != null
+                    ? Math.max(primary.timeoutMs(), secondary.timeoutMs()) : primary.timeoutMs();
+            try {
+                return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException runtimeException
+                        ? runtimeException : new IllegalStateException(cause.getMessage(), cause);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("AI模型调用超时(" + timeoutMs + "ms)");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("AI模型调用被中断", e);
+            } finally {
+                cancelAll();
+            }
+        }
+
+        private synchronized boolean start(AiModelRouter.Route route) {
+            try {
+                attempts.add(aiCallExecutor.submit(() -> attempt(route)));
+                running++;
+                return true;
+            } catch (TaskRejectedException e) {
+                return false;
+            }
+        }
+
+        private void attempt(AiModelRouter.Route route) {
+            try {
+                result.complete(invoke(route, inputTokens, invocation));
+            } catch (RuntimeException e) {
+                if (!result.isDone() && !Thread.currentThread().isInterrupted()) {
+                    onFailure(route, e);
+                }
+            }
+        }
+
+        private synchronized void onFailure(AiModelRouter.Route route, RuntimeException e) {
+            running--;
+            if (secondary != null && !secondaryStarted) {
+                secondaryStarted = true;
+                logger.warn("模型 {} 调用失败，转移到 {}: {}", route.modelName(), secondary.modelName(), e.getMessage());
+                if (start(secondary)) {
+                    countBackupRequest(secondary.modelName(), "failover");
+                    return;
+                }
+            } else {
+                logger.warn("模型 {} 调用失败: {}", route.modelName(), e.getMessage());
+            }
+            if (running == 0) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private synchronized void hedge() {
+            if (result.isDone() || secondaryStarted) {
+                return;
+            }
+            if (!start(secondary)) {
+                logger.debug("调用线程池已满，跳过对模型 {} 的对冲请求", secondary.modelName());
+                return;
+            }
+            secondaryStarted = true;
+            countBackupRequest(secondary.modelName(), "hedge");
+            logger.info("模型 {} 未在 {}ms 内返回，向 {} 发送对冲请求",
+                    primary.modelName(), hedgeDelayMs(primary.modelName()), secondary.modelName());
+        }
+
+        private synchronized void cancelAll() {
+            result.completeExceptionally(new CancellationException());
+            for (Future<?> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 固定大小的延迟样本环形缓冲区
+     */
+    static final class LatencyWindow {
+
+        private final long[] samples;
+        private int size;
+        private int next;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            if (size < samples.length) {
+                size++;
+            }
+        }
+
+        /**
+         * 返回指定分位数的延迟(ms)，样本数不足时返回-1
+         */
+        synchronized long percentile(double percentile, int minSamples) {
+            if (size == 0 || size < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.max(0, Math.min(index, size - 1))];
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.linshuai.astralint.util.CodeReviewUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 按模型限流：每分钟请求数、每分钟token数和自适应并发数
+ * 并发上限按AIMD调整：成功且延迟正常时加性增长，遇到429或延迟明显升高时乘性下降；
+ * 超出限制的调用排队等待而不是直接失败，被429拒绝的调用重新排队重试
+ */
+@Component
+public class ModelRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRateLimiter.class);
+
+    @Autowired
+    private AiModelConfigService aiModelConfigService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.code-review.rate-limit.enabled:true}")
+    private boolean rateLimitEnabled;
+
+    // 0表示不限制
+    @Value("${ai.code-review.rate-limit.default-requests-per-minute:0}")
+    private int defaultRequestsPerMinute;
+
+    @Value("${ai.code-review.rate-limit.default-tokens-per-minute:0}")
+    private int defaultTokensPerMinute;
+
+    @Value("${ai.code-review.rate-limit.default-max-concurrency:8}")
+    private int defaultMaxConcurrency;
+
+    @Value("${ai.code-review.rate-limit.max-wait:120000}")
+    private long maxWaitMs;
+
+    @Value("${ai.code-review.rate-limit.max-retries:3}")
+    private int maxRetries;
+
+    // 单次延迟超过基线的倍数时视为延迟升高
+    @Value("${ai.code-review.rate-limit.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    private final ConcurrentHashMap<String, ModelLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 在模型的限流额度内执行一次调用，被429拒绝时降低并发并重新排队
+     *
+     * @param modelName   模型名称
+     * @param inputTokens 预估的输入token数，输出token数在调用完成后补扣
+     */
+    public String execute(String modelName, int inputTokens, Supplier<String> call) {
+        if (!rateLimitEnabled) {
+            return call.get();
+        }
+
+        ModelLimiter limiter = limiters.computeIfAbsent(modelName, this::createLimiter);
+        for (int attempt = 0; ; attempt++) {
+            acquire(limiter, modelName, inputTokens);
+            long start = System.nanoTime();
+            try {
+                String response = call.get();
+                limiter.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        response != null ? CodeReviewUtils.estimateTokens(response) : 0);
+                return response;
+            } catch (RuntimeException e) {
+                if (!isRateLimited(e)) {
+                    throw e;
+                }
+                limiter.onRateLimited();
+                countThrottled(modelName);
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                logger.warn("模型 {} 返回限流错误，并发上限降为 {}，重新排队({}/{})",
+                        modelName, limiter.currentLimit(), attempt + 1, maxRetries);
+            } finally {
+                limiter.release();
+            }
+        }
+    }
+
+    /**
+     * 为不在单次方法调用内结束的请求（如流式AI调用）获取限流额度，超过等待时间时抛出IllegalStateException
+     * 请求结束时必须调用返回许可的succeeded、failed或cancelled之一；被429拒绝的流式请求不重试
+     * 会阻塞等待额度，不能在响应式的非阻塞线程上调用
+     */
+    public Permit acquirePermit(String modelName, int inputTokens) {
+        if (!rateLimitEnabled) {
+            return new Permit(modelName, null);
+        }
+        ModelLimiter limiter = limiters.computeIfAbsent(modelName, this::createLimiter);
+        acquire(limiter, modelName, inputTokens);
+        return new Permit(modelName, limiter);
+    }
+
+    private void countThrottled(String modelName) {
+        Counter.builder("astralint.ai.limiter.throttled")
+                .description("被模型提供商限流(429)的调用数")
+                .tag("model", modelName)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void acquire(ModelLimiter limiter, String modelName, int inputTokens) {
+        long start = System.nanoTime();
+        try {
+            if (!limiter.acquire(inputTokens, TimeUnit.MILLISECONDS.toNanos(maxWaitMs))) {
+                throw new IllegalStateException("等待模型 " + modelName + " 的限流额度超时(" + maxWaitMs + "ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待模型限流额度时被中断", e);
+        } finally {
+            Timer.builder("astralint.ai.limiter.wait")
+                    .description("AI调用等待限流额度的时间")
+                    .tag("model", modelName)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ModelLimiter createLimiter(String modelName) {
+        ModelLimiter limiter = new ModelLimiter(latencyTolerance);
+        applyLimits(modelName, limiter);
+        Gauge.builder("astralint.ai.limiter.queue", limiter, ModelLimiter::waiting)
+                .description("等待限流额度的AI调用数")
+                .tag("model", modelName)
+                .register(meterRegistry);
+        Gauge.builder("astralint.ai.limiter.concurrency.limit", limiter, ModelLimiter::currentLimit)
+                .description("自适应并发上限")
+                .tag("model", modelName)
+                .register(meterRegistry);
+        Gauge.builder("astralint.ai.limiter.in-flight", limiter, ModelLimiter::inFlight)
+                .description("正在进行的AI调用数")
+                .tag("model", modelName)
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    private void applyLimits(String modelName, ModelLimiter limiter) {
+        Optional<AiModelConfig> config = Optional.empty();
+        try {
+            config = aiModelConfigService.getModelConfigByName(modelName);
+        } catch (Exception e) {
+            logger.warn("读取模型 {} 的限流配置失败，使用默认值: {}", modelName, e.getMessage());
+        }
+        limiter.updateLimits(
+                config.map(AiModelConfig::getRequestsPerMinute).orElse(defaultRequestsPerMinute),
+                config.map(AiModelConfig::getTokensPerMinute).orElse(defaultTokensPerMinute),
+                config.map(AiModelConfig::getMaxConcurrency).orElse(defaultMaxConcurrency));
+    }
+
+    /**
+     * 模型配置变更后就地更新限流参数，保留排队中的调用和已注册的指标
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAiModelConfigChanged(AiModelConfigChangedEvent event) {
+        limiters.forEach(this::applyLimits);
+    }
+
+    /**
+     * 判断异常是否为提供商限流（HTTP 429 或 DashScope 的 Throttling 错误）
+     */
+    public static boolean isRateLimited(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof RestClientResponseException responseException
+                    && responseException.getStatusCode().value() == 429) {
+                return true;
+            }
+            String message = e.getMessage();
+            if (message != null) {
+                String lower = message.toLowerCase(Locale.ROOT);
+                if (lower.contains("too many requests") || lower.contains("throttling")
+                        || lower.contains("rate limit")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一次请求占用的限流额度，记录结果并归还并发名额，重复调用时只有第一次生效
+     */
+    public final class Permit {
+
+        private final String modelName;
+        private final ModelLimiter limiter;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String modelName, ModelLimiter limiter) {
+            this.modelName = modelName;
+            this.limiter = limiter;
+        }
+
+        /**
+         * @param outputTokens 实际输出的token数，补扣到每分钟token额度
+         */
+        public void succeeded(int outputTokens) {
+            if (release()) {
+                limiter.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), outputTokens);
+            }
+        }
+
+        public void failed(Throwable error) {
+            if (release() && isRateLimited(error)) {
+                limiter.onRateLimited();
+                countThrottled(modelName);
+            }
+        }
+
+        public void cancelled() {
+            release();
+        }
+
+        private boolean release() {
+            if (limiter == null || !released.compareAndSet(false, true)) {
+                return false;
+            }
+            limiter.release();
+            return true;
+        }
+    }
+
+    /**
+     * 单个模型的限流状态
+     */
+    static final class ModelLimiter {
+
+        private static final double LATENCY_EWMA_ALPHA = 0.1;
+        private static final double LATENCY_BACKOFF = 0.9;
+        private static final double RATE_LIMITED_BACKOFF = 0.5;
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition changed = lock.newCondition();
+        private final double latencyTolerance;
+        private final TokenBucket requestBucket = new TokenBucket();
+        private final TokenBucket tokenBucket = new TokenBucket();
+
+        // 以下字段由lock保护
+        private int maxConcurrency = 1;
+        private double limit = 1;
+        private int inFlight;
+        private int waiting;
+        private double baselineLatencyMs = Double.NaN;
+
+        ModelLimiter(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+
+        void updateLimits(Integer requestsPerMinute, Integer tokensPerMinute, Integer maxConcurrency) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                requestBucket.setCapacity(requestsPerMinute != null ? requestsPerMinute : 0, now);
+                tokenBucket.setCapacity(tokensPerMinute != null ? tokensPerMinute : 0, now);
+                int previousMax = this.maxConcurrency;
+                this.maxConcurrency = Math.max(1, maxConcurrency != null ? maxConcurrency : 1);
+                // 首次设置或上限变化时从新的上限开始
+                if (limit >= previousMax || limit > this.maxConcurrency) {
+                    limit = this.maxConcurrency;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 等待并发名额和请求/token额度，超过等待时间返回false
+         */
+        boolean acquire(int tokens, long maxWaitNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            lock.lockInterruptibly();
+            try {
+                waiting++;
+                try {
+                    while (true) {
+                        long now = System.nanoTime();
+                        long waitNanos;
+                        if (inFlight < (int) limit) {
+                            waitNanos = Math.max(requestBucket.waitNanos(1, now), tokenBucket.waitNanos(tokens, now));
+                            if (waitNanos == 0) {
+                                requestBucket.consume(1, now);
+                                tokenBucket.consume(tokens, now);
+                                inFlight++;
+                                return true;
+                            }
+                        } else {
+                            waitNanos = Long.MAX_VALUE;
+                        }
+                        long remaining = deadline - now;
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        changed.awaitNanos(Math.min(waitNanos, remaining));
+                    }
+                } finally {
+                    waiting--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onSuccess(long latencyMs, int outputTokens) {
+            lock.lock();
+            try {
+                tokenBucket.consume(outputTokens, System.nanoTime());
+                if (!Double.isNaN(baselineLatencyMs) && latencyMs > baselineLatencyMs * latencyTolerance) {
+                    limit = Math.max(1, limit * LATENCY_BACKOFF);
+                } else {
+                    limit = Math.min(maxConcurrency, limit + 1 / limit);
+                }
+                baselineLatencyMs = Double.isNaN(baselineLatencyMs)
+                        ? latencyMs : baselineLatencyMs * (1 - LATENCY_EWMA_ALPHA) + latencyMs * LATENCY_EWMA_ALPHA;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onRateLimited() {
+            lock.lock();
+            try {
+                limit = Math.max(1, limit * RATE_LIMITED_BACKOFF);
+                requestBucket.drain(System.nanoTime());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double currentLimit() {
+            lock.lock();
+            try {
+                return limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int waiting() {
+            lock.lock();
+            try {
+                return waiting;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 每分钟容量的令牌桶，容量为0表示不限制；允许超额扣减，欠额由后续补充抵消
+     * 非线程安全，由ModelLimiter的锁保护
+     */
+    static final class TokenBucket {
+
+        private static final double NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+        private long capacity;
+        private double available;
+        private long lastRefill;
+
+        void setCapacity(long capacity, long now) {
+            refill(now);
+            if (this.capacity == 0) {
+                available = capacity;
+            }
+            this.capacity = capacity;
+            available = Math.min(available, capacity);
+        }
+
+        long waitNanos(long amount, long now) {
+            if (capacity == 0) {
+                return 0;
+            }
+            refill(now);
+            // 单次需求超过桶容量时，等到桶满即可放行
+            double needed = Math.min(amount, capacity);
+            if (available >= needed) {
+                return 0;
+            }
+            return (long) Math.ceil((needed - available) * NANOS_PER_MINUTE / capacity);
+        }
+
+        void consume(long amount, long now) {
+            if (capacity == 0) {
+                return;
+            }
+            refill(now);
+            available -= amount;
+        }
+
+        void drain(long now) {
+            if (capacity == 0) {
+                return;
+            }
+            refill(now);
+            available = Math.min(available, 0);
+        }
+
+        private void refill(long now) {
+            if (capacity > 0 && now > lastRefill) {
+                available = Math.min(capacity, available + (now - lastRefill) * capacity / NANOS_PER_MINUTE);
+            }
+            lastRefill = now;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package org.linshuai.astralint.service;
 
+import org.linshuai.astralint.constant.CodeReviewConstants;
 import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.event.RepositoryConfigChangedEvent;
 import org.linshuai.astralint.repository.RepositoryConfigRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,6 +26,12 @@ public class RepositoryConfigService {
     @Autowired
     private RepositoryConfigRepository repositoryConfigRepository;
 
+    @Autowired
+    private RepositoryRoutingTable repositoryRoutingTable;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Autowired
     private GitLabService gitLabService;
 
@@ -33,6 +44,7 @@ public class RepositoryConfigService {
     /**
      * 创建仓库配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_REPOSITORIES, allEntries = true)
     public RepositoryConfig createRepositoryConfig(RepositoryConfig config) {
         logger.info("创建仓库配置: {}", config.getRepositoryName());
 
@@ -41,12 +53,16 @@ public class RepositoryConfigService {
             throw new IllegalArgumentException("仓库名称已存在: " + config.getRepositoryName());
         }
 
-        return repositoryConfigRepository.save(config);
+        config.setRepositoryType(normalizeRepositoryType(config.getRepositoryType()));
+        RepositoryConfig saved = repositoryConfigRepository.save(config);
+        eventPublisher.publishEvent(new RepositoryConfigChangedEvent(saved.getId()));
+        return saved;
     }
 
     /**
      * 更新仓库配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_REPOSITORIES, allEntries = true)
     public RepositoryConfig updateRepositoryConfig(Long id, RepositoryConfig config) {
         logger.info("更新仓库配置: id={}", id);
 
@@ -66,7 +82,7 @@ public class RepositoryConfigService {
         // 更新字段
         existing.setRepositoryName(config.getRepositoryName());
         existing.setRepositoryUrl(config.getRepositoryUrl());
-        existing.setRepositoryType(config.getRepositoryType());
+        existing.setRepositoryType(normalizeRepositoryType(config.getRepositoryType()));
         existing.setProjectId(config.getProjectId());
         existing.setAccessToken(config.getAccessToken());
         existing.setWebhookSecret(config.getWebhookSecret());
@@ -76,12 +92,15 @@ public class RepositoryConfigService {
         existing.setReviewThreshold(config.getReviewThreshold());
         existing.setDescription(config.getDescription());
 
-        return repositoryConfigRepository.save(existing);
+        RepositoryConfig saved = repositoryConfigRepository.save(existing);
+        eventPublisher.publishEvent(new RepositoryConfigChangedEvent(id));
+        return saved;
     }
 
     /**
      * 删除仓库配置
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_REPOSITORIES, allEntries = true)
     public void deleteRepositoryConfig(Long id) {
         logger.info("删除仓库配置: id={}", id);
 
@@ -91,6 +110,7 @@ public class RepositoryConfigService {
         }
 
         repositoryConfigRepository.deleteById(id);
+        eventPublisher.publishEvent(new RepositoryConfigChangedEvent(id));
     }
 
     /**
@@ -120,11 +140,20 @@ public class RepositoryConfigService {
     /**
      * 根据仓库名称获取配置
      */
+    @Cacheable(value = CodeReviewConstants.CACHE_REPOSITORIES, key = "#repositoryName", unless = "#result == null")
     @Transactional(readOnly = true)
     public Optional<RepositoryConfig> getRepositoryConfigByName(String repositoryName) {
         return repositoryConfigRepository.findByRepositoryName(repositoryName);
     }
 
+    /**
+     * 根据仓库类型和项目ID获取配置（Webhook路由，优先走内存路由表）
+     */
+    @Transactional(readOnly = true)
+    public Optional<RepositoryConfig> getRepositoryConfigByProjectId(String repositoryType, String projectId) {
+        return repositoryRoutingTable.findByProjectId(normalizeRepositoryType(repositoryType), projectId);
+    }
+
     /**
      * 获取启用自动审查的仓库
      */
@@ -136,6 +165,7 @@ public class RepositoryConfigService {
     /**
      * 切换仓库状态
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_REPOSITORIES, allEntries = true)
     public RepositoryConfig toggleRepositoryStatus(Long id) {
         logger.info("切换仓库状态: id={}", id);
 
@@ -147,12 +177,15 @@ public class RepositoryConfigService {
         RepositoryConfig repositoryConfig = config.get();
         repositoryConfig.setIsActive(!repositoryConfig.getIsActive());
 
-        return repositoryConfigRepository.save(repositoryConfig);
+        RepositoryConfig saved = repositoryConfigRepository.save(repositoryConfig);
+        eventPublisher.publishEvent(new RepositoryConfigChangedEvent(id));
+        return saved;
     }
 
     /**
      * 切换自动审查状态
      */
+    @CacheEvict(value = CodeReviewConstants.CACHE_REPOSITORIES, allEntries = true)
     public RepositoryConfig toggleAutoReview(Long id) {
         logger.info("切换自动审查状态: id={}", id);
 
@@ -164,7 +197,9 @@ public class RepositoryConfigService {
         RepositoryConfig repositoryConfig = config.get();
         repositoryConfig.setAutoReviewEnabled(!repositoryConfig.getAutoReviewEnabled());
 
-        return repositoryConfigRepository.save(repositoryConfig);
+        RepositoryConfig saved = repositoryConfigRepository.save(repositoryConfig);
+        eventPublisher.publishEvent(new RepositoryConfigChangedEvent(id));
+        return saved;
     }
 
     /**
@@ -235,4 +270,11 @@ public class RepositoryConfigService {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 仓库类型统一为大写，保证按类型的索引查询能命中
+     */
+    private String normalizeRepositoryType(String repositoryType) {
+        return repositoryType != null ? repositoryType.trim().toUpperCase(Locale.ROOT) : null;
+    }
+}
@@ -0,0 +1,69 @@
+package org.linshuai.astralint.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.event.RepositoryConfigChangedEvent;
+import org.linshuai.astralint.repository.RepositoryConfigRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Optional;
+
+/**
+ * Webhook路由表：按(仓库类型, 项目ID)缓存仓库配置
+ * 未命中时走project_id索引查询，未配置的项目也会被缓存，避免重复查库；
+ * 仓库配置变更提交后整体失效
+ */
+@Component
+public class RepositoryRoutingTable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryRoutingTable.class);
+
+    @Autowired
+    private RepositoryConfigRepository repositoryConfigRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.routing.max-entries:50000}")
+    private long maxEntries;
+
+    private Cache<String, Optional<RepositoryConfig>> routes;
+
+    @PostConstruct
+    public void init() {
+        routes = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, routes, "repositoryRoutes");
+    }
+
+    /**
+     * 根据仓库类型和项目ID查找仓库配置
+     */
+    public Optional<RepositoryConfig> findByProjectId(String repositoryType, String projectId) {
+        if (repositoryType == null || projectId == null) {
+            return Optional.empty();
+        }
+        return routes.get(repositoryType + ":" + projectId,
+                key -> repositoryConfigRepository.findFirstByProjectIdAndRepositoryType(projectId, repositoryType));
+    }
+
+    /**
+     * 仓库配置变更后清空路由表（配置变更频率很低，整体失效即可）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRepositoryConfigChanged(RepositoryConfigChangedEvent event) {
+        routes.invalidateAll();
+        logger.debug("仓库配置 {} 已变更，路由表已失效", event.getRepositoryConfigId());
+    }
+}
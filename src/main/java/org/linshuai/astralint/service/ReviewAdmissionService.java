@@ -0,0 +1,165 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.entity.ReviewJob.JobStatus;
+import org.linshuai.astralint.repository.ReviewJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Webhook准入控制：审查队列积压超过全局或单个仓库的上限时拒绝新的审查，由Webhook返回429和Retry-After
+ * 积压数由定时任务从review_jobs表统计，请求线程只读取内存中的快照并累加上次统计后准入的任务数，不访问数据库；
+ * 已有排队任务的MR的新推送会取代旧任务、不增加积压，超限时仍然准入
+ */
+@Service
+public class ReviewAdmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewAdmissionService.class);
+
+    private static final List<JobStatus> BACKLOG_STATUSES = List.of(JobStatus.PENDING, JobStatus.RUNNING);
+
+    @Autowired
+    private ReviewJobRepository reviewJobRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.admission.enabled:true}")
+    private boolean enabled;
+
+    // 所有仓库排队和执行中的审查任务总数上限
+    @Value("${astralint.admission.max-backlog:1000}")
+    private long maxBacklog;
+
+    // 单个仓库排队和执行中的审查任务数上限
+    @Value("${astralint.admission.max-backlog-per-repository:50}")
+    private long maxBacklogPerRepository;
+
+    @Value("${astralint.admission.retry-after:60s}")
+    private Duration retryAfter;
+
+    private volatile Backlog backlog = new Backlog(0, Map.of());
+
+    // 上次统计之后准入的任务数，统计完成后清零
+    private volatile Admitted admitted = new Admitted();
+
+    /**
+     * 准入结果，拒绝时包含原因和建议的重试等待秒数
+     */
+    public record Decision(boolean admitted, String reason, long retryAfterSeconds) {
+
+        static final Decision ADMITTED = new Decision(true, null, 0);
+    }
+
+    record Backlog(long total, Map<Long, Long> perRepository) {
+    }
+
+    static final class Admitted {
+        final AtomicLong total = new AtomicLong();
+        final Map<Long, AtomicLong> perRepository = new ConcurrentHashMap<>();
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("astralint.review.backlog", this, service -> service.backlog.total())
+                .description("上次统计时排队和执行中的审查任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 判断是否接受仓库的一次审查，准入时计入积压
+     *
+     * @param repositoryConfigId 仓库配置ID
+     * @param mergeRequestId     MR编号，该MR已有排队任务时新任务会取代旧任务，不受上限限制
+     */
+    public Decision tryAdmit(Long repositoryConfigId, String mergeRequestId) {
+        if (!enabled) {
+            return Decision.ADMITTED;
+        }
+
+        Backlog current = backlog;
+        Admitted recent = admitted;
+        long total = current.total() + recent.total.get();
+        AtomicLong recentForRepository = recent.perRepository.get(repositoryConfigId);
+        long repository = current.perRepository().getOrDefault(repositoryConfigId, 0L)
+                + (recentForRepository != null ? recentForRepository.get() : 0);
+
+        String reason = null;
+        if (total >= maxBacklog) {
+            reason = "global";
+        } else if (repository >= maxBacklogPerRepository) {
+            reason = "repository";
+        }
+        if (reason != null) {
+            if (replacesQueuedJob(repositoryConfigId, mergeRequestId)) {
+                record("admitted", "replace");
+                return Decision.ADMITTED;
+            }
+            record("rejected", reason);
+            logger.warn("审查队列积压过多，拒绝仓库配置 {} 的MR {}: 总积压={}, 仓库积压={}",
+                    repositoryConfigId, mergeRequestId, total, repository);
+            return new Decision(false, reason, Math.max(1, retryAfter.toSeconds()));
+        }
+
+        recent.total.incrementAndGet();
+        recent.perRepository.computeIfAbsent(repositoryConfigId, id -> new AtomicLong()).incrementAndGet();
+        record("admitted", "within-limit");
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * 从数据库重新统计积压
+     * 先换上新的准入计数再统计，统计期间准入的任务可能被重复计入，只会使准入偏保守
+     */
+    @Scheduled(fixedDelayString = "${astralint.admission.refresh-interval:1000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        Admitted previous = admitted;
+        admitted = new Admitted();
+        try {
+            Map<Long, Long> perRepository = new HashMap<>();
+            long total = 0;
+            for (ReviewJobRepository.BacklogView view : reviewJobRepository.countByRepositoryConfig(BACKLOG_STATUSES)) {
+                perRepository.put(view.getRepositoryConfigId(), view.getJobs());
+                total += view.getJobs();
+            }
+            backlog = new Backlog(total, Map.copyOf(perRepository));
+        } catch (Exception e) {
+            // 统计失败时保留上次的快照和准入计数，避免积压被低估
+            previous.total.addAndGet(admitted.total.get());
+            admitted.perRepository.forEach((id, count) ->
+                    previous.perRepository.computeIfAbsent(id, key -> new AtomicLong()).addAndGet(count.get()));
+            admitted = previous;
+            logger.error("统计审查队列积压失败", e);
+        }
+    }
+
+    private boolean replacesQueuedJob(Long repositoryConfigId, String mergeRequestId) {
+        try {
+            return reviewJobRepository.existsByRepositoryConfigIdAndMergeRequestIdAndStatusIn(
+                    repositoryConfigId, mergeRequestId, BACKLOG_STATUSES);
+        } catch (Exception e) {
+            logger.warn("查询MR {} 的排队任务失败: {}", mergeRequestId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void record(String result, String reason) {
+        meterRegistry.counter("astralint.review.admission", "result", result, "reason", reason).increment();
+    }
+}
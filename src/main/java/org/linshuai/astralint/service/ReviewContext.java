@@ -0,0 +1,108 @@
+package org.linshuai.astralint.service;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 一次审查的上下文：审查ID、所属仓库配置和本次审查累计的token用量
+ * 通过ThreadLocal绑定到执行审查的线程，审查线程池和AI调用线程池通过wrap传递给子任务
+ */
+public final class ReviewContext {
+
+    private static final ThreadLocal<ReviewContext> CURRENT = new ThreadLocal<>();
+
+    private final String reviewId;
+    private final Long repositoryConfigId;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+    private final DoubleAdder cost = new DoubleAdder();
+
+    /**
+     * @param reviewId           审查ID，用于日志和结果关联
+     * @param repositoryConfigId 仓库配置ID，临时提交的审查为null
+     */
+    public ReviewContext(String reviewId, Long repositoryConfigId) {
+        this.reviewId = reviewId;
+        this.repositoryConfigId = repositoryConfigId;
+    }
+
+    /**
+     * 当前线程所属的审查，不在审查中时返回null
+     */
+    public static ReviewContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 在本审查的上下文中执行，结束后恢复线程原来的上下文
+     */
+    public <T> T call(Supplier<T> action) {
+        ReviewContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 返回在本审查的上下文中执行task的任务，用于提交到其他线程
+     */
+    public Runnable bind(Runnable task) {
+        return () -> call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 把提交线程的审查上下文带到执行线程，可直接作为线程池的TaskDecorator
+     */
+    public static Runnable wrap(Runnable task) {
+        ReviewContext context = CURRENT.get();
+        return context != null ? context.bind(task) : task;
+    }
+
+    private static void restore(ReviewContext previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    void addUsage(long promptTokens, long completionTokens, double cost) {
+        this.calls.increment();
+        this.promptTokens.add(promptTokens);
+        this.completionTokens.add(completionTokens);
+        this.cost.add(cost);
+    }
+
+    public String getReviewId() {
+        return reviewId;
+    }
+
+    public Long getRepositoryConfigId() {
+        return repositoryConfigId;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getPromptTokens() {
+        return promptTokens.sum();
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens.sum();
+    }
+
+    public double getCost() {
+        return cost.sum();
+    }
+}
@@ -0,0 +1,73 @@
+package org.linshuai.astralint.service;
+
+import org.linshuai.astralint.entity.ReviewJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * 本实例正在执行的审查任务登记表，按(仓库, MR)索引
+ * 同一个MR有新的提交时，用于取消仍在执行的旧审查（包括进行中的AI调用）
+ */
+@Component
+public class ReviewJobRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewJobRegistry.class);
+
+    private final Map<String, RunningReview> running = new ConcurrentHashMap<>();
+
+    /**
+     * 登记开始执行的任务
+     */
+    public void register(ReviewJob job, Future<?> future) {
+        running.put(key(job.getRepositoryConfigId(), job.getMergeRequestId()),
+                new RunningReview(job.getId(), future));
+    }
+
+    /**
+     * 任务结束后注销，只有登记的仍是该任务时才移除
+     */
+    public void unregister(ReviewJob job) {
+        running.computeIfPresent(key(job.getRepositoryConfigId(), job.getMergeRequestId()),
+                (key, review) -> review.jobId().equals(job.getId()) ? null : review);
+    }
+
+    /**
+     * 取消某个MR正在执行的审查
+     *
+     * @return 是否取消了任务
+     */
+    public boolean cancel(Long repositoryConfigId, String mergeRequestId) {
+        RunningReview review = running.remove(key(repositoryConfigId, mergeRequestId));
+        if (review == null) {
+            return false;
+        }
+        logger.info("取消过期的审查任务: jobId={}, mr={}", review.jobId(), mergeRequestId);
+        return review.future().cancel(true);
+    }
+
+    /**
+     * 按任务ID取消（任务被其他实例标记为已取代时使用）
+     */
+    public boolean cancel(Long jobId) {
+        for (Map.Entry<String, RunningReview> entry : running.entrySet()) {
+            RunningReview review = entry.getValue();
+            if (review.jobId().equals(jobId) && running.remove(entry.getKey(), review)) {
+                logger.info("取消已被取代的审查任务: jobId={}", jobId);
+                return review.future().cancel(true);
+            }
+        }
+        return false;
+    }
+
+    private static String key(Long repositoryConfigId, String mergeRequestId) {
+        return repositoryConfigId + ":" + mergeRequestId;
+    }
+
+    private record RunningReview(Long jobId, Future<?> future) {
+    }
+}
@@ -0,0 +1,311 @@
+package org.linshuai.astralint.service;
+
+import org.linshuai.astralint.entity.MergeRequestReviewState;
+import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.entity.ReviewJob;
+import org.linshuai.astralint.entity.ReviewJob.JobStatus;
+import org.linshuai.astralint.entity.ReviewJobDeadLetter;
+import org.linshuai.astralint.repository.MergeRequestReviewStateRepository;
+import org.linshuai.astralint.repository.ReviewJobDeadLetterRepository;
+import org.linshuai.astralint.repository.ReviewJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 审查任务队列服务
+ * 任务持久化在数据库中，通过条件更新抢占，保证多实例下每次只有一个执行者；
+ * 执行失败按指数退避重试，重试耗尽后转入死信表；
+ * 同一MR的新提交会取代尚未完成的旧任务，并在防抖窗口内合并连续推送；
+ * 入队时锁定该MR的审查进度行，同一MR的并发Webhook依次入队，不会同时插入两个排队任务
+ */
+@Service
+@Transactional
+public class ReviewJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewJobService.class);
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private static final List<JobStatus> ACTIVE_STATUSES = List.of(JobStatus.PENDING, JobStatus.RUNNING);
+
+    @Autowired
+    private ReviewJobRepository reviewJobRepository;
+
+    @Autowired
+    private ReviewJobDeadLetterRepository deadLetterRepository;
+
+    @Autowired
+    private MergeRequestReviewStateRepository reviewStateRepository;
+
+    @Autowired
+    private ReviewJobRegistry reviewJobRegistry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${astralint.review-jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${astralint.review-jobs.backoff-initial:30s}")
+    private Duration backoffInitial;
+
+    @Value("${astralint.review-jobs.backoff-max:30m}")
+    private Duration backoffMax;
+
+    @Value("${astralint.review-jobs.lease-timeout:15m}")
+    private Duration leaseTimeout;
+
+    @Value("${astralint.review-jobs.debounce-window:15s}")
+    private Duration debounceWindow;
+
+    /**
+     * 将合并请求的审查加入队列
+     * 同一head SHA已有排队或执行中的任务时直接复用（例如只修改了MR标题）；
+     * 否则取代该MR的旧任务，并延迟一个防抖窗口执行，窗口内的后续推送会再次取代本任务
+     */
+    public ReviewJob enqueue(RepositoryConfig repositoryConfig, String mergeRequestId, String headSha) {
+        lockMergeRequest(repositoryConfig.getId(), mergeRequestId);
+
+        if (headSha != null) {
+            List<ReviewJob> sameRevision = reviewJobRepository
+                    .findByRepositoryConfigIdAndMergeRequestIdAndHeadShaAndStatusIn(
+                            repositoryConfig.getId(), mergeRequestId, headSha, ACTIVE_STATUSES);
+            if (!sameRevision.isEmpty()) {
+                logger.info("MR {} 的提交 {} 已在审查队列中，忽略重复事件", mergeRequestId, headSha);
+                return sameRevision.get(0);
+            }
+        }
+
+        int superseded = reviewJobRepository.supersede(
+                repositoryConfig.getId(), mergeRequestId, ACTIVE_STATUSES, JobStatus.SUPERSEDED);
+        if (superseded > 0) {
+            // 本实例上执行中的旧任务在提交后立即中断；其他实例在下次轮询时发现状态变化后中断
+            Long repositoryConfigId = repositoryConfig.getId();
+            afterCommit(() -> reviewJobRegistry.cancel(repositoryConfigId, mergeRequestId));
+            logger.info("MR {} 有新的提交，取代了 {} 个旧审查任务", mergeRequestId, superseded);
+        }
+
+        ReviewJob job = new ReviewJob(repositoryConfig, mergeRequestId, headSha);
+        job.setNextAttemptAt(LocalDateTime.now().plus(debounceWindow));
+        job = reviewJobRepository.save(job);
+        logger.info("审查任务已入队: jobId={}, repository={}, mr={}, head={}",
+                job.getId(), job.getRepositoryName(), mergeRequestId, headSha);
+        return job;
+    }
+
+    /**
+     * 抢占最多limit个到期任务，返回抢占成功的任务
+     */
+    public List<ReviewJob> claimDueJobs(String owner, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> dueIds = reviewJobRepository.findDueJobIds(JobStatus.PENDING, now, PageRequest.of(0, limit));
+
+        List<ReviewJob> claimed = new ArrayList<>();
+        for (Long id : dueIds) {
+            // 其他实例可能已经抢占了该任务，更新行数为0时跳过
+            if (reviewJobRepository.claim(id, owner, now, JobStatus.PENDING, JobStatus.RUNNING) == 1) {
+                reviewJobRepository.findById(id).ifPresent(claimed::add);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * 标记任务完成，并记录该MR已审查到的head SHA；任务已被放回队列或被取代时不做处理
+     */
+    public void complete(Long jobId) {
+        reviewJobRepository.findById(jobId)
+                .filter(job -> job.getStatus() == JobStatus.RUNNING)
+                .ifPresent(job -> {
+                    job.setStatus(JobStatus.COMPLETED);
+                    job.setLockedAt(null);
+                    job.setLockedBy(null);
+                    job.setLastError(null);
+                    reviewJobRepository.save(job);
+                    if (job.getHeadSha() != null) {
+                        recordReviewedSha(job);
+                    }
+                });
+    }
+
+    /**
+     * 获取MR最后一次审查完成时的head SHA，从未审查过时返回null
+     */
+    @Transactional(readOnly = true)
+    public String getLastReviewedSha(Long repositoryConfigId, String mergeRequestId) {
+        return reviewStateRepository.findByRepositoryConfigIdAndMergeRequestId(repositoryConfigId, mergeRequestId)
+                .map(MergeRequestReviewState::getLastReviewedSha)
+                .orElse(null);
+    }
+
+    /**
+     * 锁定MR的审查进度行直到当前事务结束，行不存在时先在独立事务中创建
+     * 在锁定前创建，避免本事务的锁定读（如InnoDB的间隙锁）阻塞自己的插入；并发创建时唯一约束冲突，直接使用对方创建的行
+     */
+    private void lockMergeRequest(Long repositoryConfigId, String mergeRequestId) {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            requiresNew.executeWithoutResult(status -> {
+                if (reviewStateRepository.findByRepositoryConfigIdAndMergeRequestId(
+                        repositoryConfigId, mergeRequestId).isEmpty()) {
+                    reviewStateRepository.saveAndFlush(new MergeRequestReviewState(repositoryConfigId, mergeRequestId));
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("MR {} 的审查进度已由并发请求创建", mergeRequestId);
+        }
+
+        reviewStateRepository.findForUpdate(repositoryConfigId, mergeRequestId)
+                .orElseThrow(() -> new IllegalStateException("MR " + mergeRequestId + " 的审查进度不存在，无法入队"));
+    }
+
+    private void recordReviewedSha(ReviewJob job) {
+        MergeRequestReviewState state = reviewStateRepository
+                .findByRepositoryConfigIdAndMergeRequestId(job.getRepositoryConfigId(), job.getMergeRequestId())
+                .orElseGet(() -> new MergeRequestReviewState(job.getRepositoryConfigId(), job.getMergeRequestId()));
+        state.setLastReviewedSha(job.getHeadSha());
+        reviewStateRepository.save(state);
+    }
+
+    /**
+     * 记录任务失败：未达到最大重试次数时按指数退避重新排队，否则转入死信表
+     * 任务已被放回队列时不做处理
+     *
+     * @return 任务是否已转入死信表
+     */
+    public boolean fail(Long jobId, String error) {
+        ReviewJob job = reviewJobRepository.findById(jobId).orElse(null);
+        if (job == null || job.getStatus() != JobStatus.RUNNING) {
+            return false;
+        }
+
+        job.setLastError(truncate(error));
+        job.setLockedAt(null);
+        job.setLockedBy(null);
+
+        if (job.getAttempts() >= maxAttempts) {
+            job.setStatus(JobStatus.FAILED);
+            reviewJobRepository.save(job);
+            deadLetterRepository.save(new ReviewJobDeadLetter(job));
+            logger.error("审查任务重试耗尽，已转入死信表: jobId={}, attempts={}, error={}",
+                    jobId, job.getAttempts(), error);
+            return true;
+        }
+
+        Duration delay = backoff(job.getAttempts());
+        job.setStatus(JobStatus.PENDING);
+        job.setNextAttemptAt(LocalDateTime.now().plus(delay));
+        reviewJobRepository.save(job);
+        logger.warn("审查任务失败，{}秒后重试: jobId={}, attempts={}, error={}",
+                delay.toSeconds(), jobId, job.getAttempts(), error);
+        return false;
+    }
+
+    /**
+     * 将未执行完的任务立即放回队列（优雅停机超时时使用），不计入重试次数
+     */
+    public void release(Collection<Long> jobIds) {
+        for (ReviewJob job : reviewJobRepository.findAllById(jobIds)) {
+            if (job.getStatus() != JobStatus.RUNNING) {
+                continue;
+            }
+            job.setStatus(JobStatus.PENDING);
+            job.setAttempts(Math.max(0, job.getAttempts() - 1));
+            job.setLockedAt(null);
+            job.setLockedBy(null);
+            job.setNextAttemptAt(LocalDateTime.now());
+            reviewJobRepository.save(job);
+        }
+    }
+
+    /**
+     * 回收租约过期的执行中任务（持有任务的实例已崩溃或被强制终止）
+     */
+    public int recoverStaleJobs() {
+        int recovered = reviewJobRepository.releaseStaleJobs(
+                LocalDateTime.now().minus(leaseTimeout), JobStatus.PENDING, JobStatus.RUNNING);
+        if (recovered > 0) {
+            logger.warn("回收了 {} 个租约过期的审查任务", recovered);
+        }
+        return recovered;
+    }
+
+    /**
+     * 在给定的执行中任务里找出已被新提交取代的任务
+     */
+    @Transactional(readOnly = true)
+    public List<Long> findSupersededJobIds(Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return List.of();
+        }
+        return reviewJobRepository.findIdsByIdInAndStatus(jobIds, JobStatus.SUPERSEDED);
+    }
+
+    /**
+     * 获取等待执行的任务数量
+     */
+    @Transactional(readOnly = true)
+    public long countPendingJobs() {
+        return reviewJobRepository.countByStatus(JobStatus.PENDING);
+    }
+
+    /**
+     * 获取死信列表
+     */
+    @Transactional(readOnly = true)
+    public List<ReviewJobDeadLetter> getDeadLetters() {
+        return deadLetterRepository.findAllByOrderByFailedAtDesc();
+    }
+
+    /**
+     * 第n次失败后的等待时间：initial * 2^(n-1)，不超过上限，并加入最多20%的随机抖动
+     */
+    Duration backoff(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+        long millis = Math.min(backoffInitial.toMillis() << exponent, backoffMax.toMillis());
+        long jitter = (long) (millis * 0.2 * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(millis + jitter);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
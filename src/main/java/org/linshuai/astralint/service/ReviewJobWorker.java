@@ -0,0 +1,327 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.constant.CodeReviewConstants;
+import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.entity.ReviewJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 审查任务消费者
+ * 定时从数据库抢占到期任务交给工作线程池执行；停机时停止抢占，等待执行中的任务完成，
+ * 超过等待时间仍未完成的任务会被放回队列，由下一个实例重新执行
+ */
+@Component
+public class ReviewJobWorker implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewJobWorker.class);
+
+    @Autowired
+    private ReviewJobService reviewJobService;
+
+    @Autowired
+    private RepositoryConfigService repositoryConfigService;
+
+    @Autowired
+    private AiCodeReviewService aiCodeReviewService;
+
+    @Autowired
+    private GitLabService gitLabService;
+
+    @Autowired
+    private GitHubService gitHubService;
+
+    @Autowired
+    private GiteeService giteeService;
+
+    @Autowired
+    private ReviewJobRegistry reviewJobRegistry;
+
+    @Autowired
+    @Qualifier("reviewJobExecutor")
+    private ThreadPoolTaskExecutor reviewJobExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.review-jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${astralint.review-jobs.drain-timeout:60s}")
+    private Duration drainTimeout;
+
+    /**
+     * 当前实例标识，记录在抢占的任务上便于排查
+     */
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+
+    private final Set<Long> inFlightJobs = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running = false;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("astralint.review.jobs.in_flight", inFlightJobs, Set::size)
+                .description("当前实例正在执行的审查任务数")
+                .register(meterRegistry);
+        Gauge.builder("astralint.review.jobs.pending", reviewJobService, ReviewJobService::countPendingJobs)
+                .description("等待执行的审查任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按空闲线程数抢占到期任务
+     */
+    @Scheduled(fixedDelayString = "${astralint.review-jobs.poll-interval:2000}")
+    public void poll() {
+        if (!running) {
+            return;
+        }
+
+        try {
+            cancelSupersededJobs();
+            int freeSlots = reviewJobExecutor.getMaxPoolSize() - inFlightJobs.size();
+            List<ReviewJob> jobs = reviewJobService.claimDueJobs(instanceId, freeSlots);
+            for (ReviewJob job : jobs) {
+                dispatch(job);
+            }
+        } catch (Exception e) {
+            logger.error("轮询审查任务失败", e);
+        }
+    }
+
+    /**
+     * 回收其他实例遗留的超时任务
+     */
+    @Scheduled(fixedDelayString = "${astralint.review-jobs.recovery-interval:60000}")
+    public void recoverStaleJobs() {
+        if (!running) {
+            return;
+        }
+
+        try {
+            reviewJobService.recoverStaleJobs();
+        } catch (Exception e) {
+            logger.error("回收超时审查任务失败", e);
+        }
+    }
+
+    /**
+     * 中断已被其他实例标记为已取代的执行中任务
+     */
+    private void cancelSupersededJobs() {
+        for (Long jobId : reviewJobService.findSupersededJobIds(List.copyOf(inFlightJobs))) {
+            reviewJobRegistry.cancel(jobId);
+        }
+    }
+
+    private void dispatch(ReviewJob job) {
+        // 先登记再提交，保证任务开始执行前就能被新提交取消
+        FutureTask<Void> task = new FutureTask<>(() -> run(job), null) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    // 尚未开始就被取消的任务不会执行run，在这里释放执行槽位
+                    inFlightJobs.remove(job.getId());
+                    reviewJobRegistry.unregister(job);
+                }
+            }
+        };
+        inFlightJobs.add(job.getId());
+        reviewJobRegistry.register(job, task);
+        try {
+            reviewJobExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            // 线程池已满或正在关闭，任务放回队列等待下次抢占
+            inFlightJobs.remove(job.getId());
+            reviewJobRegistry.unregister(job);
+            reviewJobService.release(List.of(job.getId()));
+        }
+    }
+
+    private void run(ReviewJob job) {
+        try {
+            execute(job);
+            reviewJobService.complete(job.getId());
+            meterRegistry.counter("astralint.review.jobs", "result", "completed").increment();
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            // 清除中断标记后再访问数据库；被取代或停机放回队列的任务状态已不是RUNNING，fail不会改变其状态
+            boolean cancelled = Thread.interrupted();
+            boolean deadLettered = reviewJobService.fail(job.getId(), error);
+            String result = cancelled ? "cancelled" : deadLettered ? "dead_letter" : "retry";
+            meterRegistry.counter("astralint.review.jobs", "result", result).increment();
+        } finally {
+            inFlightJobs.remove(job.getId());
+            reviewJobRegistry.unregister(job);
+        }
+    }
+
+    /**
+     * 执行一次审查：获取diff、生成综合审查报告并回写评论
+     * 抛出异常表示需要重试
+     */
+    void execute(ReviewJob job) {
+        RepositoryConfig repoConfig = repositoryConfigService.getRepositoryConfigById(job.getRepositoryConfigId())
+                .orElse(null);
+        if (repoConfig == null || !repoConfig.getIsActive() || !repoConfig.getAutoReviewEnabled()) {
+            logger.info("仓库 {} 已删除或已禁用自动审查，跳过任务 {}", job.getRepositoryName(), job.getId());
+            return;
+        }
+
+        String mergeRequestId = job.getMergeRequestId();
+        String headSha = job.getHeadSha();
+        String lastReviewedSha = headSha != null
+                ? reviewJobService.getLastReviewedSha(job.getRepositoryConfigId(), mergeRequestId)
+                : null;
+        if (headSha != null && headSha.equals(lastReviewedSha)) {
+            logger.info("{} MR {} 的提交 {} 已审查过，跳过", repoConfig.getRepositoryType(), mergeRequestId, headSha);
+            return;
+        }
+
+        // 审查过的MR只获取上次审查之后新增的变更；上次审查的提交不是当前提交的祖先（rebase、强制推送）
+        // 或比较失败时回退为全量审查
+        String diffContent = null;
+        if (lastReviewedSha != null) {
+            diffContent = getCompareDiff(repoConfig, lastReviewedSha, headSha);
+            if (diffContent == null) {
+                logger.warn("{} MR {} 无法获取 {}..{} 的增量diff，回退为全量审查", repoConfig.getRepositoryType(),
+                        mergeRequestId, shortSha(lastReviewedSha), shortSha(headSha));
+            }
+        }
+        boolean incremental = diffContent != null;
+        if (!incremental) {
+            diffContent = getDiff(repoConfig, mergeRequestId);
+        }
+
+        if (diffContent == null) {
+            throw new IllegalStateException("获取diff失败");
+        }
+        if (diffContent.trim().isEmpty()) {
+            logger.info("{} MR {} 无代码变更", repoConfig.getRepositoryType(), mergeRequestId);
+            return;
+        }
+
+        String diff = diffContent;
+        ReviewContext reviewContext = new ReviewContext("job-" + job.getId(), job.getRepositoryConfigId());
+        String projectScope = semanticCacheScope(repoConfig);
+        String reviewResult = reviewContext.call(
+                () -> aiCodeReviewService.generateComprehensiveReview(diff, projectScope));
+        logger.info("{} MR {} AI调用 {} 次，消耗token {}+{}", repoConfig.getRepositoryType(), mergeRequestId,
+                reviewContext.getCalls(), reviewContext.getPromptTokens(), reviewContext.getCompletionTokens());
+        if (incremental) {
+            reviewResult = String.format("> 增量审查：仅包含 %s..%s 之间的新增变更\n\n",
+                    shortSha(lastReviewedSha), shortSha(headSha)) + reviewResult;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            // 停机时被中断，审查结果不完整，不回写评论
+            throw new CancellationException("代码审查被中断");
+        }
+
+        if (!addComment(repoConfig, mergeRequestId, reviewResult)) {
+            throw new IllegalStateException("添加审查评论失败");
+        }
+        logger.info("{} MR {} 代码审查完成", repoConfig.getRepositoryType(), mergeRequestId);
+    }
+
+    private String getDiff(RepositoryConfig config, String mergeRequestId) {
+        return switch (config.getRepositoryType()) {
+            case CodeReviewConstants.REPOSITORY_TYPE_GITLAB -> gitLabService.getMergeRequestDiff(config, mergeRequestId);
+            case CodeReviewConstants.REPOSITORY_TYPE_GITHUB -> gitHubService.getPullRequestDiff(config, mergeRequestId);
+            case CodeReviewConstants.REPOSITORY_TYPE_GITEE -> giteeService.getPullRequestDiff(config, mergeRequestId);
+            default -> throw new IllegalStateException("不支持的仓库类型: " + config.getRepositoryType());
+        };
+    }
+
+    private String getCompareDiff(RepositoryConfig config, String fromSha, String toSha) {
+        return switch (config.getRepositoryType()) {
+            case CodeReviewConstants.REPOSITORY_TYPE_GITLAB -> gitLabService.getCompareDiff(config, fromSha, toSha);
+            case CodeReviewConstants.REPOSITORY_TYPE_GITHUB -> gitHubService.getCompareDiff(config, fromSha, toSha);
+            case CodeReviewConstants.REPOSITORY_TYPE_GITEE -> giteeService.getCompareDiff(config, fromSha, toSha);
+            default -> throw new IllegalStateException("不支持的仓库类型: " + config.getRepositoryType());
+        };
+    }
+
+    private static String shortSha(String sha) {
+        return sha.length() > 8 ? sha.substring(0, 8) : sha;
+    }
+
+    /**
+     * 语义缓存的项目范围：仓库类型加项目ID，没有项目ID时使用仓库名称，不同仓库之间不复用审查结果
+     */
+    private static String semanticCacheScope(RepositoryConfig config) {
+        String project = config.getProjectId() != null ? config.getProjectId() : config.getRepositoryName();
+        return project != null ? config.getRepositoryType() + ":" + project : null;
+    }
+
+    private boolean addComment(RepositoryConfig config, String mergeRequestId, String comment) {
+        return switch (config.getRepositoryType()) {
+            case CodeReviewConstants.REPOSITORY_TYPE_GITLAB ->
+                    gitLabService.addMergeRequestComment(config, mergeRequestId, comment);
+            case CodeReviewConstants.REPOSITORY_TYPE_GITHUB ->
+                    gitHubService.addPullRequestComment(config, mergeRequestId, comment);
+            case CodeReviewConstants.REPOSITORY_TYPE_GITEE ->
+                    giteeService.addPullRequestComment(config, mergeRequestId, comment);
+            default -> throw new IllegalStateException("不支持的仓库类型: " + config.getRepositoryType());
+        };
+    }
+
+    @Override
+    public void start() {
+        running = enabled;
+        if (running) {
+            logger.info("审查任务消费者已启动: instance={}, workers={}", instanceId, reviewJobExecutor.getMaxPoolSize());
+        }
+    }
+
+    /**
+     * 优雅停机：停止抢占新任务，等待执行中的任务完成
+     */
+    @Override
+    public void stop() {
+        running = false;
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        logger.info("审查任务消费者停止中，等待 {} 个执行中的任务完成", inFlightJobs.size());
+
+        while (!inFlightJobs.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!inFlightJobs.isEmpty()) {
+            // 先放回队列再中断，中断后的失败回调不会再改变任务状态
+            List<Long> unfinished = List.copyOf(inFlightJobs);
+            logger.warn("等待超时，{} 个审查任务放回队列: {}", unfinished.size(), unfinished);
+            reviewJobService.release(unfinished);
+            reviewJobExecutor.getThreadPoolExecutor().shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,147 @@
+package org.linshuai.astralint.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.gitlab4j.api.GitLabApi;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代码仓库API客户端注册表
+ * GitLab客户端按(基础URL, token哈希)缓存复用，共享一个带连接池的Apache连接管理器；
+ * GitHub/Gitee共享一个基于JDK HttpClient（HTTP/2，保持连接）的RestTemplate。
+ * 复用连接避免每次请求都重新进行TCP和TLS握手
+ */
+@Component
+public class ScmClientRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScmClientRegistry.class);
+
+    @Autowired
+    private RestTemplateBuilder restTemplateBuilder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.scm-client.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${astralint.scm-client.read-timeout:30s}")
+    private Duration readTimeout;
+
+    @Value("${astralint.scm-client.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${astralint.scm-client.max-connections-per-route:20}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${astralint.scm-client.max-clients:500}")
+    private long maxClients;
+
+    @Value("${astralint.scm-client.client-idle-timeout:1h}")
+    private Duration clientIdleTimeout;
+
+    private PoolingHttpClientConnectionManager gitLabConnectionManager;
+
+    private Cache<String, GitLabApi> gitLabClients;
+
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() {
+        gitLabConnectionManager = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        gitLabConnectionManager.setMaxTotal(maxConnections);
+        gitLabConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // 空闲超过该时间的连接在复用前先检查是否仍然可用
+        gitLabConnectionManager.setValidateAfterInactivity(10_000);
+        new PoolingHttpClientConnectionManagerMetricsBinder(gitLabConnectionManager, "gitlab")
+                .bindTo(meterRegistry);
+
+        // 长时间未使用的客户端被移除时关闭，连接管理器是共享的，不会随客户端关闭
+        gitLabClients = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(clientIdleTimeout)
+                .removalListener((String key, GitLabApi api, RemovalCause cause) -> {
+                    if (api != null) {
+                        api.close();
+                    }
+                })
+                .build();
+        Gauge.builder("astralint.scm.clients", gitLabClients, Cache::estimatedSize)
+                .tag("type", "gitlab")
+                .description("缓存的GitLab API客户端数量")
+                .register(meterRegistry);
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        // 通过RestTemplateBuilder构建，请求耗时会记录到http.client.requests指标
+        restTemplate = restTemplateBuilder.requestFactory(() -> requestFactory).build();
+
+        logger.info("代码仓库客户端注册表已初始化: connectTimeout={}, readTimeout={}, maxConnections={}",
+                connectTimeout, readTimeout, maxConnections);
+    }
+
+    /**
+     * 获取（或创建）指定GitLab实例和token对应的客户端
+     */
+    public GitLabApi getGitLabApi(String baseUrl, String accessToken) {
+        return gitLabClients.get(baseUrl + "|" + sha256(accessToken), key -> {
+            Map<String, Object> clientProperties = Map.of(
+                    ApacheClientProperties.CONNECTION_MANAGER, gitLabConnectionManager,
+                    ApacheClientProperties.CONNECTION_MANAGER_SHARED, true);
+            GitLabApi gitLabApi = new GitLabApi(baseUrl, accessToken, clientProperties);
+            gitLabApi.setRequestTimeout((int) connectTimeout.toMillis(), (int) readTimeout.toMillis());
+            return gitLabApi;
+        });
+    }
+
+    /**
+     * 获取GitHub/Gitee等REST API共享的RestTemplate
+     */
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    @PreDestroy
+    public void close() {
+        gitLabClients.invalidateAll();
+        gitLabConnectionManager.shutdown();
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(String.valueOf(value).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.linshuai.astralint.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.linshuai.astralint.util.CodeReviewUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * AI审查结果的语义缓存
+ * 对规范化后的diff片段做向量嵌入，在同一项目、同一审查维度、同一语言已审查过的片段中做余弦相似度检索，
+ * 相似度超过阈值时复用之前的审查结果，复制粘贴和样板代码不再重复调用模型。
+ * 位于精确缓存AiResultCache之后；没有配置EmbeddingModel或未指定项目时直接调用模型
+ */
+@Service
+public class SemanticResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticResultCache.class);
+
+    private static final String METRIC_NAME = "astralint.ai.semantic.cache";
+
+    @Autowired
+    private ObjectProvider<EmbeddingModel> embeddingModels;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.code-review.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.code-review.prompt-version:v1}")
+    private String promptVersion;
+
+    // 余弦相似度阈值，越接近1越保守
+    @Value("${ai.code-review.semantic-cache.similarity-threshold:0.97}")
+    private double similarityThreshold;
+
+    @Value("${ai.code-review.semantic-cache.max-entries-per-index:2000}")
+    private int maxEntriesPerIndex;
+
+    @Value("${ai.code-review.semantic-cache.max-indexes:1000}")
+    private long maxIndexes;
+
+    // 超过嵌入模型输入上限的片段不做语义缓存
+    @Value("${ai.code-review.semantic-cache.max-input-tokens:2000}")
+    private int maxInputTokens;
+
+    @Value("${ai.code-review.semantic-cache.ttl:7d}")
+    private Duration ttl;
+
+    // 索引键：项目|审查维度|语言|提示词版本
+    private Cache<String, VectorIndex> indexes;
+
+    @PostConstruct
+    public void init() {
+        indexes = Caffeine.newBuilder()
+                .maximumSize(maxIndexes)
+                .expireAfterAccess(ttl)
+                .build();
+    }
+
+    /**
+     * 在项目内查找语义相近的已审查片段，命中时返回其结果，否则调用loader并把非空结果加入索引
+     *
+     * @param projectId 项目ID，为null时不做语义缓存，避免跨项目复用审查结果
+     */
+    public String getOrCompute(String projectId, ReviewAspect aspect, String fileName, String content,
+                               Supplier<String> loader) {
+        Lookup lookup = lookup(projectId, aspect, fileName, content);
+        if (lookup.result() != null) {
+            return lookup.result();
+        }
+        String result = loader.get();
+        lookup.store(result);
+        return result;
+    }
+
+    /**
+     * 在项目内查找语义相近的已审查片段，用于结果不是逐个计算的场景（如批量审查）：
+     * 未命中时由调用方取得结果后通过Lookup.store加入索引，不必再次计算向量
+     *
+     * @param projectId 项目ID，为null时不做语义缓存
+     */
+    public Lookup lookup(String projectId, ReviewAspect aspect, String fileName, String content) {
+        EmbeddingModel embeddingModel = enabled && projectId != null ? embeddingModels.getIfAvailable() : null;
+        if (embeddingModel == null || CodeReviewUtils.estimateTokens(content) > maxInputTokens) {
+            return Lookup.BYPASS;
+        }
+
+        float[] embedding = embed(embeddingModel, content);
+        if (embedding == null) {
+            return Lookup.BYPASS;
+        }
+
+        String indexKey = projectId + "|" + aspect.name() + "|" + CodeReviewUtils.getFileExtension(fileName)
+                + "|" + promptVersion;
+        VectorIndex index = indexes.get(indexKey, key -> new VectorIndex(maxEntriesPerIndex));
+        long expiredBefore = System.currentTimeMillis() - ttl.toMillis();
+        VectorIndex.Match match = index.nearest(embedding, expiredBefore);
+        if (match != null && match.similarity() >= similarityThreshold) {
+            logger.debug("语义缓存命中: project={}, aspect={}, file={}, similarity={}",
+                    projectId, aspect, fileName, match.similarity());
+            record(aspect, "hit");
+            return new Lookup(match.result(), null, null);
+        }
+
+        record(aspect, "miss");
+        return new Lookup(null, index, embedding);
+    }
+
+    /**
+     * 一次语义缓存查找的结果：命中时result不为null；未命中时store把计算出的结果加入索引
+     */
+    public static final class Lookup {
+
+        static final Lookup BYPASS = new Lookup(null, null, null);
+
+        private final String result;
+        private final VectorIndex index;
+        private final float[] embedding;
+
+        private Lookup(String result, VectorIndex index, float[] embedding) {
+            this.result = result;
+            this.index = index;
+            this.embedding = embedding;
+        }
+
+        /**
+         * 命中的审查结果，未命中或未做语义缓存时为null
+         */
+        public String result() {
+            return result;
+        }
+
+        /**
+         * 记录未命中片段的审查结果，结果为null、已命中或未做语义缓存时不做处理
+         */
+        public void store(String computed) {
+            if (index != null && computed != null) {
+                index.add(embedding, computed, System.currentTimeMillis());
+            }
+        }
+    }
+
+    private float[] embed(EmbeddingModel embeddingModel, String content) {
+        try {
+            return VectorIndex.normalize(embeddingModel.embed(AiResultCache.normalize(content)));
+        } catch (Exception e) {
+            // 嵌入失败不影响审查，本次直接调用模型
+            logger.warn("计算代码片段向量失败，跳过语义缓存: {}", e.getMessage());
+            record(null, "error");
+            return null;
+        }
+    }
+
+    /**
+     * 模型配置变更后，之前的审查结果可能来自已停用的模型，清空所有索引
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAiModelConfigChanged(AiModelConfigChangedEvent event) {
+        indexes.invalidateAll();
+    }
+
+    private void record(ReviewAspect aspect, String result) {
+        meterRegistry.counter(METRIC_NAME, "aspect", aspect != null ? aspect.name() : "none", "result", result)
+                .increment();
+    }
+
+    /**
+     * 单个项目/维度/语言的向量索引：固定容量的环形缓冲区，已归一化的向量做点积即为余弦相似度，
+     * 每个索引最多几千条，线性扫描足够快
+     */
+    static final class VectorIndex {
+
+        record Match(String result, double similarity) {
+        }
+
+        private final float[][] vectors;
+        private final String[] results;
+        private final long[] createdAt;
+        private int size;
+        private int next;
+
+        VectorIndex(int capacity) {
+            int bounded = Math.max(1, capacity);
+            this.vectors = new float[bounded][];
+            this.results = new String[bounded];
+            this.createdAt = new long[bounded];
+        }
+
+        synchronized void add(float[] vector, String result, long now) {
+            vectors[next] = vector;
+            results[next] = result;
+            createdAt[next] = now;
+            next = (next + 1) % vectors.length;
+            if (size < vectors.length) {
+                size++;
+            }
+        }
+
+        /**
+         * 返回最相似的未过期条目，索引为空时返回null
+         */
+        synchronized Match nearest(float[] vector, long expiredBefore) {
+            int best = -1;
+            double bestSimilarity = -1;
+            for (int i = 0; i < size; i++) {
+                if (createdAt[i] < expiredBefore || vectors[i].length != vector.length) {
+                    continue;
+                }
+                double similarity = dot(vectors[i], vector);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = i;
+                }
+            }
+            return best >= 0 ? new Match(results[best], bestSimilarity) : null;
+        }
+
+        /**
+         * 归一化为单位向量，零向量返回null
+         */
+        static float[] normalize(float[] vector) {
+            if (vector == null || vector.length == 0) {
+                return null;
+            }
+            double norm = Math.sqrt(dot(vector, vector));
+            if (norm == 0) {
+                return null;
+            }
+            float[] normalized = new float[vector.length];
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+            return normalized;
+        }
+
+        private static double dot(float[] a, float[] b) {
+            double sum = 0;
+            for (int i = 0; i < a.length; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.linshuai.astralint.service;
+
+import jakarta.annotation.PostConstruct;
+import org.linshuai.astralint.util.CodeReviewUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地模型替身：启用stub-ai profile时替代DashScope的ChatModel，不访问网络、不消耗模型额度
+ * 响应内容只由提示词决定，格式与综合审查/批量审查的分节标记一致，可直接走完整的解析流程；
+ * 延迟服从对数正态分布（按中位数和P99配置），按配置的比例返回5xx错误和429限流，支持流式输出
+ */
+@Component
+@Primary
+@Profile("stub-ai")
+public class StubChatModel implements ChatModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(StubChatModel.class);
+
+    private static final String MODEL_NAME = "stub";
+
+    // 标准正态分布的99分位数
+    private static final double Z_99 = 2.326;
+
+    private static final Pattern BATCH_FILE_COUNT = Pattern.compile("请对以下(\\d+)个文件");
+    private static final Pattern BATCH_FILE_NAME = Pattern.compile("文件 (\\d+): (\\S+)");
+    private static final Pattern FILE_NAME = Pattern.compile("文件: (\\S+)");
+
+    private static final String[] SUMMARY_FINDINGS = {
+            "新增了请求参数校验和错误处理分支",
+            "重构了数据访问逻辑，抽取了公共查询方法",
+            "调整了配置加载顺序并补充了默认值",
+            "增加了日志输出和异常信息的上下文"
+    };
+
+    private static final String[] SECURITY_FINDINGS = {
+            "🚨 SQL语句通过字符串拼接构造，存在SQL注入风险，严重程度：高",
+            "用户输入未做长度和格式校验，严重程度：中",
+            "日志中输出了完整的请求参数，可能泄露敏感信息，严重程度：中",
+            "未发现明显的安全问题"
+    };
+
+    private static final String[] PERFORMANCE_FINDINGS = {
+            "循环内逐条查询数据库，建议改为批量查询，严重程度：高",
+            "每次调用都重新创建对象，建议复用或缓存，严重程度：低",
+            "集合未指定初始容量，数据量大时会多次扩容，严重程度：低",
+            "未发现明显的性能问题"
+    };
+
+    private static final String[] QUALITY_FINDINGS = {
+            "方法过长，建议按职责拆分，严重程度：中",
+            "存在魔法数字，建议提取为常量，严重程度：低",
+            "异常被捕获后直接忽略，建议至少记录日志，严重程度：中",
+            "命名清晰，结构合理"
+    };
+
+    @Value("${ai.code-review.stub.latency-median:800}")
+    private long latencyMedianMs;
+
+    @Value("${ai.code-review.stub.latency-p99:5000}")
+    private long latencyP99Ms;
+
+    // 返回5xx错误的调用比例
+    @Value("${ai.code-review.stub.error-rate:0.0}")
+    private double errorRate;
+
+    // 返回429限流的调用比例
+    @Value("${ai.code-review.stub.rate-limit-rate:0.0}")
+    private double rateLimitRate;
+
+    // 流式输出时每个片段的字符数
+    @Value("${ai.code-review.stub.stream-chunk-chars:40}")
+    private int streamChunkChars;
+
+    // 延迟和错误的随机序列由种子和调用序号决定，同样的调用顺序可以复现
+    @Value("${ai.code-review.stub.seed:42}")
+    private long seed;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 单次调用的模拟结果：延迟和要返回的错误（无错误时为null）
+     */
+    record Outcome(long latencyMs, RuntimeException error) {
+    }
+
+    @PostConstruct
+    public void init() {
+        logger.warn("已启用本地模型替身(stub-ai)，AI调用不会访问模型提供商：延迟中位数{}ms，P99 {}ms，错误率{}，429比例{}",
+                latencyMedianMs, latencyP99Ms, errorRate, rateLimitRate);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        Outcome outcome = nextOutcome();
+        try {
+            TimeUnit.MILLISECONDS.sleep(outcome.latencyMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模型调用被中断", e);
+        }
+        if (outcome.error() != null) {
+            throw outcome.error();
+        }
+        String text = render(userText(prompt));
+        return response(CodeReviewUtils.estimateTokens(prompt.getContents()), text, CodeReviewUtils.estimateTokens(text));
+    }
+
+    /**
+     * 流式输出：首个片段在总延迟的五分之一后到达，其余片段在剩余时间内均匀输出
+     * 与DashScope一样，每个片段带截至该片段的累计token用量
+     */
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            Outcome outcome = nextOutcome();
+            Duration firstChunkDelay = Duration.ofMillis(outcome.latencyMs() / 5);
+            if (outcome.error() != null) {
+                return Flux.<ChatResponse>error(outcome.error()).delaySubscription(firstChunkDelay);
+            }
+
+            int promptTokens = CodeReviewUtils.estimateTokens(prompt.getContents());
+            String text = render(userText(prompt));
+            List<String> chunks = split(text, Math.max(1, streamChunkChars));
+            Duration chunkInterval = Duration.ofMillis((outcome.latencyMs() - firstChunkDelay.toMillis())
+                    / Math.max(1, chunks.size() - 1));
+            return Flux.fromIterable(chunks)
+                    .index()
+                    .concatMap(chunk -> {
+                        int emitted = (int) Math.min(text.length(), (chunk.getT1() + 1) * Math.max(1, streamChunkChars));
+                        ChatResponse response = response(promptTokens, chunk.getT2(),
+                                CodeReviewUtils.estimateTokens(text.substring(0, emitted)));
+                        Duration delay = chunk.getT1() == 0 ? firstChunkDelay : chunkInterval;
+                        return delay.isZero() ? Mono.just(response) : Mono.just(response).delayElement(delay);
+                    });
+        });
+    }
+
+    /**
+     * 按提示词生成确定的审查结果：批量审查按文件编号分段，综合审查输出四个分节，其他提示词输出审查意见列表
+     */
+    String render(String promptText) {
+        SplittableRandom random = new SplittableRandom(promptText.hashCode());
+
+        Matcher batch = BATCH_FILE_COUNT.matcher(promptText);
+        if (batch.find()) {
+            int fileCount = Integer.parseInt(batch.group(1));
+            List<String> fileNames = new ArrayList<>();
+            Matcher fileName = BATCH_FILE_NAME.matcher(promptText);
+            while (fileName.find()) {
+                fileNames.add(fileName.group(2));
+            }
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < fileCount; i++) {
+                String name = i < fileNames.size() ? fileNames.get(i) : "文件" + (i + 1);
+                result.append("<<<FILE ").append(i + 1).append(">>>\n").append(sections(name, random));
+            }
+            return result.toString();
+        }
+
+        Matcher fileName = FILE_NAME.matcher(promptText);
+        String name = fileName.find() ? fileName.group(1) : "代码变更";
+        if (promptText.contains("<<<SUMMARY>>>")) {
+            return sections(name, random);
+        }
+        return "关于 " + name + " 的审查意见：\n"
+                + "1. " + pick(SECURITY_FINDINGS, random) + "\n"
+                + "2. " + pick(PERFORMANCE_FINDINGS, random) + "\n"
+                + "3. " + pick(QUALITY_FINDINGS, random) + "\n";
+    }
+
+    private String sections(String fileName, SplittableRandom random) {
+        return "<<<SUMMARY>>>\n" + fileName + "：" + pick(SUMMARY_FINDINGS, random) + "\n"
+                + "<<<SECURITY>>>\n" + pick(SECURITY_FINDINGS, random) + "\n"
+                + "<<<PERFORMANCE>>>\n" + pick(PERFORMANCE_FINDINGS, random) + "\n"
+                + "<<<QUALITY>>>\n" + pick(QUALITY_FINDINGS, random) + "\n";
+    }
+
+    Outcome nextOutcome() {
+        SplittableRandom random = new SplittableRandom(seed + sequence.getAndIncrement());
+        long latencyMs = sampleLatency(random);
+        double roll = random.nextDouble();
+        if (roll < rateLimitRate) {
+            return new Outcome(latencyMs, HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too Many Requests", HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8));
+        }
+        if (roll < rateLimitRate + errorRate) {
+            return new Outcome(latencyMs, HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Service Unavailable", HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8));
+        }
+        return new Outcome(latencyMs, null);
+    }
+
+    /**
+     * 对数正态分布：中位数为latency-median，99分位数为latency-p99
+     */
+    private long sampleLatency(SplittableRandom random) {
+        if (latencyMedianMs <= 0) {
+            return 0;
+        }
+        double sigma = latencyP99Ms > latencyMedianMs ? Math.log((double) latencyP99Ms / latencyMedianMs) / Z_99 : 0;
+        // Box-Muller变换生成标准正态分布样本
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        return Math.round(latencyMedianMs * Math.exp(sigma * gaussian));
+    }
+
+    private ChatResponse response(int promptTokens, String text, int completionTokens) {
+        ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                .model(MODEL_NAME)
+                .usage(new DefaultUsage(promptTokens, completionTokens))
+                .build();
+        return ChatResponse.builder()
+                .generations(List.of(new Generation(new AssistantMessage(text))))
+                .metadata(metadata)
+                .build();
+    }
+
+    private static String userText(Prompt prompt) {
+        String text = prompt.getUserMessage() != null ? prompt.getUserMessage().getText() : null;
+        return text != null ? text : prompt.getContents();
+    }
+
+    private static String pick(String[] findings, SplittableRandom random) {
+        return findings[random.nextInt(findings.length)];
+    }
+
+    private static List<String> split(String text, int size) {
+        List<String> chunks = new ArrayList<>();
+        for (int start = 0; start < text.length(); start += size) {
+            chunks.add(text.substring(start, Math.min(text.length(), start + size)));
+        }
+        return chunks;
+    }
+}
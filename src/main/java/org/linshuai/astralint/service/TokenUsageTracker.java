@@ -0,0 +1,239 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.entity.TokenUsage;
+import org.linshuai.astralint.repository.TokenUsageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AI调用的token用量与成本统计
+ * 每次调用的用量同时累加到所属审查、仓库配置和模型三个维度，热路径只做无锁累加；
+ * 仓库和模型维度的增量由定时任务按天合并写入token_usage表，并通过Micrometer按模型暴露
+ */
+@Service
+public class TokenUsageTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenUsageTracker.class);
+
+    // 不属于任何仓库配置的调用（如临时提交的审查）
+    static final String UNASSIGNED_REPOSITORY = "none";
+
+    @Autowired
+    private TokenUsageRepository tokenUsageRepository;
+
+    @Autowired
+    private AiModelConfigService aiModelConfigService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 尚未写入数据库的增量
+     */
+    private final Map<Scope, UsageCounters> pending = new ConcurrentHashMap<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    record Scope(String type, String key) {
+    }
+
+    /**
+     * 某个统计维度的累计用量
+     */
+    public record UsageTotal(String scopeType, String scopeKey, long calls, long promptTokens,
+                             long completionTokens, double cost) {
+
+        public long totalTokens() {
+            return promptTokens + completionTokens;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("astralint.ai.tokens.pending.scopes", pending, Map::size)
+                .description("有未落库token用量的统计维度数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次成功调用的token用量，归属到当前线程的审查上下文
+     *
+     * @param modelName 实际响应的模型名称（路由结果）
+     */
+    public void record(String modelName, long promptTokens, long completionTokens) {
+        double cost = (promptTokens + completionTokens) / 1000.0 * costWeight(modelName);
+        ReviewContext context = ReviewContext.current();
+        String repositoryKey = context != null && context.getRepositoryConfigId() != null
+                ? String.valueOf(context.getRepositoryConfigId()) : UNASSIGNED_REPOSITORY;
+
+        counters(TokenUsage.SCOPE_MODEL, modelName).add(1, promptTokens, completionTokens, cost);
+        counters(TokenUsage.SCOPE_REPOSITORY, repositoryKey).add(1, promptTokens, completionTokens, cost);
+        if (context != null) {
+            context.addUsage(promptTokens, completionTokens, cost);
+        }
+
+        tokenCounter(modelName, "prompt").increment(promptTokens);
+        tokenCounter(modelName, "completion").increment(completionTokens);
+        Counter.builder("astralint.ai.cost")
+                .description("按模型成本权重折算的AI调用成本")
+                .tag("model", modelName)
+                .register(meterRegistry)
+                .increment(cost);
+    }
+
+    /**
+     * 汇总指定日期以来的用量（含尚未落库的增量），按成本从高到低排列
+     */
+    public List<UsageTotal> getUsageSince(LocalDate from) {
+        Map<Scope, UsageTotal> totals = new LinkedHashMap<>();
+        for (TokenUsageRepository.TotalView view : tokenUsageRepository.sumByScopeSince(from)) {
+            Scope scope = new Scope(view.getScopeType(), view.getScopeKey());
+            totals.put(scope, new UsageTotal(scope.type(), scope.key(), nullToZero(view.getCalls()),
+                    nullToZero(view.getPromptTokens()), nullToZero(view.getCompletionTokens()),
+                    view.getCost() != null ? view.getCost() : 0.0));
+        }
+        pending.forEach((scope, counters) -> totals.merge(scope, counters.snapshot(scope), TokenUsageTracker::sum));
+
+        List<UsageTotal> result = new ArrayList<>(totals.values());
+        result.sort(Comparator.comparingDouble(UsageTotal::cost).reversed());
+        return result;
+    }
+
+    /**
+     * 将累计的增量按天合并写入数据库，写入失败时增量放回内存等待下次刷盘
+     */
+    @Scheduled(fixedDelayString = "${astralint.token-usage.flush-interval:60000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            // 各计数器分别清零不是原子的，并发累加的调用可能被拆到两次刷盘中，但不会丢失或重复
+            Map<Scope, UsageTotal> deltas = new LinkedHashMap<>();
+            pending.forEach((scope, counters) -> {
+                UsageTotal delta = counters.drain(scope);
+                if (delta.calls() > 0 || delta.totalTokens() > 0) {
+                    deltas.put(scope, delta);
+                }
+            });
+            if (deltas.isEmpty()) {
+                return;
+            }
+
+            LocalDate today = LocalDate.now();
+            try {
+                transactionTemplate.executeWithoutResult(status -> deltas.values().forEach(delta -> persist(delta, today)));
+                logger.debug("已写入{}条token用量", deltas.size());
+            } catch (Exception e) {
+                deltas.forEach((scope, delta) -> counters(scope.type(), scope.key())
+                        .add(delta.calls(), delta.promptTokens(), delta.completionTokens(), delta.cost()));
+                logger.error("token用量写入数据库失败，将在下次刷盘时重试", e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private void persist(UsageTotal delta, LocalDate date) {
+        TokenUsage usage = tokenUsageRepository
+                .findByScopeTypeAndScopeKeyAndUsageDate(delta.scopeType(), delta.scopeKey(), date)
+                .orElseGet(() -> new TokenUsage(delta.scopeType(), delta.scopeKey(), date));
+        usage.setCalls(usage.getCalls() + delta.calls());
+        usage.setPromptTokens(usage.getPromptTokens() + delta.promptTokens());
+        usage.setCompletionTokens(usage.getCompletionTokens() + delta.completionTokens());
+        usage.setCost(usage.getCost() + delta.cost());
+        tokenUsageRepository.save(usage);
+    }
+
+    private UsageCounters counters(String type, String key) {
+        return pending.computeIfAbsent(new Scope(type, key), scope -> new UsageCounters());
+    }
+
+    private double costWeight(String modelName) {
+        try {
+            return aiModelConfigService.getModelConfigByName(modelName)
+                    .map(AiModelConfig::getCostWeight)
+                    .orElse(1.0);
+        } catch (Exception e) {
+            logger.debug("查询模型 {} 的成本权重失败，按1.0计算: {}", modelName, e.getMessage());
+            return 1.0;
+        }
+    }
+
+    private Counter tokenCounter(String modelName, String type) {
+        return Counter.builder("astralint.ai.tokens")
+                .description("AI调用消耗的token数")
+                .baseUnit("tokens")
+                .tag("model", modelName)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    private static UsageTotal sum(UsageTotal a, UsageTotal b) {
+        return new UsageTotal(a.scopeType(), a.scopeKey(), a.calls() + b.calls(), a.promptTokens() + b.promptTokens(),
+                a.completionTokens() + b.completionTokens(), a.cost() + b.cost());
+    }
+
+    private static long nullToZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    /**
+     * 单个统计维度的无锁计数器
+     */
+    static final class UsageCounters {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final DoubleAdder cost = new DoubleAdder();
+
+        void add(long calls, long promptTokens, long completionTokens, double cost) {
+            this.calls.add(calls);
+            this.promptTokens.add(promptTokens);
+            this.completionTokens.add(completionTokens);
+            this.cost.add(cost);
+        }
+
+        UsageTotal snapshot(Scope scope) {
+            return new UsageTotal(scope.type(), scope.key(), calls.sum(), promptTokens.sum(),
+                    completionTokens.sum(), cost.sum());
+        }
+
+        UsageTotal drain(Scope scope) {
+            return new UsageTotal(scope.type(), scope.key(), calls.sumThenReset(), promptTokens.sumThenReset(),
+                    completionTokens.sumThenReset(), cost.sumThenReset());
+        }
+    }
+}
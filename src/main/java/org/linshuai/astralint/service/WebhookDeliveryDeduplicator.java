@@ -0,0 +1,137 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.linshuai.astralint.dto.WebhookPayload;
+import org.linshuai.astralint.entity.WebhookDelivery;
+import org.linshuai.astralint.repository.WebhookDeliveryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+/**
+ * Webhook投递去重：代码仓库在超时后会重投同一事件，重复的投递在拉取代码和调用AI之前丢弃
+ * 每次投递直接写入webhook_deliveries表，唯一索引冲突即为重复投递，一次写入完成判断和记录。
+ * 投递记录保证重启后和多实例间的去重，并发的同一投递由唯一索引保证只有一个被处理
+ */
+@Service
+public class WebhookDeliveryDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookDeliveryDeduplicator.class);
+
+    private static final int MAX_DELIVERY_ID_LENGTH = 100;
+
+    @Autowired
+    private WebhookDeliveryRepository webhookDeliveryRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${astralint.webhook-dedup.enabled:true}")
+    private boolean enabled;
+
+    // 投递记录的保留时间，超过后同一投递视为新事件
+    @Value("${astralint.webhook-dedup.window:24h}")
+    private Duration window;
+
+    /**
+     * 返回投递的去重键：优先使用代码仓库提供的投递ID，
+     * 没有投递ID（如Gitee）或投递ID过长时使用事件类型和payload的摘要
+     */
+    public String deliveryKey(String deliveryId, String event, WebhookPayload payload) {
+        if (deliveryId != null && !deliveryId.isBlank() && deliveryId.length() <= MAX_DELIVERY_ID_LENGTH) {
+            return deliveryId.trim();
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((event + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(payload.getBuffer(), 0, payload.getLength());
+            return "sha256:" + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 记录一次投递，首次接收时返回true，重复投递返回false
+     * 投递记录写入失败时按首次接收处理，数据库不可用不影响审查
+     *
+     * @param repositoryType 代码仓库类型，不同仓库的投递ID互不冲突
+     * @param deliveryKey    deliveryKey返回的去重键
+     */
+    public boolean markIfFirst(String repositoryType, String deliveryKey) {
+        if (!enabled || deliveryKey == null) {
+            return true;
+        }
+
+        try {
+            webhookDeliveryRepository.saveAndFlush(new WebhookDelivery(repositoryType, deliveryKey));
+        } catch (DataIntegrityViolationException e) {
+            // 已接收过的投递，包括其他实例并发接收的同一投递
+            logger.info("忽略重复的{} Webhook投递: {}", repositoryType, deliveryKey);
+            record(repositoryType, "duplicate");
+            return false;
+        } catch (Exception e) {
+            logger.warn("记录{} Webhook投递 {} 失败，按首次投递处理: {}", repositoryType, deliveryKey, e.getMessage());
+            record(repositoryType, "unchecked");
+            return true;
+        }
+
+        record(repositoryType, "accepted");
+        return true;
+    }
+
+    /**
+     * 删除投递记录，用于处理失败的投递，使代码仓库的重投能够再次处理
+     */
+    public void release(String repositoryType, String deliveryKey) {
+        if (!enabled || deliveryKey == null) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    webhookDeliveryRepository.deleteDelivery(repositoryType, deliveryKey));
+        } catch (Exception e) {
+            logger.warn("删除{} Webhook投递 {} 的记录失败，重投将被视为重复: {}",
+                    repositoryType, deliveryKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 清理去重窗口之外的投递记录
+     */
+    @Scheduled(fixedDelayString = "${astralint.webhook-dedup.purge-interval:3600000}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Integer deleted = transactionTemplate.execute(status ->
+                    webhookDeliveryRepository.deleteReceivedBefore(LocalDateTime.now().minus(window)));
+            if (deleted != null && deleted > 0) {
+                logger.info("已清理{}条过期的Webhook投递记录", deleted);
+            }
+        } catch (Exception e) {
+            logger.error("清理过期的Webhook投递记录失败", e);
+        }
+    }
+
+    private void record(String repositoryType, String result) {
+        meterRegistry.counter("astralint.webhook.deliveries", "provider", repositoryType, "result", result)
+                .increment();
+    }
+}
@@ -0,0 +1,131 @@
+package org.linshuai.astralint.service;
+
+import org.linshuai.astralint.event.RepositoryConfigChangedEvent;
+import org.linshuai.astralint.repository.RepositoryConfigRepository;
+import org.linshuai.astralint.util.WebhookSecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 仓库Webhook密钥索引：按(仓库类型, 项目ID)和(仓库类型, 仓库名称)查找仓库自己的Webhook密钥
+ * 在Web服务器启动前从repository_configs表整体加载，仓库配置变更提交后和定时任务中重建，请求线程只读取内存中的快照；
+ * 首次加载成功前isLoaded返回false，调用方不能把此时查不到密钥当作仓库未配置密钥。
+ * 按密钥初始化的Mac由WebhookSecurityUtils在各线程中缓存，密钥变化时通知其丢弃
+ */
+@Component
+public class WebhookSecretIndex implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookSecretIndex.class);
+
+    @Autowired
+    private RepositoryConfigRepository repositoryConfigRepository;
+
+    @Autowired
+    private WebhookSecurityUtils webhookSecurityUtils;
+
+    private volatile Index index = new Index(Map.of(), Map.of());
+
+    // 首次成功加载后为true，之后重建失败时保留上次的索引
+    private volatile boolean loaded;
+
+    record Index(Map<String, String> byProjectId, Map<String, String> byName) {
+    }
+
+    /**
+     * 索引是否已成功加载过，未加载时findSecret的结果不可信
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 查找仓库的Webhook密钥，先按项目ID再按仓库名称匹配，仓库未配置密钥时返回null
+     *
+     * @param repositoryType 仓库类型
+     * @param projectId      项目ID，例如GitLab的project.id，可以为null
+     * @param repositoryName 仓库名称，例如GitHub的repository.full_name，可以为null
+     */
+    public String findSecret(String repositoryType, String projectId, String repositoryName) {
+        Index current = index;
+        if (repositoryType != null && projectId != null) {
+            String secret = current.byProjectId().get(indexKey(repositoryType, projectId));
+            if (secret != null) {
+                return secret;
+            }
+        }
+        if (repositoryType != null && repositoryName != null) {
+            // 不同仓库类型可能有同名仓库，名称同样按仓库类型区分
+            return current.byName().get(indexKey(repositoryType, repositoryName));
+        }
+        return null;
+    }
+
+    /**
+     * 所有单例创建完成后、Web服务器开始接收请求前加载
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        refresh();
+    }
+
+    /**
+     * 示例数据由DataInitializer在启动时直接写入（不发布变更事件），应用就绪后重新加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    /**
+     * 仓库配置变更后重建索引
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRepositoryConfigChanged(RepositoryConfigChangedEvent event) {
+        refresh();
+    }
+
+    /**
+     * 从数据库重建索引，定时执行以获取其他实例修改的配置，首次加载失败时也由定时任务重试；失败时保留上次的索引
+     */
+    @Scheduled(fixedDelayString = "${astralint.webhook.secret-refresh-interval:60000}")
+    public synchronized void refresh() {
+        try {
+            Map<String, String> byProjectId = new HashMap<>();
+            Map<String, String> byName = new HashMap<>();
+            for (RepositoryConfigRepository.WebhookSecretView view : repositoryConfigRepository.findWebhookSecrets()) {
+                if (view.getRepositoryType() != null && view.getProjectId() != null) {
+                    byProjectId.put(indexKey(view.getRepositoryType(), view.getProjectId()), view.getWebhookSecret());
+                }
+                if (view.getRepositoryType() != null && view.getRepositoryName() != null) {
+                    byName.put(indexKey(view.getRepositoryType(), view.getRepositoryName()), view.getWebhookSecret());
+                }
+            }
+            Index rebuilt = new Index(Map.copyOf(byProjectId), Map.copyOf(byName));
+            if (loaded && rebuilt.equals(index)) {
+                return;
+            }
+            index = rebuilt;
+            loaded = true;
+            // 先换上新索引再失效，之后初始化的Mac都使用新密钥
+            webhookSecurityUtils.invalidateKeys();
+            logger.debug("Webhook密钥索引已重建: {}个项目, {}个仓库名称", byProjectId.size(), byName.size());
+        } catch (Exception e) {
+            logger.error("重建Webhook密钥索引失败", e);
+        }
+    }
+
+    private static String indexKey(String repositoryType, String value) {
+        return repositoryType.trim().toUpperCase(Locale.ROOT) + ":" + value;
+    }
+}
@@ -1,8 +1,11 @@
 package org.linshuai.astralint.util;
 
+import org.linshuai.astralint.dto.FileDiff;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.regex.Pattern;
 
@@ -137,4 +140,169 @@ public class CodeReviewUtils {
         return String.format("文件: %s, 扩展名: %s, 总行数: %d, 代码行数: %d",
                 fileName, extension, totalLines, codeLines);
     }
-}
\ No newline at end of file
+
+    /**
+     * 将git统一格式的diff按文件拆分，每个文件只保留从第一个@@开始的hunk部分
+     * 没有hunk的文件（二进制文件、纯重命名等）会被忽略
+     */
+    public static List<FileDiff> splitUnifiedDiff(String diff) {
+        List<FileDiff> files = new ArrayList<>();
+        if (diff == null || diff.isBlank()) {
+            return files;
+        }
+
+        String filePath = null;
+        StringBuilder hunks = null;
+        for (String line : diff.split("\n", -1)) {
+            if (line.startsWith("diff --git ")) {
+                addFileDiff(files, filePath, hunks);
+                int pathIndex = line.lastIndexOf(" b/");
+                filePath = pathIndex >= 0 ? line.substring(pathIndex + 3) : null;
+                hunks = null;
+            } else if (hunks == null) {
+                // 文件头部分：以+++行中的新路径为准
+                if (line.startsWith("+++ b/")) {
+                    filePath = line.substring(6);
+                } else if (line.startsWith("@@")) {
+                    hunks = new StringBuilder(line).append('\n');
+                }
+            } else {
+                hunks.append(line).append('\n');
+            }
+        }
+        addFileDiff(files, filePath, hunks);
+        return files;
+    }
+
+    private static void addFileDiff(List<FileDiff> files, String filePath, StringBuilder hunks) {
+        if (hunks != null) {
+            files.add(new FileDiff(filePath != null ? filePath : "unknown", hunks.toString()));
+        }
+    }
+
+    /**
+     * 估算文本的token数
+     * 没有引入模型自带的分词器，按BPE分词的经验值估算：中日韩字符每字约1个token，
+     * 字母数字每4个字符约1个token，标点符号和换行各1个token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (isCjk(codePoint)) {
+                tokens += (wordLength + 3) / 4 + 1;
+                wordLength = 0;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                wordLength++;
+            } else {
+                tokens += (wordLength + 3) / 4;
+                wordLength = 0;
+                if (!Character.isWhitespace(codePoint) || codePoint == '\n') {
+                    tokens++;
+                }
+            }
+        }
+        return tokens + (wordLength + 3) / 4;
+    }
+
+    /**
+     * 按hunk边界把单个文件的diff拆分为不超过token预算的片段，相邻的小hunk合并到同一片段
+     * 单个hunk超过预算时按行拆分，后续片段补上原hunk头，保留行号上下文
+     */
+    public static List<String> chunkDiff(String diff, int maxTokens) {
+        if (diff == null || estimateTokens(diff) <= maxTokens) {
+            return List.of(diff != null ? diff : "");
+        }
+
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;
+        for (String hunk : splitHunks(diff)) {
+            int hunkTokens = estimateTokens(hunk);
+            if (currentTokens + hunkTokens > maxTokens && current.length() > 0) {
+                chunks.add(current.toString());
+                current.setLength(0);
+                currentTokens = 0;
+            }
+            if (hunkTokens > maxTokens) {
+                chunks.addAll(splitHunkByLines(hunk, maxTokens));
+                continue;
+            }
+            current.append(hunk);
+            currentTokens += hunkTokens;
+        }
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    /**
+     * 按@@行拆分hunk，第一个@@之前的内容归入第一个hunk
+     */
+    private static List<String> splitHunks(String diff) {
+        List<String> hunks = new ArrayList<>();
+        StringBuilder hunk = new StringBuilder();
+        for (String line : diff.split("(?<=\n)")) {
+            if (line.startsWith("@@") && hunk.indexOf("@@") >= 0) {
+                hunks.add(hunk.toString());
+                hunk.setLength(0);
+            }
+            hunk.append(line);
+        }
+        if (hunk.length() > 0) {
+            hunks.add(hunk.toString());
+        }
+        return hunks;
+    }
+
+    private static List<String> splitHunkByLines(String hunk, int maxTokens) {
+        String[] lines = hunk.split("(?<=\n)");
+        String header = lines[0].startsWith("@@") ? lines[0] : "";
+        int headerTokens = estimateTokens(header);
+        int budget = Math.max(1, maxTokens - headerTokens);
+
+        List<String> pieces = new ArrayList<>();
+        StringBuilder piece = new StringBuilder();
+        int pieceTokens = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int lineTokens = i == 0 ? headerTokens : estimateTokens(line);
+            if (pieceTokens + lineTokens > budget && piece.length() > 0) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+                piece.append(header);
+                pieceTokens = 0;
+            }
+            if (lineTokens > budget) {
+                // 超长单行（如压缩后的代码）只能按字符截断
+                int step = Math.max(1, (int) ((long) line.length() * budget / lineTokens));
+                for (int start = 0; start < line.length(); start += step) {
+                    pieces.add(header + line.substring(start, Math.min(line.length(), start + step)));
+                }
+                continue;
+            }
+            piece.append(line);
+            pieceTokens += lineTokens;
+        }
+        if (pieceTokens > 0) {
+            pieces.add(piece.toString());
+        }
+        return pieces;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
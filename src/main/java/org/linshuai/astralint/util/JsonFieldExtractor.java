@@ -0,0 +1,77 @@
+package org.linshuai.astralint.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 从JSON中流式读取少量字段，不构建完整的对象树
+ * 不需要的子树通过skipChildren跳过，例如push事件中的commits数组；所需字段都读到后立即停止解析
+ */
+public final class JsonFieldExtractor {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonFieldExtractor() {
+    }
+
+    /**
+     * 读取指定路径的标量字段
+     *
+     * @param paths 以点分隔的字段路径，例如 object_attributes.last_commit.id；不支持数组下标
+     * @return 路径到字段文本值的映射，缺失、为null或不是标量的字段不包含在内
+     */
+    public static Map<String, String> extract(byte[] buffer, int offset, int length, Set<String> paths)
+            throws IOException {
+        Set<String> objects = new HashSet<>();
+        for (String path : paths) {
+            for (int dot = path.indexOf('.'); dot > 0; dot = path.indexOf('.', dot + 1)) {
+                objects.add(path.substring(0, dot));
+            }
+        }
+
+        Map<String, String> values = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(buffer, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "JSON根节点不是对象");
+            }
+            readObject(parser, null, paths, objects, values);
+        }
+        return values;
+    }
+
+    /**
+     * 读取当前对象的字段，返回true表示所需字段已全部读到
+     */
+    private static boolean readObject(JsonParser parser, String prefix, Set<String> paths, Set<String> objects,
+                                      Map<String, String> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String path = prefix == null ? parser.currentName() : prefix + "." + parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (paths.contains(path)) {
+                if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                    values.put(path, parser.getText());
+                    if (values.size() == paths.size()) {
+                        return true;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_OBJECT && objects.contains(path)) {
+                if (readObject(parser, path, paths, objects, values)) {
+                    return true;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+}
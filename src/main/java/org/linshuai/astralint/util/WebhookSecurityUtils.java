@@ -5,15 +5,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Webhook安全验证工具类
+ * 每个线程缓存按密钥初始化好的Mac和MessageDigest，签名按字节与请求头中的十六进制串逐位比较（恒定时间），
+ * 校验过程中不创建十六进制字符串；Webhook密钥变更时丢弃各线程缓存的密钥
  */
 @Component
 public class WebhookSecurityUtils {
@@ -22,12 +30,53 @@ public class WebhookSecurityUtils {
 
   private static final String HMAC_SHA256 = "HmacSHA256";
   private static final String SHA256 = "SHA256";
+  private static final String GITHUB_SIGNATURE_PREFIX = "sha256=";
+  private static final int SHA256_LENGTH = 32;
+
+  // 每个线程缓存的密钥数上限，超过后淘汰最久未使用的
+  private static final int MAX_CACHED_KEYS = 32;
+
+  // 密钥变更时递增，线程发现代数变化后清空缓存的Mac
+  private final AtomicLong keyGeneration = new AtomicLong();
+
+  private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(ThreadState::new);
+
+  /**
+   * 线程私有的签名计算状态，Mac和MessageDigest不是线程安全的
+   */
+  private static final class ThreadState {
+
+    final byte[] digest = new byte[SHA256_LENGTH];
+
+    final Map<String, Mac> macs = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+        return size() > MAX_CACHED_KEYS;
+      }
+    };
+
+    long generation = -1;
+
+    MessageDigest sha256;
+  }
 
   /**
    * 验证GitHub Webhook签名
    * GitHub使用HMAC-SHA256签名
    */
   public boolean verifyGitHubSignature(String payload, String signature, String secret) {
+    if (payload == null) {
+      logger.warn("GitHub Webhook验证失败: 参数为空");
+      return false;
+    }
+    byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+    return verifyGitHubSignature(bytes, 0, bytes.length, signature, secret);
+  }
+
+  /**
+   * 验证GitHub Webhook签名，直接对原始请求体的字节计算HMAC
+   */
+  public boolean verifyGitHubSignature(byte[] payload, int offset, int length, String signature, String secret) {
     if (payload == null || signature == null || secret == null) {
       logger.warn("GitHub Webhook验证失败: 参数为空");
       return false;
@@ -35,13 +84,13 @@ public class WebhookSecurityUtils {
 
     try {
       // GitHub签名格式: sha256=<signature>
-      if (!signature.startsWith("sha256=")) {
+      if (!signature.startsWith(GITHUB_SIGNATURE_PREFIX)) {
         logger.warn("GitHub Webhook签名格式错误: {}", signature);
         return false;
       }
 
-      String expectedSignature = "sha256=" + calculateHmacSha256(payload, secret);
-      boolean isValid = secureEquals(signature, expectedSignature);
+      byte[] expected = calculateHmacSha256(payload, offset, length, secret);
+      boolean isValid = hexEquals(expected, signature, GITHUB_SIGNATURE_PREFIX.length());
 
       if (!isValid) {
         logger.warn("GitHub Webhook签名验证失败");
@@ -49,7 +98,7 @@ public class WebhookSecurityUtils {
 
       return isValid;
 
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+    } catch (GeneralSecurityException e) {
       logger.error("GitHub Webhook签名验证异常", e);
       return false;
     }
@@ -79,6 +128,18 @@ public class WebhookSecurityUtils {
    * Gitee支持多种验证方式，这里实现password验证
    */
   public boolean verifyGiteeSignature(String payload, String signature, String secret) {
+    if (payload == null) {
+      logger.warn("Gitee Webhook验证失败: 参数为空");
+      return false;
+    }
+    byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+    return verifyGiteeSignature(bytes, 0, bytes.length, signature, secret);
+  }
+
+  /**
+   * 验证Gitee Webhook签名，直接对原始请求体的字节计算摘要
+   */
+  public boolean verifyGiteeSignature(byte[] payload, int offset, int length, String signature, String secret) {
     if (payload == null || signature == null || secret == null) {
       logger.warn("Gitee Webhook验证失败: 参数为空");
       return false;
@@ -86,8 +147,8 @@ public class WebhookSecurityUtils {
 
     try {
       // Gitee的签名计算方式
-      String expectedSignature = calculateGiteeSignature(payload, secret);
-      boolean isValid = secureEquals(signature, expectedSignature);
+      byte[] expected = calculateGiteeSignature(payload, offset, length, secret);
+      boolean isValid = hexEquals(expected, signature, 0);
 
       if (!isValid) {
         logger.warn("Gitee Webhook签名验证失败");
@@ -102,41 +163,101 @@ public class WebhookSecurityUtils {
   }
 
   /**
-   * 计算HMAC-SHA256签名
+   * Webhook密钥变更后丢弃各线程缓存的Mac，旧密钥不再留在内存中
    */
-  private String calculateHmacSha256(String payload, String secret)
-      throws NoSuchAlgorithmException, InvalidKeyException {
+  public void invalidateKeys() {
+    keyGeneration.incrementAndGet();
+  }
 
-    Mac mac = Mac.getInstance(HMAC_SHA256);
-    SecretKeySpec secretKeySpec = new SecretKeySpec(
-        secret.getBytes(StandardCharsets.UTF_8), HMAC_SHA256);
-    mac.init(secretKeySpec);
+  /**
+   * 计算HMAC-SHA256签名，结果写入线程私有的缓冲区，下次计算前有效
+   */
+  private byte[] calculateHmacSha256(byte[] payload, int offset, int length, String secret)
+      throws NoSuchAlgorithmException, InvalidKeyException, ShortBufferException {
 
-    byte[] hash = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-    return bytesToHex(hash);
+    ThreadState state = threadState.get();
+    Mac mac = keyedMac(state, secret);
+    try {
+      mac.update(payload, offset, length);
+      // doFinal后Mac恢复到用同一密钥初始化后的状态，可直接复用
+      mac.doFinal(state.digest, 0);
+    } catch (RuntimeException | ShortBufferException e) {
+      mac.reset();
+      throw e;
+    }
+    return state.digest;
   }
 
   /**
-   * 计算Gitee签名 (使用SHA256)
+   * 计算Gitee签名 (使用SHA256)，等价于对payload + secret计算摘要，不拼接字符串
    */
-  private String calculateGiteeSignature(String payload, String secret)
-      throws NoSuchAlgorithmException {
+  private byte[] calculateGiteeSignature(byte[] payload, int offset, int length, String secret)
+      throws NoSuchAlgorithmException, DigestException {
 
-    String data = payload + secret;
-    MessageDigest digest = MessageDigest.getInstance(SHA256);
-    byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-    return bytesToHex(hash);
+    ThreadState state = threadState.get();
+    if (state.sha256 == null) {
+      state.sha256 = MessageDigest.getInstance(SHA256);
+    }
+    MessageDigest digest = state.sha256;
+    try {
+      digest.update(payload, offset, length);
+      digest.update(secret.getBytes(StandardCharsets.UTF_8));
+      digest.digest(state.digest, 0, SHA256_LENGTH);
+    } catch (RuntimeException | DigestException e) {
+      digest.reset();
+      throw e;
+    }
+    return state.digest;
   }
 
   /**
-   * 字节数组转十六进制字符串
+   * 返回当前线程用该密钥初始化好的Mac，首次使用或配置变更后重新创建
    */
-  private String bytesToHex(byte[] bytes) {
-    StringBuilder result = new StringBuilder();
-    for (byte b : bytes) {
-      result.append(String.format("%02x", b));
+  private Mac keyedMac(ThreadState state, String secret) throws NoSuchAlgorithmException, InvalidKeyException {
+    long generation = keyGeneration.get();
+    if (state.generation != generation) {
+      state.macs.clear();
+      state.generation = generation;
+    }
+
+    Mac mac = state.macs.get(secret);
+    if (mac == null) {
+      mac = Mac.getInstance(HMAC_SHA256);
+      mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_SHA256));
+      state.macs.put(secret, mac);
     }
-    return result.toString();
+    return mac;
+  }
+
+  /**
+   * 恒定时间比较摘要和十六进制签名（大小写均可），逐字符解码，不创建字符串
+   *
+   * @param offset 签名中十六进制部分的起始位置
+   */
+  static boolean hexEquals(byte[] digest, String signature, int offset) {
+    if (signature.length() - offset != digest.length * 2) {
+      return false;
+    }
+
+    int result = 0;
+    for (int i = 0; i < digest.length; i++) {
+      int high = hexValue(signature.charAt(offset + 2 * i));
+      int low = hexValue(signature.charAt(offset + 2 * i + 1));
+      // 非法字符的值为-1，与任何字节都不相等
+      result |= ((high << 4) | low) ^ (digest[i] & 0xff);
+    }
+    return result == 0;
+  }
+
+  /**
+   * 十六进制字符的值，非法字符返回-1；不使用分支和查表，耗时与字符无关
+   */
+  private static int hexValue(char c) {
+    // 每个区间的掩码在c落入区间时为全1，否则为0
+    int digit = ((('0' - 1 - c) & (c - ('9' + 1))) >> 31) & (c - '0' + 1);
+    int upper = ((('A' - 1 - c) & (c - ('F' + 1))) >> 31) & (c - 'A' + 11);
+    int lower = ((('a' - 1 - c) & (c - ('f' + 1))) >> 31) & (c - 'a' + 11);
+    return (digit | upper | lower) - 1;
   }
 
   /**
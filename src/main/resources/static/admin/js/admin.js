@@ -27,6 +27,7 @@ createApp({
                 apiKey: '',
                 temperature: 0.7,
                 maxTokens: 4000,
+                costWeight: 1.0,
                 isActive: true,
                 isDefault: false
             },
@@ -147,6 +148,7 @@ createApp({
                 apiKey: '',
                 temperature: 0.7,
                 maxTokens: 4000,
+                costWeight: 1.0,
                 isActive: true,
                 isDefault: false
             };
@@ -3,8 +3,21 @@ package org.linshuai.astralint.service;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.dto.FileDiff;
+import org.linshuai.astralint.dto.ReviewStreamEvent;
+import org.linshuai.astralint.entity.AiModelConfig;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -17,12 +30,31 @@ class AiCodeReviewServiceTest {
   @Mock
   private AiModelService aiModelService;
 
+  @Mock
+  private AiModelConfigService aiModelConfigService;
+
+  @Mock
+  private AiModelRouter aiModelRouter;
+
+  @Mock
+  private SemanticResultCache semanticResultCache;
+
   private AiCodeReviewService aiCodeReviewService;
 
   @BeforeEach
   void setUp() {
     MockitoAnnotations.openMocks(this);
     aiCodeReviewService = new AiCodeReviewService();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelConfigService", aiModelConfigService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelRouter", aiModelRouter);
+    ReflectionTestUtils.setField(aiCodeReviewService, "semanticResultCache", semanticResultCache);
+    ReflectionTestUtils.setField(aiCodeReviewService, "modelName", "qwen-plus");
+    ReflectionTestUtils.setField(aiCodeReviewService, "defaultChunkMaxInputTokens", 4000);
+    ReflectionTestUtils.setField(aiCodeReviewService, "chunkReservedTokens", 1000);
+    ReflectionTestUtils.setField(aiCodeReviewService, "maxChunksPerFile", 20);
+    when(aiModelConfigService.getModelConfigByName(anyString())).thenReturn(Optional.empty());
+    when(semanticResultCache.lookup(any(), any(), anyString(), anyString()))
+        .thenReturn(SemanticResultCache.Lookup.BYPASS);
   }
 
   @Test
@@ -120,4 +152,380 @@ class AiCodeReviewServiceTest {
     when(aiModelService.toString()).thenReturn("Mocked AiModelService");
     assertEquals("Mocked AiModelService", aiModelService.toString());
   }
+
+  @Test
+  @DisplayName("并发审查应该按文件原始顺序输出结果")
+  void testAnalyzeCodeDiffs_shouldKeepOriginalFileOrder() {
+    // Given
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(4);
+    executor.setMaxPoolSize(4);
+    executor.initialize();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "codeReviewExecutor", executor);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+
+    // 第一个文件最慢返回
+    when(aiModelService.analyzeCode(anyString(), eq("A.java"), isNull())).thenAnswer(invocation -> {
+      Thread.sleep(200);
+      return "review-A";
+    });
+    when(aiModelService.analyzeCode(anyString(), eq("B.java"), isNull())).thenReturn("review-B");
+    when(aiModelService.analyzeCode(anyString(), eq("C.java"), isNull())).thenReturn("review-C");
+
+    String diffs = """
+        {"changes": [
+          {"new_path": "A.java", "diff": "+a"},
+          {"new_path": "B.java", "diff": "+b"},
+          {"new_path": "C.java", "diff": "+c"}
+        ]}
+        """;
+
+    // When
+    String result = aiCodeReviewService.analyzeCodeDiffs(diffs);
+    executor.shutdown();
+
+    // Then
+    int a = result.indexOf("review-A");
+    int b = result.indexOf("review-B");
+    int c = result.indexOf("review-C");
+    assertTrue(a >= 0 && a < b && b < c);
+  }
+
+  @Test
+  @DisplayName("综合审查应该只调用一次AI并拆分出四个部分")
+  void testGenerateComprehensiveReview_shouldUseSinglePass() {
+    // Given
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.initialize();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "codeReviewExecutor", executor);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "singlePassComprehensive", true);
+
+    when(aiModelService.reviewAllAspects(anyString(), eq("A.java"), isNull())).thenReturn("""
+        <<<SUMMARY>>>
+        summary-text
+        <<<SECURITY>>>
+        security-text
+        <<<PERFORMANCE>>>
+        performance-text
+        <<<QUALITY>>>
+        quality-text
+        """);
+
+    // When
+    String report = aiCodeReviewService.generateComprehensiveReview(
+        "{\"changes\": [{\"new_path\": \"A.java\", \"diff\": \"+a\"}]}");
+    executor.shutdown();
+
+    // Then
+    verify(aiModelService, times(1)).reviewAllAspects(anyString(), eq("A.java"), isNull());
+    verify(aiModelService, never()).analyzeCode(anyString(), anyString(), any());
+    assertTrue(report.indexOf("summary-text") < report.indexOf("security-text"));
+    assertTrue(report.indexOf("security-text") < report.indexOf("performance-text"));
+    assertTrue(report.indexOf("performance-text") < report.indexOf("quality-text"));
+    assertFalse(report.contains("<<<"));
+  }
+
+  @Test
+  @DisplayName("流式审查按文件原始顺序推送开始、片段和结束事件")
+  void testStreamComprehensiveReview_shouldEmitEventsInFileOrder() {
+    // Given
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "streamConcurrency", 4);
+
+    // 第一个文件最慢返回
+    when(aiModelService.streamReviewAllAspects(anyString(), eq("A.java")))
+        .thenReturn(Flux.just("a1", "a2").delayElements(Duration.ofMillis(50)));
+    when(aiModelService.streamReviewAllAspects(anyString(), eq("B.java")))
+        .thenReturn(Flux.just("b1"));
+
+    // When
+    List<ReviewStreamEvent> events = aiCodeReviewService.streamComprehensiveReview("""
+        {"changes": [
+          {"new_path": "A.java", "diff": "+a"},
+          {"new_path": "B.java", "diff": "+b"}
+        ]}
+        """, "code").collectList().block(Duration.ofSeconds(5));
+
+    // Then
+    assertNotNull(events);
+    List<String> sequence = events.stream()
+        .map(event -> event.getType() + ":" + event.getFilePath() + ":" + event.getContent())
+        .toList();
+    assertEquals(List.of(
+        "FILE_START:A.java:null", "DELTA:A.java:a1", "DELTA:A.java:a2", "FILE_END:A.java:null",
+        "FILE_START:B.java:null", "DELTA:B.java:b1", "FILE_END:B.java:null"), sequence);
+  }
+
+  @Test
+  @DisplayName("流式审查的所有文件片段共用一个并发上限，事件按文件和片段顺序输出")
+  void testStreamComprehensiveReview_shouldBoundConcurrencyAcrossFilesAndChunks() {
+    // Given
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "streamConcurrency", 2);
+    when(aiModelRouter.maxInputTokens(ReviewAspect.COMPREHENSIVE)).thenReturn(OptionalInt.of(1256));
+
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    when(aiModelService.streamReviewAllAspects(anyString(), anyString())).thenAnswer(invocation -> {
+      String chunk = invocation.getArgument(0);
+      String label = invocation.getArgument(1) + "#" + chunk.substring(4, chunk.indexOf(','));
+      return Flux.defer(() -> {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        return Flux.just(label).delayElements(Duration.ofMillis(30));
+      }).doOnTerminate(active::decrementAndGet);
+    });
+
+    // 每个文件两个hunk，每个约200个token，预算256个token时各拆为两个片段
+    String hunks = "@@ -1,1 +1,1 @@\n" + "+first ".repeat(60) + "\n"
+        + "@@ -50,1 +50,1 @@\n" + "+second ".repeat(60) + "\n";
+    String diffs = "diff --git a/A.java b/A.java\n+++ b/A.java\n" + hunks
+        + "diff --git a/B.java b/B.java\n+++ b/B.java\n" + hunks;
+
+    // When
+    List<ReviewStreamEvent> events = aiCodeReviewService.streamComprehensiveReview(diffs, "code")
+        .collectList().block(Duration.ofSeconds(5));
+
+    // Then
+    assertNotNull(events);
+    assertEquals(2, maxActive.get());
+    List<String> sequence = events.stream()
+        .filter(event -> event.getType() != ReviewStreamEvent.Type.DELTA || !event.getContent().isBlank())
+        .map(event -> event.getType() + ":" + event.getFilePath()
+            + (event.getType() == ReviewStreamEvent.Type.DELTA ? ":" + event.getContent().trim() : ""))
+        .toList();
+    assertEquals(List.of(
+        "FILE_START:A.java", "DELTA:A.java:**第1/2部分**", "DELTA:A.java:A.java#1", "DELTA:A.java:**第2/2部分**",
+        "DELTA:A.java:A.java#50", "FILE_END:A.java",
+        "FILE_START:B.java", "DELTA:B.java:**第1/2部分**", "DELTA:B.java:B.java#1", "DELTA:B.java:**第2/2部分**",
+        "DELTA:B.java:B.java#50", "FILE_END:B.java"), sequence);
+  }
+
+  @Test
+  @DisplayName("流式审查超过总截止时间时取消AI调用并以超时事件结束，持续输出不会重新计时")
+  void testStreamComprehensiveReview_shouldEndWithTimeoutEvent() {
+    // Given
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 300L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "streamConcurrency", 4);
+    AtomicInteger cancelled = new AtomicInteger();
+    when(aiModelService.streamReviewAllAspects(anyString(), eq("A.java"))).thenReturn(Flux.just("a1"));
+    // 每50ms输出一个片段，永不结束
+    when(aiModelService.streamReviewAllAspects(anyString(), eq("B.java")))
+        .thenReturn(Flux.interval(Duration.ofMillis(50)).map(i -> "b").doOnCancel(cancelled::incrementAndGet));
+
+    // When
+    List<ReviewStreamEvent> events = aiCodeReviewService.streamComprehensiveReview("""
+        {"changes": [
+          {"new_path": "A.java", "diff": "+a"},
+          {"new_path": "B.java", "diff": "+b"}
+        ]}
+        """, "code").collectList().block(Duration.ofSeconds(5));
+
+    // Then
+    assertNotNull(events);
+    ReviewStreamEvent last = events.get(events.size() - 1);
+    assertEquals(ReviewStreamEvent.Type.TIMEOUT, last.getType());
+    assertTrue(last.getContent().contains("审查超时"));
+    assertEquals(ReviewStreamEvent.Type.FILE_END, events.get(2).getType());
+    assertTrue(events.stream().noneMatch(event -> event.getType() == ReviewStreamEvent.Type.FILE_END
+        && "B.java".equals(event.getFilePath())));
+    assertEquals(1, cancelled.get());
+  }
+
+  @Test
+  @DisplayName("非diff格式的输入整体作为一个文件流式审查")
+  void testStreamComprehensiveReview_shouldTreatPlainCodeAsSingleFile() {
+    // Given
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "streamConcurrency", 4);
+    when(aiModelService.streamReviewAllAspects(anyString(), eq("Main.java"))).thenReturn(Flux.just("ok"));
+
+    // When
+    List<ReviewStreamEvent> events = aiCodeReviewService
+        .streamComprehensiveReview("public class Main {}", "Main.java")
+        .collectList().block(Duration.ofSeconds(5));
+
+    // Then
+    assertNotNull(events);
+    assertEquals(3, events.size());
+    verify(aiModelService).streamReviewAllAspects("public class Main {}", "Main.java");
+  }
+
+  @Test
+  @DisplayName("超过token预算的文件按hunk拆分并发审查，结果按片段顺序合并")
+  void testAnalyzeCodeDiffs_shouldChunkLargeFiles() {
+    // Given
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(4);
+    executor.setMaxPoolSize(4);
+    executor.initialize();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "codeReviewExecutor", executor);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+
+    // 输出上限maxTokens不影响片段预算，只看处理该维度的模型中最小的输入上限
+    AiModelConfig modelConfig = new AiModelConfig();
+    modelConfig.setMaxTokens(8000);
+    when(aiModelConfigService.getModelConfigByName("qwen-plus")).thenReturn(Optional.of(modelConfig));
+    when(aiModelRouter.maxInputTokens(ReviewAspect.ANALYSIS)).thenReturn(OptionalInt.of(1256));
+
+    // 两个hunk，每个约200个token，预算256个token时拆为两个片段
+    String hunk1 = "@@ -1,1 +1,1 @@\n" + "+first ".repeat(60) + "\n";
+    String hunk2 = "@@ -50,1 +50,1 @@\n" + "+second ".repeat(60) + "\n";
+    when(aiModelService.analyzeCode(startsWith("@@ -1,"), eq("Big.java"), isNull())).thenReturn("review-1");
+    when(aiModelService.analyzeCode(startsWith("@@ -50,"), eq("Big.java"), isNull())).thenReturn("review-2");
+
+    String diffs = "diff --git a/Big.java b/Big.java\n+++ b/Big.java\n" + hunk1 + hunk2;
+
+    // When
+    String result = aiCodeReviewService.analyzeCodeDiffs(diffs);
+    executor.shutdown();
+
+    // Then
+    verify(aiModelService, times(2)).analyzeCode(anyString(), eq("Big.java"), isNull());
+    assertFalse(result.contains("跳过AI分析"));
+    assertTrue(result.indexOf("review-1") < result.indexOf("review-2"));
+    assertTrue(result.contains("第1/2部分"));
+  }
+
+  @Test
+  @DisplayName("综合审查把小文件合并为一次批量调用，批量响应缺失的文件单独补审")
+  void testGenerateComprehensiveReview_shouldBatchSmallFiles() {
+    // Given
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.initialize();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "codeReviewExecutor", executor);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "singlePassComprehensive", true);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchEnabled", true);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchSmallFileTokens", 800);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchMaxFiles", 10);
+
+    // 批量响应只包含前两个文件
+    when(aiModelService.reviewAllAspectsBatch(anyList())).thenAnswer(invocation -> {
+      List<FileDiff> batch = invocation.getArgument(0);
+      StringBuilder response = new StringBuilder();
+      for (int i = 0; i < batch.size() - 1; i++) {
+        response.append("<<<FILE ").append(i + 1).append(">>>\n")
+            .append("<<<SUMMARY>>>\nsummary-").append(batch.get(i).getFilePath()).append("\n")
+            .append("<<<QUALITY>>>\nquality-").append(batch.get(i).getFilePath()).append("\n");
+      }
+      return response.toString();
+    });
+    when(aiModelService.reviewAllAspects(anyString(), anyString(), isNull()))
+        .thenAnswer(invocation -> "<<<SUMMARY>>>\nsingle-" + invocation.getArgument(1));
+
+    // When
+    String report = aiCodeReviewService.generateComprehensiveReview("""
+        {"changes": [
+          {"new_path": "A.yml", "diff": "+a: 1"},
+          {"new_path": "B.yml", "diff": "+b: 2"},
+          {"new_path": "C.yml", "diff": "+c: 3"}
+        ]}
+        """);
+    executor.shutdown();
+
+    // Then
+    verify(aiModelService, times(1)).reviewAllAspectsBatch(anyList());
+    verify(aiModelService, times(1)).reviewAllAspects(anyString(), anyString(), isNull());
+    assertTrue(report.contains("summary-A.yml") || report.contains("single-A.yml"));
+    assertTrue(report.contains("summary-B.yml") || report.contains("single-B.yml"));
+    assertTrue(report.contains("summary-C.yml") || report.contains("single-C.yml"));
+    assertFalse(report.contains("<<<"));
+  }
+
+  @Test
+  @DisplayName("批量调用失败或响应没有文件标记时整批报告失败，不逐个文件补审")
+  void testGenerateComprehensiveReview_shouldNotFanOutFailedBatch() {
+    // Given
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.initialize();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "codeReviewExecutor", executor);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "singlePassComprehensive", true);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchEnabled", true);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchSmallFileTokens", 800);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchMaxFiles", 10);
+    String diffs = """
+        {"changes": [
+          {"new_path": "A.yml", "diff": "+a: 1"},
+          {"new_path": "B.yml", "diff": "+b: 2"}
+        ]}
+        """;
+
+    // When
+    when(aiModelService.reviewAllAspectsBatch(anyList()))
+        .thenThrow(new IllegalStateException("AI:qwen-plus 熔断中，暂停调用"));
+    String failedReport = aiCodeReviewService.generateComprehensiveReview(diffs);
+    verify(aiModelService, never()).reviewAllAspects(anyString(), anyString(), any());
+    reset(aiModelService);
+    when(aiModelService.reviewAllAspectsBatch(anyList())).thenReturn("服务繁忙，请稍后再试");
+    String unformattedReport = aiCodeReviewService.generateComprehensiveReview(diffs);
+    executor.shutdown();
+
+    // Then
+    verify(aiModelService, never()).reviewAllAspects(anyString(), anyString(), any());
+    assertEquals(2, failedReport.split("AI分析失败: AI:qwen-plus 熔断中", -1).length - 1);
+    assertEquals(2, unformattedReport.split("AI分析失败: 批量审查响应缺少文件分隔标记", -1).length - 1);
+  }
+
+  @Test
+  @DisplayName("综合审查指定项目时，批量中命中语义缓存的文件不再发给模型，其余文件的结果加入语义缓存")
+  void testGenerateComprehensiveReview_shouldUseSemanticCacheForBatch() {
+    // Given
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.initialize();
+    ReflectionTestUtils.setField(aiCodeReviewService, "aiModelService", aiModelService);
+    ReflectionTestUtils.setField(aiCodeReviewService, "codeReviewExecutor", executor);
+    ReflectionTestUtils.setField(aiCodeReviewService, "reviewTimeout", 10000L);
+    ReflectionTestUtils.setField(aiCodeReviewService, "singlePassComprehensive", true);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchEnabled", true);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchSmallFileTokens", 800);
+    ReflectionTestUtils.setField(aiCodeReviewService, "batchMaxFiles", 10);
+
+    SemanticResultCache.Lookup hit = mock(SemanticResultCache.Lookup.class);
+    when(hit.result()).thenReturn("<<<SUMMARY>>>\ncached-A.yml");
+    SemanticResultCache.Lookup miss = mock(SemanticResultCache.Lookup.class);
+    when(semanticResultCache.lookup(eq("GITLAB:7"), eq(ReviewAspect.COMPREHENSIVE), eq("A.yml"), anyString()))
+        .thenReturn(hit);
+    when(semanticResultCache.lookup(eq("GITLAB:7"), eq(ReviewAspect.COMPREHENSIVE), eq("B.yml"), anyString()))
+        .thenReturn(miss);
+    when(semanticResultCache.lookup(eq("GITLAB:7"), eq(ReviewAspect.COMPREHENSIVE), eq("C.yml"), anyString()))
+        .thenReturn(miss);
+    when(aiModelService.reviewAllAspectsBatch(anyList())).thenAnswer(invocation -> {
+      List<FileDiff> batch = invocation.getArgument(0);
+      StringBuilder response = new StringBuilder();
+      for (int i = 0; i < batch.size(); i++) {
+        response.append("<<<FILE ").append(i + 1).append(">>>\n")
+            .append("<<<SUMMARY>>>\nsummary-").append(batch.get(i).getFilePath()).append("\n");
+      }
+      return response.toString();
+    });
+
+    // When
+    String report = aiCodeReviewService.generateComprehensiveReview("""
+        {"changes": [
+          {"new_path": "A.yml", "diff": "+a: 1"},
+          {"new_path": "B.yml", "diff": "+b: 2"},
+          {"new_path": "C.yml", "diff": "+c: 3"}
+        ]}
+        """, "GITLAB:7");
+    executor.shutdown();
+
+    // Then
+    verify(aiModelService).reviewAllAspectsBatch(argThat(batch -> batch.size() == 2
+        && batch.stream().noneMatch(file -> file.getFilePath().equals("A.yml"))));
+    verify(miss).store(contains("summary-B.yml"));
+    verify(miss).store(contains("summary-C.yml"));
+    assertTrue(report.contains("cached-A.yml"));
+    assertTrue(report.contains("summary-B.yml") && report.contains("summary-C.yml"));
+  }
 }
@@ -0,0 +1,187 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AiModelRouter.
+ */
+class AiModelRouterTest {
+
+  @Mock
+  private AiModelConfigService aiModelConfigService;
+
+  @Mock
+  private ObjectProvider<ChatClient.Builder> chatClientBuilders;
+
+  @Mock
+  private ChatClient defaultChatClient;
+
+  private AiModelRouter router;
+
+  private final Map<String, ChatClient> clients = new LinkedHashMap<>();
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    router = new AiModelRouter();
+    ReflectionTestUtils.setField(router, "aiModelConfigService", aiModelConfigService);
+    ReflectionTestUtils.setField(router, "chatClientBuilders", chatClientBuilders);
+    ReflectionTestUtils.setField(router, "chatClient", defaultChatClient);
+    ReflectionTestUtils.setField(router, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(router, "defaultTimeoutMs", 30000L);
+    ReflectionTestUtils.setField(router, "routingEnabled", true);
+    ReflectionTestUtils.setField(router, "supportedProviders", Set.of("ALIBABA"));
+  }
+
+  private AiModelConfig model(String name, double costWeight) {
+    AiModelConfig config = new AiModelConfig(name, "ALIBABA");
+    config.setCostWeight(costWeight);
+    return config;
+  }
+
+  /**
+   * 按配置顺序为每个模型准备一个ChatClient
+   */
+  private void givenModels(AiModelConfig... configs) {
+    List<ChatClient.Builder> builders = new ArrayList<>();
+    for (AiModelConfig config : configs) {
+      ChatClient client = mock(ChatClient.class);
+      ChatClient.Builder builder = mock(ChatClient.Builder.class, RETURNS_SELF);
+      when(builder.build()).thenReturn(client);
+      builders.add(builder);
+      clients.put(config.getModelName(), client);
+    }
+    when(aiModelConfigService.getActiveModelConfigs()).thenReturn(List.of(configs));
+    if (!builders.isEmpty()) {
+      when(chatClientBuilders.getObject())
+          .thenReturn(builders.get(0), builders.subList(1, builders.size()).toArray(new ChatClient.Builder[0]));
+    }
+  }
+
+  @Test
+  @DisplayName("专门负责安全检查的模型只用于安全检查，其他维度使用成本最低的模型")
+  void testRoute_shouldPreferAspectSpecialist() {
+    AiModelConfig turbo = model("qwen-turbo", 0.3);
+    AiModelConfig plus = model("qwen-plus", 1.0);
+    AiModelConfig max = model("qwen-max", 5.0);
+    max.setRoutingAspects("SECURITY");
+    givenModels(plus, max, turbo);
+
+    assertSame(clients.get("qwen-max"), router.route(ReviewAspect.SECURITY, "A.java", "+a"));
+    assertSame(clients.get("qwen-turbo"), router.route(ReviewAspect.SUMMARY, "A.java", "+a"));
+    assertSame(clients.get("qwen-turbo"), router.route(ReviewAspect.COMPREHENSIVE, "A.java", "+a"));
+  }
+
+  @Test
+  @DisplayName("备选模型按专用优先、成本从低到高排列，供对冲和故障转移使用")
+  void testRoutes_shouldListBackupsInPreferenceOrder() {
+    AiModelConfig turbo = model("qwen-turbo", 0.3);
+    AiModelConfig plus = model("qwen-plus", 1.0);
+    plus.setTimeoutMs(20000);
+    AiModelConfig max = model("qwen-max", 5.0);
+    max.setRoutingAspects("SECURITY");
+    givenModels(plus, max, turbo);
+
+    List<AiModelRouter.Route> routes = router.routes(ReviewAspect.SECURITY, "A.java", "+a");
+
+    assertEquals(List.of("qwen-max", "qwen-turbo", "qwen-plus"),
+        routes.stream().map(AiModelRouter.Route::modelName).toList());
+    assertEquals(20000L, routes.get(2).timeoutMs());
+  }
+
+  @Test
+  @DisplayName("超过输入上限或语言不匹配时路由到下一个模型")
+  void testRoute_shouldRespectSizeAndLanguage() {
+    AiModelConfig turbo = model("qwen-turbo", 0.3);
+    turbo.setMaxInputTokens(100);
+    AiModelConfig coder = model("qwen-coder", 0.5);
+    coder.setRoutingLanguages("java, .kt");
+    AiModelConfig plus = model("qwen-plus", 1.0);
+    givenModels(turbo, coder, plus);
+
+    String largePrompt = "+line\n".repeat(200);
+    assertSame(clients.get("qwen-turbo"), router.route(ReviewAspect.COMPREHENSIVE, "A.java", "+a"));
+    assertSame(clients.get("qwen-coder"), router.route(ReviewAspect.COMPREHENSIVE, "A.java", largePrompt));
+    assertSame(clients.get("qwen-coder"), router.route(ReviewAspect.COMPREHENSIVE, "B.kt", largePrompt));
+    assertSame(clients.get("qwen-plus"), router.route(ReviewAspect.COMPREHENSIVE, "app.yml", largePrompt));
+    assertSame(clients.get("qwen-plus"), router.route(ReviewAspect.BATCH_COMPREHENSIVE, null, largePrompt));
+  }
+
+  @Test
+  @DisplayName("不支持的提供商不参与路由，没有可用模型时使用默认ChatClient")
+  void testRoute_shouldFallBackToDefaultClient() {
+    givenModels(new AiModelConfig("gpt-4", "OPENAI"));
+
+    assertSame(defaultChatClient, router.route(ReviewAspect.SECURITY, "A.java", "+a"));
+    verify(chatClientBuilders, never()).getObject();
+  }
+
+  @Test
+  @DisplayName("路由只构建一次，模型配置变更后重新加载")
+  void testRoute_shouldReloadAfterConfigChanged() {
+    givenModels(model("qwen-plus", 1.0));
+
+    router.route(ReviewAspect.SUMMARY, "A.java", "+a");
+    router.route(ReviewAspect.SUMMARY, "B.java", "+b");
+    verify(aiModelConfigService, times(1)).getActiveModelConfigs();
+
+    router.onAiModelConfigChanged(new AiModelConfigChangedEvent(1L));
+    router.route(ReviewAspect.SUMMARY, "A.java", "+a");
+    verify(aiModelConfigService, times(2)).getActiveModelConfigs();
+  }
+
+  @Test
+  @DisplayName("路由版本由模型配置内容决定：配置不变时稳定，配置变更后改变")
+  void testRoutingVersion_shouldChangeWithModelConfig() {
+    givenModels(model("qwen-turbo", 0.3), model("qwen-max", 5.0));
+    String version = router.routingVersion();
+    assertEquals(version, router.routingVersion());
+
+    router.onAiModelConfigChanged(new AiModelConfigChangedEvent(1L));
+    givenModels(model("qwen-turbo", 0.3), model("qwen-max", 5.0));
+    assertEquals(version, router.routingVersion());
+
+    router.onAiModelConfigChanged(new AiModelConfigChangedEvent(1L));
+    givenModels(model("qwen-plus", 1.0), model("qwen-max", 5.0));
+    assertNotEquals(version, router.routingVersion());
+  }
+
+  @Test
+  @DisplayName("片段预算使用可能处理该维度的模型中最小的输入上限")
+  void testMaxInputTokens_shouldUseSmallestLimitForAspect() {
+    AiModelConfig turbo = model("qwen-turbo", 0.3);
+    turbo.setMaxInputTokens(2000);
+    turbo.setRoutingAspects("SUMMARY");
+    AiModelConfig plus = model("qwen-plus", 1.0);
+    plus.setMaxInputTokens(30000);
+    AiModelConfig max = model("qwen-max", 5.0);
+    givenModels(turbo, plus, max);
+
+    assertEquals(OptionalInt.of(2000), router.maxInputTokens(ReviewAspect.SUMMARY));
+    assertEquals(OptionalInt.of(30000), router.maxInputTokens(ReviewAspect.SECURITY));
+
+    ReflectionTestUtils.setField(router, "routingEnabled", false);
+    assertEquals(OptionalInt.empty(), router.maxInputTokens(ReviewAspect.SECURITY));
+  }
+}
@@ -0,0 +1,150 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.util.CodeReviewUtils;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AiModelService.
+ */
+class AiModelServiceTest {
+
+  @Mock
+  private AiModelRouter aiModelRouter;
+
+  @Mock
+  private AiResultCache aiResultCache;
+
+  @Mock
+  private TokenUsageTracker tokenUsageTracker;
+
+  @Mock
+  private AiModelConfigService aiModelConfigService;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private DependencyGuard dependencyGuard;
+
+  private AiModelService aiModelService;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+
+    StubChatModel stubChatModel = new StubChatModel();
+    ReflectionTestUtils.setField(stubChatModel, "latencyMedianMs", 0L);
+    ReflectionTestUtils.setField(stubChatModel, "latencyP99Ms", 0L);
+    ReflectionTestUtils.setField(stubChatModel, "streamChunkChars", 16);
+    ReflectionTestUtils.setField(stubChatModel, "seed", 42L);
+    when(aiModelRouter.routes(eq(ReviewAspect.COMPREHENSIVE), anyString(), anyString()))
+        .thenReturn(List.of(new AiModelRouter.Route("qwen-plus", ChatClient.create(stubChatModel), 5000)));
+
+    dependencyGuard = new DependencyGuard();
+    ReflectionTestUtils.setField(dependencyGuard, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(dependencyGuard, "failureRateThreshold", 0.5);
+    ReflectionTestUtils.setField(dependencyGuard, "slidingWindowSize", 4);
+    ReflectionTestUtils.setField(dependencyGuard, "minimumCalls", 4);
+    ReflectionTestUtils.setField(dependencyGuard, "openDuration", Duration.ofSeconds(30));
+    ReflectionTestUtils.setField(dependencyGuard, "halfOpenCalls", 1);
+    ReflectionTestUtils.setField(dependencyGuard, "aiMaxConcurrentCalls", 1);
+
+    ModelRateLimiter modelRateLimiter = new ModelRateLimiter();
+    ReflectionTestUtils.setField(modelRateLimiter, "aiModelConfigService", aiModelConfigService);
+    ReflectionTestUtils.setField(modelRateLimiter, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(modelRateLimiter, "rateLimitEnabled", true);
+    ReflectionTestUtils.setField(modelRateLimiter, "maxWaitMs", 1000L);
+    ReflectionTestUtils.setField(modelRateLimiter, "latencyTolerance", 2.0);
+    AiModelConfig config = new AiModelConfig("qwen-plus", "ALIBABA");
+    config.setMaxConcurrency(1);
+    when(aiModelConfigService.getModelConfigByName("qwen-plus")).thenReturn(Optional.of(config));
+
+    aiModelService = new AiModelService();
+    ReflectionTestUtils.setField(aiModelService, "aiModelRouter", aiModelRouter);
+    ReflectionTestUtils.setField(aiModelService, "aiResultCache", aiResultCache);
+    ReflectionTestUtils.setField(aiModelService, "tokenUsageTracker", tokenUsageTracker);
+    ReflectionTestUtils.setField(aiModelService, "dependencyGuard", dependencyGuard);
+    ReflectionTestUtils.setField(aiModelService, "modelRateLimiter", modelRateLimiter);
+    ReflectionTestUtils.setField(aiModelService, "comprehensiveReviewPromptTemplate", new PromptTemplate("""
+        文件: {fileName}
+        代码变更：
+        {codeDiff}
+        <<<SUMMARY>>>
+        """));
+    ReflectionTestUtils.setField(aiModelService, "aiEnabled", true);
+  }
+
+  @AfterEach
+  void tearDown() {
+    dependencyGuard.close();
+  }
+
+  @Test
+  @DisplayName("流式审查结束时按最后一个片段的累计用量记账，并归属到订阅方传入的审查")
+  void testStreamReviewAllAspects_shouldRecordUsageToReviewContext() {
+    ReviewContext review = new ReviewContext("review-1", null);
+    AtomicReference<ReviewContext> recordedIn = new AtomicReference<>();
+    doAnswer(invocation -> {
+      recordedIn.set(ReviewContext.current());
+      return null;
+    }).when(tokenUsageTracker).record(anyString(), anyLong(), anyLong());
+
+    String text = String.join("", aiModelService.streamReviewAllAspects("+int a = 1;", "A.java")
+        .contextWrite(Context.of(ReviewContext.class, review))
+        .collectList()
+        .block(Duration.ofSeconds(5)));
+
+    assertTrue(text.startsWith("<<<SUMMARY>>>"));
+    verify(tokenUsageTracker).record(eq("qwen-plus"), longThat(tokens -> tokens > 0),
+        eq((long) CodeReviewUtils.estimateTokens(text)));
+    assertSame(review, recordedIn.get());
+    verify(aiResultCache).put(ReviewAspect.COMPREHENSIVE, "A.java", "+int a = 1;", text);
+  }
+
+  @Test
+  @DisplayName("流式审查占用主模型的熔断和限流许可，被取消后归还")
+  void testStreamReviewAllAspects_shouldReleasePermitsWhenCancelled() {
+    aiModelService.streamReviewAllAspects("+int a = 1;", "A.java").take(1).blockLast(Duration.ofSeconds(5));
+
+    assertEquals("ok", dependencyGuard.callInline("AI:qwen-plus", () -> "ok"));
+    assertEquals(0.0, meterRegistry.get("astralint.ai.limiter.in-flight").tag("model", "qwen-plus").gauge().value());
+  }
+
+  @Test
+  @DisplayName("主模型熔断打开时流式审查直接失败，不调用模型")
+  void testStreamReviewAllAspects_shouldFailFastWhenCircuitOpen() {
+    for (int i = 0; i < 4; i++) {
+      assertThrows(IllegalStateException.class, () -> dependencyGuard.callInline("AI:qwen-plus", () -> {
+        throw new IllegalStateException("DashScope不可用");
+      }));
+    }
+
+    List<String> output = aiModelService.streamReviewAllAspects("+int a = 1;", "A.java")
+        .collectList()
+        .block(Duration.ofSeconds(5));
+
+    assertEquals(1, output.size());
+    assertTrue(output.get(0).startsWith("AI分析失败") && output.get(0).contains("熔断"));
+    verifyNoInteractions(tokenUsageTracker);
+  }
+}
@@ -0,0 +1,112 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AiResultCache.
+ */
+class AiResultCacheTest {
+
+  @Mock
+  private AiModelRouter aiModelRouter;
+
+  private AiResultCache cache;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    when(aiModelRouter.routingVersion()).thenReturn("routes-1");
+    cache = new AiResultCache();
+    ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(cache, "enabled", true);
+    ReflectionTestUtils.setField(cache, "aiModelRouter", aiModelRouter);
+    ReflectionTestUtils.setField(cache, "promptVersion", "v1");
+    ReflectionTestUtils.setField(cache, "maxEntries", 100L);
+    ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(10));
+    ReflectionTestUtils.setField(cache, "diskEnabled", false);
+    cache.init();
+  }
+
+  @Test
+  @DisplayName("相同diff只应调用一次模型")
+  void testGetOrCompute_shouldHitOnSameDiff() {
+    AtomicInteger calls = new AtomicInteger();
+
+    String first = cache.getOrCompute(ReviewAspect.ANALYSIS, "A.java", "+a",
+        () -> "result-" + calls.incrementAndGet());
+    String second = cache.getOrCompute(ReviewAspect.ANALYSIS, "A.java", "+a",
+        () -> "result-" + calls.incrementAndGet());
+
+    assertEquals("result-1", first);
+    assertEquals("result-1", second);
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  @DisplayName("不同审查维度不应共享缓存")
+  void testGetOrCompute_shouldSeparateAspects() {
+    cache.getOrCompute(ReviewAspect.ANALYSIS, "A.java", "+a", () -> "analysis");
+    String security = cache.getOrCompute(ReviewAspect.SECURITY, "A.java", "+a", () -> "security");
+
+    assertEquals("security", security);
+  }
+
+  @Test
+  @DisplayName("模型路由配置变化后不应返回其他模型组合产生的结果")
+  void testGetOrCompute_shouldSeparateRoutingVersions() {
+    cache.getOrCompute(ReviewAspect.ANALYSIS, "A.java", "+a", () -> "from-turbo");
+
+    when(aiModelRouter.routingVersion()).thenReturn("routes-2");
+    assertEquals("from-max", cache.getOrCompute(ReviewAspect.ANALYSIS, "A.java", "+a", () -> "from-max"));
+  }
+
+  @Test
+  @DisplayName("模型配置变更事件应清空内存缓存")
+  void testOnAiModelConfigChanged_shouldInvalidateMemoryTier() {
+    cache.getOrCompute(ReviewAspect.ANALYSIS, "A.java", "+a", () -> "old");
+
+    cache.onAiModelConfigChanged(new AiModelConfigChangedEvent(1L));
+
+    assertNull(cache.getIfPresent(ReviewAspect.ANALYSIS, "A.java", "+a"));
+  }
+
+  @Test
+  @DisplayName("空结果不应被缓存")
+  void testGetOrCompute_shouldNotCacheNull() {
+    AtomicInteger calls = new AtomicInteger();
+
+    cache.getOrCompute(ReviewAspect.SUMMARY, "A.java", "+a", () -> {
+      calls.incrementAndGet();
+      return null;
+    });
+    cache.getOrCompute(ReviewAspect.SUMMARY, "A.java", "+a", () -> {
+      calls.incrementAndGet();
+      return null;
+    });
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  @DisplayName("规范化应忽略hunk行号和index行")
+  void testNormalize_shouldIgnoreLineNumbers() {
+    String before = "index 123..456 100644\n@@ -1,3 +1,4 @@ class A\n+int x;  \n";
+    String after = "index 789..abc 100644\n@@ -10,3 +12,4 @@ class A\n+int x;\n";
+
+    assertEquals(AiResultCache.normalize(before), AiResultCache.normalize(after));
+  }
+}
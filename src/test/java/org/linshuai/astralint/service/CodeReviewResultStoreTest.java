@@ -0,0 +1,187 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.constant.CodeReviewConstants;
+import org.linshuai.astralint.dto.CodeReviewResponse;
+import org.linshuai.astralint.dto.CodeReviewResponse.ReviewStatus;
+import org.linshuai.astralint.entity.CodeReview;
+import org.linshuai.astralint.repository.CodeReviewIssueRepository;
+import org.linshuai.astralint.repository.CodeReviewRepository;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for CodeReviewResultStore.
+ */
+class CodeReviewResultStoreTest {
+
+  @Mock
+  private CodeReviewRepository codeReviewRepository;
+
+  @Mock
+  private CodeReviewIssueRepository codeReviewIssueRepository;
+
+  @Mock
+  private CacheManager cacheManager;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private CodeReviewResultStore store;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+    when(cacheManager.getCache(CodeReviewConstants.CACHE_CODE_REVIEWS))
+        .thenReturn(new ConcurrentMapCache(CodeReviewConstants.CACHE_CODE_REVIEWS));
+
+    store = new CodeReviewResultStore();
+    ReflectionTestUtils.setField(store, "codeReviewRepository", codeReviewRepository);
+    ReflectionTestUtils.setField(store, "codeReviewIssueRepository", codeReviewIssueRepository);
+    ReflectionTestUtils.setField(store, "cacheManager", cacheManager);
+    ReflectionTestUtils.setField(store, "transactionTemplate",
+        new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    ReflectionTestUtils.setField(store, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(store, "flushBatchSize", 200);
+    ReflectionTestUtils.setField(store, "maxPending", 10000);
+    store.init();
+  }
+
+  private CodeReviewResponse completedReview() {
+    CodeReviewResponse response = new CodeReviewResponse("review-1", "project-1", "mr-1");
+    response.setStatus(ReviewStatus.COMPLETED);
+    response.setDetailedAnalysis("详细的代码审查分析结果");
+    return response;
+  }
+
+  @Test
+  @DisplayName("刚保存的审查结果从内存读取，不访问数据库")
+  void testGetReview_shouldServeFromMemory() {
+    store.save(completedReview());
+
+    CodeReviewResponse response = store.getReview("review-1").orElseThrow();
+
+    assertEquals(ReviewStatus.COMPLETED, response.getStatus());
+    assertEquals("详细的代码审查分析结果", response.getDetailedAnalysis());
+    verifyNoInteractions(codeReviewRepository);
+  }
+
+  @Test
+  @DisplayName("保存的是快照，调用方之后的修改需要再次保存")
+  void testSave_shouldStoreSnapshot() {
+    CodeReviewResponse response = new CodeReviewResponse("review-1", "project-1", "mr-1");
+    response.setStatus(ReviewStatus.PROCESSING);
+    store.save(response);
+
+    response.setStatus(ReviewStatus.COMPLETED);
+
+    assertEquals(ReviewStatus.PROCESSING, store.getReviewStatus("review-1").orElseThrow().getStatus());
+  }
+
+  @Test
+  @DisplayName("只查询状态时不返回详细分析，未命中内存时使用状态投影")
+  void testGetReviewStatus_shouldUseProjection() {
+    store.save(completedReview());
+    assertNull(store.getReviewStatus("review-1").orElseThrow().getDetailedAnalysis());
+
+    CodeReviewRepository.StatusView view = mock(CodeReviewRepository.StatusView.class);
+    when(view.getReviewId()).thenReturn("review-2");
+    when(view.getStatus()).thenReturn(ReviewStatus.FAILED);
+    when(codeReviewRepository.findStatusByReviewId("review-2")).thenReturn(Optional.of(view));
+
+    assertEquals(ReviewStatus.FAILED, store.getReviewStatus("review-2").orElseThrow().getStatus());
+    verify(codeReviewRepository, never()).findByReviewId(anyString());
+  }
+
+  @Test
+  @DisplayName("刷盘后写回缓冲区清空，已有记录被更新")
+  void testFlush_shouldPersistAndDrainBuffer() {
+    CodeReview existing = new CodeReview("review-1");
+    existing.setStatus(ReviewStatus.PROCESSING);
+    when(codeReviewRepository.findByReviewIdIn(anyCollection())).thenReturn(List.of(existing));
+
+    store.save(completedReview());
+    store.flush();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<CodeReview>> captor = ArgumentCaptor.forClass(List.class);
+    verify(codeReviewRepository).saveAll(captor.capture());
+    assertSame(existing, captor.getValue().get(0));
+    assertEquals(ReviewStatus.COMPLETED, existing.getStatus());
+    verify(codeReviewIssueRepository).deleteByReviewIdIn(anyCollection());
+
+    store.flush();
+    verify(codeReviewRepository, times(1)).saveAll(any());
+  }
+
+  @Test
+  @DisplayName("写入数据库失败时保留在缓冲区等待重试")
+  void testFlush_shouldKeepPendingWritesOnFailure() {
+    when(codeReviewRepository.findByReviewIdIn(anyCollection())).thenThrow(new RuntimeException("数据库不可用"));
+
+    store.save(completedReview());
+    store.flush();
+
+    reset(codeReviewRepository);
+    store.flush();
+    verify(codeReviewRepository).saveAll(any());
+  }
+
+  @Test
+  @DisplayName("整批写入失败时逐条重试，单独写入仍被数据库拒绝的结果被丢弃")
+  void testFlush_shouldDropRowsRejectedOnTheirOwn() {
+    when(codeReviewRepository.saveAll(anyList())).thenAnswer(invocation -> {
+      List<CodeReview> reviews = invocation.getArgument(0);
+      if (reviews.stream().anyMatch(review -> "review-bad".equals(review.getReviewId()))) {
+        throw new DataIntegrityViolationException("违反约束");
+      }
+      return reviews;
+    });
+    CodeReviewResponse bad = new CodeReviewResponse("review-bad", "project-1", "mr-2");
+    bad.setStatus(ReviewStatus.COMPLETED);
+
+    store.save(completedReview());
+    store.save(bad);
+    store.flush();
+
+    verify(codeReviewRepository, times(3)).saveAll(anyList());
+    assertEquals(1.0, meterRegistry.get("astralint.review.store.dropped").counter().count());
+    assertEquals(ReviewStatus.COMPLETED, store.getReviewStatus("review-bad").orElseThrow().getStatus());
+
+    store.flush();
+    verify(codeReviewRepository, times(3)).saveAll(anyList());
+  }
+
+  @Test
+  @DisplayName("超出列长度的项目ID和合并请求ID在写入前截断")
+  void testFlush_shouldTruncateOversizedIdentifiers() {
+    CodeReviewResponse response = new CodeReviewResponse("review-1", "p".repeat(300), "m".repeat(300));
+    response.setStatus(ReviewStatus.COMPLETED);
+
+    store.save(response);
+    store.flush();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<CodeReview>> captor = ArgumentCaptor.forClass(List.class);
+    verify(codeReviewRepository).saveAll(captor.capture());
+    assertEquals(255, captor.getValue().get(0).getProjectId().length());
+    assertEquals(255, captor.getValue().get(0).getMergeRequestId().length());
+  }
+}
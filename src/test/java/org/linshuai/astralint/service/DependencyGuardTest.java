@@ -0,0 +1,165 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DependencyGuard.
+ */
+class DependencyGuardTest {
+
+  private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private DependencyGuard guard;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    guard = new DependencyGuard();
+    ReflectionTestUtils.setField(guard, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(guard, "failureRateThreshold", 0.5);
+    ReflectionTestUtils.setField(guard, "slidingWindowSize", 4);
+    ReflectionTestUtils.setField(guard, "minimumCalls", 4);
+    ReflectionTestUtils.setField(guard, "openDuration", Duration.ofSeconds(30));
+    ReflectionTestUtils.setField(guard, "halfOpenCalls", 1);
+    ReflectionTestUtils.setField(guard, "scmMaxConcurrentCalls", 1);
+    ReflectionTestUtils.setField(guard, "scmQueueCapacity", 1);
+    ReflectionTestUtils.setField(guard, "scmTimeout", Duration.ofMillis(200));
+    ReflectionTestUtils.setField(guard, "aiMaxConcurrentCalls", 1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    guard.close();
+  }
+
+  @Test
+  @DisplayName("失败率达到阈值后熔断打开，后续调用不再到达依赖")
+  void testCall_shouldOpenCircuitAfterFailures() {
+    for (int i = 0; i < 4; i++) {
+      assertThrows(HttpServerErrorException.class, () -> guard.call("GITHUB", () -> {
+        throw HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "Bad Gateway", null, null, null);
+      }));
+    }
+
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> guard.call("GITHUB", () -> "ok"));
+    assertTrue(e.getMessage().contains("熔断"));
+    assertEquals(1.0, meterRegistry.get("astralint.dependency.rejected").tag("reason", "open").counter().count());
+    assertEquals("ok", assertDoesNotThrow(() -> guard.call("GITEE", () -> "ok")));
+  }
+
+  @Test
+  @DisplayName("4xx客户端错误不计入熔断")
+  void testCall_shouldIgnoreClientErrors() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertThrows(HttpClientErrorException.class, () -> guard.call("GITHUB", () -> {
+        throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+      }));
+    }
+
+    assertEquals("ok", guard.call("GITHUB", () -> "ok"));
+    assertTrue(DependencyGuard.isDependencyFailure(
+        HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null)));
+  }
+
+  @Test
+  @DisplayName("超过截止时间的调用被中断并抛出TimeoutException")
+  void testCall_shouldInterruptAfterDeadline() throws InterruptedException {
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    assertThrows(TimeoutException.class, () -> guard.call("GITLAB", () -> {
+      try {
+        Thread.sleep(5000);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return "late";
+    }));
+
+    assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  @DisplayName("舱壁已满时新的调用立即被拒绝")
+  void testCallInline_shouldRejectWhenBulkheadFull() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread(() -> guard.callInline("AI:qwen-plus", () -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "first";
+    }));
+    holder.start();
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+
+    IllegalStateException e = assertThrows(IllegalStateException.class,
+        () -> guard.callInline("AI:qwen-plus", () -> "second"));
+    assertTrue(e.getMessage().contains("并发"));
+    assertEquals("other", guard.callInline("AI:qwen-turbo", () -> "other"));
+
+    release.countDown();
+    holder.join();
+    assertEquals("third", guard.callInline("AI:qwen-plus", () -> "third"));
+  }
+
+  @Test
+  @DisplayName("许可在结束前占用并发名额，只有第一次结束生效，失败计入熔断")
+  void testAcquire_shouldHoldBulkheadUntilFinished() {
+    DependencyGuard.Permit permit = guard.acquire("AI:qwen-plus");
+    assertThrows(IllegalStateException.class, () -> guard.acquire("AI:qwen-plus"));
+
+    permit.cancelled();
+    permit.succeeded();
+    for (int i = 0; i < 4; i++) {
+      guard.acquire("AI:qwen-plus").failed(new IllegalStateException("DashScope不可用"));
+    }
+
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> guard.acquire("AI:qwen-plus"));
+    assertTrue(e.getMessage().contains("熔断"));
+  }
+
+  @Test
+  @DisplayName("打开一段时间后进入半开，探测成功则关闭，失败则重新打开")
+  void testCircuitBreaker_shouldProbeAfterOpenDuration() {
+    DependencyGuard.CircuitBreaker breaker = new DependencyGuard.CircuitBreaker("GITHUB", 0.5, 4, 4, OPEN_NANOS, 1);
+    long now = 0;
+    for (int i = 0; i < 4; i++) {
+      assertTrue(breaker.tryAcquire(now));
+      breaker.onFailure(now);
+    }
+    assertEquals(DependencyGuard.CircuitBreaker.State.OPEN, breaker.state());
+    assertFalse(breaker.tryAcquire(now + OPEN_NANOS - 1));
+
+    now += OPEN_NANOS;
+    assertTrue(breaker.tryAcquire(now));
+    assertEquals(DependencyGuard.CircuitBreaker.State.HALF_OPEN, breaker.state());
+    assertFalse(breaker.tryAcquire(now));
+    breaker.onFailure(now);
+    assertEquals(DependencyGuard.CircuitBreaker.State.OPEN, breaker.state());
+
+    now += OPEN_NANOS;
+    assertTrue(breaker.tryAcquire(now));
+    breaker.onSuccess();
+    assertEquals(DependencyGuard.CircuitBreaker.State.CLOSED, breaker.state());
+  }
+}
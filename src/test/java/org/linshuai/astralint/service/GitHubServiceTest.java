@@ -5,16 +5,25 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 
 import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.dto.FileDiff;
+import org.linshuai.astralint.util.CodeReviewUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -25,12 +34,68 @@ class GitHubServiceTest {
   @Mock
   private RestTemplate restTemplate;
 
+  @Mock
+  private DependencyGuard dependencyGuard;
+
   private GitHubService gitHubService;
 
   @BeforeEach
-  void setUp() {
+  void setUp() throws Exception {
     MockitoAnnotations.openMocks(this);
     gitHubService = new GitHubService();
+    ReflectionTestUtils.setField(gitHubService, "restTemplate", restTemplate);
+    ReflectionTestUtils.setField(gitHubService, "dependencyGuard", dependencyGuard);
+    when(dependencyGuard.call(anyString(), any())).thenAnswer(invocation ->
+        invocation.getArgument(1, Callable.class).call());
+  }
+
+  private static RepositoryConfig repository() {
+    RepositoryConfig config = new RepositoryConfig();
+    config.setRepositoryName("owner/repo");
+    config.setAccessToken("ghp_test_token");
+    return config;
+  }
+
+  @Test
+  @DisplayName("旧提交不是新提交的祖先（rebase或强制推送）时不返回增量diff，由调用方回退为全量审查")
+  void testGetCompareDiff_shouldReturnNullWhenHistoryDiverged() {
+    when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        .thenReturn(new ResponseEntity<>(Map.of("status", "diverged",
+            "files", List.of(Map.of("filename", "A.java", "patch", "@@ -1 +1 @@\n-a\n+b"))), HttpStatus.OK));
+
+    assertNull(gitHubService.getCompareDiff(repository(), "old", "new"));
+  }
+
+  @Test
+  @DisplayName("新提交是旧提交的快进时，由同一次比较请求的文件patch构建diff")
+  void testGetCompareDiff_shouldBuildDiffFromSingleCompareRequest() {
+    when(restTemplate.exchange(eq("https://api.github.com/repos/owner/repo/compare/old...new?per_page=1"),
+        eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        .thenReturn(new ResponseEntity<>(Map.of("status", "ahead", "files", List.of(
+            Map.of("filename", "src/A.java", "patch", "@@ -1 +1 @@\n-a\n+b"),
+            Map.of("filename", "src/B.java", "previous_filename", "src/Old.java", "patch", "@@ -2 +2 @@\n-c\n+d"),
+            Map.of("filename", "logo.png"))), HttpStatus.OK));
+
+    String diff = gitHubService.getCompareDiff(repository(), "old", "new");
+
+    assertEquals("diff --git a/src/A.java b/src/A.java\n--- a/src/A.java\n+++ b/src/A.java\n@@ -1 +1 @@\n-a\n+b\n"
+        + "diff --git a/src/Old.java b/src/B.java\n--- a/src/Old.java\n+++ b/src/B.java\n@@ -2 +2 @@\n-c\n+d\n", diff);
+    List<FileDiff> files = CodeReviewUtils.splitUnifiedDiff(diff);
+    assertEquals(List.of("src/A.java", "src/B.java"), files.stream().map(FileDiff::getFilePath).toList());
+    verify(restTemplate, times(1)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), any(Class.class));
+  }
+
+  @Test
+  @DisplayName("变更文件达到比较接口的单次响应上限时回退为全量审查")
+  void testGetCompareDiff_shouldReturnNullWhenFileListTruncated() {
+    List<Map<String, String>> files = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      files.add(Map.of("filename", "F" + i + ".java", "patch", "@@ -1 +1 @@\n-a\n+b"));
+    }
+    when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(Map.class)))
+        .thenReturn(new ResponseEntity<>(Map.of("status", "ahead", "files", files), HttpStatus.OK));
+
+    assertNull(gitHubService.getCompareDiff(repository(), "old", "new"));
   }
 
   @Test
@@ -0,0 +1,271 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for HedgedModelCaller.
+ */
+class HedgedModelCallerTest {
+
+  private final ChatClient primaryClient = mock(ChatClient.class);
+
+  private final ChatClient secondaryClient = mock(ChatClient.class);
+
+  private final List<AiModelRouter.Route> routes = List.of(
+      new AiModelRouter.Route("qwen-plus", primaryClient, 5000),
+      new AiModelRouter.Route("qwen-turbo", secondaryClient, 5000));
+
+  private ThreadPoolTaskExecutor executor;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private final DependencyGuard dependencyGuard = mock(DependencyGuard.class);
+
+  private HedgedModelCaller caller;
+
+  @BeforeEach
+  void setUp() {
+    executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(4);
+    executor.setMaxPoolSize(4);
+    executor.setQueueCapacity(0);
+    executor.initialize();
+    meterRegistry = new SimpleMeterRegistry();
+
+    caller = new HedgedModelCaller();
+    ReflectionTestUtils.setField(caller, "aiCallExecutor", executor);
+    ReflectionTestUtils.setField(caller, "modelRateLimiter", new ModelRateLimiter());
+    ReflectionTestUtils.setField(caller, "dependencyGuard", dependencyGuard);
+    ReflectionTestUtils.setField(caller, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(caller, "hedgingEnabled", true);
+    ReflectionTestUtils.setField(caller, "hedgePercentile", 0.95);
+    ReflectionTestUtils.setField(caller, "minHedgeDelayMs", 50L);
+    ReflectionTestUtils.setField(caller, "initialHedgeDelayMs", 100L);
+    ReflectionTestUtils.setField(caller, "minSamples", 20);
+    ReflectionTestUtils.setField(caller, "windowSize", 200);
+    when(dependencyGuard.callInline(anyString(), any()))
+        .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  @DisplayName("主模型超过对冲等待时间未返回时，备选模型的结果胜出并取消主模型请求")
+  void testCall_shouldHedgeSlowPrimary() throws InterruptedException {
+    CountDownLatch primaryCancelled = new CountDownLatch(1);
+
+    String result = caller.call(routes, 100, route -> {
+      if (route.chatClient() == primaryClient) {
+        try {
+          Thread.sleep(5000);
+        } catch (InterruptedException e) {
+          primaryCancelled.countDown();
+          throw new IllegalStateException("cancelled");
+        }
+        return "primary";
+      }
+      return "secondary";
+    });
+
+    assertEquals("secondary", result);
+    assertTrue(primaryCancelled.await(1, TimeUnit.SECONDS));
+    assertEquals(1.0, meterRegistry.get("astralint.ai.model.backup.requests").tag("reason", "hedge").counter().count());
+  }
+
+  @Test
+  @DisplayName("主模型调用失败时立即转移到备选模型")
+  void testCall_shouldFailOverOnError() {
+    String result = caller.call(routes, 100, route -> {
+      if (route.chatClient() == primaryClient) {
+        throw new IllegalStateException("DashScope不可用");
+      }
+      return "secondary";
+    });
+
+    assertEquals("secondary", result);
+    assertEquals(1.0, meterRegistry.get("astralint.ai.model.backup.requests").tag("reason", "failover").counter().count());
+  }
+
+  @Test
+  @DisplayName("主模型熔断打开时直接转移到备选模型，不调用主模型")
+  void testCall_shouldFailOverWhenCircuitOpen() {
+    when(dependencyGuard.callInline(eq("AI:qwen-plus"), any()))
+        .thenThrow(new IllegalStateException("AI:qwen-plus 熔断中，暂停调用"));
+    AtomicInteger primaryCalls = new AtomicInteger();
+
+    String result = caller.call(routes, 100, route -> {
+      if (route.chatClient() == primaryClient) {
+        primaryCalls.incrementAndGet();
+      }
+      return "secondary";
+    });
+
+    assertEquals("secondary", result);
+    assertEquals(0, primaryCalls.get());
+  }
+
+  @Test
+  @DisplayName("只有一个模型时超过其超时时间即失败")
+  void testCall_shouldTimeOutSingleRoute() {
+    List<AiModelRouter.Route> single = List.of(new AiModelRouter.Route("qwen-plus", primaryClient, 100));
+
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> caller.call(single, 100, route -> {
+      try {
+        Thread.sleep(5000);
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return "primary";
+    }));
+
+    assertTrue(e.getMessage().contains("超时"));
+  }
+
+  @Test
+  @DisplayName("调用线程池已满时直接失败，不在调用线程上发出请求")
+  void testCall_shouldFailFastWhenExecutorSaturated() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < 4; i++) {
+      executor.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    AtomicInteger calls = new AtomicInteger();
+
+    try {
+      IllegalStateException e = assertThrows(IllegalStateException.class, () -> caller.call(routes, 100, route -> {
+        calls.incrementAndGet();
+        return "primary";
+      }));
+
+      assertTrue(e.getMessage().contains("并发已满"));
+      assertEquals(0, calls.get());
+      assertEquals(1.0, meterRegistry.get("astralint.ai.model.rejected.requests").counter().count());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  @DisplayName("等待限流额度的调用不占用舱壁名额，取得额度后正常调用而不是被舱壁拒绝")
+  void testCall_shouldQueueInRateLimiterBeforeTakingBulkheadSlot() throws Exception {
+    DependencyGuard guard = new DependencyGuard();
+    ReflectionTestUtils.setField(guard, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(guard, "failureRateThreshold", 0.5);
+    ReflectionTestUtils.setField(guard, "slidingWindowSize", 4);
+    ReflectionTestUtils.setField(guard, "minimumCalls", 4);
+    ReflectionTestUtils.setField(guard, "openDuration", Duration.ofSeconds(30));
+    ReflectionTestUtils.setField(guard, "halfOpenCalls", 1);
+    ReflectionTestUtils.setField(guard, "aiMaxConcurrentCalls", 1);
+    AiModelConfigService aiModelConfigService = mock(AiModelConfigService.class);
+    AiModelConfig config = new AiModelConfig("qwen-plus", "ALIBABA");
+    config.setMaxConcurrency(1);
+    when(aiModelConfigService.getModelConfigByName("qwen-plus")).thenReturn(Optional.of(config));
+    ModelRateLimiter limiter = new ModelRateLimiter();
+    ReflectionTestUtils.setField(limiter, "aiModelConfigService", aiModelConfigService);
+    ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(limiter, "rateLimitEnabled", true);
+    ReflectionTestUtils.setField(limiter, "maxWaitMs", 5000L);
+    ReflectionTestUtils.setField(limiter, "latencyTolerance", 2.0);
+    ReflectionTestUtils.setField(caller, "dependencyGuard", guard);
+    ReflectionTestUtils.setField(caller, "modelRateLimiter", limiter);
+    List<AiModelRouter.Route> primaryOnly = List.of(routes.get(0));
+    CountDownLatch firstStarted = new CountDownLatch(1);
+    CountDownLatch releaseFirst = new CountDownLatch(1);
+
+    try {
+      CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> caller.call(primaryOnly, 100, route -> {
+        firstStarted.countDown();
+        try {
+          releaseFirst.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "first";
+      }));
+      assertTrue(firstStarted.await(1, TimeUnit.SECONDS));
+      CompletableFuture<String> second = CompletableFuture.supplyAsync(
+          () -> caller.call(primaryOnly, 100, route -> "second"));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+      while (meterRegistry.get("astralint.ai.limiter.queue").gauge().value() < 1 && !second.isDone()
+          && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      releaseFirst.countDown();
+
+      assertEquals("first", first.get(5, TimeUnit.SECONDS));
+      assertEquals("second", second.get(5, TimeUnit.SECONDS));
+    } finally {
+      releaseFirst.countDown();
+      guard.close();
+    }
+  }
+
+  @Test
+  @DisplayName("主模型及时返回时不发送对冲请求")
+  void testCall_shouldNotHedgeFastPrimary() throws InterruptedException {
+    AtomicInteger secondaryCalls = new AtomicInteger();
+
+    String result = caller.call(routes, 100, route -> {
+      if (route.chatClient() == secondaryClient) {
+        secondaryCalls.incrementAndGet();
+      }
+      return "primary";
+    });
+    Thread.sleep(200);
+
+    assertEquals("primary", result);
+    assertEquals(0, secondaryCalls.get());
+  }
+
+  @Test
+  @DisplayName("两个模型都失败时抛出最后的异常")
+  void testCall_shouldThrowWhenAllModelsFail() {
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> caller.call(routes, 100, route -> {
+      throw new IllegalStateException(route.chatClient() == primaryClient ? "primary failed" : "secondary failed");
+    }));
+
+    assertEquals("secondary failed", e.getMessage());
+  }
+
+  @Test
+  @DisplayName("对冲等待时间取近期延迟的分位数，样本不足时使用初始值")
+  void testHedgeDelay_shouldUseLatencyPercentile() {
+    assertEquals(100L, caller.hedgeDelayMs("qwen-plus"));
+
+    HedgedModelCaller.LatencyWindow window = new HedgedModelCaller.LatencyWindow(200);
+    for (long millis = 1; millis <= 100; millis++) {
+      window.record(millis * 10);
+    }
+    assertEquals(950L, window.percentile(0.95, 20));
+    assertEquals(-1L, new HedgedModelCaller.LatencyWindow(200).percentile(0.95, 20));
+  }
+}
@@ -0,0 +1,160 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ModelRateLimiter.
+ */
+class ModelRateLimiterTest {
+
+  @Mock
+  private AiModelConfigService aiModelConfigService;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private ModelRateLimiter rateLimiter;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+    rateLimiter = new ModelRateLimiter();
+    ReflectionTestUtils.setField(rateLimiter, "aiModelConfigService", aiModelConfigService);
+    ReflectionTestUtils.setField(rateLimiter, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(rateLimiter, "rateLimitEnabled", true);
+    ReflectionTestUtils.setField(rateLimiter, "defaultMaxConcurrency", 8);
+    ReflectionTestUtils.setField(rateLimiter, "maxWaitMs", 5000L);
+    ReflectionTestUtils.setField(rateLimiter, "maxRetries", 3);
+    ReflectionTestUtils.setField(rateLimiter, "latencyTolerance", 2.0);
+
+    AiModelConfig config = new AiModelConfig("qwen-plus", "ALIBABA");
+    config.setMaxConcurrency(4);
+    when(aiModelConfigService.getModelConfigByName("qwen-plus")).thenReturn(Optional.of(config));
+  }
+
+  @Test
+  @DisplayName("被429拒绝的调用重新排队重试，并发上限减半")
+  void testExecute_shouldRetryAfterRateLimited() {
+    AtomicInteger calls = new AtomicInteger();
+
+    String result = rateLimiter.execute("qwen-plus", 100, () -> {
+      if (calls.incrementAndGet() == 1) {
+        throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null);
+      }
+      return "ok";
+    });
+
+    assertEquals("ok", result);
+    assertEquals(2, calls.get());
+    assertEquals(1.0, meterRegistry.get("astralint.ai.limiter.throttled").tag("model", "qwen-plus").counter().count());
+    assertTrue(meterRegistry.get("astralint.ai.limiter.concurrency.limit").tag("model", "qwen-plus").gauge().value() < 4.0);
+  }
+
+  @Test
+  @DisplayName("非限流错误直接抛出，不重试")
+  void testExecute_shouldNotRetryOtherErrors() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThrows(IllegalStateException.class, () -> rateLimiter.execute("qwen-plus", 100, () -> {
+      calls.incrementAndGet();
+      throw new IllegalStateException("Invalid API key");
+    }));
+
+    assertEquals(1, calls.get());
+    assertEquals(0.0, meterRegistry.get("astralint.ai.limiter.in-flight").tag("model", "qwen-plus").gauge().value());
+  }
+
+  @Test
+  @DisplayName("流式调用的许可结束前占用并发名额，被429拒绝时并发上限减半")
+  void testAcquirePermit_shouldHoldConcurrencyUntilFinished() {
+    ModelRateLimiter.Permit permit = rateLimiter.acquirePermit("qwen-plus", 100);
+    assertEquals(1.0, meterRegistry.get("astralint.ai.limiter.in-flight").tag("model", "qwen-plus").gauge().value());
+
+    permit.failed(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null));
+    permit.succeeded(10);
+
+    assertEquals(0.0, meterRegistry.get("astralint.ai.limiter.in-flight").tag("model", "qwen-plus").gauge().value());
+    assertEquals(2.0, meterRegistry.get("astralint.ai.limiter.concurrency.limit").tag("model", "qwen-plus").gauge().value());
+    assertEquals(1.0, meterRegistry.get("astralint.ai.limiter.throttled").tag("model", "qwen-plus").counter().count());
+  }
+
+  @Test
+  @DisplayName("并发名额用完时排队等待，名额释放后继续")
+  void testAcquire_shouldQueueUntilReleased() throws InterruptedException {
+    ModelRateLimiter.ModelLimiter limiter = new ModelRateLimiter.ModelLimiter(2.0);
+    limiter.updateLimits(0, 0, 1);
+
+    assertTrue(limiter.acquire(10, TimeUnit.SECONDS.toNanos(1)));
+    assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS.toNanos(50)));
+
+    Thread releaser = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException ignored) {
+        Thread.currentThread().interrupt();
+      }
+      limiter.release();
+    });
+    releaser.start();
+    assertTrue(limiter.acquire(10, TimeUnit.SECONDS.toNanos(5)));
+    releaser.join();
+  }
+
+  @Test
+  @DisplayName("每分钟请求数用完后等待令牌补充")
+  void testAcquire_shouldWaitForRequestBudget() throws InterruptedException {
+    ModelRateLimiter.ModelLimiter limiter = new ModelRateLimiter.ModelLimiter(2.0);
+    limiter.updateLimits(60, 0, 10);
+
+    // 每次调用后归还并发名额，只让每分钟请求数成为瓶颈
+    for (int i = 0; i < 60; i++) {
+      assertTrue(limiter.acquire(1, 0));
+      limiter.release();
+    }
+    assertFalse(limiter.acquire(1, TimeUnit.MILLISECONDS.toNanos(100)));
+    assertTrue(limiter.acquire(1, TimeUnit.SECONDS.toNanos(2)));
+  }
+
+  @Test
+  @DisplayName("成功且延迟正常时加性增长，延迟明显升高时下降")
+  void testConcurrencyLimit_shouldFollowAimd() {
+    ModelRateLimiter.ModelLimiter limiter = new ModelRateLimiter.ModelLimiter(2.0);
+    limiter.updateLimits(0, 0, 4);
+    limiter.onRateLimited();
+    assertEquals(2.0, limiter.currentLimit());
+
+    limiter.onSuccess(100, 0);
+    limiter.onSuccess(100, 0);
+    assertTrue(limiter.currentLimit() > 2.0);
+
+    double beforeSlowCall = limiter.currentLimit();
+    limiter.onSuccess(1000, 0);
+    assertTrue(limiter.currentLimit() < beforeSlowCall);
+  }
+
+  @Test
+  @DisplayName("识别HTTP 429和DashScope限流错误")
+  void testIsRateLimited() {
+    assertTrue(ModelRateLimiter.isRateLimited(
+        HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null)));
+    assertTrue(ModelRateLimiter.isRateLimited(
+        new RuntimeException("wrapped", new RuntimeException("Throttling.RateQuota: Requests rate limit exceeded"))));
+    assertFalse(ModelRateLimiter.isRateLimited(new IllegalStateException("Invalid API key")));
+  }
+}
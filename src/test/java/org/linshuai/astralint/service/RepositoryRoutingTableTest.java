@@ -0,0 +1,69 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.event.RepositoryConfigChangedEvent;
+import org.linshuai.astralint.repository.RepositoryConfigRepository;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RepositoryRoutingTable.
+ */
+class RepositoryRoutingTableTest {
+
+  @Mock
+  private RepositoryConfigRepository repositoryConfigRepository;
+
+  private RepositoryRoutingTable routingTable;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    routingTable = new RepositoryRoutingTable();
+    ReflectionTestUtils.setField(routingTable, "repositoryConfigRepository", repositoryConfigRepository);
+    ReflectionTestUtils.setField(routingTable, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(routingTable, "maxEntries", 100L);
+    routingTable.init();
+  }
+
+  @Test
+  @DisplayName("同一项目的重复查找只查询一次数据库")
+  void testFindByProjectId_shouldCacheLookups() {
+    RepositoryConfig config = new RepositoryConfig();
+    config.setId(1L);
+    config.setProjectId("123");
+    when(repositoryConfigRepository.findFirstByProjectIdAndRepositoryType("123", "GITLAB"))
+        .thenReturn(Optional.of(config));
+
+    assertSame(config, routingTable.findByProjectId("GITLAB", "123").orElse(null));
+    assertSame(config, routingTable.findByProjectId("GITLAB", "123").orElse(null));
+
+    verify(repositoryConfigRepository, times(1)).findFirstByProjectIdAndRepositoryType("123", "GITLAB");
+  }
+
+  @Test
+  @DisplayName("未配置的项目也被缓存，配置变更后重新查询")
+  void testFindByProjectId_shouldCacheMissesUntilConfigChanged() {
+    when(repositoryConfigRepository.findFirstByProjectIdAndRepositoryType("456", "GITLAB"))
+        .thenReturn(Optional.empty());
+
+    assertTrue(routingTable.findByProjectId("GITLAB", "456").isEmpty());
+    assertTrue(routingTable.findByProjectId("GITLAB", "456").isEmpty());
+    verify(repositoryConfigRepository, times(1)).findFirstByProjectIdAndRepositoryType("456", "GITLAB");
+
+    routingTable.onRepositoryConfigChanged(new RepositoryConfigChangedEvent(2L));
+    routingTable.findByProjectId("GITLAB", "456");
+
+    verify(repositoryConfigRepository, times(2)).findFirstByProjectIdAndRepositoryType("456", "GITLAB");
+  }
+}
@@ -0,0 +1,113 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.repository.ReviewJobRepository;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReviewAdmissionService.
+ */
+class ReviewAdmissionServiceTest {
+
+  @Mock
+  private ReviewJobRepository reviewJobRepository;
+
+  private ReviewAdmissionService admissionService;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    admissionService = new ReviewAdmissionService();
+    ReflectionTestUtils.setField(admissionService, "reviewJobRepository", reviewJobRepository);
+    ReflectionTestUtils.setField(admissionService, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(admissionService, "enabled", true);
+    ReflectionTestUtils.setField(admissionService, "maxBacklog", 10L);
+    ReflectionTestUtils.setField(admissionService, "maxBacklogPerRepository", 3L);
+    ReflectionTestUtils.setField(admissionService, "retryAfter", Duration.ofSeconds(30));
+    admissionService.init();
+  }
+
+  private static ReviewJobRepository.BacklogView backlog(long repositoryConfigId, long jobs) {
+    return new ReviewJobRepository.BacklogView() {
+      @Override
+      public Long getRepositoryConfigId() {
+        return repositoryConfigId;
+      }
+
+      @Override
+      public Long getJobs() {
+        return jobs;
+      }
+    };
+  }
+
+  @Test
+  @DisplayName("单个仓库的积压达到上限后返回拒绝和Retry-After，其他仓库不受影响")
+  void testTryAdmit_shouldRejectWhenRepositoryBacklogFull() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(admissionService.tryAdmit(1L, "mr-" + i).admitted());
+    }
+
+    ReviewAdmissionService.Decision rejected = admissionService.tryAdmit(1L, "mr-3");
+    assertFalse(rejected.admitted());
+    assertEquals("repository", rejected.reason());
+    assertEquals(30, rejected.retryAfterSeconds());
+    assertTrue(admissionService.tryAdmit(2L, "mr-0").admitted());
+  }
+
+  @Test
+  @DisplayName("全局积压按数据库统计加上次统计后准入的任务数计算")
+  void testTryAdmit_shouldRejectWhenGlobalBacklogFull() {
+    when(reviewJobRepository.countByRepositoryConfig(anyCollection()))
+        .thenReturn(List.of(backlog(1L, 2), backlog(2L, 7)));
+    admissionService.refresh();
+
+    assertTrue(admissionService.tryAdmit(3L, "mr-1").admitted());
+    ReviewAdmissionService.Decision rejected = admissionService.tryAdmit(4L, "mr-1");
+    assertFalse(rejected.admitted());
+    assertEquals("global", rejected.reason());
+
+    when(reviewJobRepository.countByRepositoryConfig(anyCollection())).thenReturn(List.of(backlog(1L, 2)));
+    admissionService.refresh();
+    assertTrue(admissionService.tryAdmit(4L, "mr-1").admitted());
+  }
+
+  @Test
+  @DisplayName("超限时已有排队任务的MR仍然准入，新任务会取代旧任务")
+  void testTryAdmit_shouldAdmitReplacementOfQueuedJob() {
+    when(reviewJobRepository.countByRepositoryConfig(anyCollection())).thenReturn(List.of(backlog(1L, 3)));
+    admissionService.refresh();
+    when(reviewJobRepository.existsByRepositoryConfigIdAndMergeRequestIdAndStatusIn(eq(1L), eq("mr-1"), anyCollection()))
+        .thenReturn(true);
+
+    assertTrue(admissionService.tryAdmit(1L, "mr-1").admitted());
+    assertFalse(admissionService.tryAdmit(1L, "mr-2").admitted());
+  }
+
+  @Test
+  @DisplayName("统计失败时保留上次快照和准入计数，不低估积压")
+  void testRefresh_shouldKeepCountsOnFailure() {
+    for (int i = 0; i < 3; i++) {
+      admissionService.tryAdmit(1L, "mr-" + i);
+    }
+    when(reviewJobRepository.countByRepositoryConfig(anyCollection()))
+        .thenThrow(new DataAccessResourceFailureException("db down"));
+
+    admissionService.refresh();
+
+    assertFalse(admissionService.tryAdmit(1L, "mr-3").admitted());
+  }
+}
@@ -0,0 +1,221 @@
+package org.linshuai.astralint.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.entity.MergeRequestReviewState;
+import org.linshuai.astralint.entity.RepositoryConfig;
+import org.linshuai.astralint.entity.ReviewJob;
+import org.linshuai.astralint.entity.ReviewJob.JobStatus;
+import org.linshuai.astralint.entity.ReviewJobDeadLetter;
+import org.linshuai.astralint.repository.MergeRequestReviewStateRepository;
+import org.linshuai.astralint.repository.ReviewJobDeadLetterRepository;
+import org.linshuai.astralint.repository.ReviewJobRepository;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReviewJobService.
+ */
+class ReviewJobServiceTest {
+
+  @Mock
+  private ReviewJobRepository reviewJobRepository;
+
+  @Mock
+  private ReviewJobDeadLetterRepository deadLetterRepository;
+
+  @Mock
+  private MergeRequestReviewStateRepository reviewStateRepository;
+
+  @Mock
+  private ReviewJobRegistry reviewJobRegistry;
+
+  private ReviewJobService reviewJobService;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    reviewJobService = new ReviewJobService();
+    ReflectionTestUtils.setField(reviewJobService, "reviewJobRepository", reviewJobRepository);
+    ReflectionTestUtils.setField(reviewJobService, "deadLetterRepository", deadLetterRepository);
+    ReflectionTestUtils.setField(reviewJobService, "maxAttempts", 3);
+    ReflectionTestUtils.setField(reviewJobService, "backoffInitial", Duration.ofSeconds(30));
+    ReflectionTestUtils.setField(reviewJobService, "backoffMax", Duration.ofMinutes(30));
+    ReflectionTestUtils.setField(reviewJobService, "reviewStateRepository", reviewStateRepository);
+    ReflectionTestUtils.setField(reviewJobService, "reviewJobRegistry", reviewJobRegistry);
+    ReflectionTestUtils.setField(reviewJobService, "leaseTimeout", Duration.ofMinutes(15));
+    ReflectionTestUtils.setField(reviewJobService, "debounceWindow", Duration.ofSeconds(15));
+    ReflectionTestUtils.setField(reviewJobService, "transactionTemplate",
+        new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    when(reviewStateRepository.findForUpdate(10L, "42"))
+        .thenReturn(Optional.of(new MergeRequestReviewState(10L, "42")));
+  }
+
+  private RepositoryConfig repositoryConfig() {
+    RepositoryConfig config = new RepositoryConfig();
+    config.setId(10L);
+    config.setRepositoryName("owner/repo");
+    config.setRepositoryType("GITHUB");
+    return config;
+  }
+
+  private ReviewJob runningJob(int attempts) {
+    ReviewJob job = new ReviewJob();
+    job.setId(1L);
+    job.setRepositoryConfigId(10L);
+    job.setRepositoryType("GITHUB");
+    job.setRepositoryName("owner/repo");
+    job.setMergeRequestId("42");
+    job.setStatus(JobStatus.RUNNING);
+    job.setAttempts(attempts);
+    return job;
+  }
+
+  @Test
+  @DisplayName("新提交取代同一PR的旧任务并延迟一个防抖窗口执行")
+  void testEnqueue_shouldSupersedeOlderJobsAndDebounce() {
+    when(reviewJobRepository.findByRepositoryConfigIdAndMergeRequestIdAndHeadShaAndStatusIn(
+        eq(10L), eq("42"), eq("def456"), anyCollection())).thenReturn(List.of());
+    when(reviewJobRepository.supersede(eq(10L), eq("42"), anyCollection(), eq(JobStatus.SUPERSEDED)))
+        .thenReturn(1);
+    when(reviewJobRepository.save(any(ReviewJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+    ReviewJob job = reviewJobService.enqueue(repositoryConfig(), "42", "def456");
+
+    assertEquals("def456", job.getHeadSha());
+    assertEquals(JobStatus.PENDING, job.getStatus());
+    assertTrue(job.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(14)));
+    verify(reviewJobRegistry).cancel(10L, "42");
+    InOrder inOrder = inOrder(reviewStateRepository, reviewJobRepository);
+    inOrder.verify(reviewStateRepository).saveAndFlush(any(MergeRequestReviewState.class));
+    inOrder.verify(reviewStateRepository).findForUpdate(10L, "42");
+    inOrder.verify(reviewJobRepository).supersede(any(), any(), any(), any());
+    inOrder.verify(reviewJobRepository).save(any(ReviewJob.class));
+  }
+
+  @Test
+  @DisplayName("并发请求已创建审查进度行时忽略唯一约束冲突，锁定该行后入队")
+  void testEnqueue_shouldLockRowCreatedByConcurrentRequest() {
+    when(reviewStateRepository.saveAndFlush(any(MergeRequestReviewState.class)))
+        .thenThrow(new DataIntegrityViolationException("uk_review_state_merge_request"));
+    when(reviewJobRepository.findByRepositoryConfigIdAndMergeRequestIdAndHeadShaAndStatusIn(
+        eq(10L), eq("42"), eq("def456"), anyCollection())).thenReturn(List.of());
+    when(reviewJobRepository.save(any(ReviewJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+    ReviewJob job = reviewJobService.enqueue(repositoryConfig(), "42", "def456");
+
+    assertEquals("def456", job.getHeadSha());
+    verify(reviewStateRepository).findForUpdate(10L, "42");
+  }
+
+  @Test
+  @DisplayName("同一提交的重复事件复用已有任务")
+  void testEnqueue_shouldReuseJobForSameHeadSha() {
+    ReviewJob existing = runningJob(1);
+    when(reviewJobRepository.findByRepositoryConfigIdAndMergeRequestIdAndHeadShaAndStatusIn(
+        eq(10L), eq("42"), eq("abc123"), anyCollection())).thenReturn(List.of(existing));
+
+    ReviewJob job = reviewJobService.enqueue(repositoryConfig(), "42", "abc123");
+
+    assertSame(existing, job);
+    verify(reviewJobRepository, never()).supersede(any(), any(), any(), any());
+    verify(reviewJobRepository, never()).save(any());
+    verify(reviewJobRegistry, never()).cancel(any(), any());
+  }
+
+  @Test
+  @DisplayName("只返回抢占成功的任务")
+  void testClaimDueJobs_shouldSkipJobsClaimedByOthers() {
+    when(reviewJobRepository.findDueJobIds(eq(JobStatus.PENDING), any(), any())).thenReturn(List.of(1L, 2L));
+    when(reviewJobRepository.claim(eq(1L), anyString(), any(), any(), any())).thenReturn(1);
+    when(reviewJobRepository.claim(eq(2L), anyString(), any(), any(), any())).thenReturn(0);
+    when(reviewJobRepository.findById(1L)).thenReturn(Optional.of(runningJob(1)));
+
+    List<ReviewJob> claimed = reviewJobService.claimDueJobs("worker-1", 5);
+
+    assertEquals(1, claimed.size());
+    assertEquals(1L, claimed.get(0).getId());
+    verify(reviewJobRepository, never()).findById(2L);
+  }
+
+  @Test
+  @DisplayName("完成任务时记录已审查的head SHA")
+  void testComplete_shouldRecordReviewedSha() {
+    ReviewJob job = runningJob(1);
+    job.setHeadSha("def456");
+    MergeRequestReviewState state = new MergeRequestReviewState(10L, "42");
+    state.setLastReviewedSha("abc123");
+    when(reviewJobRepository.findById(1L)).thenReturn(Optional.of(job));
+    when(reviewStateRepository.findByRepositoryConfigIdAndMergeRequestId(10L, "42")).thenReturn(Optional.of(state));
+
+    reviewJobService.complete(1L);
+
+    assertEquals(JobStatus.COMPLETED, job.getStatus());
+    assertEquals("def456", state.getLastReviewedSha());
+    verify(reviewStateRepository).save(state);
+  }
+
+  @Test
+  @DisplayName("未达到最大次数的失败任务按退避时间重新排队")
+  void testFail_shouldRescheduleWithBackoff() {
+    ReviewJob job = runningJob(1);
+    when(reviewJobRepository.findById(1L)).thenReturn(Optional.of(job));
+
+    boolean deadLettered = reviewJobService.fail(1L, "获取diff失败");
+
+    assertFalse(deadLettered);
+    assertEquals(JobStatus.PENDING, job.getStatus());
+    assertTrue(job.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(29)));
+    assertNull(job.getLockedBy());
+    verify(deadLetterRepository, never()).save(any());
+  }
+
+  @Test
+  @DisplayName("重试耗尽的任务转入死信表")
+  void testFail_shouldMoveToDeadLetterWhenAttemptsExhausted() {
+    ReviewJob job = runningJob(3);
+    when(reviewJobRepository.findById(1L)).thenReturn(Optional.of(job));
+
+    boolean deadLettered = reviewJobService.fail(1L, "添加审查评论失败");
+
+    assertTrue(deadLettered);
+    assertEquals(JobStatus.FAILED, job.getStatus());
+    verify(deadLetterRepository).save(any(ReviewJobDeadLetter.class));
+  }
+
+  @Test
+  @DisplayName("已放回队列的任务不再记录失败")
+  void testFail_shouldIgnoreReleasedJob() {
+    ReviewJob job = runningJob(1);
+    job.setStatus(JobStatus.PENDING);
+    when(reviewJobRepository.findById(1L)).thenReturn(Optional.of(job));
+
+    assertFalse(reviewJobService.fail(1L, "代码审查被中断"));
+    verify(reviewJobRepository, never()).save(any());
+  }
+
+  @Test
+  @DisplayName("退避时间按指数增长且不超过上限")
+  void testBackoff_shouldGrowExponentiallyAndCap() {
+    assertTrue(reviewJobService.backoff(1).toSeconds() >= 30);
+    assertTrue(reviewJobService.backoff(3).toSeconds() >= 120);
+    Duration capped = reviewJobService.backoff(30);
+    assertTrue(capped.compareTo(Duration.ofMinutes(36)) <= 0);
+    assertTrue(capped.compareTo(Duration.ofMinutes(30)) >= 0);
+  }
+}
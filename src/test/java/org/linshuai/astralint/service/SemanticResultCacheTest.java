@@ -0,0 +1,131 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.constant.ReviewAspect;
+import org.linshuai.astralint.event.AiModelConfigChangedEvent;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SemanticResultCache.
+ */
+class SemanticResultCacheTest {
+
+  private static final String HUNK = "+String sql = \"select * from user where id = \" + id;\n";
+
+  private static final String SIMILAR_HUNK = "+String sql = \"select * from user where id = \" + userId;\n";
+
+  private static final String OTHER_HUNK = "+log.info(\"done\");\n";
+
+  @Mock
+  private ObjectProvider<EmbeddingModel> embeddingModels;
+
+  @Mock
+  private EmbeddingModel embeddingModel;
+
+  private SemanticResultCache cache;
+
+  private final AtomicInteger modelCalls = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    cache = new SemanticResultCache();
+    ReflectionTestUtils.setField(cache, "embeddingModels", embeddingModels);
+    ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(cache, "enabled", true);
+    ReflectionTestUtils.setField(cache, "promptVersion", "v1");
+    ReflectionTestUtils.setField(cache, "similarityThreshold", 0.97);
+    ReflectionTestUtils.setField(cache, "maxEntriesPerIndex", 100);
+    ReflectionTestUtils.setField(cache, "maxIndexes", 10L);
+    ReflectionTestUtils.setField(cache, "maxInputTokens", 2000);
+    ReflectionTestUtils.setField(cache, "ttl", Duration.ofDays(7));
+    cache.init();
+
+    when(embeddingModels.getIfAvailable()).thenReturn(embeddingModel);
+    when(embeddingModel.embed(contains("+ id;"))).thenReturn(new float[] {1.0f, 0.0f, 0.0f});
+    when(embeddingModel.embed(contains("userId"))).thenReturn(new float[] {0.99f, 0.05f, 0.0f});
+    when(embeddingModel.embed(contains("done"))).thenReturn(new float[] {0.0f, 1.0f, 0.0f});
+  }
+
+  private String review(String projectId, ReviewAspect aspect, String fileName, String hunk) {
+    return cache.getOrCompute(projectId, aspect, fileName, hunk, () -> "review-" + modelCalls.incrementAndGet());
+  }
+
+  @Test
+  @DisplayName("同一项目中语义相近的代码片段复用之前的审查结果")
+  void testGetOrCompute_shouldReuseSimilarHunk() {
+    assertEquals("review-1", review("42", ReviewAspect.SECURITY, "UserDao.java", HUNK));
+    assertEquals("review-1", review("42", ReviewAspect.SECURITY, "OrderDao.java", SIMILAR_HUNK));
+    assertEquals(1, modelCalls.get());
+  }
+
+  @Test
+  @DisplayName("不相似的片段、其他项目、其他审查维度或语言都不会命中")
+  void testGetOrCompute_shouldNotReuseAcrossScopes() {
+    review("42", ReviewAspect.SECURITY, "UserDao.java", HUNK);
+
+    assertEquals("review-2", review("42", ReviewAspect.SECURITY, "UserDao.java", OTHER_HUNK));
+    assertEquals("review-3", review("7", ReviewAspect.SECURITY, "UserDao.java", HUNK));
+    assertEquals("review-4", review("42", ReviewAspect.ANALYSIS, "UserDao.java", HUNK));
+    assertEquals("review-5", review("42", ReviewAspect.SECURITY, "user_dao.py", HUNK));
+  }
+
+  @Test
+  @DisplayName("未指定项目或没有嵌入模型时直接调用模型")
+  void testGetOrCompute_shouldBypassWithoutProjectOrModel() {
+    assertEquals("review-1", review(null, ReviewAspect.SECURITY, "UserDao.java", HUNK));
+    assertEquals("review-2", review(null, ReviewAspect.SECURITY, "UserDao.java", HUNK));
+    verify(embeddingModel, never()).embed(anyString());
+
+    when(embeddingModels.getIfAvailable()).thenReturn(null);
+    assertEquals("review-3", review("42", ReviewAspect.SECURITY, "UserDao.java", HUNK));
+  }
+
+  @Test
+  @DisplayName("嵌入失败时不影响审查，模型结果为空时不写入索引")
+  void testGetOrCompute_shouldTolerateEmbeddingFailure() {
+    when(embeddingModel.embed(contains("+ id;"))).thenThrow(new IllegalStateException("embedding unavailable"));
+    assertEquals("review-1", review("42", ReviewAspect.SECURITY, "UserDao.java", HUNK));
+
+    assertNull(cache.getOrCompute("42", ReviewAspect.SECURITY, "Log.java", OTHER_HUNK, () -> null));
+    assertEquals("review-2", review("42", ReviewAspect.SECURITY, "Log.java", OTHER_HUNK));
+  }
+
+  @Test
+  @DisplayName("模型配置变更后清空索引")
+  void testOnAiModelConfigChanged_shouldClearIndexes() {
+    review("42", ReviewAspect.SECURITY, "UserDao.java", HUNK);
+
+    cache.onAiModelConfigChanged(new AiModelConfigChangedEvent(1L));
+
+    assertEquals("review-2", review("42", ReviewAspect.SECURITY, "UserDao.java", HUNK));
+  }
+
+  @Test
+  @DisplayName("索引容量满时覆盖最早的条目，过期条目不参与检索")
+  void testVectorIndex_shouldEvictOldestAndSkipExpired() {
+    SemanticResultCache.VectorIndex index = new SemanticResultCache.VectorIndex(2);
+    index.add(SemanticResultCache.VectorIndex.normalize(new float[] {1, 0}), "a", 100);
+    index.add(SemanticResultCache.VectorIndex.normalize(new float[] {0, 1}), "b", 200);
+    index.add(SemanticResultCache.VectorIndex.normalize(new float[] {1, 1}), "c", 300);
+
+    float[] query = SemanticResultCache.VectorIndex.normalize(new float[] {1, 0});
+    assertEquals("c", index.nearest(query, 0).result());
+    assertEquals(0.7071, index.nearest(query, 0).similarity(), 0.001);
+    assertEquals("c", index.nearest(query, 250).result());
+    assertNull(index.nearest(query, 400));
+  }
+}
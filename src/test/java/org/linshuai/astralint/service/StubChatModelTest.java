@@ -0,0 +1,131 @@
+package org.linshuai.astralint.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for StubChatModel.
+ */
+class StubChatModelTest {
+
+  private static final String COMPREHENSIVE_PROMPT = """
+      请对以下代码变更进行一次性的综合审查。
+
+      文件: UserService.java
+      代码变更：
+      +String sql = "SELECT * FROM users WHERE id = " + id;
+
+      <<<SUMMARY>>>
+      <<<SECURITY>>>
+      <<<PERFORMANCE>>>
+      <<<QUALITY>>>
+      """;
+
+  private StubChatModel stubChatModel;
+
+  @BeforeEach
+  void setUp() {
+    stubChatModel = new StubChatModel();
+    ReflectionTestUtils.setField(stubChatModel, "latencyMedianMs", 0L);
+    ReflectionTestUtils.setField(stubChatModel, "latencyP99Ms", 0L);
+    ReflectionTestUtils.setField(stubChatModel, "streamChunkChars", 16);
+    ReflectionTestUtils.setField(stubChatModel, "seed", 42L);
+  }
+
+  @Test
+  @DisplayName("相同的提示词返回相同的分节审查结果，并带有token用量")
+  void testCall_shouldReturnDeterministicSections() {
+    ChatResponse first = stubChatModel.call(new Prompt(COMPREHENSIVE_PROMPT));
+    ChatResponse second = stubChatModel.call(new Prompt(COMPREHENSIVE_PROMPT));
+
+    String text = first.getResult().getOutput().getText();
+    assertEquals(text, second.getResult().getOutput().getText());
+    assertTrue(text.startsWith("<<<SUMMARY>>>\nUserService.java："));
+    assertTrue(text.contains("<<<SECURITY>>>") && text.contains("<<<PERFORMANCE>>>") && text.contains("<<<QUALITY>>>"));
+    assertTrue(first.getMetadata().getUsage().getPromptTokens() > 0);
+    assertTrue(first.getMetadata().getUsage().getCompletionTokens() > 0);
+  }
+
+  @Test
+  @DisplayName("批量审查的提示词按文件编号返回每个文件的分节结果")
+  void testRender_shouldSplitBatchByFile() {
+    String prompt = """
+        请对以下2个文件的代码变更分别进行一次性的综合审查。
+
+        文件 1: a.js
+        代码变更：
+        +let a = 1;
+
+        文件 2: b.py
+        代码变更：
+        +b = 2
+        """;
+
+    String text = stubChatModel.render(prompt);
+
+    assertTrue(text.startsWith("<<<FILE 1>>>\n<<<SUMMARY>>>\na.js："));
+    assertTrue(text.contains("<<<FILE 2>>>\n<<<SUMMARY>>>\nb.py："));
+    assertFalse(text.contains("<<<FILE 3>>>"));
+  }
+
+  @Test
+  @DisplayName("按配置比例返回429和503，429可被限流器识别")
+  void testNextOutcome_shouldInjectConfiguredErrors() {
+    ReflectionTestUtils.setField(stubChatModel, "rateLimitRate", 1.0);
+    StubChatModel.Outcome rateLimited = stubChatModel.nextOutcome();
+    assertTrue(ModelRateLimiter.isRateLimited(rateLimited.error()));
+
+    ReflectionTestUtils.setField(stubChatModel, "rateLimitRate", 0.0);
+    ReflectionTestUtils.setField(stubChatModel, "errorRate", 1.0);
+    StubChatModel.Outcome failed = stubChatModel.nextOutcome();
+    assertNotNull(failed.error());
+    assertFalse(ModelRateLimiter.isRateLimited(failed.error()));
+    assertThrows(RuntimeException.class, () -> stubChatModel.call(new Prompt(COMPREHENSIVE_PROMPT)));
+  }
+
+  @Test
+  @DisplayName("延迟服从配置的中位数，相同种子的延迟序列可以复现")
+  void testNextOutcome_shouldSampleReproducibleLatency() {
+    ReflectionTestUtils.setField(stubChatModel, "latencyMedianMs", 100L);
+    ReflectionTestUtils.setField(stubChatModel, "latencyP99Ms", 1000L);
+
+    List<Long> latencies = sampleLatencies(1001);
+    List<Long> sorted = latencies.stream().sorted().toList();
+    long median = sorted.get(500);
+    assertTrue(median > 80 && median < 125, "median=" + median);
+    assertTrue(sorted.get(990) > 500, "p99=" + sorted.get(990));
+
+    setUp();
+    ReflectionTestUtils.setField(stubChatModel, "latencyMedianMs", 100L);
+    ReflectionTestUtils.setField(stubChatModel, "latencyP99Ms", 1000L);
+    assertEquals(latencies, sampleLatencies(1001));
+  }
+
+  @Test
+  @DisplayName("通过ChatClient流式调用时，片段拼接后与同步调用结果一致")
+  void testStream_shouldMatchBlockingCall() {
+    ChatClient chatClient = ChatClient.builder(stubChatModel).build();
+
+    String streamed = chatClient.prompt(COMPREHENSIVE_PROMPT).stream().content()
+        .collect(Collectors.joining()).block();
+
+    assertEquals(chatClient.prompt(COMPREHENSIVE_PROMPT).call().content(), streamed);
+  }
+
+  private List<Long> sampleLatencies(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> stubChatModel.nextOutcome().latencyMs())
+        .toList();
+  }
+}
@@ -0,0 +1,151 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.entity.AiModelConfig;
+import org.linshuai.astralint.entity.TokenUsage;
+import org.linshuai.astralint.repository.TokenUsageRepository;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TokenUsageTracker.
+ */
+class TokenUsageTrackerTest {
+
+  @Mock
+  private TokenUsageRepository tokenUsageRepository;
+
+  @Mock
+  private AiModelConfigService aiModelConfigService;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private TokenUsageTracker tracker;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+    tracker = new TokenUsageTracker();
+    ReflectionTestUtils.setField(tracker, "tokenUsageRepository", tokenUsageRepository);
+    ReflectionTestUtils.setField(tracker, "aiModelConfigService", aiModelConfigService);
+    ReflectionTestUtils.setField(tracker, "transactionTemplate",
+        new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    ReflectionTestUtils.setField(tracker, "meterRegistry", meterRegistry);
+    tracker.init();
+
+    AiModelConfig max = new AiModelConfig("qwen-max", "ALIBABA");
+    max.setCostWeight(5.0);
+    when(aiModelConfigService.getModelConfigByName("qwen-max")).thenReturn(Optional.of(max));
+    when(aiModelConfigService.getModelConfigByName("qwen-plus")).thenReturn(Optional.empty());
+    when(tokenUsageRepository.findByScopeTypeAndScopeKeyAndUsageDate(anyString(), anyString(), any()))
+        .thenReturn(Optional.empty());
+  }
+
+  private Map<String, TokenUsageTracker.UsageTotal> usageByKey() {
+    return tracker.getUsageSince(LocalDate.now()).stream()
+        .collect(Collectors.toMap(TokenUsageTracker.UsageTotal::scopeKey, Function.identity()));
+  }
+
+  @Test
+  @DisplayName("用量同时累加到审查、仓库和模型，成本按模型成本权重折算")
+  void testRecord_shouldAggregatePerReviewRepositoryAndModel() {
+    ReviewContext review = new ReviewContext("job-1", 42L);
+
+    review.call(() -> {
+      tracker.record("qwen-max", 800, 200);
+      tracker.record("qwen-plus", 1500, 500);
+      return null;
+    });
+    tracker.record("qwen-plus", 100, 0);
+
+    assertEquals(2, review.getCalls());
+    assertEquals(2300, review.getPromptTokens());
+    assertEquals(700, review.getCompletionTokens());
+    assertEquals(7.0, review.getCost(), 1e-9);
+
+    Map<String, TokenUsageTracker.UsageTotal> usage = usageByKey();
+    assertEquals(3000, usage.get("42").totalTokens());
+    assertEquals(100, usage.get(TokenUsageTracker.UNASSIGNED_REPOSITORY).totalTokens());
+    assertEquals(5.0, usage.get("qwen-max").cost(), 1e-9);
+    assertEquals(2, usage.get("qwen-plus").calls());
+    assertEquals(1600.0, meterRegistry.get("astralint.ai.tokens").tag("model", "qwen-plus").tag("type", "prompt")
+        .counter().count());
+  }
+
+  @Test
+  @DisplayName("审查上下文通过wrap传递到子任务线程")
+  void testWrap_shouldPropagateContextToOtherThreads() throws InterruptedException {
+    ReviewContext review = new ReviewContext("review-1", null);
+
+    Runnable task = review.call(() -> ReviewContext.wrap(() -> tracker.record("qwen-plus", 10, 5)));
+    Thread thread = new Thread(task);
+    thread.start();
+    thread.join();
+
+    assertNull(ReviewContext.current());
+    assertEquals(15, review.getPromptTokens() + review.getCompletionTokens());
+  }
+
+  @Test
+  @DisplayName("刷盘时把增量合并到当天的记录，已刷盘的增量不会重复写入")
+  void testFlush_shouldMergeDeltasIntoDailyRows() {
+    TokenUsage existing = new TokenUsage(TokenUsage.SCOPE_MODEL, "qwen-plus", LocalDate.now());
+    existing.setCalls(3L);
+    existing.setPromptTokens(300L);
+    when(tokenUsageRepository.findByScopeTypeAndScopeKeyAndUsageDate(TokenUsage.SCOPE_MODEL, "qwen-plus",
+        LocalDate.now())).thenReturn(Optional.of(existing));
+
+    tracker.record("qwen-plus", 100, 50);
+    tracker.flush();
+
+    ArgumentCaptor<TokenUsage> saved = ArgumentCaptor.forClass(TokenUsage.class);
+    verify(tokenUsageRepository, times(2)).save(saved.capture());
+    assertEquals(4L, existing.getCalls());
+    assertEquals(400L, existing.getPromptTokens());
+    assertEquals(50L, existing.getCompletionTokens());
+    assertTrue(saved.getAllValues().stream().anyMatch(usage ->
+        TokenUsage.SCOPE_REPOSITORY.equals(usage.getScopeType()) && usage.getPromptTokens() == 100L));
+
+    tracker.flush();
+    verify(tokenUsageRepository, times(2)).save(any());
+  }
+
+  @Test
+  @DisplayName("写入数据库失败时增量放回内存，下次刷盘重试")
+  void testFlush_shouldKeepDeltasOnFailure() {
+    when(tokenUsageRepository.save(any())).thenThrow(new DataAccessResourceFailureException("db down"));
+
+    tracker.record("qwen-plus", 100, 50);
+    tracker.flush();
+
+    assertEquals(150, usageByKey().get("qwen-plus").totalTokens());
+
+    reset(tokenUsageRepository);
+    when(tokenUsageRepository.findByScopeTypeAndScopeKeyAndUsageDate(anyString(), anyString(), any()))
+        .thenReturn(Optional.empty());
+    tracker.flush();
+    verify(tokenUsageRepository, times(2)).save(any());
+    assertEquals(List.of(), tracker.getUsageSince(LocalDate.now()).stream()
+        .filter(total -> total.totalTokens() > 0).toList());
+  }
+}
@@ -0,0 +1,109 @@
+package org.linshuai.astralint.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.dto.WebhookPayload;
+import org.linshuai.astralint.repository.WebhookDeliveryRepository;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for WebhookDeliveryDeduplicator.
+ */
+class WebhookDeliveryDeduplicatorTest {
+
+  private static final String GITHUB = "GITHUB";
+
+  @Mock
+  private WebhookDeliveryRepository webhookDeliveryRepository;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private WebhookDeliveryDeduplicator deduplicator;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    meterRegistry = new SimpleMeterRegistry();
+    deduplicator = new WebhookDeliveryDeduplicator();
+    ReflectionTestUtils.setField(deduplicator, "webhookDeliveryRepository", webhookDeliveryRepository);
+    ReflectionTestUtils.setField(deduplicator, "transactionTemplate",
+        new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    ReflectionTestUtils.setField(deduplicator, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(deduplicator, "enabled", true);
+    ReflectionTestUtils.setField(deduplicator, "window", Duration.ofHours(24));
+  }
+
+  private static WebhookPayload payload(String json) {
+    // 缓冲区末尾的内容不属于payload，不应影响摘要
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    byte[] buffer = new byte[body.length + 16];
+    System.arraycopy(body, 0, buffer, 0, body.length);
+    Arrays.fill(buffer, body.length, buffer.length, (byte) 'x');
+    return new WebhookPayload(buffer, body.length);
+  }
+
+  @Test
+  @DisplayName("首次投递写入记录，重投的同一投递被识别为重复")
+  void testMarkIfFirst_shouldRejectRedelivery() {
+    assertTrue(deduplicator.markIfFirst(GITHUB, "delivery-1"));
+
+    when(webhookDeliveryRepository.saveAndFlush(any()))
+        .thenThrow(new DataIntegrityViolationException("duplicate key"));
+    assertFalse(deduplicator.markIfFirst(GITHUB, "delivery-1"));
+    verify(webhookDeliveryRepository, times(2)).saveAndFlush(any());
+    verifyNoMoreInteractions(webhookDeliveryRepository);
+    assertEquals(1.0, meterRegistry.get("astralint.webhook.deliveries").tag("result", "duplicate")
+        .counter().count());
+  }
+
+  @Test
+  @DisplayName("处理失败释放后，重投的投递再次处理")
+  void testRelease_shouldAllowRetryOfFailedDelivery() {
+    assertTrue(deduplicator.markIfFirst(GITHUB, "delivery-3"));
+
+    deduplicator.release(GITHUB, "delivery-3");
+    verify(webhookDeliveryRepository).deleteDelivery(GITHUB, "delivery-3");
+
+    assertTrue(deduplicator.markIfFirst(GITHUB, "delivery-3"));
+    verify(webhookDeliveryRepository, times(2)).saveAndFlush(any());
+  }
+
+  @Test
+  @DisplayName("数据库不可用时按首次投递处理，不阻塞审查")
+  void testMarkIfFirst_shouldFailOpenWhenDatabaseUnavailable() {
+    when(webhookDeliveryRepository.saveAndFlush(any()))
+        .thenThrow(new DataAccessResourceFailureException("db down"));
+
+    assertTrue(deduplicator.markIfFirst(GITHUB, "delivery-4"));
+    assertTrue(deduplicator.markIfFirst(GITHUB, "delivery-4"));
+  }
+
+  @Test
+  @DisplayName("没有投递ID时按事件和payload的摘要去重")
+  void testDeliveryKey_shouldFallBackToPayloadDigest() {
+    assertEquals("abc-123", deduplicator.deliveryKey(" abc-123 ", "push", payload("{}")));
+
+    String first = deduplicator.deliveryKey(null, "Merge Request Hook", payload("{\"iid\":1}"));
+    assertTrue(first.startsWith("sha256:"));
+    assertEquals(first, deduplicator.deliveryKey("", "Merge Request Hook", payload("{\"iid\":1}")));
+    assertNotEquals(first, deduplicator.deliveryKey(null, "Merge Request Hook", payload("{\"iid\":2}")));
+    assertNotEquals(first, deduplicator.deliveryKey(null, "Push Hook", payload("{\"iid\":1}")));
+    assertTrue(deduplicator.deliveryKey("x".repeat(200), "push", payload("{}")).startsWith("sha256:"));
+  }
+}
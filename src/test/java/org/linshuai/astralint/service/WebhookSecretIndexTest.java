@@ -0,0 +1,142 @@
+package org.linshuai.astralint.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.linshuai.astralint.event.RepositoryConfigChangedEvent;
+import org.linshuai.astralint.repository.RepositoryConfigRepository;
+import org.linshuai.astralint.util.WebhookSecurityUtils;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for WebhookSecretIndex.
+ */
+class WebhookSecretIndexTest {
+
+  @Mock
+  private RepositoryConfigRepository repositoryConfigRepository;
+
+  @Mock
+  private WebhookSecurityUtils webhookSecurityUtils;
+
+  private WebhookSecretIndex secretIndex;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    secretIndex = new WebhookSecretIndex();
+    ReflectionTestUtils.setField(secretIndex, "repositoryConfigRepository", repositoryConfigRepository);
+    ReflectionTestUtils.setField(secretIndex, "webhookSecurityUtils", webhookSecurityUtils);
+  }
+
+  private static RepositoryConfigRepository.WebhookSecretView secret(String type, String projectId, String name,
+                                                                     String webhookSecret) {
+    return new RepositoryConfigRepository.WebhookSecretView() {
+      @Override
+      public String getRepositoryType() {
+        return type;
+      }
+
+      @Override
+      public String getProjectId() {
+        return projectId;
+      }
+
+      @Override
+      public String getRepositoryName() {
+        return name;
+      }
+
+      @Override
+      public String getWebhookSecret() {
+        return webhookSecret;
+      }
+    };
+  }
+
+  @Test
+  @DisplayName("应该按仓库类型和项目ID或仓库名称查找密钥，查找不访问数据库")
+  void testFindSecret_shouldResolveFromIndex() {
+    when(repositoryConfigRepository.findWebhookSecrets()).thenReturn(List.of(
+        secret("gitlab", "123", "group/project", "gitlab-secret"),
+        secret("GITHUB", null, "org/repo", "github-secret")));
+    secretIndex.onApplicationReady();
+
+    assertEquals("gitlab-secret", secretIndex.findSecret("GITLAB", "123", null));
+    assertNull(secretIndex.findSecret("GITHUB", "123", null));
+    assertEquals("github-secret", secretIndex.findSecret("GITHUB", null, "org/repo"));
+    assertNull(secretIndex.findSecret("GITHUB", null, "org/other"));
+    verify(repositoryConfigRepository, times(1)).findWebhookSecrets();
+  }
+
+  @Test
+  @DisplayName("不同仓库类型的同名仓库使用各自的密钥")
+  void testFindSecret_shouldSeparateSameNameAcrossRepositoryTypes() {
+    when(repositoryConfigRepository.findWebhookSecrets()).thenReturn(List.of(
+        secret("GITHUB", null, "org/repo", "github-secret"),
+        secret("gitee", null, "org/repo", "gitee-secret")));
+    secretIndex.refresh();
+
+    assertEquals("github-secret", secretIndex.findSecret("GITHUB", null, "org/repo"));
+    assertEquals("gitee-secret", secretIndex.findSecret("GITEE", null, "org/repo"));
+    assertNull(secretIndex.findSecret("GITLAB", null, "org/repo"));
+  }
+
+  @Test
+  @DisplayName("仓库配置变更后重建索引，密钥变化时使缓存的Mac失效")
+  void testOnRepositoryConfigChanged_shouldRebuildAndInvalidateKeys() {
+    when(repositoryConfigRepository.findWebhookSecrets())
+        .thenReturn(List.of(secret("GITHUB", null, "org/repo", "old")));
+    secretIndex.refresh();
+    verify(webhookSecurityUtils, times(1)).invalidateKeys();
+
+    // 与其他仓库相关的变更不改变密钥，不失效
+    secretIndex.onRepositoryConfigChanged(new RepositoryConfigChangedEvent(2L));
+    verify(webhookSecurityUtils, times(1)).invalidateKeys();
+
+    when(repositoryConfigRepository.findWebhookSecrets())
+        .thenReturn(List.of(secret("GITHUB", null, "org/repo", "new")));
+    secretIndex.onRepositoryConfigChanged(new RepositoryConfigChangedEvent(1L));
+
+    assertEquals("new", secretIndex.findSecret("GITHUB", null, "org/repo"));
+    verify(webhookSecurityUtils, times(2)).invalidateKeys();
+  }
+
+  @Test
+  @DisplayName("首次加载失败时索引标记为未加载，重试成功后标记为已加载（即使没有仓库配置密钥）")
+  void testRefresh_shouldReportNotLoadedUntilFirstSuccess() {
+    when(repositoryConfigRepository.findWebhookSecrets())
+        .thenThrow(new DataAccessResourceFailureException("db down"))
+        .thenReturn(List.of());
+
+    secretIndex.afterSingletonsInstantiated();
+    assertFalse(secretIndex.isLoaded());
+
+    secretIndex.refresh();
+    assertTrue(secretIndex.isLoaded());
+    assertNull(secretIndex.findSecret("GITLAB", "123", null));
+  }
+
+  @Test
+  @DisplayName("重建失败时保留上次的索引")
+  void testRefresh_shouldKeepIndexOnFailure() {
+    when(repositoryConfigRepository.findWebhookSecrets())
+        .thenReturn(List.of(secret("GITLAB", "123", "group/project", "secret")));
+    secretIndex.refresh();
+    when(repositoryConfigRepository.findWebhookSecrets())
+        .thenThrow(new DataAccessResourceFailureException("db down"));
+
+    secretIndex.refresh();
+
+    assertTrue(secretIndex.isLoaded());
+    assertEquals("secret", secretIndex.findSecret("GITLAB", "123", null));
+  }
+}
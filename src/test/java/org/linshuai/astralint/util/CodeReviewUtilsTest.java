@@ -2,6 +2,9 @@ package org.linshuai.astralint.util;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+import org.linshuai.astralint.dto.FileDiff;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,6 +26,90 @@ class CodeReviewUtilsTest {
     assertEquals("", getFileExtension(""));
   }
 
+  @Test
+  @DisplayName("应该能够按文件拆分git统一格式的diff")
+  void testSplitUnifiedDiff_shouldSplitByFile() {
+    // Given
+    String diff = """
+        diff --git a/src/A.java b/src/A.java
+        index 1234567..abcdefg 100644
+        --- a/src/A.java
+        +++ b/src/A.java
+        @@ -1,2 +1,3 @@
+         class A {
+        +  int x;
+         }
+        diff --git a/logo.png b/logo.png
+        Binary files a/logo.png and b/logo.png differ
+        diff --git a/src/Old.java b/src/New.java
+        similarity index 90%
+        rename from src/Old.java
+        rename to src/New.java
+        --- a/src/Old.java
+        +++ b/src/New.java
+        @@ -3 +3 @@
+        -  int y;
+        +  long y;
+        """;
+
+    // When
+    List<FileDiff> files = CodeReviewUtils.splitUnifiedDiff(diff);
+
+    // Then
+    assertEquals(2, files.size());
+    assertEquals("src/A.java", files.get(0).getFilePath());
+    assertTrue(files.get(0).getDiff().startsWith("@@ -1,2 +1,3 @@"));
+    assertFalse(files.get(0).getDiff().contains("index 1234567"));
+    assertEquals("src/New.java", files.get(1).getFilePath());
+    assertTrue(files.get(1).getDiff().contains("+  long y;"));
+    assertTrue(CodeReviewUtils.splitUnifiedDiff("").isEmpty());
+  }
+
+  @Test
+  @DisplayName("中文按字计token，英文按字符数估算")
+  void testEstimateTokens_shouldCountCjkPerCharacter() {
+    assertEquals(0, CodeReviewUtils.estimateTokens(""));
+    assertEquals(4, CodeReviewUtils.estimateTokens("代码审查"));
+    assertEquals(2, CodeReviewUtils.estimateTokens("abcdefgh"));
+    assertEquals(3, CodeReviewUtils.estimateTokens("x = 1"));
+  }
+
+  @Test
+  @DisplayName("应该按hunk边界把diff拆分为不超过token预算的片段")
+  void testChunkDiff_shouldSplitAtHunkBoundaries() {
+    // Given
+    String hunk1 = "@@ -1,1 +1,1 @@\n" + "+first line\n".repeat(20);
+    String hunk2 = "@@ -50,1 +50,1 @@\n" + "+second line\n".repeat(20);
+    String diff = hunk1 + hunk2;
+    int budget = Math.max(CodeReviewUtils.estimateTokens(hunk1), CodeReviewUtils.estimateTokens(hunk2));
+
+    // When
+    List<String> chunks = CodeReviewUtils.chunkDiff(diff, budget);
+
+    // Then
+    assertEquals(List.of(hunk1, hunk2), chunks);
+    assertEquals(List.of(diff), CodeReviewUtils.chunkDiff(diff, CodeReviewUtils.estimateTokens(diff)));
+  }
+
+  @Test
+  @DisplayName("超过预算的单个hunk按行拆分，每个片段保留hunk头")
+  void testChunkDiff_shouldSplitOversizedHunkByLines() {
+    // Given
+    String header = "@@ -1,100 +1,100 @@\n";
+    String diff = header + "+some added code\n".repeat(100);
+
+    // When
+    List<String> chunks = CodeReviewUtils.chunkDiff(diff, 60);
+
+    // Then
+    assertTrue(chunks.size() > 1);
+    for (String chunk : chunks) {
+      assertTrue(chunk.startsWith(header));
+      assertTrue(CodeReviewUtils.estimateTokens(chunk) <= 60);
+    }
+    assertEquals(100, String.join("", chunks).split("\\+some added code", -1).length - 1);
+  }
+
   @Test
   @DisplayName("应该能够判断是否为支持的编程语言文件")
   void testIsSupportedLanguage_shouldIdentifyCorrectly() {
@@ -0,0 +1,90 @@
+package org.linshuai.astralint.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JsonFieldExtractor.
+ */
+class JsonFieldExtractorTest {
+
+  private static Map<String, String> extract(String json, String... paths) throws Exception {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    return JsonFieldExtractor.extract(bytes, 0, bytes.length, Set.of(paths));
+  }
+
+  @Test
+  @DisplayName("应该能够按点分隔的路径读取嵌套字段，数字按文本返回")
+  void testExtract_shouldReadNestedScalars() throws Exception {
+    String json = """
+        {"action":"opened","number":7,
+         "pull_request":{"number":42,"head":{"ref":"main","sha":"abc123"},"draft":false},
+         "repository":{"id":1,"full_name":"org/repo"}}
+        """;
+
+    Map<String, String> fields = extract(json,
+        "action", "pull_request.number", "pull_request.head.sha", "repository.full_name", "pull_request.draft");
+
+    assertEquals("opened", fields.get("action"));
+    assertEquals("42", fields.get("pull_request.number"));
+    assertEquals("abc123", fields.get("pull_request.head.sha"));
+    assertEquals("org/repo", fields.get("repository.full_name"));
+    assertEquals("false", fields.get("pull_request.draft"));
+  }
+
+  @Test
+  @DisplayName("应该跳过不需要的子树，包括与所需字段同名的嵌套字段")
+  void testExtract_shouldSkipUnrelatedSubtrees() throws Exception {
+    String json = """
+        {"commits":[{"id":"c1","action":"x","files":["a","b"]},{"id":"c2"}],
+         "sender":{"action":"ignored","id":9},
+         "action":"synchronize"}
+        """;
+
+    Map<String, String> fields = extract(json, "action", "id");
+
+    assertEquals(Map.of("action", "synchronize"), fields);
+  }
+
+  @Test
+  @DisplayName("缺失、为null或不是标量的字段不包含在结果中")
+  void testExtract_shouldOmitMissingNullAndNonScalarFields() throws Exception {
+    String json = """
+        {"object_attributes":{"iid":3,"last_commit":null,"labels":[{"id":1}]},"project":{}}
+        """;
+
+    Map<String, String> fields = extract(json,
+        "object_attributes.iid", "object_attributes.last_commit.id", "object_attributes.labels", "project.id");
+
+    assertEquals(Map.of("object_attributes.iid", "3"), fields);
+  }
+
+  @Test
+  @DisplayName("所需字段都读到后停止解析，不读取后面的内容")
+  void testExtract_shouldStopOnceAllFieldsFound() throws Exception {
+    // 所需字段之后的内容不是合法JSON，读到所有字段后应立即返回
+    String json = "{\"action\":\"opened\",\"repository\":{\"full_name\":\"org/repo\"}, broken";
+
+    Map<String, String> fields = extract(json, "action", "repository.full_name");
+
+    assertEquals("opened", fields.get("action"));
+    assertEquals("org/repo", fields.get("repository.full_name"));
+  }
+
+  @Test
+  @DisplayName("根节点不是对象或JSON格式错误时抛出解析异常")
+  void testExtract_shouldRejectInvalidJson() {
+    assertThrows(JsonParseException.class, () -> extract("[1,2]", "action"));
+    assertThrows(JsonParseException.class, () -> extract("{\"action\":", "action"));
+    byte[] bytes = "xx{\"action\":\"opened\"}yy".getBytes(StandardCharsets.UTF_8);
+    assertDoesNotThrow(() -> assertEquals("opened",
+        JsonFieldExtractor.extract(bytes, 2, bytes.length - 4, Set.of("action")).get("action")));
+  }
+}
@@ -0,0 +1,99 @@
+package org.linshuai.astralint.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for WebhookSecurityUtils.
+ */
+class WebhookSecurityUtilsTest {
+
+  private static final String PAYLOAD = "{\"action\":\"opened\",\"pull_request\":{\"number\":1}}";
+
+  private WebhookSecurityUtils securityUtils;
+
+  @BeforeEach
+  void setUp() {
+    securityUtils = new WebhookSecurityUtils();
+  }
+
+  private static String hmacSha256(String payload, String secret) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  @DisplayName("应该接受正确的GitHub签名（大小写均可），重复校验复用同一密钥的Mac")
+  void testVerifyGitHubSignature_shouldAcceptValidSignature() throws Exception {
+    String signature = "sha256=" + hmacSha256(PAYLOAD, "secret");
+
+    assertTrue(securityUtils.verifyGitHubSignature(PAYLOAD, signature, "secret"));
+    assertTrue(securityUtils.verifyGitHubSignature(PAYLOAD, signature, "secret"));
+    assertTrue(securityUtils.verifyGitHubSignature(PAYLOAD,
+        "sha256=" + hmacSha256(PAYLOAD, "secret").toUpperCase(Locale.ROOT), "secret"));
+
+    byte[] buffer = ("xx" + PAYLOAD + "yy").getBytes(StandardCharsets.UTF_8);
+    assertTrue(securityUtils.verifyGitHubSignature(buffer, 2, PAYLOAD.length(), signature, "secret"));
+  }
+
+  @Test
+  @DisplayName("签名、密钥或payload不匹配，或签名格式错误时应该拒绝")
+  void testVerifyGitHubSignature_shouldRejectInvalidSignature() throws Exception {
+    String hex = hmacSha256(PAYLOAD, "secret");
+
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD, "sha256=" + hex, "other"));
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD + " ", "sha256=" + hex, "secret"));
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD, hex, "secret"));
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD, "sha256=" + hex + "0", "secret"));
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD,
+        "sha256=" + hex.substring(0, hex.length() - 1) + "g", "secret"));
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD, null, "secret"));
+    // 失败的校验不影响后续使用同一密钥
+    assertTrue(securityUtils.verifyGitHubSignature(PAYLOAD, "sha256=" + hex, "secret"));
+  }
+
+  @Test
+  @DisplayName("密钥变更后重新初始化Mac，新旧密钥都能正确校验")
+  void testInvalidateKeys_shouldRekey() throws Exception {
+    assertTrue(securityUtils.verifyGitHubSignature(PAYLOAD, "sha256=" + hmacSha256(PAYLOAD, "old"), "old"));
+
+    securityUtils.invalidateKeys();
+
+    assertTrue(securityUtils.verifyGitHubSignature(PAYLOAD, "sha256=" + hmacSha256(PAYLOAD, "new"), "new"));
+    assertFalse(securityUtils.verifyGitHubSignature(PAYLOAD, "sha256=" + hmacSha256(PAYLOAD, "old"), "new"));
+  }
+
+  @Test
+  @DisplayName("应该按payload + secret的SHA256校验Gitee签名")
+  void testVerifyGiteeSignature_shouldMatchDigestOfPayloadAndSecret() throws Exception {
+    String signature = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+        .digest((PAYLOAD + "secret").getBytes(StandardCharsets.UTF_8)));
+
+    assertTrue(securityUtils.verifyGiteeSignature(PAYLOAD, signature, "secret"));
+    assertFalse(securityUtils.verifyGiteeSignature(PAYLOAD, signature, "other"));
+    assertTrue(securityUtils.verifyGiteeSignature(PAYLOAD, signature, "secret"));
+  }
+
+  @Test
+  @DisplayName("十六进制比较应该只接受0-9、a-f和A-F")
+  void testHexEquals_shouldRejectNonHexCharacters() {
+    byte[] digest = {(byte) 0xab, 0x0f};
+
+    assertTrue(WebhookSecurityUtils.hexEquals(digest, "ab0f", 0));
+    assertTrue(WebhookSecurityUtils.hexEquals(digest, "sha256=AB0F", 7));
+    assertFalse(WebhookSecurityUtils.hexEquals(digest, "ab0g", 0));
+    assertFalse(WebhookSecurityUtils.hexEquals(digest, "ab0", 0));
+    assertFalse(WebhookSecurityUtils.hexEquals(new byte[] {(byte) 0xff}, "ｆｆ", 0));
+  }
+}
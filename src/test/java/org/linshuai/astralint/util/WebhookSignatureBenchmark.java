@@ -0,0 +1,101 @@
+package org.linshuai.astralint.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GitHub Webhook签名校验的JMH基准：每次创建并初始化Mac、逐字节格式化十六进制串的旧实现，
+ * 与按线程缓存Mac、按字节比较的WebhookSecurityUtils对比。多线程运行以模拟高并发投递
+ * 运行方式: make bench，或 java -cp ... org.linshuai.astralint.util.WebhookSignatureBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class WebhookSignatureBenchmark {
+
+  private static final String SECRET = "benchmark-webhook-secret";
+
+  // 典型的PR事件约为十几KB，包含大量提交的push事件可达数百KB
+  @Param({"2048", "16384", "262144"})
+  private int payloadSize;
+
+  private byte[] payload;
+
+  private String payloadText;
+
+  private String signature;
+
+  private WebhookSecurityUtils securityUtils;
+
+  @Setup
+  public void setUp() throws Exception {
+    payload = new byte[payloadSize];
+    Arrays.fill(payload, (byte) 'a');
+    payloadText = new String(payload, StandardCharsets.UTF_8);
+
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    signature = "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+
+    securityUtils = new WebhookSecurityUtils();
+  }
+
+  @Benchmark
+  public boolean cachedMac() {
+    return securityUtils.verifyGitHubSignature(payload, 0, payload.length, signature, SECRET);
+  }
+
+  @Benchmark
+  public boolean legacy() throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    byte[] hash = mac.doFinal(payloadText.getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder();
+    for (byte b : hash) {
+      hex.append(String.format("%02x", b));
+    }
+    return legacyEquals(signature, "sha256=" + hex);
+  }
+
+  private static boolean legacyEquals(String a, String b) {
+    if (a.length() != b.length()) {
+      return false;
+    }
+    int result = 0;
+    for (int i = 0; i < a.length(); i++) {
+      result |= a.charAt(i) ^ b.charAt(i);
+    }
+    return result == 0;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(WebhookSignatureBenchmark.class.getSimpleName())
+        .addProfiler("gc")
+        .build()).run();
+  }
+}